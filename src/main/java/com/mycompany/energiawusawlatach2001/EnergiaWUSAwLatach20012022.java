@@ -1,22 +1,50 @@
 package com.mycompany.energiawusawlatach2001;
 
 import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.AnomalyPolicy;
 import com.mycompany.energiawusawlatach2001.model.EnergyData;
 import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
 import com.mycompany.energiawusawlatach2001.model.EnergySource;
 import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.shard.LeaderModel;
+import com.mycompany.energiawusawlatach2001.trace.RecordingModel;
 import com.mycompany.energiawusawlatach2001.view.View;
 import com.mycompany.energiawusawlatach2001.controller.Controller;
+import java.io.IOException;
+import java.nio.file.Path;
+import javax.management.JMException;
 import javax.swing.JOptionPane;
 
 /**
 * The EnergiaWUSAwLatach20012022 class is the entry point of the application.
 * It initializes the Model, View, and Controller components and starts the GUI.
+* The model metrics are registered as MBeans so they can be read with JConsole.
+* Started with {@code -Denergia.trace=<file>}, every model operation is recorded to a
+* workload trace for {@link com.mycompany.energiawusawlatach2001.trace.TraceReplayer}.
+* Started with {@code -Denergia.leader=<socket file>}, the model ships its changes to
+* follower processes started by a {@link com.mycompany.energiawusawlatach2001.shard.ReplicaSet}.
+* Started with {@code -Denergia.memoryLimit=<bytes>}, the model refuses rows once its
+* structures hold that many bytes and nothing more can be dropped.
 *
 * @author Aleksandra Nizio
 * @version 1.0
 */
 public class EnergiaWUSAwLatach20012022 {
+   /**
+    * System property naming the file to record a workload trace to.
+    */
+   public static final String TRACE_PROPERTY = "energia.trace";
+
+   /**
+    * System property with the memory limit of the model in bytes.
+    */
+   public static final String MEMORY_LIMIT_PROPERTY = "energia.memoryLimit";
+
+   /**
+    * System property naming the socket file replication followers connect to.
+    */
+   public static final String LEADER_PROPERTY = "energia.leader";
+
    /**
     * The main method serves as the entry point of the application.
     *
@@ -27,7 +55,24 @@ public class EnergiaWUSAwLatach20012022 {
     *             Hydroelectric Facilities, Fossil Fuel Plants, Geothermal Plants
     */
    public static void main(String[] args) {
-       Model model = new Model();
+       Model model = createModel();
+       String memoryLimit = System.getProperty(MEMORY_LIMIT_PROPERTY);
+       if (memoryLimit != null) {
+           try {
+               model.setMemoryLimit(Long.parseLong(memoryLimit));
+           } catch (IllegalArgumentException e) {
+               JOptionPane.showMessageDialog(null,
+                       "Invalid memory limit " + memoryLimit + ". The application will run without one.",
+                       "Input Error", JOptionPane.WARNING_MESSAGE);
+           }
+       }
+       try {
+           model.getMetrics().registerMBeans();
+       } catch (JMException e) {
+           JOptionPane.showMessageDialog(null,
+                   "Metrics could not be registered over JMX: " + e.getMessage(),
+                   "Metrics Error", JOptionPane.WARNING_MESSAGE);
+       }
        
        if (args.length == 6) {
            String state = args[0];
@@ -58,8 +103,52 @@ public class EnergiaWUSAwLatach20012022 {
                    "Input Error", JOptionPane.ERROR_MESSAGE);
        }
 
+       // amounts typed far from the history of their state, source and month wait for confirmation
+       model.setAnomalyPolicy(AnomalyPolicy.QUARANTINE);
        View view = new View();
        new Controller(model, view);
        view.setVisible(true);
    }
+
+   /**
+    * Creates the sample model, leading replication followers if {@link #LEADER_PROPERTY} is set,
+    * otherwise recording to a trace if {@link #TRACE_PROPERTY} is set.
+    * The trace or the leader is closed when the application exits.
+    */
+   private static Model createModel() {
+       String leaderSocket = System.getProperty(LEADER_PROPERTY);
+       if (leaderSocket != null) {
+           try {
+               LeaderModel model = new LeaderModel(Path.of(leaderSocket));
+               // disconnects the followers and removes the socket file
+               Runtime.getRuntime().addShutdownHook(new Thread(model::close));
+               return model;
+           } catch (IOException e) {
+               JOptionPane.showMessageDialog(null,
+                       "Replication socket could not be opened: " + e.getMessage()
+                       + ". The application will run without followers.",
+                       "Replication Error", JOptionPane.WARNING_MESSAGE);
+           }
+       }
+       String traceFile = System.getProperty(TRACE_PROPERTY);
+       if (traceFile == null) {
+           return new Model();
+       }
+       try {
+           RecordingModel model = new RecordingModel(Path.of(traceFile));
+           Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+               try {
+                   model.getTrace().close();
+               } catch (IOException e) {
+                   System.err.println("Workload trace is incomplete: " + e.getMessage());
+               }
+           }));
+           return model;
+       } catch (IOException e) {
+           JOptionPane.showMessageDialog(null,
+                   "Workload trace could not be created: " + e.getMessage() + ". The application will run without it.",
+                   "Trace Error", JOptionPane.WARNING_MESSAGE);
+           return new Model();
+       }
+   }
 }
\ No newline at end of file
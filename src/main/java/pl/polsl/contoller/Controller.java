@@ -1,16 +1,39 @@
 package com.mycompany.energiawusawlatach2001.controller;
 
+import com.mycompany.energiawusawlatach2001.export.EnergyExporter;
+import com.mycompany.energiawusawlatach2001.export.ExportFormat;
 import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.Anomaly;
+import com.mycompany.energiawusawlatach2001.model.ColumnStore;
+import com.mycompany.energiawusawlatach2001.model.DiffSummary;
+import com.mycompany.energiawusawlatach2001.model.DiffVisitor;
 import com.mycompany.energiawusawlatach2001.model.EnergyData;
 import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
 import com.mycompany.energiawusawlatach2001.model.EnergySource;
 import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergyFilter;
+import com.mycompany.energiawusawlatach2001.model.Forecast;
+import com.mycompany.energiawusawlatach2001.model.ModelEvent;
+import com.mycompany.energiawusawlatach2001.model.PivotDimension;
+import com.mycompany.energiawusawlatach2001.model.PivotTable;
 import com.mycompany.energiawusawlatach2001.view.View;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
 * The {@code Controller} class bridges the {@link Model} and {@link View}.
@@ -20,9 +43,30 @@ import java.util.Map;
 * @version 1.0
 */
 public class Controller {
+   /**
+    * Most refreshes of the table and the open panels per second while the data keeps changing.
+    */
+   private static final int MAX_REFRESHES_PER_SECOND = 10;
+
    private final Model model;
    private final View view;
 
+   /**
+    * The quick filter applied to the table, or {@code null} when all rows are shown.
+    */
+   private EnergyFilter tableFilter;
+
+   /**
+    * The dimension of the chart shown, or {@code null} before the first chart.
+    */
+   private PivotDimension chartDimension;
+
+   /**
+    * The row and column dimensions of the heat map shown, or {@code null} before the first pivot.
+    */
+   private PivotDimension[] pivotDimensions;
+   private PivotTable.Normalization pivotNormalization;
+
    /**
     * Initializes the controller with the specified model and view.
     * Sets up action listeners for the view components.
@@ -34,7 +78,9 @@ public class Controller {
        this.model = model;
        this.view = view;
 
+       view.setRowOrders(model::getSortedPositions);
        displayAllData();
+       new RefreshCoalescer(model, MAX_REFRESHES_PER_SECOND, this::refresh);
 
        view.getDisplaySourcesButton().addActionListener(new DisplaySourcesListener());
        view.getSortButton().addActionListener(new SortProducersListener());
@@ -42,21 +88,78 @@ public class Controller {
        view.getAddButton().addActionListener(new AddDataListener());
        view.getMostUsedSourceButton().addActionListener(new MostUsedSourceListener());
        view.getEnergyByMonthButton().addActionListener(new EnergyByMonthListener());
+       view.getEnergyInRangeButton().addActionListener(new EnergyInRangeListener());
+       view.getPivotButton().addActionListener(new PivotListener());
+       view.getChartButton().addActionListener(new ChartListener());
+       view.getForecastButton().addActionListener(new ForecastListener());
+       view.getApplyFilterButton().addActionListener(new FilterListener());
+       view.getClearFilterButton().addActionListener(new ClearFilterListener());
+       view.getExportButton().addActionListener(new ExportListener());
+       view.getCompareButton().addActionListener(new CompareListener());
    }
 
    /**
     * Displays all energy data from the model in the view's table.
     */
    private void displayAllData() {
-       view.clearTable();
-       model.getEnergyDataList().forEach(data -> view.addTableRow(new Object[]{
+       view.setTableRows(model.getEnergyDataList().stream().map(Controller::toTableRow).toList());
+       if (tableFilter != null) {
+           view.getRowSorter().setFilter(model.filterPositions(tableFilter));
+       }
+   }
+
+   /**
+    * Applies the coalesced changes of the model to the table, appending and replacing
+    * only the rows that changed, and queries the chart and heat map shown again.
+    */
+   private void refresh(List<ModelEvent> changes) {
+       for (ModelEvent change : changes) {
+           switch (change.type()) {
+               case APPENDED -> {
+                   // the filter goes first, so the sorter merges the new rows in one pass
+                   if (tableFilter != null) {
+                       view.getRowSorter().setFilter(model.filterPositions(tableFilter));
+                   }
+                   view.addTableRows(tableRows(change));
+               }
+               case UPDATED -> view.updateTableRows(change.from(), tableRows(change));
+               default -> displayAllData();
+           }
+       }
+       if (chartDimension != null) {
+           view.getChartPanel().updateSeries(model.getTimeSeries(chartDimension));
+       }
+       if (pivotDimensions != null) {
+           view.getHeatMapPanel().setPivot(model.pivot(pivotDimensions[0], pivotDimensions[1]), pivotNormalization);
+       }
+   }
+
+   /**
+    * Converts the entries at a range of positions to table rows.
+    */
+   private List<Object[]> tableRows(ModelEvent change) {
+       List<EnergyData> data = model.getEnergyDataList();
+       List<Object[]> rows = new ArrayList<>(change.size());
+       for (int position = change.from(); position < change.to(); position++) {
+           rows.add(toTableRow(data.get(position)));
+       }
+       return rows;
+   }
+
+   /**
+    * Converts an entry to the cells of a table row; state-level entries leave plant and county blank.
+    */
+   private static Object[] toTableRow(EnergyData data) {
+       return new Object[]{
            data.year(), 
            data.month(), 
            data.state(), 
            data.source().getDisplayName(), 
            data.producer().getDisplayName(), 
-           data.amount()
-       }));
+           data.amount(),
+           data.plant() == 0 ? "" : data.plant(),
+           data.county() == null ? "" : data.county()
+       };
    }
 
    /**
@@ -127,8 +230,24 @@ public class Controller {
                int month = Integer.parseInt(view.getMonthField().getText());
                int year = Integer.parseInt(view.getYearField().getText());
 
-               model.addEnergyData(new EnergyData(year, month, state, source, producer, amount));
-               displayAllData();
+               EnergyData data = new EnergyData(year, month, state, source, producer, amount);
+               model.addEnergyData(data);
+               List<Anomaly> anomalies = model.getAnomalies();
+               Anomaly anomaly = anomalies.isEmpty() ? null : anomalies.get(anomalies.size() - 1);
+               if (anomaly != null && anomaly.data() == data && anomaly.quarantined()) {
+                   int choice = JOptionPane.showConfirmDialog(view, String.format(
+                           "%.1f MWh is unusual for %s, %s in month %d, where recent amounts are about %.1f MWh."
+                           + "%nAdd it anyway?", amount, state, source.getDisplayName(), month,
+                           anomaly.expectedAmount()), "Unusual Amount", JOptionPane.YES_NO_OPTION,
+                           JOptionPane.WARNING_MESSAGE);
+                   if (choice != JOptionPane.YES_OPTION) {
+                       // the fields keep the amount so that it can be corrected
+                       model.dismissAnomaly(anomaly);
+                       return;
+                   }
+                   model.releaseQuarantined(anomaly);
+               }
+               // the table shows the new row on the next refresh
                view.clearInputFields();
            } catch (NumberFormatException ex) {
                JOptionPane.showMessageDialog(view, "Invalid input! Ensure numeric fields are properly filled.",
@@ -136,6 +255,9 @@ public class Controller {
            } catch (InvalidEnergyDataException ex) {
                JOptionPane.showMessageDialog(view, "Invalid energy data: " + ex.getMessage(),
                        "Input Error", JOptionPane.ERROR_MESSAGE);
+           } catch (IllegalStateException ex) {
+               JOptionPane.showMessageDialog(view, "Data not added: " + ex.getMessage(),
+                       "Memory Limit", JOptionPane.ERROR_MESSAGE);
            }
        }
    }
@@ -156,23 +278,409 @@ public class Controller {
    }
 
    /**
-    * Listener for displaying energy data for a specific month.
+    * Listener for displaying energy data for a specific month. Totals estimated from the
+    * sample of the model are shown at once and replaced by the exact totals when the scan
+    * of a snapshot, taken on the event thread and scanned off it, completes. A model
+    * without a sample yet, such as one on year partitions, draws it on a snapshot of its
+    * own off the event thread, for the estimates of later requests.
     */
    private class EnergyByMonthListener implements ActionListener {
+       private final String[] columns = {"State", "Total [MWh]", "\u00B1 95% [MWh]"};
+
+       /**
+        * Number of the latest request, so that a scan finishing after a newer request does not show its totals.
+        */
+       private int request;
+
        @Override
        public void actionPerformed(ActionEvent e) {
+           int month;
            try {
-               int month = Integer.parseInt(view.getMonthInputField().getText());
-               var energyByState = model.getEnergyByStateForMonth(month);
-               StringBuilder message = new StringBuilder("Energy for month ").append(month).append(":\n");
-               energyByState.forEach((state, total) -> 
-                   message.append(state).append(": ").append(total).append(" MWh\n"));
+               month = Integer.parseInt(view.getMonthInputField().getText().trim());
+           } catch (NumberFormatException ex) {
+               month = 0;
+           }
+           if (month < 1 || month > 12) {
+               JOptionPane.showMessageDialog(view, "Invalid month input. Please enter a number between 1 and 12.",
+                       "Input Error", JOptionPane.ERROR_MESSAGE);
+               return;
+           }
+           int current = ++request;
+           int selected = month;
+           String title = "Energy for month " + month;
+           List<Object[]> estimates = new ArrayList<>();
+           if (model.isSampleDrawn()) {
+               new TreeMap<>(model.estimateEnergyByStateForMonth(month)).forEach((state, estimate) ->
+                   estimates.add(new Object[]{state, Math.round(estimate.value()), Math.round(estimate.margin())}));
+               view.showResults(title, String.format(
+                       "Estimated from a sample of %d of %d rows, computing exact totals...",
+                       model.getSampleSize(), model.getEnergyDataList().size()), columns, estimates);
+           } else {
+               view.showResults(title, "Sampling the data, computing exact totals...", columns, estimates);
+               drawSampleInBackground();
+           }
+           Model snapshot = model.snapshot();
+           new SwingWorker<Map<String, Double>, Void>() {
+               @Override
+               protected Map<String, Double> doInBackground() {
+                   try (snapshot) {
+                       return snapshot.getEnergyByStateForMonth(selected);
+                   }
+               }
+
+               @Override
+               protected void done() {
+                   if (current != request) {
+                       return;
+                   }
+                   try {
+                       List<Object[]> totals = new ArrayList<>();
+                       new TreeMap<>(get()).forEach((state, total) ->
+                           totals.add(new Object[]{state, Math.round(total), 0L}));
+                       view.showResults(title, "Exact totals", columns, totals);
+                   } catch (InterruptedException | ExecutionException ex) {
+                       view.showResults(title, "Estimated totals, the exact ones failed: " + ex.getCause().getMessage(),
+                               columns, estimates);
+                   }
+               }
+           }.execute();
+       }
+
+       /**
+        * Draws the sample on a snapshot, which hands it to the model unless the model was written meanwhile.
+        */
+       private void drawSampleInBackground() {
+           Model sampling = model.snapshot();
+           new SwingWorker<Integer, Void>() {
+               @Override
+               protected Integer doInBackground() {
+                   try (sampling) {
+                       return sampling.getSampleSize();
+                   }
+               }
+           }.execute();
+       }
+   }
+
+   /**
+    * Listener for displaying energy data between two months.
+    */
+   private class EnergyInRangeListener implements ActionListener {
+       @Override
+       public void actionPerformed(ActionEvent e) {
+           YearMonth from = (YearMonth) view.getRangeFromComboBox().getSelectedItem();
+           YearMonth to = (YearMonth) view.getRangeToComboBox().getSelectedItem();
+           String state = view.getRangeStateField().getText().trim();
+           try {
+               StringBuilder message = new StringBuilder("Energy from ").append(from)
+                   .append(" to ").append(to).append(":\n");
+               if (state.isEmpty()) {
+                   model.getEnergyByStateInRange(from, to).forEach((s, total) ->
+                       message.append(s).append(": ").append(total).append(" MWh\n"));
+               } else {
+                   message.append(state).append(": ").append(model.getEnergyInRange(state, null, from, to))
+                       .append(" MWh\n");
+               }
                JOptionPane.showMessageDialog(view, message.toString(),
-                       "Energy by Month", JOptionPane.INFORMATION_MESSAGE);
+                       "Energy in Range", JOptionPane.INFORMATION_MESSAGE);
+           } catch (IllegalArgumentException ex) {
+               JOptionPane.showMessageDialog(view, "The first month of the range must not be after the last one.",
+                       "Input Error", JOptionPane.ERROR_MESSAGE);
+           }
+       }
+   }
+
+   /**
+    * Listener for computing the pivot and showing it as a heat map.
+    */
+   private class PivotListener implements ActionListener {
+       @Override
+       public void actionPerformed(ActionEvent e) {
+           PivotDimension rows = (PivotDimension) view.getPivotRowsComboBox().getSelectedItem();
+           PivotDimension columns = (PivotDimension) view.getPivotColumnsComboBox().getSelectedItem();
+           try {
+               PivotTable pivot = model.pivot(rows, columns);
+               pivotDimensions = new PivotDimension[]{rows, columns};
+               pivotNormalization = (PivotTable.Normalization) view.getNormalizationComboBox().getSelectedItem();
+               view.getHeatMapPanel().setPivot(pivot, pivotNormalization);
+           } catch (IllegalArgumentException ex) {
+               JOptionPane.showMessageDialog(view, "Rows and columns must be different dimensions.",
+                       "Input Error", JOptionPane.ERROR_MESSAGE);
+           }
+       }
+   }
+
+   /**
+    * Listener for plotting monthly energy production over time.
+    */
+   private class ChartListener implements ActionListener {
+       @Override
+       public void actionPerformed(ActionEvent e) {
+           chartDimension = (PivotDimension) view.getChartDimensionComboBox().getSelectedItem();
+           view.getChartPanel().setSeries(model.getTimeSeries(chartDimension));
+       }
+   }
+
+   /**
+    * Listener for forecasting every state, source and producer series. Series changed since
+    * the last forecast are fitted off the event thread, on a snapshot of the model taken on it.
+    */
+   private class ForecastListener implements ActionListener {
+       private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("MMM yyyy", Locale.ENGLISH);
+
+       @Override
+       public void actionPerformed(ActionEvent e) {
+           int months = (Integer) view.getForecastMonthsComboBox().getSelectedItem();
+           view.getForecastButton().setEnabled(false);
+           Model snapshot = model.snapshot();
+           new SwingWorker<List<Forecast>, Void>() {
+               @Override
+               protected List<Forecast> doInBackground() {
+                   try (snapshot) {
+                       return snapshot.forecast(months);
+                   }
+               }
+
+               @Override
+               protected void done() {
+                   view.getForecastButton().setEnabled(true);
+                   try {
+                       showForecasts(get(), months);
+                   } catch (InterruptedException | ExecutionException ex) {
+                       JOptionPane.showMessageDialog(view, "Forecast failed: " + ex.getCause().getMessage(),
+                               "Forecast Error", JOptionPane.ERROR_MESSAGE);
+                   }
+               }
+           }.execute();
+       }
+
+       /**
+        * Lists the series with one column per month after the last month of data of each
+        * series, so that every row reads as its next months.
+        */
+       private void showForecasts(List<Forecast> forecasts, int months) {
+           String[] columns = new String[5 + months];
+           columns[0] = "State";
+           columns[1] = "Source";
+           columns[2] = "Producer";
+           columns[3] = "From";
+           columns[4] = "RMSE [MWh]";
+           for (int month = 1; month <= months; month++) {
+               columns[4 + month] = "+" + month;
+           }
+           List<Object[]> rows = new ArrayList<>(forecasts.size());
+           for (Forecast forecast : forecasts) {
+               Object[] row = new Object[columns.length];
+               row[0] = forecast.state();
+               row[1] = forecast.source().getDisplayName();
+               row[2] = forecast.producer().getDisplayName();
+               row[3] = forecast.start().format(MONTH);
+               row[4] = Math.round(forecast.rmse());
+               for (int month = 0; month < months; month++) {
+                   row[5 + month] = Math.round(forecast.amounts()[month]);
+               }
+               rows.add(row);
+           }
+           view.setForecastRows(columns, rows);
+       }
+   }
+
+   /**
+    * Listener for comparing the data with an earlier version saved to a file, in the
+    * columnar format or as Arrow. The file is loaded and compared off the event thread,
+    * against a snapshot of the data taken on it, so edits made meanwhile are not compared.
+    */
+   private class CompareListener implements ActionListener {
+       private final String[] columns = {"Total", "Of", "Change [MWh]"};
+
+       @Override
+       public void actionPerformed(ActionEvent e) {
+           JFileChooser chooser = new JFileChooser();
+           if (chooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) {
+               return;
+           }
+           Path file = chooser.getSelectedFile().toPath();
+           view.getCompareButton().setEnabled(false);
+           Model current = model.snapshot();
+           new SwingWorker<DiffSummary, Void>() {
+               @Override
+               protected DiffSummary doInBackground() throws IOException {
+                   try (current; Model previous = new Model(new ColumnStore())) {
+                       String name = file.getFileName().toString();
+                       if (name.endsWith(".arrow") || name.endsWith(".arrows")) {
+                           previous.loadArrow(file);
+                       } else {
+                           previous.load(file);
+                       }
+                       return current.diff(previous, Runtime.getRuntime().maxMemory() / 4, new DiffVisitor() {});
+                   }
+               }
+
+               @Override
+               protected void done() {
+                   view.getCompareButton().setEnabled(true);
+                   try {
+                       showDiff(file, get());
+                   } catch (InterruptedException | ExecutionException ex) {
+                       JOptionPane.showMessageDialog(view, "Comparison failed: " + ex.getCause().getMessage(),
+                               "Compare Error", JOptionPane.ERROR_MESSAGE);
+                   }
+               }
+           }.execute();
+       }
+
+       /**
+        * Lists the changes of all totals, per state, per source and per year.
+        */
+       private void showDiff(Path file, DiffSummary diff) {
+           List<Object[]> rows = new ArrayList<>();
+           rows.add(new Object[]{"All", "", Math.round(diff.totalDelta())});
+           diff.stateDeltas().forEach((state, delta) -> rows.add(new Object[]{"State", state, Math.round(delta)}));
+           diff.sourceDeltas().forEach((source, delta) ->
+               rows.add(new Object[]{"Source", source.getDisplayName(), Math.round(delta)}));
+           diff.yearDeltas().forEach((year, delta) -> rows.add(new Object[]{"Year", year, Math.round(delta)}));
+           view.showResults("Changes since " + file.getFileName(), String.format(
+                   "%d rows inserted, %d removed, %d changed, %d unchanged", diff.inserted(), diff.removed(),
+                   diff.changed(), diff.unchanged()), columns, rows);
+       }
+   }
+
+   /**
+    * Listener for showing only the table rows matching the quick filter.
+    */
+   private class FilterListener implements ActionListener {
+       @Override
+       public void actionPerformed(ActionEvent e) {
+           try {
+               String state = view.getFilterStateField().getText().trim();
+               String year = view.getFilterYearField().getText().trim();
+               EnergyFilter filter = new EnergyFilter(state.isEmpty() ? null : state,
+                       (EnergySource) view.getFilterSourceComboBox().getSelectedItem(), null,
+                       year.isEmpty() ? null : Integer.valueOf(year));
+               tableFilter = filter.isEmpty() ? null : filter;
+               view.getRowSorter().setFilter(tableFilter == null ? null : model.filterPositions(tableFilter));
+           } catch (NumberFormatException ex) {
+               JOptionPane.showMessageDialog(view, "Invalid year input. Please enter a number between 2001 and 2022.",
+                       "Input Error", JOptionPane.ERROR_MESSAGE);
+           }
+       }
+   }
+
+   /**
+    * Listener for showing all table rows again.
+    */
+   private class ClearFilterListener implements ActionListener {
+       @Override
+       public void actionPerformed(ActionEvent e) {
+           tableFilter = null;
+           view.getFilterStateField().setText("");
+           view.getFilterSourceComboBox().setSelectedIndex(0);
+           view.getFilterYearField().setText("");
+           view.getRowSorter().setFilter(null);
+       }
+   }
+
+   /**
+    * Listener for exporting the data or a query result to a CSV or JSON file.
+    * Queries take their parameters from the view, e.g. the month field or the range selector.
+    */
+   private class ExportListener implements ActionListener {
+       private final String[] choices = {
+           "All data", "Energy sources", "Producers by energy", "Minimum energy per state",
+           "Maximum energy per state", "Most used source", "Energy by month", "Energy in range",
+           "Pivot", "Chart series"
+       };
+
+       @Override
+       public void actionPerformed(ActionEvent e) {
+           Object choice = JOptionPane.showInputDialog(view, "What to export:", "Export",
+                   JOptionPane.QUESTION_MESSAGE, null, choices, choices[0]);
+           if (choice == null) {
+               return;
+           }
+           JFileChooser chooser = new JFileChooser();
+           chooser.addChoosableFileFilter(new FileNameExtensionFilter("CSV files", ExportFormat.CSV.getExtension()));
+           chooser.addChoosableFileFilter(new FileNameExtensionFilter("JSON files", ExportFormat.JSON.getExtension()));
+           if (chooser.showSaveDialog(view) != JFileChooser.APPROVE_OPTION) {
+               return;
+           }
+           Path file = chooser.getSelectedFile().toPath();
+           ExportFormat format = ExportFormat.forFile(file);
+           try {
+               if (choice.equals(choices[0])) {
+                   exportRowsInBackground(file, format);
+                   return;
+               }
+               exportQuery((String) choice, file, format);
+               JOptionPane.showMessageDialog(view, "Exported to " + file,
+                       "Export", JOptionPane.INFORMATION_MESSAGE);
            } catch (NumberFormatException ex) {
                JOptionPane.showMessageDialog(view, "Invalid month input. Please enter a number between 1 and 12.",
                        "Input Error", JOptionPane.ERROR_MESSAGE);
+           } catch (IllegalArgumentException ex) {
+               JOptionPane.showMessageDialog(view, "Invalid query input: " + ex.getMessage(),
+                       "Input Error", JOptionPane.ERROR_MESSAGE);
+           } catch (IOException ex) {
+               JOptionPane.showMessageDialog(view, "Export failed: " + ex.getMessage(),
+                       "Export Error", JOptionPane.ERROR_MESSAGE);
+           }
+       }
+
+       private void exportQuery(String choice, Path file, ExportFormat format) throws IOException {
+           switch (choice) {
+               case "Energy sources" -> EnergyExporter.exportSources(model.getEnergySources(), file, format);
+               case "Producers by energy" ->
+                   EnergyExporter.exportProducerTotals(model.sortProducersByTotalEnergy(), file, format);
+               case "Minimum energy per state" ->
+                   EnergyExporter.exportStateTotals(model.calculateMinEnergy(), file, format);
+               case "Maximum energy per state" ->
+                   EnergyExporter.exportStateTotals(model.calculateMaxEnergy(), file, format);
+               case "Most used source" ->
+                   EnergyExporter.exportMostUsedSource(model.getMostUsedEnergySource(), file, format);
+               case "Energy by month" -> EnergyExporter.exportStateTotals(
+                   model.getEnergyByStateForMonth(Integer.parseInt(view.getMonthInputField().getText().trim())),
+                   file, format);
+               case "Energy in range" -> EnergyExporter.exportStateTotals(model.getEnergyByStateInRange(
+                   (YearMonth) view.getRangeFromComboBox().getSelectedItem(),
+                   (YearMonth) view.getRangeToComboBox().getSelectedItem()), file, format);
+               case "Pivot" -> EnergyExporter.exportPivot(
+                   model.pivot((PivotDimension) view.getPivotRowsComboBox().getSelectedItem(),
+                       (PivotDimension) view.getPivotColumnsComboBox().getSelectedItem()),
+                   (PivotTable.Normalization) view.getNormalizationComboBox().getSelectedItem(), file, format);
+               default -> EnergyExporter.exportTimeSeries(
+                   model.getTimeSeries((PivotDimension) view.getChartDimensionComboBox().getSelectedItem()),
+                   file, format);
            }
        }
+
+       /**
+        * Streams all rows to the file off the event thread, which can take a while for large data.
+        * The rows come from a snapshot taken on the event thread, so edits made meanwhile are
+        * not half exported.
+        */
+       private void exportRowsInBackground(Path file, ExportFormat format) {
+           view.getExportButton().setEnabled(false);
+           Model snapshot = model.snapshot();
+           new SwingWorker<Long, Void>() {
+               @Override
+               protected Long doInBackground() throws IOException {
+                   try (snapshot) {
+                       return EnergyExporter.exportRows(snapshot, file, format);
+                   }
+               }
+
+               @Override
+               protected void done() {
+                   view.getExportButton().setEnabled(true);
+                   try {
+                       JOptionPane.showMessageDialog(view, "Exported " + get() + " rows to " + file,
+                               "Export", JOptionPane.INFORMATION_MESSAGE);
+                   } catch (InterruptedException | ExecutionException ex) {
+                       JOptionPane.showMessageDialog(view, "Export failed: " + ex.getCause().getMessage(),
+                               "Export Error", JOptionPane.ERROR_MESSAGE);
+                   }
+               }
+           }.execute();
+       }
    }
-}
\ No newline at end of file
+}
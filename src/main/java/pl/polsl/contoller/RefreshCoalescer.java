@@ -0,0 +1,130 @@
+package com.mycompany.energiawusawlatach2001.controller;
+
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.ModelEvent;
+import com.mycompany.energiawusawlatach2001.model.ModelListener;
+
+import javax.swing.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Collects the row changes of a {@link Model}, made on any thread, and hands them to the
+ * event dispatch thread at most a given number of times per second. Between two refreshes
+ * all appends merge into one range and all amount replacements into one span of rows;
+ * a delete or reload turns everything pending into a single {@link ModelEvent.Type#RELOADED}
+ * event. A feed of thousands of rows per second therefore costs the view a few table
+ * events per second instead of one per row. The first change after a quiet period is shown
+ * one refresh interval later at the latest.
+ * <p>
+ * The refresh reads the rows from the model on the event dispatch thread, and the model
+ * is not safe for concurrent use, so a background feed parses its rows on its own thread
+ * and hands whole batches to {@link Model#addAll} with {@code SwingUtilities.invokeLater}.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class RefreshCoalescer implements ModelListener {
+
+    private final Model model;
+    private final Consumer<List<ModelEvent>> refresh;
+    private final Timer timer;
+
+    /**
+     * Pending changes since the last refresh, guarded by {@code this}; -1 where none are pending.
+     */
+    private int appendedFrom = -1;
+    private int appendedTo;
+    private int updatedFrom = -1;
+    private int updatedTo;
+    private boolean reloaded;
+    private boolean scheduled;
+
+    /**
+     * Creates a coalescer listening to a model.
+     *
+     * @param model the model whose changes are collected
+     * @param maxRefreshesPerSecond the most refreshes per second
+     * @param refresh receives the merged changes on the event dispatch thread, updated rows
+     *                before appended ones
+     */
+    RefreshCoalescer(Model model, int maxRefreshesPerSecond, Consumer<List<ModelEvent>> refresh) {
+        if (maxRefreshesPerSecond < 1 || maxRefreshesPerSecond > 1000) {
+            throw new IllegalArgumentException("Refreshes per second must be between 1 and 1000");
+        }
+        this.model = model;
+        this.refresh = refresh;
+        timer = new Timer(1000 / maxRefreshesPerSecond, e -> flush());
+        timer.setRepeats(false);
+        model.addModelListener(this);
+    }
+
+    @Override
+    public synchronized void modelChanged(ModelEvent event) {
+        switch (event.type()) {
+            case APPENDED -> {
+                if (!reloaded) {
+                    if (appendedFrom < 0) {
+                        appendedFrom = event.from();
+                    }
+                    appendedTo = event.to();
+                }
+            }
+            case UPDATED -> {
+                // rows appended since the last refresh are read in full anyway
+                if (!reloaded && (appendedFrom < 0 || event.from() < appendedFrom)) {
+                    updatedFrom = updatedFrom < 0 ? event.from() : Math.min(updatedFrom, event.from());
+                    updatedTo = Math.max(updatedTo, event.to());
+                }
+            }
+            default -> {
+                reloaded = true;
+                appendedFrom = -1;
+                updatedFrom = -1;
+            }
+        }
+        if (!scheduled) {
+            scheduled = true;
+            timer.restart();
+        }
+    }
+
+    /**
+     * Stops listening to the model and drops the pending changes.
+     */
+    synchronized void stop() {
+        model.removeModelListener(this);
+        timer.stop();
+        scheduled = false;
+        reloaded = false;
+        appendedFrom = -1;
+        updatedFrom = -1;
+    }
+
+    /**
+     * Hands the pending changes to the refresh on the event dispatch thread.
+     */
+    private void flush() {
+        List<ModelEvent> changes = new ArrayList<>(2);
+        synchronized (this) {
+            if (reloaded) {
+                changes.add(new ModelEvent(ModelEvent.Type.RELOADED, 0, model.getEnergyDataList().size()));
+            }
+            if (updatedFrom >= 0) {
+                changes.add(new ModelEvent(ModelEvent.Type.UPDATED, updatedFrom, updatedTo));
+            }
+            if (appendedFrom >= 0) {
+                changes.add(new ModelEvent(ModelEvent.Type.APPENDED, appendedFrom, appendedTo));
+            }
+            scheduled = false;
+            reloaded = false;
+            appendedFrom = -1;
+            updatedFrom = -1;
+            updatedTo = 0;
+        }
+        if (!changes.isEmpty()) {
+            refresh.accept(changes);
+        }
+    }
+}
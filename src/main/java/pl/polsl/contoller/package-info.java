@@ -1,6 +1,7 @@
 /**
  * The controller package contains classes that handle user interactions and coordinate between the Model and View.
- * It includes the Controller class, which sets up action listeners and handles events.
+ * It includes the Controller class, which sets up action listeners and handles events,
+ * and the RefreshCoalescer, which merges model changes into a few view refreshes per second.
  * This package follows the MVC pattern and acts as the intermediary between the data and presentation layers.
  * Exception handling and enum type conversions are performed in this package.
  * 
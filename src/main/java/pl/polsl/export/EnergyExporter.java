@@ -0,0 +1,264 @@
+package com.mycompany.energiawusawlatach2001.export;
+
+import com.mycompany.energiawusawlatach2001.model.ColumnBatch;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.EnergyStore;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.PivotTable;
+import com.mycompany.energiawusawlatach2001.model.StateDictionary;
+import com.mycompany.energiawusawlatach2001.model.TimeSeries;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Exports raw energy data and the result of every {@link Model} query to CSV or JSON.
+ * Raw rows are streamed segment by segment from the store into the file without
+ * materializing {@code EnergyData} objects, with states and enum names encoded once,
+ * so a large export is bounded by the disk rather than by the heap.
+ * Enums are written by their constant names, e.g. {@code NATURAL_GAS}.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class EnergyExporter {
+
+    private EnergyExporter() {
+    }
+
+    /**
+     * Exports all energy data entries in list order, with the columns
+     * year, month, state, source, producer, amount, plant and county. State-level entries
+     * have plant 0 and an empty county.
+     *
+     * @param model the model to export
+     * @param file the target file, created or truncated
+     * @param format the file format
+     * @return the number of rows written
+     * @throws IOException if the file cannot be written
+     */
+    public static long exportRows(Model model, Path file, ExportFormat format) throws IOException {
+        EnergyStore store = model.getStore();
+        StateDictionary dictionary = store.dictionary();
+        StateDictionary countyDictionary = store.counties();
+        try (ResultWriter out = ResultWriter.open(file, format)) {
+            out.header("year", "month", "state", "source", "producer", "amount", "plant", "county");
+            byte[][] sources = encodeNames(out, EnergySource.values());
+            byte[][] producers = encodeNames(out, EnergyProducer.values());
+            byte[][][] states = {new byte[dictionary.size()][]};
+            byte[][][] counties = {new byte[countyDictionary.size() + 1][]};
+            try {
+                store.scan(ColumnBatch.ALL_COLUMNS, batch -> {
+                    int[] years = batch.years();
+                    int[] months = batch.months();
+                    int[] stateIds = batch.states();
+                    int[] sourceIds = batch.sources();
+                    int[] producerIds = batch.producers();
+                    double[] amounts = batch.amounts();
+                    int[] plants = batch.plants();
+                    int[] countyIds = batch.counties();
+                    try {
+                        for (int i = 0; i < batch.size(); i++) {
+                            int state = stateIds[i];
+                            if (state >= states[0].length) {
+                                // a state added while the export runs
+                                states[0] = Arrays.copyOf(states[0], Math.max(state + 1, states[0].length * 2));
+                            }
+                            if (states[0][state] == null) {
+                                states[0][state] = out.encode(dictionary.state(state));
+                            }
+                            int county = countyIds[i];
+                            if (county >= counties[0].length) {
+                                counties[0] = Arrays.copyOf(counties[0], Math.max(county + 1, counties[0].length * 2));
+                            }
+                            if (county > 0 && counties[0][county] == null) {
+                                counties[0][county] = out.encode(countyDictionary.state(county - 1));
+                            }
+                            out.beginRow();
+                            out.integer(years[i]);
+                            out.integer(months[i]);
+                            out.text(states[0][state]);
+                            out.text(sources[sourceIds[i]]);
+                            out.text(producers[producerIds[i]]);
+                            out.decimal(amounts[i]);
+                            out.integer(plants[i]);
+                            if (county == 0) {
+                                out.empty();
+                            } else {
+                                out.text(counties[0][county]);
+                            }
+                            out.endRow();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return out.rows();
+        }
+    }
+
+    /**
+     * Exports the result of {@link Model#getEnergySources()} with the column source.
+     *
+     * @param sources the energy sources
+     * @param file the target file, created or truncated
+     * @param format the file format
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportSources(Set<EnergySource> sources, Path file, ExportFormat format) throws IOException {
+        try (ResultWriter out = ResultWriter.open(file, format)) {
+            out.header("source");
+            for (EnergySource source : sources) {
+                out.beginRow();
+                out.text(source.name());
+                out.endRow();
+            }
+        }
+    }
+
+    /**
+     * Exports the result of {@link Model#getMostUsedEnergySource()} with the column source,
+     * as one row, or none if there is no data.
+     *
+     * @param source the most used energy source, or {@code null}
+     * @param file the target file, created or truncated
+     * @param format the file format
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportMostUsedSource(EnergySource source, Path file, ExportFormat format) throws IOException {
+        exportSources(source == null ? Set.of() : Set.of(source), file, format);
+    }
+
+    /**
+     * Exports the result of {@link Model#sortProducersByTotalEnergy()} in its order,
+     * with the columns producer and amount.
+     *
+     * @param totals the producers and their total energy
+     * @param file the target file, created or truncated
+     * @param format the file format
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportProducerTotals(List<Map.Entry<EnergyProducer, Double>> totals, Path file,
+            ExportFormat format) throws IOException {
+        try (ResultWriter out = ResultWriter.open(file, format)) {
+            out.header("producer", "amount");
+            for (Map.Entry<EnergyProducer, Double> entry : totals) {
+                out.beginRow();
+                out.text(entry.getKey().name());
+                out.decimal(entry.getValue());
+                out.endRow();
+            }
+        }
+    }
+
+    /**
+     * Exports a per-state result, such as {@link Model#calculateMinEnergy()},
+     * {@link Model#calculateMaxEnergy()}, {@link Model#getEnergyByStateForMonth(int)} or
+     * {@link Model#getEnergyByStateInRange(YearMonth, YearMonth)}, sorted by state,
+     * with the columns state and amount.
+     *
+     * @param totals the states and their values
+     * @param file the target file, created or truncated
+     * @param format the file format
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportStateTotals(Map<String, Double> totals, Path file, ExportFormat format)
+            throws IOException {
+        String[] states = totals.keySet().toArray(new String[0]);
+        Arrays.sort(states);
+        try (ResultWriter out = ResultWriter.open(file, format)) {
+            out.header("state", "amount");
+            for (String state : states) {
+                out.beginRow();
+                out.text(state);
+                out.decimal(totals.get(state));
+                out.endRow();
+            }
+        }
+    }
+
+    /**
+     * Exports the result of {@link Model#pivot} as a matrix: one row per pivot row with
+     * its label, a column per pivot column and a total, then a row of column totals.
+     *
+     * @param pivot the pivot table
+     * @param normalization how cells are normalized, totals are always in MWh
+     * @param file the target file, created or truncated
+     * @param format the file format
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportPivot(PivotTable pivot, PivotTable.Normalization normalization, Path file,
+            ExportFormat format) throws IOException {
+        String[] columns = pivot.getColumnLabels();
+        String[] header = new String[columns.length + 2];
+        header[0] = pivot.getRowDimension().getDisplayName();
+        System.arraycopy(columns, 0, header, 1, columns.length);
+        header[header.length - 1] = "Total";
+        try (ResultWriter out = ResultWriter.open(file, format)) {
+            out.header(header);
+            for (int row = 0; row < pivot.getRowLabels().length; row++) {
+                out.beginRow();
+                out.text(pivot.getRowLabels()[row]);
+                for (int column = 0; column < columns.length; column++) {
+                    out.decimal(pivot.share(row, column, normalization));
+                }
+                out.decimal(pivot.getRowTotals()[row]);
+                out.endRow();
+            }
+            out.beginRow();
+            out.text("Total");
+            for (double total : pivot.getColumnTotals()) {
+                out.decimal(total);
+            }
+            out.decimal(pivot.getTotal());
+            out.endRow();
+        }
+    }
+
+    /**
+     * Exports the result of {@link Model#getTimeSeries} with one row per month,
+     * labeled like {@code 2001-01}, and one column per series.
+     *
+     * @param series the monthly series
+     * @param file the target file, created or truncated
+     * @param format the file format
+     * @throws IOException if the file cannot be written
+     */
+    public static void exportTimeSeries(TimeSeries series, Path file, ExportFormat format) throws IOException {
+        String[] labels = series.getLabels();
+        String[] header = new String[labels.length + 1];
+        header[0] = "month";
+        System.arraycopy(labels, 0, header, 1, labels.length);
+        double[][] values = series.getValues();
+        int points = values.length == 0 ? 0 : values[0].length;
+        try (ResultWriter out = ResultWriter.open(file, format)) {
+            out.header(header);
+            for (int point = 0; point < points; point++) {
+                out.beginRow();
+                out.text(series.getStart().plusMonths(point).toString());
+                for (double[] line : values) {
+                    out.decimal(line[point]);
+                }
+                out.endRow();
+            }
+        }
+    }
+
+    private static byte[][] encodeNames(ResultWriter out, Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (Enum<?> value : values) {
+            names[value.ordinal()] = out.encode(value.name());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,46 @@
+package com.mycompany.energiawusawlatach2001.export;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * File format of an export.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public enum ExportFormat {
+
+    /**
+     * Comma-separated values with a header line, quoted as in RFC 4180 where needed.
+     */
+    CSV("csv"),
+
+    /**
+     * A JSON array with one object per row, keyed by the column names.
+     */
+    JSON("json");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return the usual file name extension, without the dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Picks the format from a file name extension, CSV unless it ends with {@code .json}.
+     *
+     * @param file the target file
+     * @return the format of the file
+     */
+    public static ExportFormat forFile(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith("." + JSON.extension) ? JSON : CSV;
+    }
+}
@@ -0,0 +1,312 @@
+package com.mycompany.energiawusawlatach2001.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes rows of fields as CSV or JSON straight into a reusable direct buffer that is
+ * drained to a {@link FileChannel} whenever it fills up. Numbers are formatted into the
+ * buffer digit by digit and strings that repeat, such as states and enum names, can be
+ * encoded once with {@link #encode(String)}, so writing a row allocates nothing.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class ResultWriter implements Closeable {
+
+    static final int BUFFER_BYTES = 1 << 20;
+
+    /**
+     * Largest number of decimal places written without falling back to {@link Double#toString(double)}.
+     */
+    private static final int MAX_DECIMALS = 6;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+    /**
+     * Longs below this magnitude convert to doubles exactly.
+     */
+    private static final long MAX_EXACT = 1L << 53;
+
+    /**
+     * Room for the longest number text, e.g. from {@link Double#toString(double)}.
+     */
+    private static final int MAX_NUMBER_BYTES = 32;
+
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+    private final FileChannel channel;
+    private final ExportFormat format;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final byte[] digits = new byte[19];
+    private byte[][] keys = new byte[0][];
+    private int field;
+    private long rows;
+
+    private ResultWriter(FileChannel channel, ExportFormat format) {
+        this.channel = channel;
+        this.format = format;
+    }
+
+    /**
+     * Creates or truncates a file and starts writing to it.
+     */
+    static ResultWriter open(Path file, ExportFormat format) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        ResultWriter writer = new ResultWriter(channel, format);
+        if (format == ExportFormat.JSON) {
+            writer.put((byte) '[');
+        }
+        return writer;
+    }
+
+    /**
+     * Writes the CSV header line, or remembers the JSON keys of every field.
+     */
+    void header(String... columns) throws IOException {
+        if (format == ExportFormat.CSV) {
+            beginRow();
+            for (String column : columns) {
+                text(encode(column));
+            }
+            put((byte) '\n');
+            field = 0;
+            return;
+        }
+        keys = new byte[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            byte[] name = encode(columns[i]);
+            keys[i] = new byte[name.length + 1];
+            System.arraycopy(name, 0, keys[i], 0, name.length);
+            keys[i][name.length] = ':';
+        }
+    }
+
+    void beginRow() throws IOException {
+        field = 0;
+        if (format == ExportFormat.JSON) {
+            put(rows == 0 ? (byte) '\n' : (byte) ',');
+            if (rows > 0) {
+                put((byte) '\n');
+            }
+            put((byte) '{');
+        }
+    }
+
+    void endRow() throws IOException {
+        put(format == ExportFormat.JSON ? (byte) '}' : (byte) '\n');
+        rows++;
+    }
+
+    /**
+     * @return the number of rows written, not counting the CSV header
+     */
+    long rows() {
+        return rows;
+    }
+
+    /**
+     * Encodes a string as a complete field value in UTF-8: quoted and escaped in JSON,
+     * quoted in CSV only if it contains a separator, quote or line break.
+     */
+    byte[] encode(String value) {
+        if (format == ExportFormat.JSON) {
+            StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> json.append("\\\"");
+                    case '\\' -> json.append("\\\\");
+                    case '\n' -> json.append("\\n");
+                    case '\r' -> json.append("\\r");
+                    case '\t' -> json.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            json.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            json.append(c);
+                        }
+                    }
+                }
+            }
+            return json.append('"').toString().getBytes(StandardCharsets.UTF_8);
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+        return ('"' + value.replace("\"", "\"\"") + '"').getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a field encoded by {@link #encode(String)}.
+     */
+    void text(byte[] encoded) throws IOException {
+        separator();
+        if (encoded.length > buffer.capacity()) {
+            flush();
+            ByteBuffer wrapped = ByteBuffer.wrap(encoded);
+            while (wrapped.hasRemaining()) {
+                channel.write(wrapped);
+            }
+            return;
+        }
+        ensure(encoded.length);
+        buffer.put(encoded);
+    }
+
+    /**
+     * Writes a string field, encoding it first. Prefer {@link #text(byte[])} for repeated strings.
+     */
+    void text(String value) throws IOException {
+        if (value == null) {
+            empty();
+        } else {
+            text(encode(value));
+        }
+    }
+
+    /**
+     * Writes an empty CSV field or a JSON {@code null}.
+     */
+    void empty() throws IOException {
+        separator();
+        if (format == ExportFormat.JSON) {
+            ensure(NULL.length);
+            buffer.put(NULL);
+        }
+    }
+
+    void integer(long value) throws IOException {
+        separator();
+        ensure(MAX_NUMBER_BYTES);
+        putLong(value);
+    }
+
+    /**
+     * Writes a double as the shortest fixed-point text with up to six decimals that parses
+     * back to exactly the same value. Other values, which energy amounts practically never
+     * are, fall back to {@link Double#toString(double)}. JSON has no NaN or infinity, so
+     * those are written as {@code null} there.
+     */
+    void decimal(double value) throws IOException {
+        separator();
+        ensure(MAX_NUMBER_BYTES);
+        if (!Double.isFinite(value)) {
+            if (format == ExportFormat.JSON) {
+                buffer.put(NULL);
+            } else {
+                putAscii(Double.toString(value));
+            }
+            return;
+        }
+        if (value == (long) value && Math.abs(value) < MAX_EXACT) {
+            putLong((long) value);
+            return;
+        }
+        for (int decimals = 1; decimals <= MAX_DECIMALS; decimals++) {
+            long scaled = Math.round(value * POWERS_OF_TEN[decimals]);
+            // an exact integer over a power of ten divides with correct rounding, like parsing does
+            if (Math.abs(scaled) < MAX_EXACT && (double) scaled / POWERS_OF_TEN[decimals] == value) {
+                putFixed(scaled, decimals);
+                return;
+            }
+        }
+        putAscii(Double.toString(value));
+    }
+
+    private void separator() throws IOException {
+        if (format == ExportFormat.CSV) {
+            if (field > 0) {
+                put((byte) ',');
+            }
+        } else {
+            if (field > 0) {
+                put((byte) ',');
+            }
+            byte[] key = keys[field];
+            ensure(key.length);
+            buffer.put(key);
+        }
+        field++;
+    }
+
+    private void putFixed(long scaled, int decimals) {
+        if (scaled < 0) {
+            buffer.put((byte) '-');
+            scaled = -scaled;
+        }
+        long whole = scaled / POWERS_OF_TEN[decimals];
+        long fraction = scaled % POWERS_OF_TEN[decimals];
+        putLong(whole);
+        buffer.put((byte) '.');
+        for (long power = POWERS_OF_TEN[decimals - 1]; power > 0; power /= 10) {
+            buffer.put((byte) ('0' + fraction / power % 10));
+        }
+    }
+
+    private void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            putAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (length > 0) {
+            buffer.put(digits[--length]);
+        }
+    }
+
+    private void putAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private void put(byte value) throws IOException {
+        ensure(1);
+        buffer.put(value);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Closes the JSON array, drains the buffer and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (format == ExportFormat.JSON) {
+                put((byte) '\n');
+                put((byte) ']');
+                put((byte) '\n');
+            }
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * The export package writes raw energy data and query results to files.
+ * It includes:
+ * - EnergyExporter with one method per kind of result, raw rows streamed straight from storage
+ * - ExportFormat, CSV or JSON
+ * - ResultWriter, a buffered FileChannel writer with a reusable buffer and allocation-free number formatting
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+package com.mycompany.energiawusawlatach2001.export;
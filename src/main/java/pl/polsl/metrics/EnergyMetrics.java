@@ -0,0 +1,356 @@
+package com.mycompany.energiawusawlatach2001.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * In-process metrics registry of the energy data store.
+ * Counters are striped ({@link LongAdder}) and latencies go to lock-free
+ * {@link LatencyHistogram}s, so recording on the hot path never blocks.
+ * Store size and memory footprint are read lazily through suppliers when a JMX client asks for them.
+ * <p>
+ * The ingestion rate is kept in one bucket per second of a ring covering the last
+ * {@link #RATE_WINDOW_SECONDS} seconds. Each bucket packs the second it counts for and
+ * its row count into one {@code long}, so a write moving a bucket on to a new second
+ * resets it with the same compare-and-set that adds its rows, and reading the rate has
+ * no side effects, whichever clients poll it and how often.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class EnergyMetrics implements EnergyMetricsMBean {
+
+    /**
+     * JMX domain under which all beans are registered.
+     */
+    public static final String DOMAIN = "com.mycompany.energiawusawlatach2001";
+
+    /**
+     * Number of complete seconds the ingestion rate is averaged over.
+     */
+    public static final int RATE_WINDOW_SECONDS = 10;
+
+    private static final int COUNT_BITS = 40;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final LongAdder rowsIngested = new LongAdder();
+    private final LongAdder rowsRejected = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheEvictions = new LongAdder();
+    private final LongAdder memoryEvictions = new LongAdder();
+    private final LongAdder rowsRefused = new LongAdder();
+    private final LongAdder groupsSpilled = new LongAdder();
+    private final Map<String, LatencyHistogram> queryLatencies = new ConcurrentHashMap<>();
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private final LongSupplier storeRows;
+    private final Supplier<MemoryFootprint> footprint;
+    private final LongSupplier memoryLimit;
+
+    private final LongSupplier nanoTime;
+    private final long startNanos;
+
+    /**
+     * Rows ingested per second, the second since start-up in the high bits and the rows in
+     * the low {@link #COUNT_BITS} bits, one more bucket than the window so the running second
+     * never overwrites the oldest one read.
+     */
+    private final AtomicLongArray ingestedPerSecond = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+
+    /**
+     * Creates a registry reading the store size and memory use from the given suppliers.
+     *
+     * @param storeRows supplier of the current number of rows
+     * @param footprint supplier of the current bytes per structure
+     * @param memoryLimit supplier of the byte limit of the footprint, {@link Long#MAX_VALUE} for none
+     * @param queries names of the queries whose histograms are created up front,
+     *                so they are visible over JMX before the first call
+     */
+    public EnergyMetrics(LongSupplier storeRows, Supplier<MemoryFootprint> footprint, LongSupplier memoryLimit,
+            String... queries) {
+        this(System::nanoTime, storeRows, footprint, memoryLimit, queries);
+    }
+
+    /**
+     * Creates a registry measuring the ingestion rate with the given clock.
+     */
+    EnergyMetrics(LongSupplier nanoTime, LongSupplier storeRows, Supplier<MemoryFootprint> footprint,
+            LongSupplier memoryLimit, String... queries) {
+        this.nanoTime = nanoTime;
+        this.startNanos = nanoTime.getAsLong();
+        this.storeRows = storeRows;
+        this.footprint = footprint;
+        this.memoryLimit = memoryLimit;
+        for (String query : queries) {
+            queryLatencies.put(query, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records rows accepted by the store.
+     *
+     * @param rows the number of accepted rows
+     */
+    public void recordIngested(long rows) {
+        rowsIngested.add(rows);
+        long second = second();
+        int slot = (int) (second % ingestedPerSecond.length());
+        long current;
+        long updated;
+        do {
+            current = ingestedPerSecond.get(slot);
+            updated = current >>> COUNT_BITS == second ? current + rows : second << COUNT_BITS | rows;
+        } while (!ingestedPerSecond.compareAndSet(slot, current, updated));
+    }
+
+    /**
+     * @return the number of whole seconds since this registry was created
+     */
+    private long second() {
+        return (nanoTime.getAsLong() - startNanos) / 1_000_000_000L;
+    }
+
+    /**
+     * Records a row rejected by validation.
+     */
+    public void recordRejected() {
+        rowsRejected.increment();
+    }
+
+    /**
+     * Records rows rejected by bulk validation.
+     *
+     * @param rows the number of rejected rows
+     */
+    public void recordRejected(long rows) {
+        rowsRejected.add(rows);
+    }
+
+    /**
+     * Records a cache lookup.
+     *
+     * @param hit {@code true} if the lookup was served from memory
+     */
+    public void recordCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    /**
+     * Records an entry evicted from a cache to stay within its memory budget.
+     */
+    public void recordCacheEviction() {
+        cacheEvictions.increment();
+    }
+
+    /**
+     * Records rebuildable structures dropped because the memory limit was reached.
+     */
+    public void recordMemoryEviction() {
+        memoryEvictions.increment();
+    }
+
+    /**
+     * Records rows refused because the memory limit was reached.
+     *
+     * @param rows the number of refused rows
+     */
+    public void recordRefused(long rows) {
+        rowsRefused.add(rows);
+    }
+
+    /**
+     * Records partial groups a group-by wrote to disk because they did not fit its memory budget.
+     *
+     * @param groups the number of spilled groups
+     */
+    public void recordGroupsSpilled(long groups) {
+        groupsSpilled.add(groups);
+    }
+
+    /**
+     * Records the latency of a query.
+     *
+     * @param query the query name, one histogram is kept per name
+     * @param nanos the measured duration in nanoseconds
+     */
+    public void recordQuery(String query, long nanos) {
+        queryLatency(query).record(nanos);
+    }
+
+    /**
+     * Returns the latency histogram of a query, creating it on first use.
+     *
+     * @param query the query name
+     * @return the histogram of the query
+     */
+    public LatencyHistogram queryLatency(String query) {
+        LatencyHistogram histogram = queryLatencies.get(query);
+        return histogram != null ? histogram : queryLatencies.computeIfAbsent(query, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers this registry and every query histogram in the platform MBean server.
+     * Histograms created after this call are registered on the next call.
+     *
+     * @throws JMException if a bean cannot be registered
+     */
+    public synchronized void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        register(server, new ObjectName(DOMAIN + ":type=EnergyMetrics"), this);
+        for (Map.Entry<String, LatencyHistogram> entry : queryLatencies.entrySet()) {
+            register(server, new ObjectName(DOMAIN + ":type=QueryLatency,name=" + ObjectName.quote(entry.getKey())),
+                    entry.getValue());
+        }
+    }
+
+    /**
+     * Removes every bean registered by {@link #registerMBeans()}.
+     *
+     * @throws JMException if a bean cannot be unregistered
+     */
+    public synchronized void unregisterMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        registeredNames.clear();
+    }
+
+    private void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+        if (!server.isRegistered(name)) {
+            server.registerMBean(bean, name);
+            registeredNames.add(name);
+        }
+    }
+
+    @Override
+    public long getRowsIngested() {
+        return rowsIngested.sum();
+    }
+
+    /**
+     * Averages the rows of the last {@link #RATE_WINDOW_SECONDS} complete seconds, or of all
+     * complete seconds since start-up if fewer have passed; the running second is left out.
+     */
+    @Override
+    public double getIngestionRowsPerSecond() {
+        long now = second();
+        long from = Math.max(0, now - RATE_WINDOW_SECONDS);
+        if (from == now) {
+            return 0.0;
+        }
+        long rows = 0;
+        for (int slot = 0; slot < ingestedPerSecond.length(); slot++) {
+            long bucket = ingestedPerSecond.get(slot);
+            long second = bucket >>> COUNT_BITS;
+            if (second >= from && second < now) {
+                rows += bucket & COUNT_MASK;
+            }
+        }
+        return (double) rows / (now - from);
+    }
+
+    @Override
+    public long getRowsRejected() {
+        return rowsRejected.sum();
+    }
+
+    @Override
+    public long getStoreRows() {
+        return storeRows.getAsLong();
+    }
+
+    @Override
+    public long getStoreBytes() {
+        return footprint.get().storeBytes();
+    }
+
+    @Override
+    public long getRowBytes() {
+        return footprint.get().rowBytes();
+    }
+
+    @Override
+    public long getDictionaryBytes() {
+        return footprint.get().dictionaryBytes();
+    }
+
+    @Override
+    public long getIndexBytes() {
+        return footprint.get().indexBytes();
+    }
+
+    @Override
+    public long getCacheBytes() {
+        return footprint.get().cacheBytes();
+    }
+
+    @Override
+    public long getAggregateBytes() {
+        return footprint.get().aggregateBytes();
+    }
+
+    @Override
+    public long getSketchBytes() {
+        return footprint.get().sketchBytes();
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return footprint.get().totalBytes();
+    }
+
+    @Override
+    public long getMemoryLimitBytes() {
+        return memoryLimit.getAsLong();
+    }
+
+    @Override
+    public long getMemoryEvictions() {
+        return memoryEvictions.sum();
+    }
+
+    @Override
+    public long getRowsRefused() {
+        return rowsRefused.sum();
+    }
+
+    @Override
+    public long getGroupsSpilled() {
+        return groupsSpilled.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return cacheEvictions.sum();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long hits = cacheHits.sum();
+        long lookups = hits + cacheMisses.sum();
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+}
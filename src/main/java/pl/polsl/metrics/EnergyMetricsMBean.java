@@ -0,0 +1,111 @@
+package com.mycompany.energiawusawlatach2001.metrics;
+
+/**
+ * JMX management interface exposing the operational numbers of the energy data store.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public interface EnergyMetricsMBean {
+
+    /**
+     * @return the total number of rows accepted since start-up
+     */
+    long getRowsIngested();
+
+    /**
+     * @return the ingestion rate in rows per second over the last complete seconds, see
+     *         {@link EnergyMetrics#RATE_WINDOW_SECONDS}
+     */
+    double getIngestionRowsPerSecond();
+
+    /**
+     * @return the number of rows rejected by validation since start-up
+     */
+    long getRowsRejected();
+
+    /**
+     * @return the number of rows currently held by the store
+     */
+    long getStoreRows();
+
+    /**
+     * @return the number of bytes currently used by the store: rows, dictionary and cache
+     */
+    long getStoreBytes();
+
+    /**
+     * @return the number of bytes of the stored rows
+     */
+    long getRowBytes();
+
+    /**
+     * @return the number of bytes of the state dictionary
+     */
+    long getDictionaryBytes();
+
+    /**
+     * @return the number of bytes of the primary key, timeline and sort indexes
+     */
+    long getIndexBytes();
+
+    /**
+     * @return the number of bytes of segments cached from disk
+     */
+    long getCacheBytes();
+
+    /**
+     * @return the number of bytes of the forecast totals and fits
+     */
+    long getAggregateBytes();
+
+    /**
+     * @return the number of bytes of the anomaly statistics and flagged entries
+     */
+    long getSketchBytes();
+
+    /**
+     * @return the number of bytes of every structure together
+     */
+    long getMemoryBytes();
+
+    /**
+     * @return the limit of {@link #getMemoryBytes()} beyond which rows are refused, {@link Long#MAX_VALUE} for none
+     */
+    long getMemoryLimitBytes();
+
+    /**
+     * @return how many times rebuildable structures were dropped to stay within the memory limit
+     */
+    long getMemoryEvictions();
+
+    /**
+     * @return the number of rows refused because the memory limit was reached
+     */
+    long getRowsRefused();
+
+    /**
+     * @return the number of partial groups group-bys wrote to disk to stay within their memory budget
+     */
+    long getGroupsSpilled();
+
+    /**
+     * @return the number of cache lookups that were served from memory
+     */
+    long getCacheHits();
+
+    /**
+     * @return the number of cache lookups that had to load data
+     */
+    long getCacheMisses();
+
+    /**
+     * @return the number of cache entries evicted to stay within the memory budget
+     */
+    long getCacheEvictions();
+
+    /**
+     * @return the fraction of cache lookups that were hits, 0 if there were none
+     */
+    double getCacheHitRatio();
+}
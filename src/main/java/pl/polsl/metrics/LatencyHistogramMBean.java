@@ -0,0 +1,46 @@
+package com.mycompany.energiawusawlatach2001.metrics;
+
+/**
+ * JMX management interface of a {@link LatencyHistogram}.
+ * One instance is registered per query type.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public interface LatencyHistogramMBean {
+
+    /**
+     * @return the number of recorded samples
+     */
+    long getCount();
+
+    /**
+     * @return the mean latency in microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * @return the median latency in microseconds
+     */
+    double getP50Micros();
+
+    /**
+     * @return the 90th percentile latency in microseconds
+     */
+    double getP90Micros();
+
+    /**
+     * @return the 99th percentile latency in microseconds
+     */
+    double getP99Micros();
+
+    /**
+     * @return the 99.9th percentile latency in microseconds
+     */
+    double getP999Micros();
+
+    /**
+     * @return the largest recorded latency in microseconds
+     */
+    double getMaxMicros();
+}
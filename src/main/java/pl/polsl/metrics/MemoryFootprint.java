@@ -0,0 +1,43 @@
+package com.mycompany.energiawusawlatach2001.metrics;
+
+/**
+ * Bytes held by each structure of the energy data store at one point in time. The numbers
+ * are computed from array lengths and the fixed layouts of segments and chunks instead of
+ * walking the object graph, so reading them costs a few field reads per structure and may
+ * be done on every write. Object headers and references are counted as on a 64-bit JVM
+ * with compressed pointers.
+ *
+ * @param rowBytes the encoded and appended rows of the store, on or off the heap
+ * @param dictionaryBytes the dictionaries of state codes and county names
+ * @param indexBytes the primary key, timeline and sort indexes
+ * @param cacheBytes the segments a partitioned store keeps loaded from its file
+ * @param aggregateBytes the monthly series totals and fits behind forecasts
+ * @param sketchBytes the running statistics and windows of anomaly scoring, with the flagged entries,
+ *        and the sample behind estimates
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public record MemoryFootprint(
+    long rowBytes,
+    long dictionaryBytes,
+    long indexBytes,
+    long cacheBytes,
+    long aggregateBytes,
+    long sketchBytes
+) {
+
+    /**
+     * @return the bytes of the store itself: rows, dictionary and cache
+     */
+    public long storeBytes() {
+        return rowBytes + dictionaryBytes + cacheBytes;
+    }
+
+    /**
+     * @return the bytes of every structure
+     */
+    public long totalBytes() {
+        return storeBytes() + indexBytes + aggregateBytes + sketchBytes;
+    }
+}
@@ -0,0 +1,12 @@
+/**
+ * The metrics package contains the in-process metrics registry of the application.
+ * It includes:
+ * - EnergyMetrics registry with striped counters for ingestion, rejections and cache lookups
+ * - LatencyHistogram for lock-free per-query latency recording
+ * - MemoryFootprint with the bytes held by each structure of the store
+ * - MBean interfaces so JConsole or any JMX scraper can read the numbers
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+package com.mycompany.energiawusawlatach2001.metrics;
@@ -0,0 +1,65 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Data-parallel aggregation kernels over the amount column of a {@link ColumnBatch}.
+ * Filters compare ordinal columns (month, source, producer or state ids) with a key
+ * and only matching rows contribute. {@link #INSTANCE} is a SIMD implementation on
+ * the Vector API when the {@code jdk.incubator.vector} module is available and the
+ * CPU has vector units, and a scalar implementation otherwise.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public interface AmountKernels {
+
+    /**
+     * The fastest kernels available in this JVM. Setting the system property
+     * {@code energy.kernels=scalar} forces the scalar implementation.
+     */
+    AmountKernels INSTANCE = select();
+
+    /**
+     * @return the sum of {@code amounts[from..to)}
+     */
+    double sum(double[] amounts, int from, int to);
+
+    /**
+     * @return the sum of {@code amounts[i]} over rows {@code i < count} where {@code keys[i] == key}
+     */
+    double sumWhere(int[] keys, int key, double[] amounts, int count);
+
+    /**
+     * @return the sum of {@code amounts[i]} over rows where both key columns match
+     */
+    double sumWhere(int[] keys, int key, int[] otherKeys, int otherKey, double[] amounts, int count);
+
+    /**
+     * @return the smallest matching amount, or positive infinity if no row matches
+     */
+    double minWhere(int[] keys, int key, double[] amounts, int count);
+
+    /**
+     * @return the largest matching amount, or negative infinity if no row matches
+     */
+    double maxWhere(int[] keys, int key, double[] amounts, int count);
+
+    /**
+     * @return a short name of the implementation, used in benchmark reports
+     */
+    String name();
+
+    private static AmountKernels select() {
+        if (!"scalar".equals(System.getProperty("energy.kernels"))) {
+            try {
+                return (AmountKernels) Class
+                    .forName(AmountKernels.class.getPackageName() + ".VectorAmountKernels")
+                    .getDeclaredConstructor()
+                    .newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // jdk.incubator.vector was not added to the module graph or the CPU has no
+                // usable vector shape (the constructor failure arrives wrapped), use scalar code
+            }
+        }
+        return new ScalarAmountKernels();
+    }
+}
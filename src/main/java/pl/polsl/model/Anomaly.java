@@ -0,0 +1,24 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * An entry whose amount lies far outside the history of its state, source and month of the year.
+ *
+ * @param data the entry
+ * @param score the distance of the amount from the recent median, in robust standard deviations on a log scale
+ * @param zScore the distance from the mean of the whole history, in standard deviations on a log scale
+ * @param expectedAmount the recent median amount of the same state, source and month of the year
+ * @param quarantined whether the entry was held back instead of stored
+ * @param replacing whether the entry replaces the amount stored under its key, as an upsert
+ *                  or a correction does, rather than being added
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public record Anomaly(
+    EnergyData data,
+    double score,
+    double zScore,
+    double expectedAmount,
+    boolean quarantined,
+    boolean replacing
+) {}
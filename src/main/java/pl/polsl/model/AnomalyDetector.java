@@ -0,0 +1,222 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.Arrays;
+
+/**
+ * Online outlier scoring of amounts per (state, source, month of the year), kept in flat
+ * primitive arrays indexed by that key. Amounts are compared on a log scale, so that a
+ * typo of ten times too much and one of ten times too little score alike.
+ * <p>
+ * Every key keeps a running mean and variance over its whole history (Welford) and a
+ * window of its latest {@link #WINDOW} values in arrival order and in sorted order. The
+ * robust score of an amount is its distance from the window median in units of the
+ * scaled median absolute deviation, which a few earlier outliers cannot drag along the
+ * way they drag the mean. Scoring reads two cached numbers; learning a value shifts the
+ * sorted window once, so both are constant work per row and nothing is ever rescanned.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class AnomalyDetector {
+
+    /**
+     * Number of latest values per key behind the median.
+     */
+    static final int WINDOW = 16;
+
+    /**
+     * Number of values a key needs before any amount of it is scored.
+     */
+    static final int MIN_HISTORY = 5;
+
+    /**
+     * Robust score above which an amount is an anomaly, about five times the typical spread.
+     */
+    static final double DEFAULT_THRESHOLD = 5;
+
+    /**
+     * Smallest spread on the log scale, about 5 %, so that a key whose values were all
+     * equal does not flag every small change.
+     */
+    private static final double MIN_SPREAD = 0.05;
+
+    /**
+     * Scales the median absolute deviation to the standard deviation of normal data.
+     */
+    private static final double MAD_SCALE = 1.4826;
+
+    private static final int KEYS_PER_STATE = EnergySource.values().length * 12;
+
+    private final double threshold;
+
+    private int[] counts = new int[0];
+    private double[] means = new double[0];
+    private double[] squares = new double[0];
+    private double[] medians = new double[0];
+    private double[] spreads = new double[0];
+
+    /**
+     * The latest values of every key, {@link #WINDOW} slots per key used as a ring.
+     */
+    private double[] arrivals = new double[0];
+
+    /**
+     * The same values sorted ascending, in the first {@code min(count, WINDOW)} slots of a key.
+     */
+    private double[] sorted = new double[0];
+
+    private final double[] deviations = new double[WINDOW];
+
+    AnomalyDetector(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Creates a detector that has learned every row of a store, in one scan.
+     */
+    static AnomalyDetector learnAll(EnergyStore store, double threshold) {
+        AnomalyDetector detector = new AnomalyDetector(threshold);
+        store.scan(ColumnBatch.MONTH | ColumnBatch.STATE | ColumnBatch.SOURCE | ColumnBatch.AMOUNT, batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                detector.learn(batch.states()[i], batch.sources()[i], batch.months()[i], batch.amounts()[i]);
+            }
+        });
+        return detector;
+    }
+
+    double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return the number of heap bytes used by the statistics and windows of every key
+     */
+    long sizeInBytes() {
+        return 48 + 8 * 16 + (long) counts.length * (Integer.BYTES + 4 * Double.BYTES)
+            + (long) (arrivals.length + sorted.length + deviations.length) * Double.BYTES;
+    }
+
+    /**
+     * @return the robust score of an amount, 0 while its key has too little history
+     */
+    double score(int stateId, int source, int month, double amount) {
+        int key = key(stateId, source, month);
+        if (key >= counts.length || counts[key] < MIN_HISTORY) {
+            return 0;
+        }
+        return Math.abs(Math.log(amount) - medians[key]) / spreads[key];
+    }
+
+    /**
+     * @return the distance of an amount from the mean in standard deviations of the
+     *         whole history of its key, {@code NaN} while there is too little history
+     */
+    double zScore(int stateId, int source, int month, double amount) {
+        int key = key(stateId, source, month);
+        if (key >= counts.length || counts[key] < MIN_HISTORY) {
+            return Double.NaN;
+        }
+        double deviation = Math.sqrt(squares[key] / (counts[key] - 1));
+        return Math.abs(Math.log(amount) - means[key]) / Math.max(deviation, MIN_SPREAD);
+    }
+
+    /**
+     * @return the window median of the key of an amount, as an amount
+     */
+    double expectedAmount(int stateId, int source, int month) {
+        int key = key(stateId, source, month);
+        return key < counts.length && counts[key] > 0 ? Math.exp(medians[key]) : Double.NaN;
+    }
+
+    /**
+     * Adds an accepted amount to the history of its key.
+     */
+    void learn(int stateId, int source, int month, double amount) {
+        int key = key(stateId, source, month);
+        if (key >= counts.length) {
+            grow(key);
+        }
+        double value = Math.log(amount);
+        int count = ++counts[key];
+        double delta = value - means[key];
+        means[key] += delta / count;
+        squares[key] += delta * (value - means[key]);
+
+        int base = key * WINDOW;
+        int slot = (count - 1) % WINDOW;
+        int size = Math.min(count, WINDOW);
+        if (count > WINDOW) {
+            removeSorted(base, WINDOW, arrivals[base + slot]);
+            insertSorted(base, WINDOW - 1, value);
+        } else {
+            insertSorted(base, size - 1, value);
+        }
+        arrivals[base + slot] = value;
+
+        double median = median(sorted, base, size);
+        medians[key] = median;
+        spreads[key] = Math.max(MAD_SCALE * medianDeviation(base, size, median), MIN_SPREAD);
+    }
+
+    private void grow(int key) {
+        int capacity = Math.max(key + 1, counts.length * 2);
+        capacity = (capacity + KEYS_PER_STATE - 1) / KEYS_PER_STATE * KEYS_PER_STATE;
+        counts = Arrays.copyOf(counts, capacity);
+        means = Arrays.copyOf(means, capacity);
+        squares = Arrays.copyOf(squares, capacity);
+        medians = Arrays.copyOf(medians, capacity);
+        spreads = Arrays.copyOf(spreads, capacity);
+        arrivals = Arrays.copyOf(arrivals, capacity * WINDOW);
+        sorted = Arrays.copyOf(sorted, capacity * WINDOW);
+    }
+
+    /**
+     * Inserts a value into the first {@code size} sorted slots of a key.
+     */
+    private void insertSorted(int base, int size, double value) {
+        int i = base + size;
+        while (i > base && sorted[i - 1] > value) {
+            sorted[i] = sorted[i - 1];
+            i--;
+        }
+        sorted[i] = value;
+    }
+
+    /**
+     * Removes one occurrence of a value from the first {@code size} sorted slots of a key.
+     */
+    private void removeSorted(int base, int size, double value) {
+        int i = base;
+        while (sorted[i] != value) {
+            i++;
+        }
+        System.arraycopy(sorted, i + 1, sorted, i, base + size - i - 1);
+    }
+
+    /**
+     * Finds the median of the distances from the median by merging the distances of the
+     * values below and above it, which come out of the sorted window already in order.
+     */
+    private double medianDeviation(int base, int size, double median) {
+        int below = base + (size - 1) / 2;
+        int above = below + 1;
+        int end = base + size;
+        for (int i = 0; i < size; i++) {
+            if (above >= end || below >= base && median - sorted[below] <= sorted[above] - median) {
+                deviations[i] = median - sorted[below--];
+            } else {
+                deviations[i] = sorted[above++] - median;
+            }
+        }
+        return median(deviations, 0, size);
+    }
+
+    private static double median(double[] values, int base, int size) {
+        int middle = base + size / 2;
+        return size % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+
+    private static int key(int stateId, int source, int month) {
+        return stateId * KEYS_PER_STATE + source * 12 + month - 1;
+    }
+}
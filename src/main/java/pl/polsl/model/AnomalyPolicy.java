@@ -0,0 +1,28 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * What {@link Model#addEnergyData(EnergyData)}, upserts and corrections do with an amount far
+ * outside the history of its state, source and month of the year, for example one typed
+ * with an extra digit.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public enum AnomalyPolicy {
+
+    /**
+     * Amounts are not scored.
+     */
+    OFF,
+
+    /**
+     * An anomalous entry is stored and listed in {@link Model#getAnomalies()}.
+     */
+    FLAG,
+
+    /**
+     * An anomalous entry is listed in {@link Model#getAnomalies()} but not stored until it
+     * is released with {@link Model#releaseQuarantined(Anomaly)}.
+     */
+    QUARANTINE
+}
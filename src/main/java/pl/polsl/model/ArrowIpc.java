@@ -0,0 +1,828 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes energy data in the Apache Arrow IPC stream and file formats, written
+ * against the format specification without the Arrow libraries. The schema is
+ * <pre>
+ * year: int32, month: int32,
+ * state: dictionary&lt;values=utf8, indices=int32&gt;,
+ * source: dictionary&lt;values=utf8, indices=int32&gt;,
+ * producer: dictionary&lt;values=utf8, indices=int32&gt;,
+ * amount: float64, plant: int32,
+ * county: dictionary&lt;values=utf8, indices=int32&gt;
+ * </pre>
+ * with every field non-nullable. The dictionaries hold the state codes in
+ * {@link StateDictionary} id order, the enum constant names in ordinal order and the
+ * counties after an empty string that marks entries without one, so the
+ * store's own columns are the Arrow index buffers and every segment is written as one
+ * record batch by bulk copies of its primitive arrays into a little-endian direct buffer.
+ * Reading maps files into memory and copies each column out of the mapping in bulk.
+ * <p>
+ * Besides what is written here, reading accepts the columns in any order, integer columns
+ * and dictionary indices of any width, float32 amounts, plain utf8 string columns, delta
+ * and replacement dictionaries, metadata version 4 and the legacy stream framing without
+ * continuation markers, files without the plant and county columns, and ignores extra
+ * flat columns. Nulls, compressed bodies,
+ * big-endian data and nested columns are rejected with an {@link IOException}.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class ArrowIpc {
+
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+    private static final int CONTINUATION = -1;
+    private static final int ALIGNMENT = 8;
+
+    private static final int METADATA_V4 = 3;
+    private static final int METADATA_V5 = 4;
+
+    // MessageHeader union
+    private static final int SCHEMA = 1;
+    private static final int DICTIONARY_BATCH = 2;
+    private static final int RECORD_BATCH = 3;
+
+    // Type union
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_FLOATING_POINT = 3;
+    private static final int TYPE_BINARY = 4;
+    private static final int TYPE_UTF8 = 5;
+    private static final int TYPE_BOOL = 6;
+
+    private static final int PRECISION_SINGLE = 1;
+    private static final int PRECISION_DOUBLE = 2;
+
+    private static final String[] COLUMNS = {"year", "month", "state", "source", "producer", "amount", "plant",
+        "county"};
+    private static final int YEAR = 0;
+    private static final int MONTH = 1;
+    private static final int STATE = 2;
+    private static final int SOURCE = 3;
+    private static final int PRODUCER = 4;
+    private static final int AMOUNT = 5;
+    private static final int PLANT = 6;
+    private static final int COUNTY = 7;
+
+    private ArrowIpc() {
+    }
+
+    /**
+     * Writes all live rows of a store in scan order.
+     *
+     * @param store the store to write
+     * @param channel the target, left open
+     * @param fileFormat whether to write the random-access file format rather than a stream
+     * @throws IOException if the channel cannot be written
+     */
+    static void write(EnergyStore store, WritableByteChannel channel, boolean fileFormat) throws IOException {
+        new Writer(channel).write(store, fileFormat);
+    }
+
+    /**
+     * Reads a file in either the file or the stream format into a new heap store.
+     *
+     * @param file the source file
+     * @return the rows of the file in file order
+     * @throws IOException if the file cannot be read or is not valid energy data
+     */
+    static ColumnStore read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                // too large to map at once, read message by message instead
+                ByteBuffer start = new ChannelInput(channel).read(ALIGNMENT);
+                if (!Arrays.equals(bytes(start, 0, MAGIC.length), MAGIC)) {
+                    channel.position(0);
+                }
+                return new Reader(new ChannelInput(channel)).read();
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            int end = mapped.limit();
+            if (size >= 2 * ALIGNMENT && Arrays.equals(bytes(mapped, 0, MAGIC.length), MAGIC)) {
+                // the stream part ends where the footer, its length and the magic begin
+                end -= MAGIC.length + 4 + mapped.getInt(end - MAGIC.length - 4);
+                if (end < ALIGNMENT) {
+                    throw new IOException("Invalid Arrow file footer: " + file);
+                }
+                mapped.position(ALIGNMENT);
+            }
+            return new Reader(new MappedInput(mapped, end)).read();
+        }
+    }
+
+    /**
+     * Reads a stream into a new heap store.
+     *
+     * @param channel the source, read up to the end-of-stream marker and left open
+     * @return the rows of the stream in stream order
+     * @throws IOException if the stream cannot be read or is not valid energy data
+     */
+    static ColumnStore read(ReadableByteChannel channel) throws IOException {
+        return new Reader(new ChannelInput(channel)).read();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return bytes;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static FlatBuffers.TableBuilder schema() {
+        List<FlatBuffers.TableBuilder> fields = new ArrayList<>();
+        for (int column = 0; column < COLUMNS.length; column++) {
+            FlatBuffers.TableBuilder field = new FlatBuffers.TableBuilder()
+                .addString(0, COLUMNS[column])
+                .addBool(1, false)
+                .addTables(5, List.of());
+            switch (column) {
+                case YEAR, MONTH, PLANT -> field.addUnion(2, TYPE_INT, intType());
+                case AMOUNT -> field.addUnion(2, TYPE_FLOATING_POINT,
+                    new FlatBuffers.TableBuilder().addShort(0, PRECISION_DOUBLE));
+                default -> field.addUnion(2, TYPE_UTF8, new FlatBuffers.TableBuilder())
+                    .addTable(4, new FlatBuffers.TableBuilder()
+                        .addLong(0, dictionaryId(column))
+                        .addTable(1, intType())
+                        .addBool(2, false)
+                        .addShort(3, 0));
+            }
+            fields.add(field);
+        }
+        return new FlatBuffers.TableBuilder().addShort(0, 0).addTables(1, fields);
+    }
+
+    /**
+     * Dictionary ids are 0 for states, 1 for sources, 2 for producers and 3 for counties.
+     */
+    private static long dictionaryId(int column) {
+        return column == COUNTY ? 3 : column - STATE;
+    }
+
+    private static FlatBuffers.TableBuilder intType() {
+        return new FlatBuffers.TableBuilder().addInt(0, 32).addBool(1, true);
+    }
+
+    /**
+     * Writes the messages, keeping track of their positions for the file footer.
+     */
+    private static final class Writer {
+
+        private final WritableByteChannel channel;
+        private final List<Long> dictionaryBlocks = new ArrayList<>();
+        private final List<Long> recordBatchBlocks = new ArrayList<>();
+        private ByteBuffer body = ByteBuffer.allocateDirect(0);
+        private long position;
+
+        Writer(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(EnergyStore store, boolean fileFormat) throws IOException {
+            if (fileFormat) {
+                writeFully(ByteBuffer.wrap(Arrays.copyOf(MAGIC, ALIGNMENT)));
+            }
+            writeMessage(SCHEMA, schema(), 0, null);
+            StateDictionary dictionary = store.dictionary();
+            String[] states = new String[dictionary.size()];
+            for (int id = 0; id < states.length; id++) {
+                states[id] = dictionary.state(id);
+            }
+            writeDictionary(STATE, states);
+            writeDictionary(SOURCE, names(EnergySource.values()));
+            writeDictionary(PRODUCER, names(EnergyProducer.values()));
+            StateDictionary counties = store.counties();
+            String[] countyNames = new String[counties.size() + 1];
+            countyNames[0] = "";
+            for (int id = 0; id < counties.size(); id++) {
+                countyNames[id + 1] = counties.state(id);
+            }
+            writeDictionary(COUNTY, countyNames);
+            try {
+                store.scan(ColumnBatch.ALL_COLUMNS, batch -> {
+                    try {
+                        writeRecordBatch(batch);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writeFully(ByteBuffer.allocate(ALIGNMENT).order(ByteOrder.LITTLE_ENDIAN).putInt(CONTINUATION).putInt(0).flip());
+            if (fileFormat) {
+                byte[] footer = new FlatBuffers.TableBuilder()
+                    .addShort(0, METADATA_V5)
+                    .addTable(1, schema())
+                    .addStructs(2, 3, blocks(dictionaryBlocks))
+                    .addStructs(3, 3, blocks(recordBatchBlocks))
+                    .finish();
+                writeFully(ByteBuffer.allocate(footer.length + 4 + MAGIC.length).order(ByteOrder.LITTLE_ENDIAN)
+                    .put(footer).putInt(footer.length).put(MAGIC).flip());
+            }
+        }
+
+        private void writeDictionary(int column, String[] values) throws IOException {
+            byte[][] encoded = new byte[values.length][];
+            int dataBytes = 0;
+            for (int i = 0; i < values.length; i++) {
+                encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+                dataBytes += encoded[i].length;
+            }
+            int offsetBytes = align(4 * (values.length + 1));
+            ByteBuffer dictionaryBody = ByteBuffer.allocate(offsetBytes + align(dataBytes)).order(ByteOrder.LITTLE_ENDIAN);
+            int offset = 0;
+            dictionaryBody.putInt(offset);
+            for (byte[] value : encoded) {
+                offset += value.length;
+                dictionaryBody.putInt(offset);
+            }
+            dictionaryBody.position(offsetBytes);
+            for (byte[] value : encoded) {
+                dictionaryBody.put(value);
+            }
+            dictionaryBody.position(0);
+            FlatBuffers.TableBuilder data = new FlatBuffers.TableBuilder()
+                .addLong(0, values.length)
+                .addStructs(1, 2, new long[] {values.length, 0})
+                .addStructs(2, 2, new long[] {0, 0, 0, 4L * (values.length + 1), offsetBytes, dataBytes});
+            FlatBuffers.TableBuilder header = new FlatBuffers.TableBuilder()
+                .addLong(0, dictionaryId(column))
+                .addTable(1, data)
+                .addBool(2, false);
+            dictionaryBlocks.add(position);
+            dictionaryBlocks.add(writeMessage(DICTIONARY_BATCH, header, dictionaryBody.capacity(), dictionaryBody));
+            dictionaryBlocks.add((long) dictionaryBody.capacity());
+        }
+
+        private void writeRecordBatch(ColumnBatch batch) throws IOException {
+            int rows = batch.size();
+            if (rows == 0) {
+                return;
+            }
+            int intBytes = align(4 * rows);
+            int bodyLength = (COLUMNS.length - 1) * intBytes + 8 * rows;
+            if (body.capacity() < bodyLength) {
+                body = ByteBuffer.allocateDirect(bodyLength).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            body.clear();
+            long[] buffers = new long[4 * COLUMNS.length];
+            int[][] columns = {batch.years(), batch.months(), batch.states(), batch.sources(), batch.producers(),
+                null, batch.plants(), batch.counties()};
+            for (int column = 0; column < columns.length; column++) {
+                buffers[4 * column] = body.position();
+                buffers[4 * column + 2] = body.position();
+                if (column == AMOUNT) {
+                    buffers[4 * column + 3] = 8L * rows;
+                    body.asDoubleBuffer().put(batch.amounts(), 0, rows);
+                    body.position(body.position() + 8 * rows);
+                    continue;
+                }
+                buffers[4 * column + 3] = 4L * rows;
+                body.asIntBuffer().put(columns[column], 0, rows);
+                body.position(body.position() + 4 * rows);
+                if (intBytes > 4 * rows) {
+                    body.putInt(0);
+                }
+            }
+            body.position(0).limit(bodyLength);
+            long[] nodes = new long[2 * COLUMNS.length];
+            for (int column = 0; column < COLUMNS.length; column++) {
+                nodes[2 * column] = rows;
+            }
+            FlatBuffers.TableBuilder header = new FlatBuffers.TableBuilder()
+                .addLong(0, rows)
+                .addStructs(1, 2, nodes)
+                .addStructs(2, 2, buffers);
+            recordBatchBlocks.add(position);
+            recordBatchBlocks.add(writeMessage(RECORD_BATCH, header, bodyLength, body));
+            recordBatchBlocks.add((long) bodyLength);
+        }
+
+        /**
+         * Writes a message with its continuation marker and metadata length.
+         *
+         * @return the length of the marker, the length and the padded metadata
+         */
+        private long writeMessage(int type, FlatBuffers.TableBuilder header, long bodyLength, ByteBuffer messageBody)
+                throws IOException {
+            byte[] metadata = new FlatBuffers.TableBuilder()
+                .addShort(0, METADATA_V5)
+                .addUnion(1, type, header)
+                .addLong(3, bodyLength)
+                .finish();
+            writeFully(ByteBuffer.allocate(8 + metadata.length).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(CONTINUATION).putInt(metadata.length).put(metadata).flip());
+            if (messageBody != null) {
+                writeFully(messageBody);
+            }
+            return 8 + metadata.length;
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            position += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private static long[] blocks(List<Long> blocks) {
+            long[] longs = new long[blocks.size()];
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] = blocks.get(i);
+            }
+            return longs;
+        }
+
+        private static String[] names(Enum<?>[] values) {
+            String[] names = new String[values.length];
+            for (Enum<?> value : values) {
+                names[value.ordinal()] = value.name();
+            }
+            return names;
+        }
+    }
+
+    /**
+     * A source of message bytes.
+     */
+    private interface Input {
+
+        /**
+         * Returns the next bytes as a little-endian buffer from position 0 to its limit.
+         *
+         * @throws EOFException if fewer bytes are left
+         */
+        ByteBuffer read(int bytes) throws IOException;
+
+        /**
+         * Returns the 4 bytes that start the next message, or {@code null} if the input
+         * ends before them, which is a valid end of data without an end-of-stream marker.
+         */
+        ByteBuffer readPrefix() throws IOException;
+    }
+
+    private static final class MappedInput implements Input {
+
+        private final ByteBuffer mapped;
+        private final int end;
+
+        MappedInput(ByteBuffer mapped, int end) {
+            this.mapped = mapped;
+            this.end = end;
+        }
+
+        @Override
+        public ByteBuffer read(int bytes) throws IOException {
+            if (bytes < 0 || bytes > end - mapped.position()) {
+                throw new EOFException("Arrow data ends inside a message");
+            }
+            ByteBuffer slice = mapped.slice(mapped.position(), bytes).order(ByteOrder.LITTLE_ENDIAN);
+            mapped.position(mapped.position() + bytes);
+            return slice;
+        }
+
+        @Override
+        public ByteBuffer readPrefix() throws IOException {
+            return mapped.position() >= end ? null : read(4);
+        }
+    }
+
+    private static final class ChannelInput implements Input {
+
+        private static final int CHUNK_BYTES = 1 << 20;
+
+        private final ReadableByteChannel channel;
+
+        ChannelInput(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public ByteBuffer read(int bytes) throws IOException {
+            ByteBuffer buffer = readOrEnd(bytes);
+            if (buffer == null) {
+                throw new EOFException("Arrow data ends inside a message");
+            }
+            return buffer;
+        }
+
+        @Override
+        public ByteBuffer readPrefix() throws IOException {
+            return readOrEnd(4);
+        }
+
+        private ByteBuffer readOrEnd(int bytes) throws IOException {
+            if (bytes < 0) {
+                throw new IOException("Invalid Arrow message length: " + bytes);
+            }
+            // grown as bytes arrive, so that a corrupt length fails at the end of the data
+            ByteBuffer buffer = ByteBuffer.allocate(Math.min(bytes, CHUNK_BYTES));
+            while (buffer.position() < bytes) {
+                if (!buffer.hasRemaining()) {
+                    buffer = ByteBuffer.allocate((int) Math.min(bytes, 2L * buffer.capacity())).put(buffer.flip());
+                }
+                if (channel.read(buffer) < 0) {
+                    if (buffer.position() == 0) {
+                        return null;
+                    }
+                    throw new EOFException("Arrow data ends inside a message");
+                }
+            }
+            return buffer.flip().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * A field of the schema as far as reading needs it.
+     *
+     * @param name the field name
+     * @param type the Type union tag of the values
+     * @param bitWidth the width of integers and of dictionary indices
+     * @param signed whether integers or dictionary indices are signed
+     * @param precision the precision of floating point values
+     * @param dictionaryId the dictionary id, or -1 if the field is not dictionary-encoded
+     * @param buffers the number of body buffers of the field
+     */
+    private record Field(String name, int type, int bitWidth, boolean signed, int precision, long dictionaryId,
+            int buffers) {
+    }
+
+    /**
+     * Reads messages into a store, checking that they describe energy data.
+     */
+    private static final class Reader {
+
+        private final Input input;
+        private final ColumnStore store = new ColumnStore();
+        private Field[] fields;
+
+        /**
+         * Schema field of every column in {@link #COLUMNS}.
+         */
+        private final int[] columnFields = new int[COLUMNS.length];
+
+        private final Map<Long, List<String>> dictionaries = new HashMap<>();
+
+        /**
+         * Store value of every dictionary entry, per column, for the dictionary-encoded columns.
+         */
+        private final int[][] translations = new int[COLUMNS.length][];
+
+        private final Map<String, Integer> translated = new HashMap<>();
+        private long rows;
+
+        Reader(Input input) {
+            this.input = input;
+        }
+
+        ColumnStore read() throws IOException {
+            for (ByteBuffer prefix = input.readPrefix(); prefix != null; prefix = input.readPrefix()) {
+                int length = prefix.getInt(0);
+                if (length == CONTINUATION) {
+                    length = input.read(4).getInt(0);
+                }
+                if (length == 0) {
+                    break;
+                }
+                FlatBuffers.Table message = FlatBuffers.Table.root(input.read(length));
+                if (message.getShort(0, 0) < METADATA_V4) {
+                    throw new IOException("Unsupported Arrow metadata version " + message.getShort(0, 0));
+                }
+                int type = message.getByte(1, 0);
+                FlatBuffers.Table header = message.getTable(2);
+                long bodyLength = message.getLong(3, 0);
+                if (header == null || bodyLength < 0 || bodyLength > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid Arrow message");
+                }
+                ByteBuffer body = input.read((int) bodyLength);
+                if (type == SCHEMA) {
+                    readSchema(header);
+                } else if (fields == null) {
+                    throw new IOException("Arrow data does not start with a schema");
+                } else if (type == DICTIONARY_BATCH) {
+                    readDictionary(header, body);
+                } else if (type == RECORD_BATCH) {
+                    readRecordBatch(header, body);
+                } else {
+                    throw new IOException("Unsupported Arrow message type " + type);
+                }
+            }
+            if (fields == null) {
+                throw new IOException("Arrow data does not contain a schema");
+            }
+            return store;
+        }
+
+        private void readSchema(FlatBuffers.Table schema) throws IOException {
+            if (schema.getShort(0, 0) != 0) {
+                throw new IOException("Big-endian Arrow data is not supported");
+            }
+            int count = Math.max(schema.getVectorLength(1), 0);
+            fields = new Field[count];
+            Arrays.fill(columnFields, -1);
+            for (int i = 0; i < count; i++) {
+                fields[i] = field(schema.getTableElement(1, i));
+                int column = Arrays.asList(COLUMNS).indexOf(fields[i].name());
+                if (column >= 0) {
+                    columnFields[column] = i;
+                    checkType(column, fields[i]);
+                }
+            }
+            for (int column = 0; column < COLUMNS.length; column++) {
+                if (columnFields[column] < 0 && column != PLANT && column != COUNTY) {
+                    throw new IOException("Arrow schema has no column " + COLUMNS[column]);
+                }
+            }
+        }
+
+        private static Field field(FlatBuffers.Table field) throws IOException {
+            String name = field.getString(0);
+            int type = field.getByte(2, 0);
+            FlatBuffers.Table typeTable = field.getTable(3);
+            if (field.getVectorLength(5) > 0) {
+                throw new IOException("Nested Arrow column " + name + " is not supported");
+            }
+            int buffers = switch (type) {
+                case TYPE_INT, TYPE_FLOATING_POINT, TYPE_BOOL -> 2;
+                case TYPE_BINARY, TYPE_UTF8 -> 3;
+                default -> throw new IOException("Arrow column " + name + " has an unsupported type " + type);
+            };
+            int bitWidth = type == TYPE_INT && typeTable != null ? typeTable.getInt(0, 0) : 0;
+            boolean signed = type == TYPE_INT && typeTable != null && typeTable.getBool(1);
+            int precision = type == TYPE_FLOATING_POINT && typeTable != null ? typeTable.getShort(0, 0) : 0;
+            long dictionaryId = -1;
+            FlatBuffers.Table dictionary = field.getTable(4);
+            if (dictionary != null) {
+                dictionaryId = dictionary.getLong(0, 0);
+                FlatBuffers.Table indexType = dictionary.getTable(1);
+                // indices are signed int32 unless specified
+                bitWidth = indexType == null ? 32 : indexType.getInt(0, 0);
+                signed = indexType == null || indexType.getBool(1);
+                buffers = 2;
+            }
+            return new Field(name, type, bitWidth, signed, precision, dictionaryId, buffers);
+        }
+
+        private static void checkType(int column, Field field) throws IOException {
+            boolean valid = switch (column) {
+                case YEAR, MONTH, PLANT -> field.type() == TYPE_INT && field.dictionaryId() < 0;
+                case AMOUNT -> field.type() == TYPE_FLOATING_POINT && field.dictionaryId() < 0
+                    && (field.precision() == PRECISION_SINGLE || field.precision() == PRECISION_DOUBLE);
+                default -> field.type() == TYPE_UTF8;
+            };
+            if (!valid || (field.dictionaryId() >= 0 || field.type() == TYPE_INT)
+                    && field.bitWidth() != 8 && field.bitWidth() != 16 && field.bitWidth() != 32
+                    && field.bitWidth() != 64) {
+                throw new IOException("Arrow column " + field.name() + " has an unsupported type");
+            }
+        }
+
+        private void readDictionary(FlatBuffers.Table batch, ByteBuffer body) throws IOException {
+            long id = batch.getLong(0, 0);
+            FlatBuffers.Table data = batch.getTable(1);
+            if (data == null) {
+                throw new IOException("Arrow dictionary " + id + " has no data");
+            }
+            checkUncompressed(data);
+            int length = length(data);
+            checkNoNulls(data, 0, "dictionary " + id);
+            String[] values = strings(buffer(data, body, 1), buffer(data, body, 2), length);
+            List<String> dictionary = dictionaries.get(id);
+            if (dictionary == null || !batch.getBool(2)) {
+                dictionary = new ArrayList<>();
+                dictionaries.put(id, dictionary);
+            }
+            dictionary.addAll(Arrays.asList(values));
+            for (int column : new int[] {STATE, SOURCE, PRODUCER, COUNTY}) {
+                if (columnFields[column] >= 0 && fields[columnFields[column]].dictionaryId() == id) {
+                    int[] translation = new int[dictionary.size()];
+                    for (int i = 0; i < translation.length; i++) {
+                        translation[i] = translate(column, dictionary.get(i));
+                    }
+                    translations[column] = translation;
+                }
+            }
+        }
+
+        private void readRecordBatch(FlatBuffers.Table batch, ByteBuffer body) throws IOException {
+            checkUncompressed(batch);
+            int length = length(batch);
+            int[][] ints = new int[COLUMNS.length][length];
+            double[] amounts = new double[length];
+            int buffer = 0;
+            for (int i = 0; i < fields.length; i++) {
+                int column = Arrays.asList(COLUMNS).indexOf(fields[i].name());
+                if (column >= 0 && columnFields[column] == i) {
+                    checkNoNulls(batch, i, "column " + COLUMNS[column]);
+                    if (batch.getStructLong(1, i, 2, 0) < length) {
+                        throw new IOException("Arrow column " + COLUMNS[column] + " is shorter than its batch");
+                    }
+                    if (column == AMOUNT) {
+                        readAmounts(buffer(batch, body, buffer + 1), fields[i].precision(), amounts);
+                    } else {
+                        readColumn(column, fields[i], batch, body, buffer, ints[column]);
+                    }
+                }
+                buffer += fields[i].buffers();
+            }
+            for (int row = 0; row < length; row++) {
+                int year = ints[YEAR][row];
+                int month = ints[MONTH][row];
+                double amount = amounts[row];
+                int plant = ints[PLANT][row];
+                if (year < Model.FIRST_YEAR || year > Model.LAST_YEAR || month < 1 || month > 12 || !(amount > 0)
+                        || plant < 0 || plant > Model.MAX_PLANT) {
+                    throw new IOException("Arrow row " + (rows + row) + " is not valid energy data: "
+                        + year + "-" + month + " " + amount + " plant " + plant);
+                }
+                store.append(year, month, ints[STATE][row], ints[SOURCE][row], ints[PRODUCER][row], amount, plant,
+                    ints[COUNTY][row]);
+            }
+            rows += length;
+        }
+
+        private void readColumn(int column, Field field, FlatBuffers.Table batch, ByteBuffer body, int buffer,
+                int[] values) throws IOException {
+            if (field.dictionaryId() < 0 && field.type() == TYPE_UTF8) {
+                String[] strings = strings(buffer(batch, body, buffer + 1), buffer(batch, body, buffer + 2),
+                    values.length);
+                for (int row = 0; row < values.length; row++) {
+                    values[row] = translate(column, strings[row]);
+                }
+                return;
+            }
+            readIntegers(buffer(batch, body, buffer + 1), field.bitWidth(), field.signed(), values);
+            if (field.dictionaryId() < 0) {
+                return;
+            }
+            int[] translation = translations[column];
+            if (translation == null) {
+                throw new IOException("Arrow dictionary " + field.dictionaryId() + " is used before it is sent");
+            }
+            for (int row = 0; row < values.length; row++) {
+                int index = values[row];
+                if (index < 0 || index >= translation.length) {
+                    throw new IOException("Arrow column " + COLUMNS[column] + " has an index out of its dictionary");
+                }
+                values[row] = translation[index];
+            }
+        }
+
+        /**
+         * Maps a string of the state, source, producer or county column to its store value.
+         */
+        private int translate(int column, String value) throws IOException {
+            if (column == COUNTY) {
+                return value.isEmpty() ? 0 : store.counties().idOf(value) + 1;
+            }
+            if (column == STATE) {
+                if (value.isBlank()) {
+                    throw new IOException("Arrow state cannot be empty");
+                }
+                return store.dictionary().idOf(value);
+            }
+            Integer ordinal = translated.get(column + value);
+            if (ordinal == null) {
+                try {
+                    ordinal = column == SOURCE ? EnergySource.valueOf(value).ordinal()
+                        : EnergyProducer.valueOf(value).ordinal();
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unknown energy " + COLUMNS[column] + " in Arrow data: " + value, e);
+                }
+                translated.put(column + value, ordinal);
+            }
+            return ordinal;
+        }
+
+        private static void readIntegers(ByteBuffer data, int bitWidth, boolean signed, int[] values)
+                throws IOException {
+            require(data, (long) values.length * bitWidth / 8);
+            switch (bitWidth) {
+                case 32 -> data.asIntBuffer().get(values);
+                case 8 -> {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = signed ? data.get(i) : Byte.toUnsignedInt(data.get(i));
+                    }
+                }
+                case 16 -> {
+                    for (int i = 0; i < values.length; i++) {
+                        short value = data.getShort(2 * i);
+                        values[i] = signed ? value : Short.toUnsignedInt(value);
+                    }
+                }
+                default -> {
+                    for (int i = 0; i < values.length; i++) {
+                        long value = data.getLong(8 * i);
+                        if (value != (int) value) {
+                            throw new IOException("Arrow integer out of range: " + Long.toUnsignedString(value));
+                        }
+                        values[i] = (int) value;
+                    }
+                }
+            }
+            if (bitWidth == 32 && !signed) {
+                for (int value : values) {
+                    if (value < 0) {
+                        throw new IOException("Arrow integer out of range: " + Integer.toUnsignedString(value));
+                    }
+                }
+            }
+        }
+
+        private static void readAmounts(ByteBuffer data, int precision, double[] amounts) throws IOException {
+            if (precision == PRECISION_DOUBLE) {
+                require(data, 8L * amounts.length);
+                data.asDoubleBuffer().get(amounts);
+                return;
+            }
+            require(data, 4L * amounts.length);
+            for (int i = 0; i < amounts.length; i++) {
+                amounts[i] = data.getFloat(4 * i);
+            }
+        }
+
+        private static String[] strings(ByteBuffer offsets, ByteBuffer data, int length) throws IOException {
+            require(offsets, 4L * (length + 1));
+            String[] strings = new String[length];
+            byte[] bytes = new byte[0];
+            for (int i = 0; i < length; i++) {
+                int start = offsets.getInt(4 * i);
+                int end = offsets.getInt(4 * i + 4);
+                if (start < 0 || end < start || end > data.limit()) {
+                    throw new IOException("Invalid Arrow string offsets");
+                }
+                if (bytes.length < end - start) {
+                    bytes = new byte[end - start];
+                }
+                data.get(start, bytes, 0, end - start);
+                strings[i] = new String(bytes, 0, end - start, StandardCharsets.UTF_8);
+            }
+            return strings;
+        }
+
+        private static int length(FlatBuffers.Table batch) throws IOException {
+            long length = batch.getLong(0, 0);
+            if (length < 0 || length > Integer.MAX_VALUE || batch.getVectorLength(1) < 0
+                    || batch.getVectorLength(2) < 0) {
+                throw new IOException("Invalid Arrow record batch");
+            }
+            return (int) length;
+        }
+
+        private static void checkUncompressed(FlatBuffers.Table batch) throws IOException {
+            if (batch.has(3)) {
+                throw new IOException("Compressed Arrow data is not supported");
+            }
+        }
+
+        private static void checkNoNulls(FlatBuffers.Table batch, int node, String what) throws IOException {
+            if (node >= batch.getVectorLength(1)) {
+                throw new IOException("Arrow record batch has no data for " + what);
+            }
+            if (batch.getStructLong(1, node, 2, 1) != 0) {
+                throw new IOException("Arrow " + what + " contains nulls");
+            }
+        }
+
+        /**
+         * Returns a body buffer of a record batch as a little-endian view, without copying.
+         */
+        private static ByteBuffer buffer(FlatBuffers.Table batch, ByteBuffer body, int index) throws IOException {
+            if (index >= batch.getVectorLength(2)) {
+                throw new IOException("Arrow record batch has too few buffers");
+            }
+            long offset = batch.getStructLong(2, index, 2, 0);
+            long length = batch.getStructLong(2, index, 2, 1);
+            if (offset < 0 || length < 0 || offset + length > body.limit()) {
+                throw new IOException("Arrow buffer lies outside of its message body");
+            }
+            return body.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private static void require(ByteBuffer buffer, long bytes) throws IOException {
+            if (buffer.limit() < bytes) {
+                throw new IOException("Arrow buffer is shorter than its column");
+            }
+        }
+    }
+}
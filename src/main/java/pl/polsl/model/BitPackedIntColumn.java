@@ -0,0 +1,96 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Frame-of-reference bit-packed integer column.
+ * Values are stored as offsets from the column minimum using just enough bits
+ * for the largest offset, so a column of months needs 4 bits per row.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class BitPackedIntColumn implements EncodedIntColumn {
+
+    static final byte TAG = 1;
+
+    private final int count;
+    private final int base;
+    private final int bits;
+    private final long[] words;
+
+    private BitPackedIntColumn(int count, int base, int bits, long[] words) {
+        this.count = count;
+        this.base = base;
+        this.bits = bits;
+        this.words = words;
+    }
+
+    static BitPackedIntColumn encode(int[] values, int count, int base, int bits) {
+        return new BitPackedIntColumn(count, base, bits, BitPacking.pack(values, count, base, bits));
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int get(int index) {
+        return (int) (BitPacking.get(words, bits, index) + base);
+    }
+
+    @Override
+    public void decode(int[] out) {
+        BitPacking.unpack(words, bits, base, out, count);
+    }
+
+    @Override
+    public void countByValue(long[] counts) {
+        if (bits == 0) {
+            counts[base] += count;
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            counts[get(i)]++;
+        }
+    }
+
+    @Override
+    public void sumByValue(double[] amounts, double[] sums) {
+        if (bits == 0) {
+            double total = 0;
+            for (int i = 0; i < count; i++) {
+                total += amounts[i];
+            }
+            sums[base] += total;
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            sums[get(i)] += amounts[i];
+        }
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return 16 + (long) words.length * Long.BYTES;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(TAG);
+        out.writeInt(count);
+        out.writeInt(base);
+        out.writeByte(bits);
+        EncodedIntColumn.writeWords(out, words);
+    }
+
+    static BitPackedIntColumn readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        int base = in.readInt();
+        int bits = in.readByte();
+        return new BitPackedIntColumn(count, base, bits, EncodedIntColumn.readWords(in));
+    }
+}
@@ -0,0 +1,105 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for packing small non-negative integers into {@code long} words
+ * using a fixed number of bits per value.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class BitPacking {
+
+    private BitPacking() {
+    }
+
+    /**
+     * @return {@code true} if bit {@code index} of a plain bitmap is set
+     */
+    static boolean isSet(long[] bitmap, int index) {
+        return (bitmap[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Sets bit {@code index} of a plain bitmap.
+     */
+    static void setBit(long[] bitmap, int index) {
+        bitmap[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Returns the number of bits needed to store values from 0 to {@code maxValue}.
+     */
+    static int bitsRequired(long maxValue) {
+        return maxValue <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(maxValue);
+    }
+
+    /**
+     * Packs {@code values[0..count)} minus {@code base} using {@code bits} bits per value.
+     */
+    static long[] pack(int[] values, int count, int base, int bits) {
+        long[] words = new long[wordCount(count, bits)];
+        for (int i = 0; i < count; i++) {
+            set(words, bits, i, (long) values[i] - base);
+        }
+        return words;
+    }
+
+    /**
+     * Unpacks {@code count} values into {@code out}, adding {@code base} to each of them.
+     */
+    static void unpack(long[] words, int bits, int base, int[] out, int count) {
+        if (bits == 0) {
+            Arrays.fill(out, 0, count, base);
+            return;
+        }
+        long mask = mask(bits);
+        long bitPosition = 0;
+        for (int i = 0; i < count; i++, bitPosition += bits) {
+            int word = (int) (bitPosition >>> 6);
+            int offset = (int) (bitPosition & 63);
+            long value = words[word] >>> offset;
+            if (offset + bits > 64) {
+                value |= words[word + 1] << (64 - offset);
+            }
+            out[i] = (int) ((value & mask) + base);
+        }
+    }
+
+    static void set(long[] words, int bits, int index, long value) {
+        if (bits == 0) {
+            return;
+        }
+        long bitPosition = (long) index * bits;
+        int word = (int) (bitPosition >>> 6);
+        int offset = (int) (bitPosition & 63);
+        long masked = value & mask(bits);
+        words[word] |= masked << offset;
+        if (offset + bits > 64) {
+            words[word + 1] |= masked >>> (64 - offset);
+        }
+    }
+
+    static long get(long[] words, int bits, int index) {
+        if (bits == 0) {
+            return 0;
+        }
+        long bitPosition = (long) index * bits;
+        int word = (int) (bitPosition >>> 6);
+        int offset = (int) (bitPosition & 63);
+        long value = words[word] >>> offset;
+        if (offset + bits > 64) {
+            value |= words[word + 1] << (64 - offset);
+        }
+        return value & mask(bits);
+    }
+
+    static int wordCount(int count, int bits) {
+        return (int) (((long) count * bits + 63) >>> 6);
+    }
+
+    private static long mask(int bits) {
+        return bits == 64 ? -1L : (1L << bits) - 1;
+    }
+}
@@ -0,0 +1,268 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * A block of energy data rows held column by column in primitive arrays.
+ * Sources and producers are stored as enum ordinals and states as
+ * {@link StateDictionary} ids, so scanning a batch creates no objects.
+ * Counties are stored as their id in the county dictionary plus one, leaving 0 for
+ * entries without a county.
+ * Batches are reused between segments during a scan and must not be retained.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class ColumnBatch {
+
+    /**
+     * Column flags used to request which columns a scan needs decoded.
+     */
+    public static final int YEAR = 1;
+    public static final int MONTH = 1 << 1;
+    public static final int STATE = 1 << 2;
+    public static final int SOURCE = 1 << 3;
+    public static final int PRODUCER = 1 << 4;
+    public static final int AMOUNT = 1 << 5;
+    public static final int PLANT = 1 << 7;
+    public static final int COUNTY = 1 << 8;
+    public static final int ALL_COLUMNS = YEAR | MONTH | STATE | SOURCE | PRODUCER | AMOUNT | PLANT | COUNTY;
+
+    /**
+     * Requests the store row id of every row; not part of {@link #ALL_COLUMNS}.
+     */
+    public static final int ROW_ID = 1 << 6;
+
+    private final int[] years;
+    private final int[] months;
+    private final int[] states;
+    private final int[] sources;
+    private final int[] producers;
+    private final double[] amounts;
+    private final int[] plants;
+    private final int[] counties;
+    private final int[] rowIds;
+    private int size;
+
+    /**
+     * Creates an empty batch able to hold the given number of rows.
+     *
+     * @param capacity the maximum number of rows
+     */
+    public ColumnBatch(int capacity) {
+        years = new int[capacity];
+        months = new int[capacity];
+        states = new int[capacity];
+        sources = new int[capacity];
+        producers = new int[capacity];
+        amounts = new double[capacity];
+        plants = new int[capacity];
+        counties = new int[capacity];
+        rowIds = new int[capacity];
+    }
+
+    /**
+     * Appends a row to the batch.
+     *
+     * @return the index of the row inside the batch
+     */
+    int add(int year, int month, int stateId, int source, int producer, double amount, int plant, int county) {
+        int row = size++;
+        years[row] = year;
+        months[row] = month;
+        states[row] = stateId;
+        sources[row] = source;
+        producers[row] = producer;
+        amounts[row] = amount;
+        plants[row] = plant;
+        counties[row] = county;
+        return row;
+    }
+
+    void setSize(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Removes tombstoned rows in place, keeping the order of the remaining rows.
+     *
+     * @param columns the column flags holding data
+     * @param deleted tombstones indexed by the offset of a row inside its segment
+     * @param rowOffsets the segment offset of every row of the batch, or {@code null} if row i has offset i
+     */
+    void removeDeleted(int columns, long[] deleted, int[] rowOffsets) {
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if (BitPacking.isSet(deleted, rowOffsets == null ? row : rowOffsets[row])) {
+                continue;
+            }
+            if (kept != row) {
+                move(columns, row, kept);
+            }
+            kept++;
+        }
+        size = kept;
+    }
+
+    private void move(int columns, int from, int to) {
+        if ((columns & YEAR) != 0) {
+            years[to] = years[from];
+        }
+        if ((columns & MONTH) != 0) {
+            months[to] = months[from];
+        }
+        if ((columns & STATE) != 0) {
+            states[to] = states[from];
+        }
+        if ((columns & SOURCE) != 0) {
+            sources[to] = sources[from];
+        }
+        if ((columns & PRODUCER) != 0) {
+            producers[to] = producers[from];
+        }
+        if ((columns & AMOUNT) != 0) {
+            amounts[to] = amounts[from];
+        }
+        if ((columns & PLANT) != 0) {
+            plants[to] = plants[from];
+        }
+        if ((columns & COUNTY) != 0) {
+            counties[to] = counties[from];
+        }
+        if ((columns & ROW_ID) != 0) {
+            rowIds[to] = rowIds[from];
+        }
+    }
+
+    /**
+     * Replaces the contents of this batch with the requested columns of another batch.
+     */
+    void copyFrom(ColumnBatch source, int columns) {
+        int count = source.size;
+        if ((columns & YEAR) != 0) {
+            System.arraycopy(source.years, 0, years, 0, count);
+        }
+        if ((columns & MONTH) != 0) {
+            System.arraycopy(source.months, 0, months, 0, count);
+        }
+        if ((columns & STATE) != 0) {
+            System.arraycopy(source.states, 0, states, 0, count);
+        }
+        if ((columns & SOURCE) != 0) {
+            System.arraycopy(source.sources, 0, sources, 0, count);
+        }
+        if ((columns & PRODUCER) != 0) {
+            System.arraycopy(source.producers, 0, producers, 0, count);
+        }
+        if ((columns & AMOUNT) != 0) {
+            System.arraycopy(source.amounts, 0, amounts, 0, count);
+        }
+        if ((columns & PLANT) != 0) {
+            System.arraycopy(source.plants, 0, plants, 0, count);
+        }
+        if ((columns & COUNTY) != 0) {
+            System.arraycopy(source.counties, 0, counties, 0, count);
+        }
+        if ((columns & ROW_ID) != 0) {
+            System.arraycopy(source.rowIds, 0, rowIds, 0, count);
+        }
+        size = count;
+    }
+
+    /**
+     * @return the number of valid rows in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the maximum number of rows the batch can hold
+     */
+    public int capacity() {
+        return amounts.length;
+    }
+
+    /**
+     * @return {@code true} if no more rows fit in the batch
+     */
+    public boolean isFull() {
+        return size == amounts.length;
+    }
+
+    /**
+     * @return the year column
+     */
+    public int[] years() {
+        return years;
+    }
+
+    /**
+     * @return the month column (1-12)
+     */
+    public int[] months() {
+        return months;
+    }
+
+    /**
+     * @return the state column as dictionary ids
+     */
+    public int[] states() {
+        return states;
+    }
+
+    /**
+     * @return the source column as {@link EnergySource} ordinals
+     */
+    public int[] sources() {
+        return sources;
+    }
+
+    /**
+     * @return the producer column as {@link EnergyProducer} ordinals
+     */
+    public int[] producers() {
+        return producers;
+    }
+
+    /**
+     * @return the amount column in MWh
+     */
+    public double[] amounts() {
+        return amounts;
+    }
+
+    /**
+     * @return the plant column, 0 for state-level entries
+     */
+    public int[] plants() {
+        return plants;
+    }
+
+    /**
+     * @return the county column as county dictionary ids plus one, 0 for entries without a county
+     */
+    public int[] counties() {
+        return counties;
+    }
+
+    /**
+     * @return the store row ids, filled only when {@link #ROW_ID} was requested
+     */
+    public int[] rowIds() {
+        return rowIds;
+    }
+
+    /**
+     * Materializes a single row as an {@link EnergyData} record.
+     *
+     * @param row the index of the row inside the batch
+     * @param dictionary the dictionary resolving state ids
+     * @param counties the dictionary resolving county ids
+     * @return the row as a record
+     */
+    public EnergyData toEnergyData(int row, StateDictionary dictionary, StateDictionary counties) {
+        int county = this.counties[row];
+        return new EnergyData(years[row], months[row], dictionary.state(states[row]),
+            EnergySource.values()[sources[row]], EnergyProducer.values()[producers[row]], amounts[row],
+            plants[row], county == 0 ? null : counties.state(county - 1));
+    }
+}
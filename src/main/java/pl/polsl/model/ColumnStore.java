@@ -0,0 +1,521 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Columnar in-memory store of energy data.
+ * New rows are appended to an uncompressed tail batch; once the tail holds
+ * {@link #SEGMENT_ROWS} rows it is sealed into an {@link EncodedSegment}.
+ * Row ids are dense and assigned in insertion order.
+ * <p>
+ * Deleted rows are tombstoned and skipped by scans. Once more than
+ * {@link #COMPACTION_THRESHOLD} of a sealed segment is deleted, a background thread
+ * re-encodes its live rows and swaps the compacted segment in. Row ids never change.
+ * <p>
+ * Writes are serialized on the store. Compaction is the only work that runs concurrently
+ * with scans: sealed segments are immutable and the segment list is copy-on-write, so
+ * scans take no lock and are never blocked by it. The tail, its zone map and the row
+ * cache are not guarded, so the store is read on the thread that writes it; another
+ * thread reads a {@link #snapshot()} taken on that thread instead.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class ColumnStore implements EnergyStore {
+
+    /**
+     * Number of rows per sealed segment.
+     */
+    public static final int SEGMENT_ROWS = 8192;
+
+    /**
+     * Share of deleted rows above which a sealed segment is compacted.
+     */
+    public static final double COMPACTION_THRESHOLD = 0.25;
+
+    private static final int FILE_MAGIC = 0x454E5247;
+    private static final int FILE_VERSION = 4;
+
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "energy-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final StateDictionary dictionary;
+    private final StateDictionary counties;
+    private final List<EncodedSegment> segments = new CopyOnWriteArrayList<>();
+    private final ColumnBatch tail = new ColumnBatch(SEGMENT_ROWS);
+    private final long[] tailDeleted = new long[SEGMENT_ROWS / Long.SIZE];
+    private int tailDeletedCount;
+    private SegmentSummary tailSummary = new SegmentSummary();
+    private volatile int deletedRows;
+    private final Set<Integer> pendingCompactions = ConcurrentHashMap.newKeySet();
+    private ColumnBatch writeBatch;
+
+    private EncodedSegment decodedFrom;
+    private ColumnBatch decodedSegment;
+
+    /**
+     * Creates an empty store.
+     */
+    public ColumnStore() {
+        this(new StateDictionary(), new StateDictionary());
+    }
+
+    /**
+     * Creates an empty store whose state and county ids come from existing dictionaries.
+     */
+    ColumnStore(StateDictionary dictionary, StateDictionary counties) {
+        this.dictionary = dictionary;
+        this.counties = counties;
+    }
+
+    /**
+     * Creates a heap copy of another store, for example to save an off-heap store to disk.
+     *
+     * @param source the store to copy
+     * @return the compressed copy
+     */
+    public static ColumnStore copyOf(EnergyStore source) {
+        ColumnStore copy = new ColumnStore();
+        source.forEach(copy::append);
+        return copy;
+    }
+
+    /**
+     * Shares the sealed segments, which are immutable, and copies the tail, the dictionaries
+     * and the tombstone counts, so a snapshot costs one segment of rows however large the store is.
+     */
+    @Override
+    public ColumnStore snapshot() {
+        return snapshot(dictionary.copy(), counties.copy());
+    }
+
+    /**
+     * Takes a snapshot whose state and county ids come from copies of the dictionaries made by the caller.
+     */
+    synchronized ColumnStore snapshot(StateDictionary dictionaryCopy, StateDictionary countiesCopy) {
+        ColumnStore copy = new ColumnStore(dictionaryCopy, countiesCopy);
+        copy.segments.addAll(segments);
+        copy.tail.copyFrom(tail, ColumnBatch.ALL_COLUMNS | ColumnBatch.ROW_ID);
+        System.arraycopy(tailDeleted, 0, copy.tailDeleted, 0, tailDeleted.length);
+        copy.tailDeletedCount = tailDeletedCount;
+        copy.tailSummary = tailSummary.copy();
+        copy.deletedRows = deletedRows;
+        return copy;
+    }
+
+    @Override
+    public int append(EnergyData data) {
+        return append(data.year(), data.month(), dictionary.idOf(data.state()),
+            data.source().ordinal(), data.producer().ordinal(), data.amount(), data.plant(),
+            data.county() == null ? 0 : counties.idOf(data.county()) + 1);
+    }
+
+    synchronized int append(int year, int month, int stateId, int source, int producer, double amount,
+            int plant, int county) {
+        int rowId = rowLimit();
+        tail.rowIds()[tail.add(year, month, stateId, source, producer, amount, plant, county)] = rowId;
+        tailSummary.include(year, month, stateId, source, producer, amount);
+        sealFullTail();
+        return rowId;
+    }
+
+    /**
+     * Appends a row that is deleted from the start, so that a copy of another store can
+     * give its live rows the same row ids; the zone map of the tail never sees it.
+     *
+     * @param data the row, assumed to be valid
+     */
+    synchronized void appendDeleted(EnergyData data) {
+        int offset = tail.add(data.year(), data.month(), dictionary.idOf(data.state()), data.source().ordinal(),
+            data.producer().ordinal(), data.amount(), data.plant(),
+            data.county() == null ? 0 : counties.idOf(data.county()) + 1);
+        tail.rowIds()[offset] = rowLimit() - 1;
+        BitPacking.setBit(tailDeleted, offset);
+        tailDeletedCount++;
+        deletedRows++;
+        sealFullTail();
+    }
+
+    private void sealFullTail() {
+        if (tail.isFull()) {
+            segments.add(EncodedSegment.encode(tail, tail.size(),
+                tailDeletedCount > 0 ? tailDeleted.clone() : null, tailDeletedCount));
+            if (tailDeletedCount > SEGMENT_ROWS * COMPACTION_THRESHOLD) {
+                scheduleCompaction(segments.size() - 1);
+            }
+            tail.setSize(0);
+            Arrays.fill(tailDeleted, 0);
+            tailDeletedCount = 0;
+            tailSummary = new SegmentSummary();
+        }
+    }
+
+    /**
+     * Replaces an amount in place. A row of the tail is overwritten directly; a sealed
+     * segment is immutable, so a new segment is swapped in that shares every column and
+     * carries the amount as a patch, and scans already running keep the old one.
+     * Patches are folded into the amount column by {@link #compact()}.
+     */
+    @Override
+    public synchronized double replaceAmount(int rowId, double amount) {
+        checkLive(rowId);
+        int segment = rowId / SEGMENT_ROWS;
+        int offset = rowId % SEGMENT_ROWS;
+        if (segment == segments.size()) {
+            double[] amounts = tail.amounts();
+            double previous = amounts[offset];
+            amounts[offset] = amount;
+            if (tailSummary.replaceAmount(previous, amount)) {
+                tailSummary = SegmentSummary.of(tail, tail.size(), tailDeletedCount > 0 ? tailDeleted : null);
+            }
+            return previous;
+        }
+        EncodedSegment.AmountReplacement replacement =
+            segments.get(segment).withAmount(offset, amount, writeBatch());
+        segments.set(segment, replacement.segment());
+        return replacement.previousAmount();
+    }
+
+    /**
+     * Tombstones a row. The zone map of its segment is rebuilt from the remaining live rows,
+     * and a sealed segment crossing {@link #COMPACTION_THRESHOLD} is queued for compaction.
+     */
+    @Override
+    public synchronized boolean delete(int rowId) {
+        if (rowId < 0 || rowId >= rowLimit()) {
+            throw new IndexOutOfBoundsException(rowId);
+        }
+        int segment = rowId / SEGMENT_ROWS;
+        int offset = rowId % SEGMENT_ROWS;
+        if (segment == segments.size()) {
+            if (BitPacking.isSet(tailDeleted, offset)) {
+                return false;
+            }
+            BitPacking.setBit(tailDeleted, offset);
+            tailDeletedCount++;
+            tailSummary = SegmentSummary.of(tail, tail.size(), tailDeleted);
+        } else {
+            EncodedSegment sealed = segments.get(segment);
+            if (sealed.isDeleted(offset)) {
+                return false;
+            }
+            EncodedSegment marked = sealed.withDeleted(offset, writeBatch());
+            segments.set(segment, marked);
+            if (marked.deletedCount() > marked.size() * COMPACTION_THRESHOLD) {
+                scheduleCompaction(segment);
+            }
+        }
+        deletedRows++;
+        return true;
+    }
+
+    @Override
+    public boolean isDeleted(int rowId) {
+        if (rowId < 0 || rowId >= rowLimit()) {
+            throw new IndexOutOfBoundsException(rowId);
+        }
+        int segment = rowId / SEGMENT_ROWS;
+        int offset = rowId % SEGMENT_ROWS;
+        if (segment == segments.size()) {
+            return BitPacking.isSet(tailDeleted, offset);
+        }
+        return segments.get(segment).isDeleted(offset);
+    }
+
+    /**
+     * Compacts every sealed segment holding deleted rows or replaced amounts on the
+     * calling thread, regardless of {@link #COMPACTION_THRESHOLD}, for example before saving.
+     */
+    public void compact() {
+        for (int segment = 0; segment < segments.size(); segment++) {
+            compactSegment(segment);
+        }
+    }
+
+    private void scheduleCompaction(int segment) {
+        if (pendingCompactions.add(segment)) {
+            COMPACTOR.execute(() -> {
+                pendingCompactions.remove(segment);
+                compactSegment(segment);
+            });
+        }
+    }
+
+    /**
+     * Re-encodes the live rows of a segment without holding the lock, then swaps the result in
+     * unless a write replaced the segment meanwhile, in which case compaction is retried.
+     */
+    void compactSegment(int segment) {
+        EncodedSegment sealed = segments.get(segment);
+        if (!sealed.hasDeletes() && !sealed.hasAmountPatches()) {
+            return;
+        }
+        EncodedSegment compacted = sealed.compact(new ColumnBatch(SEGMENT_ROWS));
+        synchronized (this) {
+            if (segments.get(segment) == sealed) {
+                segments.set(segment, compacted);
+            } else {
+                scheduleCompaction(segment);
+            }
+        }
+    }
+
+    /**
+     * @return the number of live rows
+     */
+    @Override
+    public int size() {
+        return rowLimit() - deletedRows;
+    }
+
+    /**
+     * @return the number of row ids assigned so far, deleted rows included
+     */
+    private int rowLimit() {
+        return segments.size() * SEGMENT_ROWS + tail.size();
+    }
+
+    @Override
+    public int rowIdAt(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException(position);
+        }
+        if (deletedRows == 0) {
+            return position;
+        }
+        int remaining = position;
+        int firstRowId = 0;
+        for (EncodedSegment segment : segments) {
+            int live = segment.summary().getRowCount();
+            if (remaining < live) {
+                return firstRowId + segment.liveOffset(remaining);
+            }
+            remaining -= live;
+            firstRowId += SEGMENT_ROWS;
+        }
+        for (int offset = 0; offset < tail.size(); offset++) {
+            if (!BitPacking.isSet(tailDeleted, offset) && remaining-- == 0) {
+                return firstRowId + offset;
+            }
+        }
+        throw new IndexOutOfBoundsException(position);
+    }
+
+    private void checkLive(int rowId) {
+        if (isDeleted(rowId)) {
+            throw new NoSuchElementException("Row " + rowId + " has been deleted");
+        }
+    }
+
+    private ColumnBatch writeBatch() {
+        if (writeBatch == null) {
+            writeBatch = new ColumnBatch(SEGMENT_ROWS);
+        }
+        return writeBatch;
+    }
+
+    @Override
+    public StateDictionary dictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public StateDictionary counties() {
+        return counties;
+    }
+
+    /**
+     * Visits every segment of the store, sealed segments first and the tail last.
+     * Segments without live rows are skipped; segments with tombstones are never
+     * offered in encoded form, since encoded aggregations would count deleted rows.
+     */
+    @Override
+    public void scan(int columns, SegmentVisitor visitor) {
+        ColumnBatch batch = null;
+        int firstRowId = -SEGMENT_ROWS;
+        for (EncodedSegment segment : segments) {
+            firstRowId += SEGMENT_ROWS;
+            if (segment.summary().getRowCount() == 0 || !visitor.accept(segment.summary())
+                    || (!segment.hasDeletes() && visitor.visitEncoded(segment))) {
+                continue;
+            }
+            if (batch == null) {
+                batch = new ColumnBatch(SEGMENT_ROWS);
+            }
+            segment.decode(columns, batch, firstRowId);
+            visitor.visit(batch);
+        }
+        if (tail.size() > tailDeletedCount && visitor.accept(tailSummary)) {
+            if (tailDeletedCount == 0) {
+                visitor.visit(tail);
+                return;
+            }
+            if (batch == null) {
+                batch = new ColumnBatch(SEGMENT_ROWS);
+            }
+            batch.copyFrom(tail, columns);
+            batch.removeDeleted(columns, tailDeleted, null);
+            visitor.visit(batch);
+        }
+    }
+
+    /**
+     * Materializes a single row. Consecutive reads from the same segment decode it only once.
+     */
+    @Override
+    public EnergyData row(int rowId) {
+        checkLive(rowId);
+        int segment = rowId / SEGMENT_ROWS;
+        int offset = rowId % SEGMENT_ROWS;
+        if (segment == segments.size()) {
+            return tail.toEnergyData(offset, dictionary, counties);
+        }
+        EncodedSegment sealed = segments.get(segment);
+        if (sealed != decodedFrom) {
+            if (decodedSegment == null) {
+                decodedSegment = new ColumnBatch(SEGMENT_ROWS);
+            }
+            sealed.decodeStored(ColumnBatch.ALL_COLUMNS, decodedSegment);
+            decodedFrom = sealed;
+        }
+        return decodedSegment.toEnergyData(sealed.storedIndex(offset), dictionary, counties);
+    }
+
+    /**
+     * Iterates over all live rows in insertion order, decoding one segment at a time.
+     */
+    @Override
+    public Iterator<EnergyData> iterator() {
+        return new Iterator<>() {
+            private final ColumnBatch batch = new ColumnBatch(SEGMENT_ROWS);
+            private int segment = -1;
+            private ColumnBatch current;
+            private int offset;
+
+            @Override
+            public boolean hasNext() {
+                while (current == null || offset >= current.size()) {
+                    if (segment >= segments.size()) {
+                        return false;
+                    }
+                    segment++;
+                    offset = 0;
+                    if (segment < segments.size()) {
+                        segments.get(segment).decode(ColumnBatch.ALL_COLUMNS, batch);
+                        current = batch;
+                    } else if (tailDeletedCount == 0) {
+                        current = tail;
+                    } else {
+                        batch.copyFrom(tail, ColumnBatch.ALL_COLUMNS);
+                        batch.removeDeleted(ColumnBatch.ALL_COLUMNS, tailDeleted, null);
+                        current = batch;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public EnergyData next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.toEnergyData(offset++, dictionary, counties);
+            }
+        };
+    }
+
+    @Override
+    public long sizeInBytes() {
+        long bytes = dictionary.sizeInBytes() + counties.sizeInBytes();
+        for (EncodedSegment segment : segments) {
+            bytes += segment.sizeInBytes();
+        }
+        return bytes + (long) tail.capacity() * (7 * Integer.BYTES + Double.BYTES);
+    }
+
+    /**
+     * Heap stores hold no native resources; their memory is reclaimed by the garbage collector.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Writes the store to a file using the same compressed encodings as in memory.
+     * Tombstones and compacted segments are written as they are, so row ids survive a reload.
+     *
+     * @param file the target file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            dictionary.writeTo(out);
+            counties.writeTo(out);
+            out.writeInt(segments.size());
+            for (EncodedSegment segment : segments) {
+                segment.writeTo(out);
+            }
+            EncodedSegment.encode(tail, tail.size(), tailDeleted, tailDeletedCount).writeTo(out);
+        }
+    }
+
+    /**
+     * Reads a store written by {@link #writeTo(Path)}.
+     *
+     * @param file the source file
+     * @return the loaded store
+     * @throws IOException if the file cannot be read or has an unknown format
+     */
+    public static ColumnStore readFrom(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt() == FILE_MAGIC ? in.readInt() : -1;
+            if (version < 2 || version > FILE_VERSION) {
+                throw new IOException("Not an energy data file: " + file);
+            }
+            boolean withTombstones = version >= 3;
+            boolean withPlants = version >= 4;
+            StateDictionary dictionary = StateDictionary.readFrom(in);
+            ColumnStore store = new ColumnStore(dictionary,
+                withPlants ? StateDictionary.readFrom(in) : new StateDictionary());
+            int segmentCount = in.readInt();
+            int deletedRows = 0;
+            for (int i = 0; i < segmentCount; i++) {
+                EncodedSegment segment = EncodedSegment.readFrom(in, withTombstones, withPlants);
+                store.segments.add(segment);
+                deletedRows += SEGMENT_ROWS - segment.summary().getRowCount();
+            }
+            EncodedSegment tail = EncodedSegment.readFrom(in, withTombstones, withPlants);
+            tail.decodeStored(ColumnBatch.ALL_COLUMNS, store.tail);
+            for (int offset = 0; offset < store.tail.size(); offset++) {
+                store.tail.rowIds()[offset] = segmentCount * SEGMENT_ROWS + offset;
+            }
+            if (tail.hasDeletes()) {
+                System.arraycopy(tail.deletedBitmap(), 0, store.tailDeleted, 0, store.tailDeleted.length);
+                store.tailDeletedCount = tail.deletedCount();
+            }
+            store.tailSummary = SegmentSummary.of(store.tail, store.tail.size(), store.tailDeleted);
+            store.deletedRows = deletedRows + store.tailDeletedCount;
+            return store;
+        }
+    }
+}
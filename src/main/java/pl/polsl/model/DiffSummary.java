@@ -0,0 +1,39 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.Map;
+
+/**
+ * Counts of the keys that differ between two versions of the data and the change of the
+ * totals they cause, as returned by {@link Model#diff(Model, long, DiffVisitor)}. Every
+ * delta is the newer total minus the older one; groups whose total did not move are left out.
+ *
+ * @param inserted the number of keys only the newer version holds
+ * @param removed the number of keys only the older version holds
+ * @param changed the number of keys whose amount was revised
+ * @param unchanged the number of keys with the same amount in both versions
+ * @param totalDelta the change of the total of all rows in MWh
+ * @param stateDeltas the change of the total per state, ordered by state code
+ * @param sourceDeltas the change of the total per energy source
+ * @param yearDeltas the change of the total per year, ordered by year
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public record DiffSummary(
+    long inserted,
+    long removed,
+    long changed,
+    long unchanged,
+    double totalDelta,
+    Map<String, Double> stateDeltas,
+    Map<EnergySource, Double> sourceDeltas,
+    Map<Integer, Double> yearDeltas
+) {
+
+    /**
+     * @return {@code true} if both versions hold the same keys with the same amounts
+     */
+    public boolean isEmpty() {
+        return inserted == 0 && removed == 0 && changed == 0;
+    }
+}
@@ -0,0 +1,39 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Callback receiving the rows that differ between two versions of the data compared by
+ * {@link Model#diff(Model, long, DiffVisitor)}, one at a time, so that revisions touching
+ * millions of rows are never held in memory at once. Rows carry their key and amount only;
+ * the county is not part of the key and is left {@code null}. Partitions are compared in
+ * parallel, so calls come from pool threads, but never two at once.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public interface DiffVisitor {
+
+    /**
+     * Receives a row whose key only the newer version holds.
+     *
+     * @param row the added row
+     */
+    default void inserted(EnergyData row) {
+    }
+
+    /**
+     * Receives a row whose key only the older version holds.
+     *
+     * @param row the removed row
+     */
+    default void removed(EnergyData row) {
+    }
+
+    /**
+     * Receives a key whose amount was revised.
+     *
+     * @param before the row in the older version
+     * @param after the row in the newer version
+     */
+    default void changed(EnergyData before, EnergyData after) {
+    }
+}
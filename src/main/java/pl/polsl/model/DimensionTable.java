@@ -0,0 +1,301 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reference table with one row per state code, such as population or installed
+ * capacity, to join with the energy data in {@link Model#getEnergyPer}. Every attribute
+ * is either numeric, kept as a {@code double} column, or text, kept as codes into a
+ * list of distinct labels.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class DimensionTable {
+
+    private final String[] states;
+    private final String[] attributes;
+
+    /**
+     * Numeric columns by attribute, {@code null} for text attributes. Empty cells are {@code NaN}.
+     */
+    private final double[][] numbers;
+
+    /**
+     * Text columns by attribute as codes into {@link #labels}, {@code null} for numeric attributes.
+     */
+    private final int[][] codes;
+    private final String[][] labels;
+
+    private DimensionTable(String[] states, String[] attributes, double[][] numbers, int[][] codes,
+            String[][] labels) {
+        this.states = states;
+        this.attributes = attributes;
+        this.numbers = numbers;
+        this.codes = codes;
+        this.labels = labels;
+    }
+
+    /**
+     * Reads a table from a CSV file whose header names the state column first and the
+     * attributes after it, for example {@code state,population,region}. Fields may be
+     * quoted as in RFC 4180. A column is numeric if every non-empty value in it is a number.
+     *
+     * @param file the CSV file
+     * @return the table
+     * @throws IOException if the file cannot be read, a row has the wrong number of
+     *                     fields or a state is empty or repeated
+     */
+    public static DimensionTable read(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(reader, file.toString());
+        }
+    }
+
+    /**
+     * Reads a table from CSV text.
+     *
+     * @param csv the CSV text
+     * @return the table
+     * @throws IOException if the text is not a valid table
+     * @see #read(Path)
+     */
+    public static DimensionTable parse(String csv) throws IOException {
+        return read(new BufferedReader(new StringReader(csv)), "CSV text");
+    }
+
+    private static DimensionTable read(BufferedReader reader, String source) throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IOException("Dimension table " + source + " is empty");
+        }
+        List<String> names = fields(header);
+        if (names.isEmpty() || names.get(0).isBlank()) {
+            throw new IOException("Dimension table " + source + " has no state column");
+        }
+        String[] attributes = names.subList(1, names.size()).toArray(String[]::new);
+        List<String> states = new ArrayList<>();
+        List<String[]> rows = new ArrayList<>();
+        Map<String, Integer> seen = new HashMap<>();
+        String line;
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = fields(line);
+            if (fields.size() != names.size()) {
+                throw new IOException(source + " line " + lineNumber + " has " + fields.size()
+                    + " fields instead of " + names.size());
+            }
+            String state = fields.get(0).trim();
+            if (state.isEmpty()) {
+                throw new IOException(source + " line " + lineNumber + " has an empty state");
+            }
+            if (seen.put(state, rows.size()) != null) {
+                throw new IOException(source + " line " + lineNumber + " repeats state " + state);
+            }
+            states.add(state);
+            rows.add(fields.subList(1, fields.size()).toArray(String[]::new));
+        }
+
+        double[][] numbers = new double[attributes.length][];
+        int[][] codes = new int[attributes.length][];
+        String[][] labels = new String[attributes.length][];
+        for (int column = 0; column < attributes.length; column++) {
+            double[] values = numericColumn(rows, column);
+            if (values != null) {
+                numbers[column] = values;
+                continue;
+            }
+            Map<String, Integer> ids = new HashMap<>();
+            List<String> distinct = new ArrayList<>();
+            codes[column] = new int[rows.size()];
+            for (int row = 0; row < rows.size(); row++) {
+                String label = rows.get(row)[column].trim();
+                codes[column][row] = ids.computeIfAbsent(label, key -> {
+                    distinct.add(key);
+                    return distinct.size() - 1;
+                });
+            }
+            labels[column] = distinct.toArray(String[]::new);
+        }
+        return new DimensionTable(states.toArray(String[]::new), attributes, numbers, codes, labels);
+    }
+
+    /**
+     * @return the values of a column, or {@code null} if it holds text
+     */
+    private static double[] numericColumn(List<String[]> rows, int column) {
+        double[] values = new double[rows.size()];
+        for (int row = 0; row < values.length; row++) {
+            String value = rows.get(row)[column].trim();
+            if (value.isEmpty()) {
+                values[row] = Double.NaN;
+                continue;
+            }
+            try {
+                values[row] = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Splits a CSV line into fields, removing RFC 4180 quotes.
+     */
+    private static List<String> fields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * @return the number of states in the table
+     */
+    public int size() {
+        return states.length;
+    }
+
+    /**
+     * @param row a row of the table
+     * @return the state code of the row
+     */
+    public String getState(int row) {
+        return states[row];
+    }
+
+    /**
+     * @return the attribute names, without the state column
+     */
+    public List<String> getAttributes() {
+        return List.of(attributes);
+    }
+
+    /**
+     * @param attribute an attribute name
+     * @return whether the attribute holds numbers
+     * @throws IllegalArgumentException if the table has no such attribute
+     */
+    public boolean isNumeric(String attribute) {
+        return numbers[column(attribute)] != null;
+    }
+
+    /**
+     * Returns the values of a numeric attribute by row, {@code NaN} where the cell is empty.
+     *
+     * @param attribute a numeric attribute
+     * @return a copy of the values
+     * @throws IllegalArgumentException if the attribute does not exist or holds text
+     */
+    public double[] getNumbers(String attribute) {
+        int column = column(attribute);
+        if (numbers[column] == null) {
+            throw new IllegalArgumentException("Attribute " + attribute + " is not numeric");
+        }
+        return numbers[column].clone();
+    }
+
+    /**
+     * Returns the codes of a text attribute by row, indexes into {@link #getLabels(String)}.
+     *
+     * @param attribute a text attribute
+     * @return a copy of the codes
+     * @throws IllegalArgumentException if the attribute does not exist or holds numbers
+     */
+    int[] getCodes(String attribute) {
+        return codes[textColumn(attribute)].clone();
+    }
+
+    /**
+     * @param attribute a text attribute
+     * @return the distinct values of the attribute, in order of first appearance
+     * @throws IllegalArgumentException if the attribute does not exist or holds numbers
+     */
+    public List<String> getLabels(String attribute) {
+        return List.of(labels[textColumn(attribute)]);
+    }
+
+    /**
+     * Writes the table as CSV text that {@link #parse(String)} reads back into an equal
+     * table, with fields quoted where they hold a comma or a quote.
+     *
+     * @return the CSV text
+     */
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder("state");
+        for (String attribute : attributes) {
+            csv.append(',').append(quoted(attribute));
+        }
+        for (int row = 0; row < states.length; row++) {
+            csv.append('\n').append(quoted(states[row]));
+            for (int column = 0; column < attributes.length; column++) {
+                csv.append(',');
+                if (numbers[column] == null) {
+                    csv.append(quoted(labels[column][codes[column][row]]));
+                } else if (!Double.isNaN(numbers[column][row])) {
+                    csv.append(numbers[column][row]);
+                }
+            }
+        }
+        return csv.append('\n').toString();
+    }
+
+    private static String quoted(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    private int textColumn(String attribute) {
+        int column = column(attribute);
+        if (codes[column] == null) {
+            throw new IllegalArgumentException("Attribute " + attribute + " is not text");
+        }
+        return column;
+    }
+
+    private int column(String attribute) {
+        int column = Arrays.asList(attributes).indexOf(attribute);
+        if (column < 0) {
+            throw new IllegalArgumentException("Dimension table has no attribute " + attribute);
+        }
+        return column;
+    }
+}
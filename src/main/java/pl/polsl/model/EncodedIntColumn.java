@@ -0,0 +1,113 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A compressed, immutable column of small integers such as years, months,
+ * enum ordinals or state dictionary ids.
+ * Counting and summing by value can run directly on the encoded form.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+interface EncodedIntColumn {
+
+    /**
+     * @return the number of values in the column
+     */
+    int size();
+
+    /**
+     * @param index the row index
+     * @return the value at the given row
+     */
+    int get(int index);
+
+    /**
+     * Decodes all values into {@code out}.
+     */
+    void decode(int[] out);
+
+    /**
+     * Adds the number of occurrences of every value to {@code counts[value]}.
+     */
+    void countByValue(long[] counts);
+
+    /**
+     * Adds {@code amounts[i]} to {@code sums[value(i)]} for every row.
+     */
+    void sumByValue(double[] amounts, double[] sums);
+
+    /**
+     * @return the number of bytes the encoded column occupies
+     */
+    long sizeInBytes();
+
+    /**
+     * Writes the column, prefixed by its encoding tag.
+     */
+    void writeTo(DataOutput out) throws IOException;
+
+    /**
+     * Encodes {@code values[0..count)} choosing run-length encoding when the
+     * data has long runs and plain bit-packing otherwise.
+     *
+     * @return the smaller of the two encodings
+     */
+    static EncodedIntColumn encode(int[] values, int count) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int runs = 0;
+        int longestRun = 0;
+        int currentRun = 0;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+            if (i == 0 || values[i] != values[i - 1]) {
+                runs++;
+                currentRun = 0;
+            }
+            longestRun = Math.max(longestRun, ++currentRun);
+        }
+        if (count == 0) {
+            min = 0;
+            max = 0;
+        }
+        int valueBits = BitPacking.bitsRequired((long) max - min);
+        long packedBits = (long) count * valueBits;
+        long runLengthBits = (long) runs * (valueBits + BitPacking.bitsRequired(longestRun - 1L));
+        if (runLengthBits < packedBits) {
+            return RunLengthIntColumn.encode(values, count, min, valueBits);
+        }
+        return BitPackedIntColumn.encode(values, count, min, valueBits);
+    }
+
+    /**
+     * Reads a column written by {@link #writeTo(DataOutput)}.
+     */
+    static EncodedIntColumn readFrom(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        return switch (tag) {
+            case BitPackedIntColumn.TAG -> BitPackedIntColumn.readFrom(in);
+            case RunLengthIntColumn.TAG -> RunLengthIntColumn.readFrom(in);
+            default -> throw new IOException("Unknown column encoding: " + tag);
+        };
+    }
+
+    static void writeWords(DataOutput out, long[] words) throws IOException {
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    static long[] readWords(DataInput in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return words;
+    }
+}
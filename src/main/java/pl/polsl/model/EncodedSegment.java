@@ -0,0 +1,455 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An immutable, compressed block of rows.
+ * Ordinal columns are run-length or bit-packed, whichever is smaller, the state
+ * column holds bit-packed dictionary ids and amounts are XOR compressed.
+ * Plant and county ids use the integer encodings too, so state-level data
+ * without them costs one run per column.
+ * The in-memory layout is also the on-disk layout.
+ * <p>
+ * Deleted rows are marked in a tombstone bitmap indexed by the offset of the row
+ * inside its segment; decoding drops them, and the zone map only covers live rows.
+ * Compaction re-encodes the live rows and keeps their original offsets, so row ids
+ * stay stable. Deleting or compacting returns a new segment and never changes this one.
+ * <p>
+ * Replaced amounts are kept as patches next to the XOR compressed column, so an update
+ * does not re-encode it; decoding applies the patches. Compaction, saving, and an update
+ * beyond {@link #MAX_AMOUNT_PATCHES} patches fold them into a newly encoded column.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class EncodedSegment {
+
+    /**
+     * Number of replaced amounts a segment keeps as patches before it re-encodes its amount column.
+     */
+    static final int MAX_AMOUNT_PATCHES = 128;
+
+    private final SegmentSummary summary;
+    private final EncodedIntColumn years;
+    private final EncodedIntColumn months;
+    private final EncodedIntColumn states;
+    private final EncodedIntColumn sources;
+    private final EncodedIntColumn producers;
+    private final GorillaDoubleColumn amounts;
+    private final EncodedIntColumn plants;
+    private final EncodedIntColumn counties;
+    private final int[] rowOffsets;
+    private final long[] deleted;
+    private final int deletedCount;
+    private final int[] patchedIndexes;
+    private final double[] patchedAmounts;
+
+    private EncodedSegment(SegmentSummary summary, EncodedIntColumn years, EncodedIntColumn months,
+            EncodedIntColumn states, EncodedIntColumn sources, EncodedIntColumn producers,
+            GorillaDoubleColumn amounts, EncodedIntColumn plants, EncodedIntColumn counties, int[] rowOffsets,
+            long[] deleted, int deletedCount) {
+        this(summary, years, months, states, sources, producers, amounts, plants, counties, rowOffsets,
+            deleted, deletedCount, null, null);
+    }
+
+    /**
+     * @param patchedIndexes the stored indexes of replaced amounts in ascending order, or {@code null}
+     * @param patchedAmounts the replacing amounts, parallel to {@code patchedIndexes}
+     */
+    private EncodedSegment(SegmentSummary summary, EncodedIntColumn years, EncodedIntColumn months,
+            EncodedIntColumn states, EncodedIntColumn sources, EncodedIntColumn producers,
+            GorillaDoubleColumn amounts, EncodedIntColumn plants, EncodedIntColumn counties, int[] rowOffsets,
+            long[] deleted, int deletedCount, int[] patchedIndexes, double[] patchedAmounts) {
+        this.summary = summary;
+        this.years = years;
+        this.months = months;
+        this.states = states;
+        this.sources = sources;
+        this.producers = producers;
+        this.amounts = amounts;
+        this.plants = plants;
+        this.counties = counties;
+        this.rowOffsets = rowOffsets;
+        this.deleted = deleted;
+        this.deletedCount = deletedCount;
+        this.patchedIndexes = patchedIndexes;
+        this.patchedAmounts = patchedAmounts;
+    }
+
+    /**
+     * Compresses the first {@code count} rows of a batch.
+     */
+    static EncodedSegment encode(ColumnBatch batch, int count) {
+        return encode(batch, count, null, 0);
+    }
+
+    /**
+     * Compresses the first {@code count} rows of a batch, keeping their tombstones.
+     *
+     * @param deleted tombstones by row offset, or {@code null} if no row is deleted
+     * @param deletedCount the number of tombstones set
+     */
+    static EncodedSegment encode(ColumnBatch batch, int count, long[] deleted, int deletedCount) {
+        return encode(batch, count, null, deleted, deletedCount);
+    }
+
+    private static EncodedSegment encode(ColumnBatch batch, int count, int[] rowOffsets,
+            long[] deleted, int deletedCount) {
+        return new EncodedSegment(
+            SegmentSummary.of(batch, count, deleted),
+            EncodedIntColumn.encode(batch.years(), count),
+            EncodedIntColumn.encode(batch.months(), count),
+            EncodedIntColumn.encode(batch.states(), count),
+            EncodedIntColumn.encode(batch.sources(), count),
+            EncodedIntColumn.encode(batch.producers(), count),
+            GorillaDoubleColumn.encode(batch.amounts(), count),
+            EncodedIntColumn.encode(batch.plants(), count),
+            EncodedIntColumn.encode(batch.counties(), count),
+            rowOffsets, deletedCount > 0 ? deleted : null, deletedCount);
+    }
+
+    /**
+     * @return the zone map of the segment
+     */
+    public SegmentSummary summary() {
+        return summary;
+    }
+
+    /**
+     * @return the number of rows stored in the segment, including tombstoned ones
+     */
+    public int size() {
+        return amounts.size();
+    }
+
+    /**
+     * @return the number of stored rows marked as deleted
+     */
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * @return {@code true} if some stored rows are marked as deleted, so encoded-form
+     *         aggregations such as {@link #countSources(long[])} would count them
+     */
+    public boolean hasDeletes() {
+        return deletedCount > 0;
+    }
+
+    /**
+     * Decodes the requested columns of the live rows into a batch.
+     *
+     * @param columns a combination of {@link ColumnBatch} column flags
+     * @param batch the batch to fill, its other columns are left untouched
+     */
+    public void decode(int columns, ColumnBatch batch) {
+        decode(columns, batch, 0);
+    }
+
+    /**
+     * Decodes the live rows; requested row ids are {@code firstRowId} plus the row offset.
+     */
+    void decode(int columns, ColumnBatch batch, int firstRowId) {
+        decodeStored(columns, batch);
+        if ((columns & ColumnBatch.ROW_ID) != 0) {
+            int[] rowIds = batch.rowIds();
+            for (int i = 0; i < size(); i++) {
+                rowIds[i] = firstRowId + (rowOffsets == null ? i : rowOffsets[i]);
+            }
+        }
+        if (deleted != null) {
+            batch.removeDeleted(columns, deleted, rowOffsets);
+        }
+    }
+
+    /**
+     * Decodes every stored row, tombstoned ones included.
+     */
+    void decodeStored(int columns, ColumnBatch batch) {
+        if ((columns & ColumnBatch.YEAR) != 0) {
+            years.decode(batch.years());
+        }
+        if ((columns & ColumnBatch.MONTH) != 0) {
+            months.decode(batch.months());
+        }
+        if ((columns & ColumnBatch.STATE) != 0) {
+            states.decode(batch.states());
+        }
+        if ((columns & ColumnBatch.SOURCE) != 0) {
+            sources.decode(batch.sources());
+        }
+        if ((columns & ColumnBatch.PRODUCER) != 0) {
+            producers.decode(batch.producers());
+        }
+        if ((columns & ColumnBatch.AMOUNT) != 0) {
+            decodeAmounts(batch.amounts());
+        }
+        if ((columns & ColumnBatch.PLANT) != 0) {
+            plants.decode(batch.plants());
+        }
+        if ((columns & ColumnBatch.COUNTY) != 0) {
+            counties.decode(batch.counties());
+        }
+        batch.setSize(size());
+    }
+
+    /**
+     * Decodes the amounts of every stored row, with the patches applied.
+     */
+    private void decodeAmounts(double[] out) {
+        amounts.decode(out);
+        if (patchedIndexes != null) {
+            for (int i = 0; i < patchedIndexes.length; i++) {
+                out[patchedIndexes[i]] = patchedAmounts[i];
+            }
+        }
+    }
+
+    /**
+     * @return the amount column with the patches folded in
+     */
+    private GorillaDoubleColumn foldedAmounts() {
+        if (patchedIndexes == null) {
+            return amounts;
+        }
+        double[] values = new double[size()];
+        decodeAmounts(values);
+        return GorillaDoubleColumn.encode(values, size());
+    }
+
+    /**
+     * @return {@code true} if some amounts were replaced and not yet folded into the amount column
+     */
+    boolean hasAmountPatches() {
+        return patchedIndexes != null;
+    }
+
+    /**
+     * @param offset the offset of a row inside the segment
+     * @return the index of the row among the stored rows, or a negative value if compaction removed it
+     */
+    int storedIndex(int offset) {
+        return rowOffsets == null ? offset : Arrays.binarySearch(rowOffsets, offset);
+    }
+
+    /**
+     * @param offset the offset of a row inside the segment
+     * @return {@code true} if the row is tombstoned or was removed by compaction
+     */
+    boolean isDeleted(int offset) {
+        int index = storedIndex(offset);
+        return index < 0 || index >= size() || (deleted != null && BitPacking.isSet(deleted, offset));
+    }
+
+    /**
+     * @return the tombstone bitmap by row offset, or {@code null} if no row is deleted
+     */
+    long[] deletedBitmap() {
+        return deleted;
+    }
+
+    /**
+     * Returns the offset of the {@code position}-th live row of the segment.
+     */
+    int liveOffset(int position) {
+        int remaining = position;
+        for (int i = 0; i < size(); i++) {
+            int offset = rowOffsets == null ? i : rowOffsets[i];
+            if ((deleted == null || !BitPacking.isSet(deleted, offset)) && remaining-- == 0) {
+                return offset;
+            }
+        }
+        throw new IndexOutOfBoundsException(position);
+    }
+
+    /**
+     * Returns a copy of this segment with one more row tombstoned and its zone map rebuilt from the live rows.
+     *
+     * @param offset the offset of the row to delete, which must be live
+     * @param scratch a batch of at least {@link #size()} rows
+     */
+    EncodedSegment withDeleted(int offset, ColumnBatch scratch) {
+        long[] tombstones = deleted == null ? new long[ColumnStore.SEGMENT_ROWS / Long.SIZE] : deleted.clone();
+        BitPacking.setBit(tombstones, offset);
+        EncodedSegment marked = new EncodedSegment(summary, years, months, states, sources, producers,
+            amounts, plants, counties, rowOffsets, tombstones, deletedCount + 1, patchedIndexes, patchedAmounts);
+        marked.decode(ColumnBatch.ALL_COLUMNS, scratch);
+        return new EncodedSegment(SegmentSummary.of(scratch, scratch.size()), years, months, states,
+            sources, producers, amounts, plants, counties, rowOffsets, tombstones, deletedCount + 1,
+            patchedIndexes, patchedAmounts);
+    }
+
+    /**
+     * Re-encodes the live rows only, dropping tombstoned rows but keeping the offsets of the
+     * others, and folds replaced amounts into the amount column.
+     *
+     * @param scratch a batch of at least {@link #size()} rows
+     * @return the compacted segment, or this segment if no row is deleted and no amount patched
+     */
+    EncodedSegment compact(ColumnBatch scratch) {
+        if (deleted == null && patchedIndexes == null) {
+            return this;
+        }
+        if (deleted == null) {
+            return new EncodedSegment(summary, years, months, states, sources, producers, foldedAmounts(),
+                plants, counties, rowOffsets, null, 0);
+        }
+        decode(ColumnBatch.ALL_COLUMNS | ColumnBatch.ROW_ID, scratch, 0);
+        return encode(scratch, scratch.size(), Arrays.copyOf(scratch.rowIds(), scratch.size()), null, 0);
+    }
+
+    /**
+     * Result of replacing one amount: the rewritten segment and the amount it replaced.
+     */
+    record AmountReplacement(EncodedSegment segment, double previousAmount) {
+    }
+
+    /**
+     * Returns a copy of this segment with the amount of one live row replaced. The new amount
+     * becomes a patch and every column is shared; only once {@link #MAX_AMOUNT_PATCHES} is
+     * exceeded is the amount column re-encoded with the patches folded in. The zone map is
+     * corrected, which decodes the amounts only if the replaced amount was an extreme.
+     *
+     * @param offset the offset of the row inside the segment
+     * @param amount the new amount
+     * @param scratch a batch of at least {@link #size()} rows
+     */
+    AmountReplacement withAmount(int offset, double amount, ColumnBatch scratch) {
+        int index = storedIndex(offset);
+        int patch = patchedIndexes == null ? -1 : Arrays.binarySearch(patchedIndexes, index);
+        double previous = patch >= 0 ? patchedAmounts[patch] : amounts.get(index);
+        int[] newIndexes;
+        double[] newPatches;
+        if (patch >= 0) {
+            newIndexes = patchedIndexes;
+            newPatches = patchedAmounts.clone();
+            newPatches[patch] = amount;
+        } else {
+            int count = patchedIndexes == null ? 0 : patchedIndexes.length;
+            int insert = -patch - 1;
+            newIndexes = new int[count + 1];
+            newPatches = new double[count + 1];
+            if (count > 0) {
+                System.arraycopy(patchedIndexes, 0, newIndexes, 0, insert);
+                System.arraycopy(patchedAmounts, 0, newPatches, 0, insert);
+                System.arraycopy(patchedIndexes, insert, newIndexes, insert + 1, count - insert);
+                System.arraycopy(patchedAmounts, insert, newPatches, insert + 1, count - insert);
+            }
+            newIndexes[insert] = index;
+            newPatches[insert] = amount;
+        }
+        SegmentSummary newSummary = summary.copy();
+        EncodedSegment updated = new EncodedSegment(newSummary, years, months, states, sources, producers,
+            amounts, plants, counties, rowOffsets, deleted, deletedCount, newIndexes, newPatches);
+        if (newIndexes.length > MAX_AMOUNT_PATCHES) {
+            updated = new EncodedSegment(newSummary, years, months, states, sources, producers,
+                updated.foldedAmounts(), plants, counties, rowOffsets, deleted, deletedCount);
+        }
+        if (newSummary.replaceAmount(previous, amount)) {
+            // the summary is not published yet, so it can still be corrected from the live rows
+            updated.decode(ColumnBatch.AMOUNT, scratch);
+            newSummary.recomputeExtremes(scratch.amounts(), scratch.size());
+        }
+        return new AmountReplacement(updated, previous);
+    }
+
+    /**
+     * Adds the row count of every source to {@code counts[ordinal]} without decoding rows.
+     * Tombstoned rows are counted too, so callers check {@link #hasDeletes()} first.
+     */
+    public void countSources(long[] counts) {
+        sources.countByValue(counts);
+    }
+
+    /**
+     * Adds the amount total of every producer to {@code sums[ordinal]}.
+     * Only the amounts are decoded; producer runs are walked in encoded form.
+     * Tombstoned rows are summed too, so callers check {@link #hasDeletes()} first.
+     *
+     * @param scratch a buffer of at least {@link #size()} doubles
+     */
+    public void sumByProducer(double[] scratch, double[] sums) {
+        decodeAmounts(scratch);
+        producers.sumByValue(scratch, sums);
+    }
+
+    /**
+     * @return the number of bytes the segment occupies in memory
+     */
+    public long sizeInBytes() {
+        return 64 + years.sizeInBytes() + months.sizeInBytes() + states.sizeInBytes()
+            + sources.sizeInBytes() + producers.sizeInBytes() + amounts.sizeInBytes()
+            + plants.sizeInBytes() + counties.sizeInBytes()
+            + (rowOffsets == null ? 0 : 16L + (long) rowOffsets.length * Integer.BYTES)
+            + (deleted == null ? 0 : 16L + (long) deleted.length * Long.BYTES)
+            + (patchedIndexes == null ? 0 : 32L + (long) patchedIndexes.length * (Integer.BYTES + Double.BYTES));
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        summary.writeTo(out);
+        years.writeTo(out);
+        months.writeTo(out);
+        states.writeTo(out);
+        sources.writeTo(out);
+        producers.writeTo(out);
+        foldedAmounts().writeTo(out);
+        plants.writeTo(out);
+        counties.writeTo(out);
+        out.writeInt(rowOffsets == null ? -1 : rowOffsets.length);
+        if (rowOffsets != null) {
+            for (int offset : rowOffsets) {
+                out.writeInt(offset);
+            }
+        }
+        out.writeInt(deletedCount);
+        if (deleted != null) {
+            EncodedIntColumn.writeWords(out, deleted);
+        }
+    }
+
+    /**
+     * Reads a segment written by {@link #writeTo(DataOutput)}.
+     *
+     * @param withTombstones {@code false} for files written before deletes existed
+     * @param withPlants {@code false} for files written before plants and counties existed,
+     *                   whose rows are read as state-level entries
+     */
+    static EncodedSegment readFrom(DataInput in, boolean withTombstones, boolean withPlants) throws IOException {
+        SegmentSummary summary = SegmentSummary.readFrom(in);
+        EncodedIntColumn years = EncodedIntColumn.readFrom(in);
+        EncodedIntColumn months = EncodedIntColumn.readFrom(in);
+        EncodedIntColumn states = EncodedIntColumn.readFrom(in);
+        EncodedIntColumn sources = EncodedIntColumn.readFrom(in);
+        EncodedIntColumn producers = EncodedIntColumn.readFrom(in);
+        GorillaDoubleColumn amounts = GorillaDoubleColumn.readFrom(in);
+        EncodedIntColumn plants;
+        EncodedIntColumn counties;
+        if (withPlants) {
+            plants = EncodedIntColumn.readFrom(in);
+            counties = EncodedIntColumn.readFrom(in);
+        } else {
+            plants = EncodedIntColumn.encode(new int[amounts.size()], amounts.size());
+            counties = plants;
+        }
+        if (!withTombstones) {
+            return new EncodedSegment(summary, years, months, states, sources, producers, amounts, plants,
+                counties, null, null, 0);
+        }
+        int[] rowOffsets = null;
+        int offsetCount = in.readInt();
+        if (offsetCount >= 0) {
+            rowOffsets = new int[offsetCount];
+            for (int i = 0; i < offsetCount; i++) {
+                rowOffsets[i] = in.readInt();
+            }
+        }
+        int deletedCount = in.readInt();
+        long[] deleted = deletedCount > 0 ? EncodedIntColumn.readWords(in) : null;
+        return new EncodedSegment(summary, years, months, states, sources, producers, amounts, plants,
+            counties, rowOffsets, deleted, deletedCount);
+    }
+}
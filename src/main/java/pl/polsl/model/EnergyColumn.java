@@ -0,0 +1,67 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Column of the energy data, in the order the table shows them.
+ * {@link Model#getSortedPositions(EnergyColumn)} keeps a sort permutation per column.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public enum EnergyColumn {
+
+    /**
+     * The year, 2001 to 2022.
+     */
+    YEAR,
+
+    /**
+     * The month, 1 to 12.
+     */
+    MONTH,
+
+    /**
+     * The state code, sorted alphabetically.
+     */
+    STATE,
+
+    /**
+     * The energy source, sorted in declaration order.
+     */
+    SOURCE,
+
+    /**
+     * The energy producer, sorted in declaration order.
+     */
+    PRODUCER,
+
+    /**
+     * The generated amount in MWh.
+     */
+    AMOUNT,
+
+    /**
+     * The plant id, 0 for state-level entries.
+     */
+    PLANT,
+
+    /**
+     * The county, sorted alphabetically after entries without one.
+     */
+    COUNTY;
+
+    /**
+     * @return the {@link ColumnBatch} column flag holding the values
+     */
+    int flag() {
+        return switch (this) {
+            case YEAR -> ColumnBatch.YEAR;
+            case MONTH -> ColumnBatch.MONTH;
+            case STATE -> ColumnBatch.STATE;
+            case SOURCE -> ColumnBatch.SOURCE;
+            case PRODUCER -> ColumnBatch.PRODUCER;
+            case AMOUNT -> ColumnBatch.AMOUNT;
+            case PLANT -> ColumnBatch.PLANT;
+            case COUNTY -> ColumnBatch.COUNTY;
+        };
+    }
+}
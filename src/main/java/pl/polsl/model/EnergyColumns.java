@@ -0,0 +1,191 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A reusable batch of raw rows in column arrays, for bulk loads through
+ * {@link Model#addAll(EnergyColumns, RejectionReport)}. Sources and producers are kept
+ * as the text read from the input, so that unknown names are reported instead of thrown.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class EnergyColumns {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] years = new int[INITIAL_CAPACITY];
+    private int[] months = new int[INITIAL_CAPACITY];
+    private String[] states = new String[INITIAL_CAPACITY];
+    private String[] sources = new String[INITIAL_CAPACITY];
+    private String[] producers = new String[INITIAL_CAPACITY];
+    private double[] amounts = new double[INITIAL_CAPACITY];
+    private int[] plants = new int[INITIAL_CAPACITY];
+    private String[] counties = new String[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Appends a raw row to the batch.
+     *
+     * @param year the year
+     * @param month the month
+     * @param state the state code
+     * @param source the display name of the energy source
+     * @param producer the display name of the energy producer
+     * @param amount the amount in MWh
+     */
+    public void add(int year, int month, String state, String source, String producer, double amount) {
+        add(year, month, state, source, producer, amount, 0, null);
+    }
+
+    /**
+     * Appends a raw plant-level row to the batch.
+     *
+     * @param year the year
+     * @param month the month
+     * @param state the state code
+     * @param source the display name of the energy source
+     * @param producer the display name of the energy producer
+     * @param amount the amount in MWh
+     * @param plant the plant id, 0 for a state-level row
+     * @param county the county, or {@code null} if unknown
+     */
+    public void add(int year, int month, String state, String source, String producer, double amount, int plant,
+            String county) {
+        if (size == years.length) {
+            int capacity = size * 2;
+            years = Arrays.copyOf(years, capacity);
+            months = Arrays.copyOf(months, capacity);
+            states = Arrays.copyOf(states, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            producers = Arrays.copyOf(producers, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            plants = Arrays.copyOf(plants, capacity);
+            counties = Arrays.copyOf(counties, capacity);
+        }
+        years[size] = year;
+        months[size] = month;
+        states[size] = state;
+        sources[size] = source;
+        producers[size] = producer;
+        amounts[size] = amount;
+        plants[size] = plant;
+        counties[size] = county;
+        size++;
+    }
+
+    /**
+     * @return the number of rows in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param row a row of the batch
+     * @return the year of the row
+     */
+    public int getYear(int row) {
+        return years[Objects.checkIndex(row, size)];
+    }
+
+    /**
+     * @param row a row of the batch
+     * @return the month of the row
+     */
+    public int getMonth(int row) {
+        return months[Objects.checkIndex(row, size)];
+    }
+
+    /**
+     * @param row a row of the batch
+     * @return the state code of the row
+     */
+    public String getState(int row) {
+        return states[Objects.checkIndex(row, size)];
+    }
+
+    /**
+     * @param row a row of the batch
+     * @return the source of the row as read
+     */
+    public String getSource(int row) {
+        return sources[Objects.checkIndex(row, size)];
+    }
+
+    /**
+     * @param row a row of the batch
+     * @return the producer of the row as read
+     */
+    public String getProducer(int row) {
+        return producers[Objects.checkIndex(row, size)];
+    }
+
+    /**
+     * @param row a row of the batch
+     * @return the amount of the row in MWh
+     */
+    public double getAmount(int row) {
+        return amounts[Objects.checkIndex(row, size)];
+    }
+
+    /**
+     * @param row a row of the batch
+     * @return the plant id of the row, 0 for a state-level row
+     */
+    public int getPlant(int row) {
+        return plants[Objects.checkIndex(row, size)];
+    }
+
+    /**
+     * @param row a row of the batch
+     * @return the county of the row, or {@code null} if unknown
+     */
+    public String getCounty(int row) {
+        return counties[Objects.checkIndex(row, size)];
+    }
+
+    /**
+     * Empties the batch, keeping its arrays for the next one.
+     */
+    public void clear() {
+        Arrays.fill(states, 0, size, null);
+        Arrays.fill(sources, 0, size, null);
+        Arrays.fill(producers, 0, size, null);
+        Arrays.fill(counties, 0, size, null);
+        size = 0;
+    }
+
+    int[] years() {
+        return years;
+    }
+
+    int[] months() {
+        return months;
+    }
+
+    String[] states() {
+        return states;
+    }
+
+    String[] sources() {
+        return sources;
+    }
+
+    String[] producers() {
+        return producers;
+    }
+
+    double[] amounts() {
+        return amounts;
+    }
+
+    int[] plants() {
+        return plants;
+    }
+
+    String[] counties() {
+        return counties;
+    }
+}
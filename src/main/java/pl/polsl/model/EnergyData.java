@@ -3,6 +3,8 @@ package com.mycompany.energiawusawlatach2001.model;
 /**
  * Record representing a single energy data entry.
  * Uses enums for source and producer to ensure data validity.
+ * Plant-level feeds also name the generating plant and its county; state-level
+ * entries leave the plant at 0 and the county {@code null}.
  *
  * @author Aleksandra Nizio
  * @version 1.0
@@ -13,5 +15,16 @@ public record EnergyData(
     String state,
     EnergySource source,
     EnergyProducer producer,
-    double amount
-) {}
\ No newline at end of file
+    double amount,
+    int plant,
+    String county
+) {
+
+    /**
+     * Creates a state-level entry without plant and county.
+     */
+    public EnergyData(int year, int month, String state, EnergySource source, EnergyProducer producer,
+            double amount) {
+        this(year, month, state, source, producer, amount, 0, null);
+    }
+}
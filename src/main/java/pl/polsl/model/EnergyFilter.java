@@ -0,0 +1,39 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Quick filter on energy data entries for {@link Model#filterPositions(EnergyFilter)}.
+ * A {@code null} field matches every value; set fields must all match.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public record EnergyFilter(
+    String state,
+    EnergySource source,
+    EnergyProducer producer,
+    Integer year
+) {
+
+    /**
+     * Filter matching every entry.
+     */
+    public static final EnergyFilter ALL = new EnergyFilter(null, null, null, null);
+
+    /**
+     * @return {@code true} if no field is set, so every entry matches
+     */
+    public boolean isEmpty() {
+        return state == null && source == null && producer == null && year == null;
+    }
+
+    /**
+     * @param data the entry to test
+     * @return {@code true} if the entry matches every set field
+     */
+    public boolean matches(EnergyData data) {
+        return (state == null || state.equals(data.state()))
+            && (source == null || source == data.source())
+            && (producer == null || producer == data.producer())
+            && (year == null || year == data.year());
+    }
+}
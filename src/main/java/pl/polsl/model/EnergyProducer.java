@@ -77,11 +77,24 @@ public enum EnergyProducer {
      * @throws InvalidEnergyDataException if no matching energy producer is found
      */
     public static EnergyProducer fromString(String text) throws InvalidEnergyDataException {
+        EnergyProducer producer = lookup(text);
+        if (producer == null) {
+            throw new InvalidEnergyDataException(RejectReason.UNKNOWN_PRODUCER.getMessage() + ": " + text);
+        }
+        return producer;
+    }
+
+    /**
+     * Converts a string like {@link #fromString(String)} without throwing, for bulk validation.
+     *
+     * @return the matching energy producer, or {@code null} if there is none
+     */
+    static EnergyProducer lookup(String text) {
         for (EnergyProducer producer : EnergyProducer.values()) {
             if (producer.displayName.equalsIgnoreCase(text)) {
                 return producer;
             }
         }
-        throw new InvalidEnergyDataException("Invalid energy producer: " + text);
+        return null;
     }
 }
\ No newline at end of file
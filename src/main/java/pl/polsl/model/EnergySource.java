@@ -62,11 +62,24 @@ public enum EnergySource {
      * @throws InvalidEnergyDataException if no matching energy source is found
      */
     public static EnergySource fromString(String text) throws InvalidEnergyDataException {
+        EnergySource source = lookup(text);
+        if (source == null) {
+            throw new InvalidEnergyDataException(RejectReason.UNKNOWN_SOURCE.getMessage() + ": " + text);
+        }
+        return source;
+    }
+
+    /**
+     * Converts a string like {@link #fromString(String)} without throwing, for bulk validation.
+     *
+     * @return the matching energy source, or {@code null} if there is none
+     */
+    static EnergySource lookup(String text) {
         for (EnergySource source : EnergySource.values()) {
             if (source.displayName.equalsIgnoreCase(text)) {
                 return source;
             }
         }
-        throw new InvalidEnergyDataException("Invalid energy source: " + text);
+        return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Storage backend of the {@link Model}.
+ * A store keeps rows column by column and answers queries through segment scans,
+ * so every query in {@code Model} runs unchanged on any backend.
+ * Row ids are assigned in insertion order and stay valid after other rows are deleted.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public interface EnergyStore extends Iterable<EnergyData>, AutoCloseable {
+
+    /**
+     * Appends a row, assigning its state a dictionary id if needed.
+     *
+     * @param data the row to append, assumed to be valid
+     * @return the row id
+     */
+    int append(EnergyData data);
+
+    /**
+     * Replaces the amount of a row in place and corrects the zone map of its segment.
+     *
+     * @param rowId the row id
+     * @param amount the new amount
+     * @return the previous amount
+     */
+    double replaceAmount(int rowId, double amount);
+
+    /**
+     * Marks a row as deleted. Scans, iteration and the zone maps skip it from now on.
+     *
+     * @param rowId the row id
+     * @return {@code true} if the row was live, {@code false} if it had already been deleted
+     */
+    boolean delete(int rowId);
+
+    /**
+     * @param rowId the row id
+     * @return {@code true} if the row has been deleted
+     */
+    boolean isDeleted(int rowId);
+
+    /**
+     * @return the number of live rows in the store
+     */
+    int size();
+
+    /**
+     * Translates the position of a live row in insertion order into its row id.
+     *
+     * @param position the position, from 0 to {@link #size()} exclusive
+     * @return the row id
+     */
+    int rowIdAt(int position);
+
+    /**
+     * Translates the row id of a live row into its position in insertion order, by a binary
+     * search over {@link #rowIdAt(int)}, which grows with the row id.
+     *
+     * @param rowId the row id
+     * @return the position, or -1 if the row is deleted or does not exist
+     */
+    default int positionOf(int rowId) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = rowIdAt(middle);
+            if (id < rowId) {
+                low = middle + 1;
+            } else if (id > rowId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the dictionary of state codes used by the state column
+     */
+    StateDictionary dictionary();
+
+    /**
+     * @return the dictionary of county names used by the county column
+     */
+    StateDictionary counties();
+
+    /**
+     * Visits every segment of the store in row id order; batches hold live rows only.
+     *
+     * @param columns the {@link ColumnBatch} column flags the visitor needs decoded
+     * @param visitor the visitor receiving summaries, encoded segments and batches
+     */
+    void scan(int columns, SegmentVisitor visitor);
+
+    /**
+     * Materializes a single row.
+     *
+     * @param rowId the row id
+     * @return the row as a record
+     * @throws java.util.NoSuchElementException if the row has been deleted
+     */
+    EnergyData row(int rowId);
+
+    /**
+     * Returns a copy of the rows as they are now that another thread may read while this
+     * store is written. The copy keeps the row ids and dictionary ids of this store. It is
+     * taken on the thread that writes the store; the default copies every live row into a
+     * heap {@link ColumnStore} and stands in a deleted copy of the next live row for each
+     * deleted one before it, so the row ids match.
+     *
+     * @return the copy
+     */
+    default EnergyStore snapshot() {
+        ColumnStore copy = new ColumnStore(dictionary().copy(), counties().copy());
+        int nextRowId = 0;
+        for (int position = 0; position < size(); position++) {
+            int rowId = rowIdAt(position);
+            EnergyData data = row(rowId);
+            for (; nextRowId < rowId; nextRowId++) {
+                copy.appendDeleted(data);
+            }
+            copy.append(data);
+            nextRowId++;
+        }
+        return copy;
+    }
+
+    /**
+     * @return the number of bytes held by the store, on or off the heap
+     */
+    long sizeInBytes();
+
+    /**
+     * @return the part of {@link #sizeInBytes()} held only to speed up reads, which {@link #dropCaches()} releases
+     */
+    default long cacheBytes() {
+        return 0;
+    }
+
+    /**
+     * Releases data held only to speed up reads; it is loaded again when next needed.
+     */
+    default void dropCaches() {
+    }
+
+    /**
+     * Releases the resources held by the store, such as open files. The store must not be
+     * used afterwards. Whether its memory is freed at once depends on the backend; the
+     * off-heap chunks of an {@link OffHeapColumnStore} are left to the garbage collector.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,31 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Approximate answer of a query computed from the stratified sample of the rows,
+ * with the half-width of its 95% confidence interval.
+ *
+ * @param value the estimated value
+ * @param margin the half-width of the 95% confidence interval, 0 if the value is exact
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public record Estimate(
+    double value,
+    double margin
+) {
+
+    /**
+     * @return the lower bound of the confidence interval
+     */
+    public double lower() {
+        return value - margin;
+    }
+
+    /**
+     * @return the upper bound of the confidence interval
+     */
+    public double upper() {
+        return value + margin;
+    }
+}
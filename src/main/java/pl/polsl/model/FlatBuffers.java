@@ -0,0 +1,353 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The subset of the FlatBuffers binary format needed for Arrow IPC metadata: tables with
+ * scalar, string, table, union, table vector and struct vector fields. Unlike the official
+ * builder, which writes back to front, a table is written before the objects it refers to
+ * and its forward offsets are patched in once they are placed, which is just as valid
+ * because every offset except the one to the vtable is unsigned and points forward.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class FlatBuffers {
+
+    private FlatBuffers() {
+    }
+
+    /**
+     * A table to be written, its fields given by their index in the schema.
+     */
+    static final class TableBuilder {
+
+        private final TreeMap<Integer, Object> fields = new TreeMap<>();
+        private final Map<Integer, Integer> sizes = new TreeMap<>();
+
+        TableBuilder addByte(int index, int value) {
+            return scalar(index, 1, value);
+        }
+
+        TableBuilder addBool(int index, boolean value) {
+            return scalar(index, 1, value ? 1 : 0);
+        }
+
+        TableBuilder addShort(int index, int value) {
+            return scalar(index, 2, value);
+        }
+
+        TableBuilder addInt(int index, int value) {
+            return scalar(index, 4, value);
+        }
+
+        TableBuilder addLong(int index, long value) {
+            return scalar(index, 8, value);
+        }
+
+        TableBuilder addString(int index, String value) {
+            return reference(index, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        TableBuilder addTable(int index, TableBuilder table) {
+            return reference(index, table);
+        }
+
+        /**
+         * Adds a union, stored as a type field at {@code index} and its value at {@code index + 1}.
+         */
+        TableBuilder addUnion(int index, int type, TableBuilder value) {
+            return addByte(index, type).addTable(index + 1, value);
+        }
+
+        TableBuilder addTables(int index, List<TableBuilder> tables) {
+            return reference(index, new ArrayList<>(tables));
+        }
+
+        /**
+         * Adds a vector of structs made of 8-byte fields only, given as their longs in a row.
+         * A 4-byte field followed by 4 bytes of padding is the same long in little-endian order.
+         */
+        TableBuilder addStructs(int index, int longsPerStruct, long[] longs) {
+            return reference(index, new Structs(longs.length / longsPerStruct, longs.clone()));
+        }
+
+        private TableBuilder scalar(int index, int size, long value) {
+            fields.put(index, value);
+            sizes.put(index, size);
+            return this;
+        }
+
+        private TableBuilder reference(int index, Object value) {
+            fields.put(index, value);
+            sizes.put(index, 4);
+            return this;
+        }
+
+        /**
+         * Writes this table as the root of a buffer padded to a multiple of 8 bytes.
+         */
+        byte[] finish() {
+            Output out = new Output();
+            out.putInt(0);
+            out.patch(0, writeTable(out, this));
+            out.align(8);
+            return out.toArray();
+        }
+
+        private static int writeTable(Output out, TableBuilder table) {
+            int fieldCount = table.fields.isEmpty() ? 0 : table.fields.lastKey() + 1;
+            // largest fields first, so that each lands aligned after the 4-byte vtable offset
+            List<Integer> order = new ArrayList<>(table.fields.keySet());
+            order.sort((a, b) -> table.sizes.get(b) - table.sizes.get(a));
+            int[] offsets = new int[fieldCount];
+            int tableSize = 4;
+            for (int index : order) {
+                int size = table.sizes.get(index);
+                tableSize = (tableSize + size - 1) / size * size;
+                offsets[index] = tableSize;
+                tableSize += size;
+            }
+            out.align(2);
+            int vtable = out.position();
+            out.putShort(4 + 2 * fieldCount);
+            out.putShort(tableSize);
+            for (int offset : offsets) {
+                out.putShort(offset);
+            }
+            out.align(8);
+            int start = out.position();
+            out.putInt(start - vtable);
+            out.skip(tableSize - 4);
+            List<Integer> references = new ArrayList<>();
+            for (int index : order) {
+                int position = start + offsets[index];
+                Object value = table.fields.get(index);
+                if (value instanceof Long scalar) {
+                    out.putScalar(position, table.sizes.get(index), scalar);
+                } else {
+                    references.add(index);
+                }
+            }
+            for (int index : references) {
+                out.patch(start + offsets[index], writeObject(out, table.fields.get(index)));
+            }
+            return start;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static int writeObject(Output out, Object value) {
+            if (value instanceof TableBuilder table) {
+                return writeTable(out, table);
+            }
+            if (value instanceof byte[] string) {
+                out.align(4);
+                int start = out.position();
+                out.putInt(string.length);
+                out.put(string);
+                out.put(new byte[1]);
+                return start;
+            }
+            if (value instanceof Structs structs) {
+                // the structs after the length have to be 8-byte aligned
+                out.align(8);
+                out.skip(4);
+                int start = out.position();
+                out.putInt(structs.count());
+                for (long element : structs.longs()) {
+                    out.putLong(element);
+                }
+                return start;
+            }
+            List<TableBuilder> tables = (List<TableBuilder>) value;
+            out.align(4);
+            int start = out.position();
+            out.putInt(tables.size());
+            out.skip(4 * tables.size());
+            for (int i = 0; i < tables.size(); i++) {
+                out.patch(start + 4 + 4 * i, writeTable(out, tables.get(i)));
+            }
+            return start;
+        }
+    }
+
+    private record Structs(int count, long[] longs) {
+    }
+
+    /**
+     * Growable little-endian output that can patch offsets written earlier.
+     */
+    private static final class Output {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+
+        int position() {
+            return buffer.position();
+        }
+
+        void align(int alignment) {
+            skip((alignment - buffer.position() % alignment) % alignment);
+        }
+
+        void skip(int bytes) {
+            ensure(bytes);
+            buffer.position(buffer.position() + bytes);
+        }
+
+        void put(byte[] bytes) {
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void putShort(int value) {
+            ensure(2);
+            buffer.putShort((short) value);
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putScalar(int position, int size, long value) {
+            switch (size) {
+                case 1 -> buffer.put(position, (byte) value);
+                case 2 -> buffer.putShort(position, (short) value);
+                case 4 -> buffer.putInt(position, (int) value);
+                default -> buffer.putLong(position, value);
+            }
+        }
+
+        /**
+         * Stores the unsigned offset from {@code position} forward to {@code target}.
+         */
+        void patch(int position, int target) {
+            buffer.putInt(position, target - position);
+        }
+
+        byte[] toArray() {
+            byte[] bytes = new byte[buffer.position()];
+            buffer.get(0, bytes);
+            return bytes;
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                grown.put(buffer.flip());
+                buffer = grown;
+            }
+        }
+    }
+
+    /**
+     * Read access to a table in a little-endian buffer whose position 0 is the buffer start.
+     *
+     * @param buffer the FlatBuffers buffer
+     * @param position the position of the table
+     */
+    record Table(ByteBuffer buffer, int position) {
+
+        /**
+         * Returns the root table of a buffer.
+         */
+        static Table root(ByteBuffer buffer) {
+            return new Table(buffer, buffer.getInt(0));
+        }
+
+        /**
+         * @return the position of a present field, or 0 if it is absent
+         */
+        private int field(int index) {
+            int vtable = position - buffer.getInt(position);
+            int vtableSize = Short.toUnsignedInt(buffer.getShort(vtable));
+            if (4 + 2 * index >= vtableSize) {
+                return 0;
+            }
+            int offset = Short.toUnsignedInt(buffer.getShort(vtable + 4 + 2 * index));
+            return offset == 0 ? 0 : position + offset;
+        }
+
+        boolean has(int index) {
+            return field(index) != 0;
+        }
+
+        int getByte(int index, int defaultValue) {
+            int field = field(index);
+            return field == 0 ? defaultValue : Byte.toUnsignedInt(buffer.get(field));
+        }
+
+        boolean getBool(int index) {
+            return getByte(index, 0) != 0;
+        }
+
+        int getShort(int index, int defaultValue) {
+            int field = field(index);
+            return field == 0 ? defaultValue : buffer.getShort(field);
+        }
+
+        int getInt(int index, int defaultValue) {
+            int field = field(index);
+            return field == 0 ? defaultValue : buffer.getInt(field);
+        }
+
+        long getLong(int index, long defaultValue) {
+            int field = field(index);
+            return field == 0 ? defaultValue : buffer.getLong(field);
+        }
+
+        /**
+         * @return the referenced table, or {@code null} if the field is absent
+         */
+        Table getTable(int index) {
+            int field = field(index);
+            return field == 0 ? null : new Table(buffer, field + buffer.getInt(field));
+        }
+
+        String getString(int index) {
+            int field = field(index);
+            if (field == 0) {
+                return null;
+            }
+            int start = field + buffer.getInt(field);
+            byte[] bytes = new byte[buffer.getInt(start)];
+            buffer.get(start + 4, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the number of elements of a vector, or -1 if the field is absent
+         */
+        int getVectorLength(int index) {
+            int field = field(index);
+            return field == 0 ? -1 : buffer.getInt(field + buffer.getInt(field));
+        }
+
+        Table getTableElement(int index, int element) {
+            int field = field(index);
+            int slot = field + buffer.getInt(field) + 4 + 4 * element;
+            return new Table(buffer, slot + buffer.getInt(slot));
+        }
+
+        /**
+         * Reads one long of a vector of structs made of 8-byte fields.
+         */
+        long getStructLong(int index, int element, int longsPerStruct, int field) {
+            int vector = field(index);
+            int start = vector + buffer.getInt(vector) + 4;
+            return buffer.getLong(start + 8 * (element * longsPerStruct + field));
+        }
+    }
+}
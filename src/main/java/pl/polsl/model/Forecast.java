@@ -0,0 +1,25 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.time.YearMonth;
+
+/**
+ * Projected monthly generation of one (state, source, producer) series.
+ *
+ * @param state the state code
+ * @param source the energy source
+ * @param producer the energy producer
+ * @param start the first forecast month, the one after the last month with data of the series
+ * @param amounts the forecast amounts in MWh, one per month from {@code start}
+ * @param rmse the root mean squared one-step error of the fit over the history, in MWh
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public record Forecast(
+    String state,
+    EnergySource source,
+    EnergyProducer producer,
+    YearMonth start,
+    double[] amounts,
+    double rmse
+) {}
@@ -0,0 +1,192 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Gorilla-style XOR compressed column of {@code double} amounts.
+ * Each value is XOR-ed with its predecessor; identical values cost one bit and
+ * values of similar magnitude only store the meaningful middle bits of the XOR,
+ * reusing the previous leading/trailing zero window when it still fits.
+ * The segment summary keeps the sum, minimum and maximum, so many aggregations
+ * never decode the column at all.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class GorillaDoubleColumn {
+
+    private final int count;
+    private final long bitLength;
+    private final long[] words;
+
+    private GorillaDoubleColumn(int count, long bitLength, long[] words) {
+        this.count = count;
+        this.bitLength = bitLength;
+        this.words = words;
+    }
+
+    static GorillaDoubleColumn encode(double[] values, int count) {
+        BitWriter writer = new BitWriter(count);
+        if (count > 0) {
+            long previous = Double.doubleToRawLongBits(values[0]);
+            writer.write(previous, 64);
+            int previousLeading = -1;
+            int previousTrailing = 0;
+            for (int i = 1; i < count; i++) {
+                long current = Double.doubleToRawLongBits(values[i]);
+                long xor = current ^ previous;
+                if (xor == 0) {
+                    writer.write(0, 1);
+                } else {
+                    int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                    int trailing = Long.numberOfTrailingZeros(xor);
+                    if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                        writer.write(0b01, 2);
+                        writer.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                    } else {
+                        int meaningful = 64 - leading - trailing;
+                        writer.write(0b11, 2);
+                        writer.write(leading, 5);
+                        writer.write(meaningful - 1, 6);
+                        writer.write(xor >>> trailing, meaningful);
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+                previous = current;
+            }
+        }
+        return new GorillaDoubleColumn(count, writer.bitLength, writer.toWords());
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Decodes all values into {@code out}.
+     */
+    void decode(double[] out) {
+        if (count == 0) {
+            return;
+        }
+        BitReader reader = new BitReader(words);
+        long previous = reader.read(64);
+        out[0] = Double.longBitsToDouble(previous);
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (reader.read(1) != 0) {
+                if (reader.read(1) != 0) {
+                    leading = (int) reader.read(5);
+                    int meaningful = (int) reader.read(6) + 1;
+                    trailing = 64 - leading - meaningful;
+                }
+                previous ^= reader.read(64 - leading - trailing) << trailing;
+            }
+            out[i] = Double.longBitsToDouble(previous);
+        }
+    }
+
+    /**
+     * Decodes the values up to {@code index} without allocating and returns the last one.
+     */
+    double get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        BitReader reader = new BitReader(words);
+        long previous = reader.read(64);
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i <= index; i++) {
+            if (reader.read(1) != 0) {
+                if (reader.read(1) != 0) {
+                    leading = (int) reader.read(5);
+                    int meaningful = (int) reader.read(6) + 1;
+                    trailing = 64 - leading - meaningful;
+                }
+                previous ^= reader.read(64 - leading - trailing) << trailing;
+            }
+        }
+        return Double.longBitsToDouble(previous);
+    }
+
+    long sizeInBytes() {
+        return 16 + (long) words.length * Long.BYTES;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(count);
+        out.writeLong(bitLength);
+        EncodedIntColumn.writeWords(out, words);
+    }
+
+    static GorillaDoubleColumn readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        long bitLength = in.readLong();
+        return new GorillaDoubleColumn(count, bitLength, EncodedIntColumn.readWords(in));
+    }
+
+    /**
+     * Appends bit fields of up to 64 bits, least significant bit first.
+     */
+    private static final class BitWriter {
+        private long[] words;
+        private long bitLength;
+
+        BitWriter(int expectedValues) {
+            words = new long[Math.max(4, expectedValues / 2)];
+        }
+
+        void write(long value, int bits) {
+            if (bits == 0) {
+                return;
+            }
+            int word = (int) (bitLength >>> 6);
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            int offset = (int) (bitLength & 63);
+            long masked = bits == 64 ? value : value & ((1L << bits) - 1);
+            words[word] |= masked << offset;
+            if (offset + bits > 64) {
+                words[word + 1] |= masked >>> (64 - offset);
+            }
+            bitLength += bits;
+        }
+
+        long[] toWords() {
+            return Arrays.copyOf(words, (int) ((bitLength + 63) >>> 6));
+        }
+    }
+
+    /**
+     * Reads bit fields written by {@link BitWriter}.
+     */
+    private static final class BitReader {
+        private final long[] words;
+        private long position;
+
+        BitReader(long[] words) {
+            this.words = words;
+        }
+
+        long read(int bits) {
+            if (bits == 0) {
+                return 0;
+            }
+            int word = (int) (position >>> 6);
+            int offset = (int) (position & 63);
+            long value = words[word] >>> offset;
+            if (offset + bits > 64) {
+                value |= words[word + 1] << (64 - offset);
+            }
+            position += bits;
+            return bits == 64 ? value : value & ((1L << bits) - 1);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Callback receiving the groups of {@link Model#groupBy(java.util.List, long, GroupVisitor)}
+ * one at a time, so that results with millions of groups are never held in memory at once.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface GroupVisitor {
+
+    /**
+     * Receives one group.
+     *
+     * @param key the values of the grouped columns in the requested order: years, months and
+     *            plants as {@code Integer}, states and counties as {@code String} with
+     *            {@code null} for no county, sources and producers as their enums. The array
+     *            is reused for the next group and must be copied to be kept.
+     * @param total the total amount of the group in MWh
+     * @param rows the number of rows in the group
+     */
+    void visit(Object[] key, double total, long rows);
+}
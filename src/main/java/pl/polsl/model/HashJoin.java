@@ -0,0 +1,72 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.Arrays;
+
+/**
+ * Hash join of a {@link DimensionTable} with the stored rows on the state. The build side
+ * probes the hash map of the {@link StateDictionary} once per table row; because state ids
+ * are dense, the result is a direct-address array from state id to table row, so the probe
+ * side of a scan is one array read per row instead of a string hash lookup.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class HashJoin {
+
+    /**
+     * The table row of every state id, -1 for states the table does not have.
+     */
+    private final int[] rows;
+
+    /**
+     * Number of joined states with an id below each id, for pruning segments by their state range.
+     */
+    private final int[] joinedBefore;
+
+    private HashJoin(int[] rows) {
+        this.rows = rows;
+        joinedBefore = new int[rows.length + 1];
+        for (int state = 0; state < rows.length; state++) {
+            joinedBefore[state + 1] = joinedBefore[state] + (rows[state] >= 0 ? 1 : 0);
+        }
+    }
+
+    /**
+     * Builds the join of a table with the states of a dictionary. Table states without rows
+     * in the dictionary do not join.
+     */
+    static HashJoin build(DimensionTable table, StateDictionary dictionary) {
+        int[] rows = new int[dictionary.size()];
+        Arrays.fill(rows, -1);
+        for (int row = 0; row < table.size(); row++) {
+            int state = dictionary.lookup(table.getState(row));
+            if (state >= 0) {
+                rows[state] = row;
+            }
+        }
+        return new HashJoin(rows);
+    }
+
+    /**
+     * Maps a column of the table to state ids, so that a scan reads it by the state id of a row.
+     *
+     * @param values a value per table row
+     * @return the value per state id, -1 for states without a table row
+     */
+    int[] byState(int[] values) {
+        int[] byState = new int[rows.length];
+        for (int state = 0; state < rows.length; state++) {
+            byState[state] = rows[state] >= 0 ? values[rows[state]] : -1;
+        }
+        return byState;
+    }
+
+    /**
+     * @return whether any state id from {@code min} to {@code max} joins a table row
+     */
+    boolean joinsAny(int min, int max) {
+        int from = Math.max(0, min);
+        int to = Math.min(rows.length - 1, max);
+        return from <= to && joinedBefore[to + 1] > joinedBefore[from];
+    }
+}
@@ -1,86 +1,1229 @@
 package com.mycompany.energiawusawlatach2001.model;
 
+import com.mycompany.energiawusawlatach2001.metrics.EnergyMetrics;
+import com.mycompany.energiawusawlatach2001.metrics.MemoryFootprint;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.NoArgsConstructor;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The {@code Model} class serves as the application's data layer, managing energy data
  * and providing business logic for operations like sorting, filtering, and aggregations.
  *
  * This class uses the {@link EnergyData} record to represent individual energy entries.
+ * Entries are kept column by column in an {@link EnergyStore}, by default a compressed
+ * {@link ColumnStore}, and every query runs as a segment scan over primitive columns,
+ * skipping segments by their zone maps. Amount aggregations use {@link AmountKernels},
+ * which run on SIMD units when the JVM is started with {@code --add-modules jdk.incubator.vector}.
+ * Accepted and rejected rows as well as query latencies are recorded in {@link EnergyMetrics}.
+ * In {@link WriteMode#UPSERT} mode a row whose key is already stored replaces the old
+ * amount instead of being counted twice; keys are looked up in a primitive hash index.
+ * Deleted entries are tombstoned in the store and compacted away in the background.
+ * Every change of the rows is announced to the registered {@link ModelListener}s as a range of positions.
+ * The bytes held by each structure are reported as a {@link MemoryFootprint}, which an optional
+ * memory limit keeps in check by dropping rebuildable indexes and caches, then refusing rows.
+ * A {@link StratifiedSample} of every state and source, kept up to date by every write,
+ * answers {@link #estimateEnergyByStateForMonth(int)} in time independent of the number of rows.
+ * Two versions of the data are compared key by key with {@link #diff(Model, long, DiffVisitor)}.
  * 
- * Note: Lombok annotations (@NoArgsConstructor, @Getter) are used for generating constructors
- * and getter methods but may not function if Lombok is not properly configured in the project.
+ * Note: Lombok annotations (@Getter) are used for generating getter methods
+ * but may not function if Lombok is not properly configured in the project.
  * 
  * @author Aleksandra Nizio
  * @version 1.0
  */
-@NoArgsConstructor
 @Getter
-public class Model {
+public class Model implements AutoCloseable {
 
     /**
-     * List of energy data entries. Preloaded with sample data for demonstration purposes.
+     * First year covered by the data set.
      */
-    private final List<EnergyData> energyDataList = new ArrayList<>(List.of(
-        new EnergyData(2001, 1, "AK", EnergySource.COAL, EnergyProducer.ELECTRIC_UTILITIES, 46903),
-        new EnergyData(2001, 2, "AK", EnergySource.NATURAL_GAS, EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 36500),
-        new EnergyData(2002, 1, "AK", EnergySource.WIND, EnergyProducer.COMBINED_HEAT_AND_POWER, 90),
-        new EnergyData(2001, 1, "CA", EnergySource.HYDROELECTRIC, EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 102000),
-        new EnergyData(2002, 1, "CA", EnergySource.SOLAR, EnergyProducer.RENEWABLE_ENERGY_COMPANIES, 3000)
-    ));
+    public static final int FIRST_YEAR = 2001;
 
     /**
-     * Adds a new {@link EnergyData} entry to the list.
+     * Last year covered by the data set.
+     */
+    public static final int LAST_YEAR = 2022;
+
+    /**
+     * Highest plant id; 0 marks state-level entries.
+     */
+    public static final int MAX_PLANT = (1 << 24) - 1;
+
+    /**
+     * Most anomalies {@link #getAnomalies()} keeps; beyond it the oldest are dropped.
+     */
+    public static final int MAX_ANOMALIES = 10_000;
+
+    /**
+     * Longest forecast {@link #forecast(int)} makes, in months.
+     */
+    public static final int MAX_FORECAST_MONTHS = 24;
+
+    /**
+     * Largest number of distinct keys in a segment for which one masked SIMD pass per key
+     * beats a single scalar pass that scatters into per-key accumulators.
+     */
+    private static final int MAX_MASKED_PASSES = 8;
+
+    /**
+     * Aggregation kernels, vectorized when the Vector API is available.
+     */
+    private static final AmountKernels KERNELS = AmountKernels.INSTANCE;
+
+    /**
+     * Heap bytes of a listed {@link Anomaly}: the record, its entry and the queue slot.
+     */
+    private static final int ANOMALY_BYTES = 48 + 40 + 4;
+
+    /**
+     * Seed of the stratified sample, fixed so that estimates are reproducible.
+     */
+    private static final long SAMPLE_SEED = 0x5EED;
+
+    /**
+     * Columnar store of energy data entries.
+     */
+    private EnergyStore store;
+
+    /**
+     * How rows with an already stored key are added.
+     */
+    private WriteMode writeMode = WriteMode.APPEND;
+
+    /**
+     * What added rows with an anomalous amount are subject to.
+     */
+    private AnomalyPolicy anomalyPolicy = AnomalyPolicy.OFF;
+
+    /**
+     * Running statistics per state, source and month of the year behind anomaly scoring.
+     * Learned from the store in one scan by the first write scored after scoring was turned
+     * on or another store was opened, so opening partitions reads nothing, and from every
+     * accepted row after that.
+     */
+    @Getter(AccessLevel.NONE)
+    private AnomalyDetector anomalyDetector;
+
+    /**
+     * Flagged and quarantined entries, oldest first, at most {@link #MAX_ANOMALIES} of them.
+     */
+    @Getter(AccessLevel.NONE)
+    private final ArrayDeque<Anomaly> anomalies = new ArrayDeque<>();
+
+    /**
+     * Number of anomalies dropped from the full list to make room for newer ones; dropped
+     * quarantined entries are discarded.
+     */
+    private long anomaliesDropped;
+
+    /**
+     * Primary index from the packed row key to the row id of the latest row with that key.
+     * Built on the first upsert and maintained by every write after that.
+     */
+    @Getter(AccessLevel.NONE)
+    private PrimaryKeyIndex primaryIndex;
+
+    /**
+     * Whether rows appended since the index was built repeated a key, in which case the
+     * index only knows the latest of them and has to be rebuilt after a delete.
+     */
+    @Getter(AccessLevel.NONE)
+    private boolean duplicateKeys;
+
+    /**
+     * Fenwick trees of monthly totals behind the range queries.
+     * Built on the first range query and maintained by every write after that.
+     */
+    @Getter(AccessLevel.NONE)
+    private TimelineIndex timelineIndex;
+
+    /**
+     * Monthly totals and cached Holt-Winters fits per (state, source, producer) series.
+     * Built on the first forecast and maintained by every write after that.
+     */
+    @Getter(AccessLevel.NONE)
+    private SeasonalForecaster forecaster;
+
+    /**
+     * Forecaster a snapshot built for this model, taken over on this model's thread if no
+     * write came in between; {@code null} if there is none.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile Offer<SeasonalForecaster> offeredForecaster;
+
+    /**
+     * Number of writes to the store, which tells whether a forecaster built on a snapshot is still current.
+     */
+    @Getter(AccessLevel.NONE)
+    private long writes;
+
+    /**
+     * The model this one is a {@link #snapshot()} of, {@code null} for other models.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Model origin;
+
+    /**
+     * Writes to the origin when the snapshot was taken.
+     */
+    @Getter(AccessLevel.NONE)
+    private final long originWrites;
+
+    /**
+     * Sort permutations of the rows behind the table sorter.
+     * Built per column on first use and merged with appended rows on the next request.
+     */
+    @Getter(AccessLevel.NONE)
+    private SortIndex sortIndex;
+
+    /**
+     * Reservoir sample per (state, source) behind the estimates. Kept by every write from an
+     * empty store or a loaded file on; a store opened with rows, such as year partitions,
+     * is sampled in one scan on first use, which a {@link #snapshot()} can do off the
+     * thread that writes this model.
+     */
+    @Getter(AccessLevel.NONE)
+    private StratifiedSample sample;
+
+    /**
+     * Sample a snapshot drew for this model, taken over on this model's thread if no write
+     * came in between; {@code null} if there is none.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile Offer<StratifiedSample> offeredSample;
+
+    /**
+     * Listeners notified of every row change.
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<ModelListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * First position appended by the running {@link #addAll} call, whose appends are
+     * announced as one range when it returns; -1 outside of it.
+     */
+    @Getter(AccessLevel.NONE)
+    private int batchStart = -1;
+
+    /**
+     * Bytes the {@link MemoryFootprint} may reach before writes drop the rebuildable
+     * structures and then refuse rows; {@link Long#MAX_VALUE} for no limit.
+     */
+    private long memoryLimit = Long.MAX_VALUE;
+
+    /**
+     * Operational metrics of this model, readable over JMX once registered; shared with its snapshots.
+     */
+    private final EnergyMetrics metrics;
+
+    /**
+     * Creates a model on a heap {@link ColumnStore} preloaded with sample data for demonstration purposes.
+     */
+    public Model() {
+        this(new ColumnStore());
+        List.of(
+            new EnergyData(2001, 1, "AK", EnergySource.COAL, EnergyProducer.ELECTRIC_UTILITIES, 46903),
+            new EnergyData(2001, 2, "AK", EnergySource.NATURAL_GAS, EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 36500),
+            new EnergyData(2002, 1, "AK", EnergySource.WIND, EnergyProducer.COMBINED_HEAT_AND_POWER, 90),
+            new EnergyData(2001, 1, "CA", EnergySource.HYDROELECTRIC, EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 102000),
+            new EnergyData(2002, 1, "CA", EnergySource.SOLAR, EnergyProducer.RENEWABLE_ENERGY_COMPANIES, 3000)
+        ).forEach(store::append);
+        sample = StratifiedSample.of(store, SAMPLE_SEED);
+    }
+
+    /**
+     * Creates an empty model on the given storage backend, for example an {@link OffHeapColumnStore}.
+     *
+     * @param store the store holding the energy data
+     */
+    public Model(EnergyStore store) {
+        this.store = store;
+        this.origin = null;
+        this.originWrites = 0;
+        this.sample = store.size() == 0 ? new StratifiedSample(SAMPLE_SEED) : null;
+        this.metrics = new EnergyMetrics(
+            () -> this.store.size(),
+            this::getMemoryFootprint,
+            () -> memoryLimit,
+            "getEnergySources", "sortProducersByTotalEnergy", "calculateMinEnergy",
+            "calculateMaxEnergy", "getMostUsedEnergySource", "countEntriesBySource", "getEnergyByStateForMonth",
+            "pivot", "forecast", "getEnergyInRange", "getEnergyByStateInRange", "getEnergyPer", "getTimeSeries",
+            "getSortedPositions", "filterPositions", "groupBy",
+            "estimateEnergyByStateForMonth", "diff"
+        );
+    }
+
+    /**
+     * Creates a {@link #snapshot()} of another model that records its queries in the
+     * metrics of that model, for subclasses whose snapshots keep their behaviour.
+     *
+     * @param origin the model to copy, on the thread that writes it
+     */
+    protected Model(Model origin) {
+        this.store = origin.store.snapshot();
+        this.origin = origin;
+        this.originWrites = origin.writes;
+        this.metrics = origin.metrics;
+        this.writeMode = origin.writeMode;
+        origin.takeOfferedForecaster();
+        this.forecaster = origin.forecaster == null ? null : origin.forecaster.snapshot();
+    }
+
+    /**
+     * Returns a copy of the entries as they are now, for queries on a background thread
+     * while this model goes on being written on its own thread. The snapshot is taken on
+     * the thread that writes this model and costs little for a heap {@link ColumnStore}, whose
+     * sealed segments are shared, see {@link EnergyStore#snapshot()}. Queries on the snapshot
+     * are recorded in the metrics of this model; listeners and indexes are not copied,
+     * except for the monthly totals of {@link #forecast(int)}, whose fits are handed back.
+     *
+     * @return the snapshot, to be read and closed by one other thread
+     */
+    public Model snapshot() {
+        return new Model(this);
+    }
+
+    /**
+     * Takes over the forecaster a snapshot built, if this model was not written since the snapshot was taken.
+     */
+    private void takeOfferedForecaster() {
+        Offer<SeasonalForecaster> offered = offeredForecaster;
+        offeredForecaster = null;
+        if (forecaster == null && offered != null && offered.writes() == writes) {
+            forecaster = offered.value();
+        }
+    }
+
+    /**
+     * Takes over the sample a snapshot drew, if this model was not written since the snapshot was taken.
+     */
+    private void takeOfferedSample() {
+        Offer<StratifiedSample> offered = offeredSample;
+        offeredSample = null;
+        if (sample == null && offered != null && offered.writes() == writes) {
+            sample = offered.value();
+        }
+    }
+
+    /**
+     * A structure built on a snapshot and the writes to this model it covers.
+     */
+    private record Offer<T>(T value, long writes) {
+    }
+
+    /**
+     * Returns a read-only view of all energy data entries in insertion order.
+     * Rows are decoded from the columnar store on access; deleted rows are not part of the view.
+     *
+     * @return the list of energy data entries
+     */
+    public List<EnergyData> getEnergyDataList() {
+        return new AbstractList<>() {
+            @Override
+            public EnergyData get(int index) {
+                return store.row(store.rowIdAt(index));
+            }
+
+            @Override
+            public int size() {
+                return store.size();
+            }
+
+            @Override
+            public Iterator<EnergyData> iterator() {
+                return store.iterator();
+            }
+        };
+    }
+
+    /**
+     * Saves all energy data to a file in the compressed columnar format.
+     *
+     * @param file the target file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        ColumnStore columnStore = store instanceof ColumnStore heapStore ? heapStore : ColumnStore.copyOf(store);
+        columnStore.writeTo(file);
+    }
+
+    /**
+     * Replaces the energy data with the contents of a file written by {@link #save(Path)}.
+     * The loaded data is held in a heap {@link ColumnStore}; the previous store is closed.
+     *
+     * @param file the source file
+     * @throws IOException if the file cannot be read
+     */
+    public void load(Path file) throws IOException {
+        replaceStore(ColumnStore.readFrom(file));
+        sample();
+    }
+
+    /**
+     * Saves all energy data in the Apache Arrow IPC file format, which pyarrow, pandas and
+     * DuckDB read directly. State, source and producer are dictionary-encoded; sources and
+     * producers by their enum constant names.
+     *
+     * @param file the target file, created or truncated
+     * @throws IOException if the file cannot be written
+     */
+    public void saveArrow(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ArrowIpc.write(store, channel, true);
+        }
+    }
+
+    /**
+     * Writes all energy data in the Apache Arrow IPC stream format, for example to the
+     * standard input of a Python process, with the schema of {@link #saveArrow(Path)}.
+     *
+     * @param channel the target, left open
+     * @throws IOException if the channel cannot be written
+     */
+    public void writeArrowStream(WritableByteChannel channel) throws IOException {
+        ArrowIpc.write(store, channel, false);
+    }
+
+    /**
+     * Replaces the energy data with the contents of an Arrow IPC file or stream file, as
+     * written by {@link #saveArrow(Path)} or by Arrow tooling with the same column names.
+     * Rows are checked like new entries; the loaded data is held in a heap {@link ColumnStore}
+     * and the previous store is closed.
+     *
+     * @param file the source file
+     * @throws IOException if the file cannot be read or does not hold valid energy data
+     */
+    public void loadArrow(Path file) throws IOException {
+        replaceStore(ArrowIpc.read(file));
+        sample();
+    }
+
+    /**
+     * Replaces the energy data with an Arrow IPC stream, read up to its end-of-stream marker.
+     *
+     * @param channel the source, left open
+     * @throws IOException if the stream cannot be read or does not hold valid energy data
+     * @see #loadArrow(Path)
+     */
+    public void readArrowStream(ReadableByteChannel channel) throws IOException {
+        replaceStore(ArrowIpc.read(channel));
+        sample();
+    }
+
+    /**
+     * Sets how {@link #addEnergyData(EnergyData)} treats rows whose key is already stored.
+     *
+     * @param writeMode the write mode
+     */
+    public void setWriteMode(WriteMode writeMode) {
+        this.writeMode = Objects.requireNonNull(writeMode);
+    }
+
+    /**
+     * Sets what {@link #addEnergyData(EnergyData)}, {@link #addAll(EnergyColumns, RejectionReport)},
+     * {@link #upsertEnergyData(EnergyData)} and {@link #updateEnergyData(EnergyData, EnergyData)}
+     * do with an amount far from the recent amounts of its state, source and month of the year.
+     * The first write scored after scoring is turned on learns the stored rows in one scan;
+     * after that every row is scored and learned in constant time as it arrives.
+     *
+     * @param anomalyPolicy the anomaly policy
+     */
+    public void setAnomalyPolicy(AnomalyPolicy anomalyPolicy) {
+        this.anomalyPolicy = Objects.requireNonNull(anomalyPolicy);
+        if (anomalyPolicy == AnomalyPolicy.OFF) {
+            anomalyDetector = null;
+        }
+    }
+
+    /**
+     * Returns the entries flagged or quarantined since the data was loaded, oldest first.
+     * Only the latest {@link #MAX_ANOMALIES} are kept, so that a noisy feed in
+     * {@link AnomalyPolicy#FLAG} mode does not fill the heap; see {@link #getAnomaliesDropped()}.
+     *
+     * @return a copy of the anomalies
+     */
+    public List<Anomaly> getAnomalies() {
+        return List.copyOf(anomalies);
+    }
+
+    /**
+     * Stores a quarantined entry after all, for example once a user confirmed its amount,
+     * and learns it as a normal amount of its state, source and month of the year. A held
+     * back upsert or correction replaces the amount stored under its key.
+     *
+     * @param anomaly a quarantined entry from {@link #getAnomalies()}
+     * @return {@code true} if the entry was stored, {@code false} if it was not quarantined
+     */
+    public boolean releaseQuarantined(Anomaly anomaly) {
+        if (!anomaly.quarantined() || !anomalies.remove(anomaly)) {
+            return false;
+        }
+        if (anomaly.replacing()) {
+            upsert(anomaly.data());
+        } else {
+            insert(anomaly.data());
+        }
+        learn(anomaly.data());
+        metrics.recordIngested(1);
+        return true;
+    }
+
+    /**
+     * Forgets a flagged or quarantined entry; a quarantined one is discarded.
+     *
+     * @param anomaly an entry from {@link #getAnomalies()}
+     * @return {@code true} if the entry was listed
+     */
+    public boolean dismissAnomaly(Anomaly anomaly) {
+        return anomalies.remove(anomaly);
+    }
+
+    /**
+     * Forgets every flagged and quarantined entry; quarantined ones are discarded.
+     */
+    public void clearAnomalies() {
+        anomalies.clear();
+    }
+
+    /**
+     * Saves all energy data to a directory as year partitions, which
+     * {@link #openPartitioned(Path, long)} can later open without loading them.
+     *
+     * @param directory the target directory
+     * @throws IOException if the files cannot be written
+     */
+    public void savePartitioned(Path directory) throws IOException {
+        PartitionedStore.write(store, directory);
+    }
+
+    /**
+     * Replaces the energy data with the year partitions in a directory. Segments are loaded
+     * on demand into a cache bounded by {@code cacheBytes}; cache hits, misses and evictions
+     * are recorded in the metrics. The previous store is closed.
+     *
+     * @param directory a directory written by {@link #savePartitioned(Path)}
+     * @param cacheBytes the memory budget for loaded segments
+     * @throws IOException if the partitions cannot be opened
+     */
+    public void openPartitioned(Path directory, long cacheBytes) throws IOException {
+        replaceStore(PartitionedStore.open(directory, cacheBytes, metrics));
+    }
+
+    /**
+     * Switches to a new store, closing the previous one and dropping every index built over it.
+     */
+    private void replaceStore(EnergyStore replacement) {
+        store.close();
+        store = replacement;
+        writes++;
+        primaryIndex = null;
+        timelineIndex = null;
+        forecaster = null;
+        offeredForecaster = null;
+        sortIndex = null;
+        sample = null;
+        offeredSample = null;
+        anomalies.clear();
+        anomaliesDropped = 0;
+        anomalyDetector = null;
+        fire(ModelEvent.Type.RELOADED, 0, store.size());
+    }
+
+    /**
+     * Closes the store, see {@link EnergyStore#close()}. Off-heap chunks are not freed
+     * by this call but once the garbage collector finds them unreachable.
+     */
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    /**
+     * Reports the bytes held by each structure of this model. Indexes, forecast totals and
+     * anomaly statistics that were never built count as zero. The numbers come from array
+     * lengths and segment layouts, so they are cheap enough to poll, and they are exposed
+     * over JMX through {@link EnergyMetrics}.
+     *
+     * @return the current footprint
+     */
+    public MemoryFootprint getMemoryFootprint() {
+        PrimaryKeyIndex primary = primaryIndex;
+        TimelineIndex timeline = timelineIndex;
+        SortIndex sort = sortIndex;
+        SeasonalForecaster series = forecaster;
+        AnomalyDetector detector = anomalyDetector;
+        StratifiedSample drawn = sample;
+        long dictionary = store.dictionary().sizeInBytes() + store.counties().sizeInBytes();
+        long cache = store.cacheBytes();
+        long indexes = (primary == null ? 0 : primary.sizeInBytes()) + (timeline == null ? 0 : timeline.sizeInBytes())
+            + (sort == null ? 0 : sort.sizeInBytes());
+        long sketches = (detector == null ? 0 : detector.sizeInBytes()) + (long) anomalies.size() * ANOMALY_BYTES
+            + (drawn == null ? 0 : drawn.sizeInBytes());
+        return new MemoryFootprint(store.sizeInBytes() - dictionary - cache, dictionary, indexes, cache,
+            series == null ? 0 : series.sizeInBytes(), sketches);
+    }
+
+    /**
+     * Limits the bytes of the {@link MemoryFootprint}. A write that finds the limit reached
+     * first drops the segment cache, the timeline and sort indexes, the forecast totals and,
+     * outside of {@link WriteMode#UPSERT} mode, the primary index, all of which are rebuilt
+     * when next needed. If the footprint is still above the limit the write is refused.
+     * A bulk load is checked once before it starts, so it may overshoot by its own rows.
+     *
+     * @param bytes the limit, {@link Long#MAX_VALUE} for none
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public void setMemoryLimit(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Memory limit must be positive");
+        }
+        memoryLimit = bytes;
+    }
+
+    /**
+     * Makes room for new rows under the memory limit.
+     *
+     * @param rows the number of rows about to be written, counted as refused if the write is
+     * @throws IllegalStateException if the footprint exceeds the limit even without rebuildable structures
+     */
+    private void reserveMemory(int rows) {
+        if (memoryLimit == Long.MAX_VALUE) {
+            return;
+        }
+        long bytes = getMemoryFootprint().totalBytes();
+        if (bytes <= memoryLimit) {
+            return;
+        }
+        store.dropCaches();
+        timelineIndex = null;
+        forecaster = null;
+        offeredForecaster = null;
+        sortIndex = null;
+        if (writeMode == WriteMode.APPEND) {
+            primaryIndex = null;
+        }
+        long remaining = getMemoryFootprint().totalBytes();
+        if (remaining < bytes) {
+            metrics.recordMemoryEviction();
+        }
+        if (remaining > memoryLimit) {
+            metrics.recordRefused(rows);
+            throw new IllegalStateException("Memory limit of " + memoryLimit + " bytes reached, "
+                + remaining + " bytes in use");
+        }
+    }
+
+    /**
+     * Registers a listener for the row changes of this model.
+     *
+     * @param listener the listener
+     */
+    public void addModelListener(ModelListener listener) {
+        listeners.add(Objects.requireNonNull(listener, "Listener cannot be null"));
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener
+     */
+    public void removeModelListener(ModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fire(ModelEvent.Type type, int from, int to) {
+        if (!listeners.isEmpty() && (from < to || type == ModelEvent.Type.RELOADED)) {
+            ModelEvent event = new ModelEvent(type, from, to);
+            for (ModelListener listener : listeners) {
+                listener.modelChanged(event);
+            }
+        }
+    }
+
+    /**
+     * Announces that the amount of a row was replaced in place, unless the row was appended
+     * by the running bulk load and is yet to be announced.
+     */
+    private void fireUpdated(int rowId) {
+        if (!listeners.isEmpty()) {
+            int position = store.positionOf(rowId);
+            if (batchStart < 0 || position < batchStart) {
+                fire(ModelEvent.Type.UPDATED, position, position + 1);
+            }
+        }
+    }
+
+    /**
+     * Announces a row appended at the last position, unless it belongs to a bulk load
+     * that announces all its rows at the end.
+     */
+    private void fireAppended() {
+        if (batchStart < 0) {
+            fire(ModelEvent.Type.APPENDED, store.size() - 1, store.size());
+        }
+    }
+
+    /**
+     * Adds a new {@link EnergyData} entry to the store, or replaces the stored amount
+     * of the same key when the model is in {@link WriteMode#UPSERT} mode. An anomalous
+     * amount is flagged or held back according to the {@link AnomalyPolicy}.
      * 
      * @param data the {@code EnergyData} entry to add
      * @throws InvalidEnergyDataException if the energy data is invalid
+     * @throws IllegalStateException if the {@link #setMemoryLimit(long) memory limit} is reached
      */
     public void addEnergyData(EnergyData data) throws InvalidEnergyDataException {
-        if (data == null) {
-            throw new InvalidEnergyDataException("Energy data cannot be null");
+        validateCounted(data);
+        reserveMemory(1);
+        admit(data);
+    }
+
+    /**
+     * Adds the valid rows of a batch like {@link #addEnergyData(EnergyData)} and records
+     * every invalid one in a report instead of throwing, so that a bulk load with some
+     * dirty rows does not pay for an exception per row. The rules and their order are
+     * those of {@link EnergySource#fromString(String)}, {@link EnergyProducer#fromString(String)}
+     * and {@link #addEnergyData(EnergyData)}; a row is reported once, for the first rule it breaks.
+     *
+     * @param batch the rows to add
+     * @param report the report collecting the rejected rows, numbered after the rows it has already checked
+     * @return the number of rows stored, without rows held back as anomalies
+     * @throws IllegalStateException if the {@link #setMemoryLimit(long) memory limit} is reached; no row is checked
+     */
+    public int addAll(EnergyColumns batch, RejectionReport report) {
+        int size = batch.size();
+        reserveMemory(size);
+        long firstRow = report.startBatch(size);
+        EnergySource[] sources = new EnergySource[size];
+        EnergyProducer[] producers = new EnergyProducer[size];
+        RejectReason[] reasons = new RejectReason[size];
+        String[] sourceTexts = batch.sources();
+        for (int i = 0; i < size; i++) {
+            sources[i] = EnergySource.lookup(sourceTexts[i]);
+            if (sources[i] == null) {
+                reasons[i] = RejectReason.UNKNOWN_SOURCE;
+            }
+        }
+        String[] producerTexts = batch.producers();
+        for (int i = 0; i < size; i++) {
+            producers[i] = EnergyProducer.lookup(producerTexts[i]);
+            if (producers[i] == null && reasons[i] == null) {
+                reasons[i] = RejectReason.UNKNOWN_PRODUCER;
+            }
+        }
+        int[] years = batch.years();
+        int[] months = batch.months();
+        String[] states = batch.states();
+        double[] amounts = batch.amounts();
+        int[] plants = batch.plants();
+        String[] counties = batch.counties();
+        int added = 0;
+        int rejected = 0;
+        batchStart = store.size();
+        try {
+            for (int i = 0; i < size; i++) {
+                if (reasons[i] == null) {
+                    reasons[i] = RejectReason.check(years[i], months[i], states[i], amounts[i], plants[i],
+                        counties[i]);
+                }
+                if (reasons[i] == null) {
+                    if (admit(new EnergyData(years[i], months[i], states[i], sources[i], producers[i], amounts[i],
+                            plants[i], counties[i]))) {
+                        added++;
+                    }
+                } else {
+                    report.add(firstRow + i, reasons[i]);
+                    rejected++;
+                }
+            }
+        } finally {
+            int from = batchStart;
+            batchStart = -1;
+            fire(ModelEvent.Type.APPENDED, from, store.size());
+        }
+        metrics.recordRejected(rejected);
+        return added;
+    }
+
+    /**
+     * Scores a validated entry against its history when anomaly scoring is on, then stores
+     * and learns it unless the policy holds it back.
+     *
+     * @return {@code true} if the entry was stored
+     */
+    private boolean admit(EnergyData data) {
+        Anomaly anomaly = screen(data, false);
+        if (anomaly != null && anomaly.quarantined()) {
+            return false;
+        }
+        insert(data);
+        learnUnlessFlagged(data, anomaly);
+        metrics.recordIngested(1);
+        return true;
+    }
+
+    /**
+     * Scores a validated entry against its history when anomaly scoring is on and lists it
+     * if its amount is anomalous.
+     *
+     * @param replacing whether the entry replaces the amount stored under its key
+     * @return the listed anomaly, {@code null} if the amount is normal or scoring is off
+     */
+    private Anomaly screen(EnergyData data, boolean replacing) {
+        AnomalyDetector detector = anomalyDetector();
+        double score = anomalyScore(detector, data);
+        if (detector == null || score <= detector.getThreshold()) {
+            return null;
+        }
+        int stateId = store.dictionary().lookup(data.state());
+        int source = data.source().ordinal();
+        Anomaly anomaly = new Anomaly(data, score,
+            detector.zScore(stateId, source, data.month(), data.amount()),
+            detector.expectedAmount(stateId, source, data.month()),
+            anomalyPolicy == AnomalyPolicy.QUARANTINE, replacing);
+        if (anomalies.size() == MAX_ANOMALIES) {
+            anomalies.removeFirst();
+            anomaliesDropped++;
+        }
+        anomalies.addLast(anomaly);
+        return anomaly;
+    }
+
+    /**
+     * Learns a stored entry, unless it was flagged: a flagged amount is stored but kept out
+     * of the history it is judged by.
+     */
+    private void learnUnlessFlagged(EnergyData data, Anomaly anomaly) {
+        if (anomaly == null) {
+            learn(data);
+        }
+    }
+
+    /**
+     * Returns the anomaly statistics, learning them from the store in one scan on first use.
+     *
+     * @return the statistics, {@code null} if scoring is off
+     */
+    private AnomalyDetector anomalyDetector() {
+        if (anomalyDetector == null && anomalyPolicy != AnomalyPolicy.OFF) {
+            anomalyDetector = AnomalyDetector.learnAll(store, AnomalyDetector.DEFAULT_THRESHOLD);
+        }
+        return anomalyDetector;
+    }
+
+    /**
+     * @return the anomaly score of an entry against its history, 0 if it has none or scoring is off
+     */
+    private double anomalyScore(AnomalyDetector detector, EnergyData data) {
+        int stateId = store.dictionary().lookup(data.state());
+        if (detector == null || stateId < 0) {
+            return 0;
+        }
+        return detector.score(stateId, data.source().ordinal(), data.month(), data.amount());
+    }
+
+    /**
+     * Adds a stored amount to the anomaly statistics, where learned; statistics learned
+     * later find it in the store.
+     */
+    private void learn(EnergyData data) {
+        if (anomalyDetector != null) {
+            anomalyDetector.learn(store.dictionary().lookup(data.state()), data.source().ordinal(), data.month(),
+                data.amount());
+        }
+    }
+
+    /**
+     * Stores a validated entry according to the write mode.
+     */
+    private void insert(EnergyData data) {
+        if (writeMode == WriteMode.UPSERT) {
+            upsert(data);
+        } else {
+            int rowId = store.append(data);
+            writes++;
+            if (primaryIndex != null && primaryIndex.put(keyOf(data), rowId) >= 0) {
+                duplicateKeys = true;
+            }
+            indexAppended(data, rowId);
+            fireAppended();
+        }
+    }
+
+    /**
+     * Adds an entry, or replaces the amount of the stored entry with the same year, month,
+     * state, source, producer and plant, regardless of the write mode. Segment zone maps are
+     * corrected, so totals never count a replaced value. If duplicates were appended
+     * earlier, the most recently added one is replaced. The amount is scored like that of
+     * {@link #addEnergyData(EnergyData)}; a quarantined entry leaves the stored one as it is.
+     *
+     * @param data the {@code EnergyData} entry to add or replace
+     * @return {@code true} if a stored amount was replaced, {@code false} if the entry was
+     *         added or quarantined
+     * @throws InvalidEnergyDataException if the energy data is invalid
+     * @throws IllegalStateException if the {@link #setMemoryLimit(long) memory limit} is reached
+     */
+    public boolean upsertEnergyData(EnergyData data) throws InvalidEnergyDataException {
+        validateCounted(data);
+        reserveMemory(1);
+        Anomaly anomaly = screen(data, true);
+        if (anomaly != null && anomaly.quarantined()) {
+            return false;
+        }
+        boolean replaced = upsert(data);
+        learnUnlessFlagged(data, anomaly);
+        metrics.recordIngested(1);
+        return replaced;
+    }
+
+    /**
+     * Deletes the stored entry with the same year, month, state, source, producer and plant as
+     * {@code data}; its amount is ignored. If duplicates were appended earlier, the most
+     * recently added one is deleted. Every query result and zone map reflects the delete at once.
+     *
+     * @param data the key of the entry to delete
+     * @return {@code true} if an entry was deleted, {@code false} if no entry has that key
+     */
+    public boolean deleteEnergyData(EnergyData data) {
+        Objects.requireNonNull(data, "Energy data cannot be null");
+        if (!PrimaryKeyIndex.fits(data) || store.dictionary().lookup(data.state()) < 0) {
+            return false;
+        }
+        int rowId = primaryIndex().remove(keyOf(data));
+        if (rowId < 0) {
+            return false;
+        }
+        if (timelineIndex != null || forecaster != null) {
+            indexTimeline(data, -store.row(rowId).amount(), -1);
+        }
+        int position = listeners.isEmpty() ? -1 : store.positionOf(rowId);
+        store.delete(rowId);
+        writes++;
+        // later rows move up one position
+        sortIndex = null;
+        int stateId = store.dictionary().lookup(data.state());
+        if (sample != null && !sample.remove(stateId, data.source().ordinal(), rowId)) {
+            sample.redraw(store, stateId, data.source().ordinal());
+        }
+        if (duplicateKeys) {
+            // an earlier duplicate of the key becomes the stored entry, find it on the next lookup
+            primaryIndex = null;
+        }
+        fire(ModelEvent.Type.REMOVED, position, position + 1);
+        return true;
+    }
+
+    /**
+     * Replaces a stored entry with a corrected one. When only the amount changes it is
+     * replaced in place; otherwise the old entry is deleted and the new one is added.
+     * The corrected amount is scored like that of {@link #addEnergyData(EnergyData)}: a
+     * flagged one is stored and listed, a quarantined one is listed and leaves the old entry
+     * as it is. A change of key is refused without touching the old entry if another entry
+     * already has the new key, which would be duplicated or merged, or if the
+     * {@link AnomalyPolicy} would quarantine the corrected entry.
+     *
+     * @param oldData the key of the entry to replace; its amount is ignored
+     * @param newData the corrected entry
+     * @return {@code true} if the old entry existed and the corrected one was stored
+     * @throws InvalidEnergyDataException if the corrected entry is invalid
+     * @throws IllegalStateException if the {@link #setMemoryLimit(long) memory limit} is
+     *                               reached by a change of key; the old entry is kept
+     */
+    public boolean updateEnergyData(EnergyData oldData, EnergyData newData) throws InvalidEnergyDataException {
+        Objects.requireNonNull(oldData, "Energy data cannot be null");
+        validateCounted(newData);
+        if (!PrimaryKeyIndex.fits(oldData) || store.dictionary().lookup(oldData.state()) < 0) {
+            return false;
+        }
+        long oldKey = keyOf(oldData);
+        int rowId = primaryIndex().get(oldKey);
+        if (rowId < 0) {
+            return false;
+        }
+        if (oldKey != keyOf(newData)) {
+            return replaceKey(oldData, newData);
+        }
+        Anomaly anomaly = screen(newData, true);
+        if (anomaly != null && anomaly.quarantined()) {
+            return false;
+        }
+        double previous = store.replaceAmount(rowId, newData.amount());
+        writes++;
+        indexReplaced(newData, rowId, previous);
+        fireUpdated(rowId);
+        learnUnlessFlagged(newData, anomaly);
+        metrics.recordIngested(1);
+        return true;
+    }
+
+    /**
+     * Moves an entry to a new key. Everything that can refuse the corrected entry is checked
+     * before the old one is deleted, so the update happens completely or not at all.
+     */
+    private boolean replaceKey(EnergyData oldData, EnergyData newData) {
+        if (primaryIndex().get(keyOf(newData)) >= 0) {
+            return false;
+        }
+        AnomalyDetector detector = anomalyDetector();
+        if (anomalyPolicy == AnomalyPolicy.QUARANTINE && detector != null
+                && anomalyScore(detector, newData) > detector.getThreshold()) {
+            return false;
+        }
+        reserveMemory(1);
+        deleteEnergyData(oldData);
+        return admit(newData);
+    }
+
+    private boolean upsert(EnergyData data) {
+        PrimaryKeyIndex index = primaryIndex();
+        long key = keyOf(data);
+        int rowId = index.get(key);
+        if (rowId >= 0) {
+            double previous = store.replaceAmount(rowId, data.amount());
+            writes++;
+            indexReplaced(data, rowId, previous);
+            fireUpdated(rowId);
+            return true;
+        }
+        rowId = store.append(data);
+        writes++;
+        index.put(key, rowId);
+        indexAppended(data, rowId);
+        fireAppended();
+        return false;
+    }
+
+    /**
+     * Adds a row appended at the last position to the timeline and sort indexes and the
+     * sample, where built.
+     */
+    private void indexAppended(EnergyData data, int rowId) {
+        indexTimeline(data, data.amount(), 1);
+        if (sample != null) {
+            sample.add(store.dictionary().lookup(data.state()), data.source().ordinal(), rowId, data.month(),
+                data.amount());
+        }
+        if (sortIndex != null) {
+            int county = data.county() == null ? 0 : store.counties().lookup(data.county()) + 1;
+            sortIndex.appended(data, store.dictionary().lookup(data.state()), county, store.size() - 1);
+        }
+    }
+
+    /**
+     * Corrects the timeline and sort indexes and the sample after the amount of a row was replaced.
+     */
+    private void indexReplaced(EnergyData data, int rowId, double previousAmount) {
+        indexTimeline(data, data.amount() - previousAmount, 0);
+        if (sample != null) {
+            sample.replaceAmount(store.dictionary().lookup(data.state()), data.source().ordinal(), rowId,
+                data.amount());
+        }
+        if (sortIndex != null) {
+            sortIndex.invalidate(EnergyColumn.AMOUNT);
+        }
+    }
+
+    /**
+     * Adds an amount and a row count to the timeline index and the forecast series, where built.
+     */
+    private void indexTimeline(EnergyData data, double amount, int rows) {
+        if (timelineIndex != null) {
+            timelineIndex.add(store.dictionary().idOf(data.state()), data.source().ordinal(),
+                TimelineIndex.bucket(data.year(), data.month()), amount, rows);
         }
-        if (data.amount() <= 0) {
-            throw new InvalidEnergyDataException("Energy amount must be greater than 0");
+        if (forecaster != null) {
+            forecaster.add(store.dictionary().idOf(data.state()), data.source().ordinal(),
+                data.producer().ordinal(), TimelineIndex.bucket(data.year(), data.month()), amount, rows);
         }
-        if (data.month() < 1 || data.month() > 12) {
-            throw new InvalidEnergyDataException("Month must be between 1 and 12");
+    }
+
+    /**
+     * Returns the sample, drawing it in one scan if this model has none. A snapshot hands a
+     * copy of the sample it drew to its origin.
+     */
+    private StratifiedSample sample() {
+        takeOfferedSample();
+        if (sample == null) {
+            sample = StratifiedSample.of(store, SAMPLE_SEED);
+            if (origin != null) {
+                origin.offeredSample = new Offer<>(sample.copy(), originWrites);
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * Tells whether {@link #estimateEnergyByStateForMonth(int)} answers at once, or has to draw
+     * the sample in one scan first, which is better done on a {@link #snapshot()}.
+     *
+     * @return {@code true} if the sample is drawn
+     */
+    public boolean isSampleDrawn() {
+        takeOfferedSample();
+        return sample != null;
+    }
+
+    /**
+     * Returns the timeline index, building it in one scan on first use.
+     */
+    private TimelineIndex timelineIndex() {
+        if (timelineIndex == null) {
+            timelineIndex = TimelineIndex.of(store);
+        }
+        return timelineIndex;
+    }
+
+    private long keyOf(EnergyData data) {
+        return PrimaryKeyIndex.pack(data, store.dictionary().idOf(data.state()));
+    }
+
+    /**
+     * Returns the primary index, building it from the key columns on first use so that
+     * models which never upsert pay nothing for it.
+     */
+    private PrimaryKeyIndex primaryIndex() {
+        if (primaryIndex == null) {
+            PrimaryKeyIndex index = new PrimaryKeyIndex(store.size());
+            boolean[] duplicates = new boolean[1];
+            int columns = ColumnBatch.ALL_COLUMNS & ~ColumnBatch.AMOUNT | ColumnBatch.ROW_ID;
+            store.scan(columns, batch -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    long key = PrimaryKeyIndex.pack(batch.years()[i], batch.months()[i], batch.states()[i],
+                        batch.sources()[i], batch.producers()[i], batch.plants()[i]);
+                    duplicates[0] |= index.put(key, batch.rowIds()[i]) >= 0;
+                }
+            });
+            primaryIndex = index;
+            duplicateKeys = duplicates[0];
+        }
+        return primaryIndex;
+    }
+
+    /**
+     * Validates an entry and counts it as rejected in the metrics if it is invalid.
+     */
+    private void validateCounted(EnergyData data) throws InvalidEnergyDataException {
+        try {
+            validate(data);
+        } catch (InvalidEnergyDataException e) {
+            metrics.recordRejected();
+            throw e;
         }
-        if (data.year() < 2001 || data.year() > 2022) {
-            throw new InvalidEnergyDataException("Year must be between 2001 and 2022");
+    }
+
+    /**
+     * Checks a single {@link EnergyData} entry against the validation rules.
+     *
+     * @param data the entry to check
+     * @throws InvalidEnergyDataException if the energy data is invalid
+     */
+    private void validate(EnergyData data) throws InvalidEnergyDataException {
+        if (data == null) {
+            throw new InvalidEnergyDataException("Energy data cannot be null");
         }
-        if (data.state() == null || data.state().trim().isEmpty()) {
-            throw new InvalidEnergyDataException("State cannot be empty");
+        RejectReason reason = RejectReason.of(data);
+        if (reason != null) {
+            throw new InvalidEnergyDataException(reason.getMessage());
         }
-        energyDataList.add(data);
     }
 
     /**
      * Retrieves a set of unique energy sources.
+     * Answered from the segment zone maps without decoding any rows.
      * 
      * @return a set of unique energy source types
      */
     public Set<EnergySource> getEnergySources() {
-        return energyDataList.stream()
-            .map(EnergyData::source)
-            .collect(Collectors.toSet());
+        long start = System.nanoTime();
+        try {
+            int[] sourceMask = new int[1];
+            store.scan(0, new SegmentVisitor() {
+                @Override
+                public boolean accept(SegmentSummary summary) {
+                    sourceMask[0] |= summary.getSourceMask();
+                    return false;
+                }
+
+                @Override
+                public void visit(ColumnBatch batch) {
+                }
+            });
+            Set<EnergySource> sources = EnumSet.noneOf(EnergySource.class);
+            for (EnergySource source : EnergySource.values()) {
+                if ((sourceMask[0] & (1 << source.ordinal())) != 0) {
+                    sources.add(source);
+                }
+            }
+            return sources;
+        } finally {
+            recordQuery("getEnergySources", start);
+        }
     }
 
     /**
      * Sorts energy producers by their total energy production in descending order.
+     * Sealed segments only decode their amounts; producer runs are summed in encoded form.
      * 
      * @return a list of producers and their corresponding total energy production
      */
     public List<Map.Entry<EnergyProducer, Double>> sortProducersByTotalEnergy() {
-        Map<EnergyProducer, Double> producerEnergyMap = energyDataList.stream()
-            .collect(Collectors.groupingBy(EnergyData::producer, Collectors.summingDouble(EnergyData::amount)));
-        return producerEnergyMap.entrySet()
-            .stream()
-            .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-            .collect(Collectors.toList());
+        long start = System.nanoTime();
+        try {
+            double[] totals = new double[EnergyProducer.values().length];
+            store.scan(ColumnBatch.PRODUCER | ColumnBatch.AMOUNT, new SegmentVisitor() {
+                private double[] scratch;
+                private int producerMask;
+
+                @Override
+                public boolean accept(SegmentSummary summary) {
+                    producerMask = summary.getProducerMask();
+                    return true;
+                }
+
+                @Override
+                public boolean visitEncoded(EncodedSegment segment) {
+                    if (scratch == null) {
+                        scratch = new double[ColumnStore.SEGMENT_ROWS];
+                    }
+                    segment.sumByProducer(scratch, totals);
+                    return true;
+                }
+
+                @Override
+                public void visit(ColumnBatch batch) {
+                    for (int producer = 0; producer < totals.length; producer++) {
+                        if ((producerMask & (1 << producer)) != 0) {
+                            totals[producer] += KERNELS.sumWhere(batch.producers(), producer,
+                                batch.amounts(), batch.size());
+                        }
+                    }
+                }
+            });
+            // amounts are validated to be positive, so a zero total means no rows
+            List<Map.Entry<EnergyProducer, Double>> result = new ArrayList<>();
+            for (EnergyProducer producer : EnergyProducer.values()) {
+                if (totals[producer.ordinal()] > 0) {
+                    result.add(Map.entry(producer, totals[producer.ordinal()]));
+                }
+            }
+            result.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
+            return result;
+        } finally {
+            recordQuery("sortProducersByTotalEnergy", start);
+        }
     }
 
     /**
@@ -89,11 +1232,12 @@ public class Model {
      * @return a map of states and their minimum energy production
      */
     public Map<String, Double> calculateMinEnergy() {
-        return energyDataList.stream()
-            .collect(Collectors.groupingBy(EnergyData::state, Collectors.minBy(Comparator.comparingDouble(EnergyData::amount))))
-            .entrySet()
-            .stream()
-            .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get().amount()));
+        long start = System.nanoTime();
+        try {
+            return extremeByState(false);
+        } finally {
+            recordQuery("calculateMinEnergy", start);
+        }
     }
 
     /**
@@ -102,37 +1246,726 @@ public class Model {
      * @return a map of states and their maximum energy production
      */
     public Map<String, Double> calculateMaxEnergy() {
-        return energyDataList.stream()
-            .collect(Collectors.groupingBy(EnergyData::state, Collectors.maxBy(Comparator.comparingDouble(EnergyData::amount))))
-            .entrySet()
-            .stream()
-            .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get().amount()));
+        long start = System.nanoTime();
+        try {
+            return extremeByState(true);
+        } finally {
+            recordQuery("calculateMaxEnergy", start);
+        }
+    }
+
+    /**
+     * Computes the minimum or maximum amount of every state in one scan
+     * over the state and amount columns.
+     *
+     * @param max {@code true} for maxima, {@code false} for minima
+     * @return a map of states and their extreme amount
+     */
+    private Map<String, Double> extremeByState(boolean max) {
+        StateDictionary dictionary = store.dictionary();
+        double[] extremes = new double[dictionary.size()];
+        Arrays.fill(extremes, max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+        store.scan(ColumnBatch.STATE | ColumnBatch.AMOUNT, new SegmentVisitor() {
+            private SegmentSummary summary;
+
+            @Override
+            public boolean accept(SegmentSummary summary) {
+                this.summary = summary;
+                return true;
+            }
+
+            @Override
+            public void visit(ColumnBatch batch) {
+                int[] states = batch.states();
+                double[] amounts = batch.amounts();
+                if (summary.getMaxStateId() - summary.getMinStateId() < MAX_MASKED_PASSES) {
+                    for (int state = summary.getMinStateId(); state <= summary.getMaxStateId(); state++) {
+                        extremes[state] = max
+                            ? Math.max(extremes[state], KERNELS.maxWhere(states, state, amounts, batch.size()))
+                            : Math.min(extremes[state], KERNELS.minWhere(states, state, amounts, batch.size()));
+                    }
+                    return;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    int state = states[i];
+                    extremes[state] = max ? Math.max(extremes[state], amounts[i]) : Math.min(extremes[state], amounts[i]);
+                }
+            }
+        });
+        Map<String, Double> result = new HashMap<>();
+        for (int state = 0; state < extremes.length; state++) {
+            if (!Double.isInfinite(extremes[state])) {
+                result.put(dictionary.state(state), extremes[state]);
+            }
+        }
+        return result;
     }
 
     /**
      * Determines the most frequently used energy source.
+     * Sealed segments are counted from their source runs without decoding rows.
      * 
      * @return the most used energy source
      */
     public EnergySource getMostUsedEnergySource() {
-        return energyDataList.stream()
-            .collect(Collectors.groupingBy(EnergyData::source, Collectors.counting()))
-            .entrySet()
-            .stream()
-            .max(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElse(null);
+        long start = System.nanoTime();
+        try {
+            long[] counts = countSources();
+            EnergySource mostUsed = null;
+            for (EnergySource source : EnergySource.values()) {
+                if (counts[source.ordinal()] > 0
+                        && (mostUsed == null || counts[source.ordinal()] > counts[mostUsed.ordinal()])) {
+                    mostUsed = source;
+                }
+            }
+            return mostUsed;
+        } finally {
+            recordQuery("getMostUsedEnergySource", start);
+        }
+    }
+
+    /**
+     * Counts the entries of every energy source, the partial result behind
+     * {@link #getMostUsedEnergySource()} when several models are combined.
+     *
+     * @return the number of entries per source, indexed by {@link EnergySource#ordinal()}
+     */
+    public long[] countEntriesBySource() {
+        long start = System.nanoTime();
+        try {
+            return countSources();
+        } finally {
+            recordQuery("countEntriesBySource", start);
+        }
+    }
+
+    private long[] countSources() {
+        long[] counts = new long[EnergySource.values().length];
+        store.scan(ColumnBatch.SOURCE, new SegmentVisitor() {
+            @Override
+            public boolean visitEncoded(EncodedSegment segment) {
+                segment.countSources(counts);
+                return true;
+            }
+
+            @Override
+            public void visit(ColumnBatch batch) {
+                int[] sources = batch.sources();
+                for (int i = 0; i < batch.size(); i++) {
+                    counts[sources[i]]++;
+                }
+            }
+        });
+        return counts;
     }
 
     /**
      * Retrieves the total energy production by state for a specific month.
+     * Segments without rows for the month are skipped by their zone maps.
      * 
      * @param month the month (1-12) to filter the data
      * @return a map of states and their total energy production for the specified month
      */
     public Map<String, Double> getEnergyByStateForMonth(int month) {
-        return energyDataList.stream()
-            .filter(data -> data.month() == month)
-            .collect(Collectors.groupingBy(EnergyData::state, Collectors.summingDouble(EnergyData::amount)));
+        long start = System.nanoTime();
+        try {
+            StateDictionary dictionary = store.dictionary();
+            double[] totals = new double[dictionary.size()];
+            boolean[] present = new boolean[dictionary.size()];
+            store.scan(ColumnBatch.MONTH | ColumnBatch.STATE | ColumnBatch.AMOUNT, new SegmentVisitor() {
+                private SegmentSummary summary;
+
+                @Override
+                public boolean accept(SegmentSummary summary) {
+                    this.summary = summary;
+                    return summary.containsMonth(month);
+                }
+
+                @Override
+                public void visit(ColumnBatch batch) {
+                    int[] months = batch.months();
+                    int[] states = batch.states();
+                    double[] amounts = batch.amounts();
+                    if (summary.getMaxStateId() - summary.getMinStateId() < MAX_MASKED_PASSES) {
+                        // amounts are validated to be positive, so a zero total means no rows
+                        for (int state = summary.getMinStateId(); state <= summary.getMaxStateId(); state++) {
+                            double total = KERNELS.sumWhere(months, month, states, state, amounts, batch.size());
+                            if (total > 0) {
+                                totals[state] += total;
+                                present[state] = true;
+                            }
+                        }
+                        return;
+                    }
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (months[i] == month) {
+                            totals[states[i]] += amounts[i];
+                            present[states[i]] = true;
+                        }
+                    }
+                }
+            });
+            Map<String, Double> result = new HashMap<>();
+            for (int state = 0; state < totals.length; state++) {
+                if (present[state]) {
+                    result.put(dictionary.state(state), totals[state]);
+                }
+            }
+            return result;
+        } finally {
+            recordQuery("getEnergyByStateForMonth", start);
+        }
+    }
+
+    /**
+     * Estimates the total energy production by state for a specific month from a sample of
+     * at most {@value StratifiedSample#CAPACITY} rows per state and source, in time that does
+     * not grow with the number of rows, so that a first answer can be shown while
+     * {@link #getEnergyByStateForMonth(int)} scans. Each total comes with a 95% confidence
+     * interval; states whose rows all fit in the sample are exact. States with rows in the
+     * month but none drawn are missing from the result. Unless {@link #isSampleDrawn()},
+     * the sample is drawn in one scan first; drawn on a snapshot, it is handed to this model.
+     *
+     * @param month the month (1-12) to filter the data
+     * @return a map of states and their estimated total energy production for the specified month
+     */
+    public Map<String, Estimate> estimateEnergyByStateForMonth(int month) {
+        long start = System.nanoTime();
+        try {
+            StratifiedSample drawn = sample();
+            StateDictionary dictionary = store.dictionary();
+            double[] totals = new double[dictionary.size()];
+            double[] variances = new double[dictionary.size()];
+            boolean[] hits = new boolean[dictionary.size()];
+            drawn.estimateMonth(month, totals, variances, hits);
+            Map<String, Estimate> result = new HashMap<>();
+            for (int state = 0; state < totals.length; state++) {
+                if (hits[state]) {
+                    result.put(dictionary.state(state),
+                        new Estimate(totals[state], StratifiedSample.Z_95 * Math.sqrt(variances[state])));
+                }
+            }
+            return result;
+        } finally {
+            recordQuery("estimateEnergyByStateForMonth", start);
+        }
+    }
+
+    /**
+     * Returns how many rows the estimates are drawn from, drawing the sample if needed.
+     *
+     * @return the number of sampled rows
+     */
+    public int getSampleSize() {
+        return sample().size();
+    }
+
+    /**
+     * Retrieves the total energy production of a state between two months, both included,
+     * for example March 2008 through November 2013. Answered from Fenwick trees over the
+     * monthly timeline in O(log n) per source, without scanning any rows.
+     *
+     * @param state the state code
+     * @param source the energy source, or {@code null} for all sources
+     * @param from the first month of the range
+     * @param to the last month of the range
+     * @return the total energy production in MWh, 0 if the state has no rows in the range
+     * @throws IllegalArgumentException if the range is outside 2001-2022 or {@code from} is after {@code to}
+     */
+    public double getEnergyInRange(String state, EnergySource source, YearMonth from, YearMonth to) {
+        long start = System.nanoTime();
+        try {
+            int first = rangeBucket(from);
+            int last = rangeBucket(to);
+            checkRange(first, last);
+            int stateId = store.dictionary().lookup(state);
+            if (stateId < 0) {
+                return 0;
+            }
+            TimelineIndex index = timelineIndex();
+            return source == null
+                ? index.sum(stateId, first, last)
+                : index.sum(stateId, source.ordinal(), first, last);
+        } finally {
+            recordQuery("getEnergyInRange", start);
+        }
+    }
+
+    /**
+     * Retrieves the total energy production by state between two months, both included.
+     *
+     * @param from the first month of the range
+     * @param to the last month of the range
+     * @return a map of the states with rows in the range and their total energy production
+     * @throws IllegalArgumentException if the range is outside 2001-2022 or {@code from} is after {@code to}
+     */
+    public Map<String, Double> getEnergyByStateInRange(YearMonth from, YearMonth to) {
+        long start = System.nanoTime();
+        try {
+            int first = rangeBucket(from);
+            int last = rangeBucket(to);
+            checkRange(first, last);
+            TimelineIndex index = timelineIndex();
+            StateDictionary dictionary = store.dictionary();
+            Map<String, Double> result = new HashMap<>();
+            for (int state = 0; state < dictionary.size(); state++) {
+                if (index.contains(state, first, last)) {
+                    result.put(dictionary.state(state), index.sum(state, first, last));
+                }
+            }
+            return result;
+        } finally {
+            recordQuery("getEnergyByStateInRange", start);
+        }
+    }
+
+    /**
+     * Joins the energy data with a reference table on the state and aggregates the
+     * joined rows in the same single scan, for example generation per capita by region.
+     * Rows of states missing from the table are left out, and so are segments holding no
+     * state of the table. The amounts of each group are divided by the total of
+     * {@code per} over all table rows of the group; groups where that total is not
+     * positive are left out.
+     *
+     * @param table the reference table
+     * @param per a numeric attribute to divide by, such as population or capacity,
+     *            or {@code null} for plain totals
+     * @param groupBy a text attribute to group the states by, such as region,
+     *                or {@code null} to report every state
+     * @param from the first month of the range
+     * @param to the last month of the range
+     * @return the total, or total per unit of {@code per}, of every group with rows in the range
+     * @throws IllegalArgumentException if an attribute does not exist or has the wrong type,
+     *                                  or the range is outside 2001-2022 or {@code from} is after {@code to}
+     */
+    public Map<String, Double> getEnergyPer(DimensionTable table, String per, String groupBy,
+            YearMonth from, YearMonth to) {
+        long start = System.nanoTime();
+        try {
+            int first = rangeBucket(from);
+            int last = rangeBucket(to);
+            checkRange(first, last);
+            double[] units = per == null ? null : table.getNumbers(per);
+            int[] groupOfRow;
+            List<String> labels;
+            if (groupBy == null) {
+                groupOfRow = new int[table.size()];
+                String[] states = new String[table.size()];
+                for (int row = 0; row < groupOfRow.length; row++) {
+                    groupOfRow[row] = row;
+                    states[row] = table.getState(row);
+                }
+                labels = Arrays.asList(states);
+            } else {
+                groupOfRow = table.getCodes(groupBy);
+                labels = table.getLabels(groupBy);
+            }
+
+            HashJoin join = HashJoin.build(table, store.dictionary());
+            int[] groupOfState = join.byState(groupOfRow);
+            double[] totals = new double[labels.size()];
+            boolean[] present = new boolean[labels.size()];
+            int columns = ColumnBatch.YEAR | ColumnBatch.MONTH | ColumnBatch.STATE | ColumnBatch.AMOUNT;
+            store.scan(columns, new SegmentVisitor() {
+                @Override
+                public boolean accept(SegmentSummary summary) {
+                    return join.joinsAny(summary.getMinStateId(), summary.getMaxStateId());
+                }
+
+                @Override
+                public void visit(ColumnBatch batch) {
+                    int[] years = batch.years();
+                    int[] months = batch.months();
+                    int[] states = batch.states();
+                    double[] amounts = batch.amounts();
+                    for (int i = 0; i < batch.size(); i++) {
+                        int group = groupOfState[states[i]];
+                        int bucket = TimelineIndex.bucket(years[i], months[i]);
+                        if (group >= 0 && bucket >= first && bucket <= last) {
+                            totals[group] += amounts[i];
+                            present[group] = true;
+                        }
+                    }
+                }
+            });
+
+            double[] divisors = new double[labels.size()];
+            if (units != null) {
+                for (int row = 0; row < groupOfRow.length; row++) {
+                    divisors[groupOfRow[row]] += units[row];
+                }
+            }
+            Map<String, Double> result = new HashMap<>();
+            for (int group = 0; group < totals.length; group++) {
+                if (!present[group]) {
+                    continue;
+                }
+                if (units == null) {
+                    result.put(labels.get(group), totals[group]);
+                } else if (divisors[group] > 0) {
+                    result.put(labels.get(group), totals[group] / divisors[group]);
+                }
+            }
+            return result;
+        } finally {
+            recordQuery("getEnergyPer", start);
+        }
+    }
+
+    private static int rangeBucket(YearMonth month) {
+        Objects.requireNonNull(month, "Range bounds cannot be null");
+        if (month.getYear() < FIRST_YEAR || month.getYear() > LAST_YEAR) {
+            throw new IllegalArgumentException("Range must lie between 2001 and 2022: " + month);
+        }
+        return TimelineIndex.bucket(month.getYear(), month.getMonthValue());
+    }
+
+    private static void checkRange(int first, int last) {
+        if (first > last) {
+            throw new IllegalArgumentException("Range start must not be after its end");
+        }
+    }
+
+    /**
+     * Cross-tabulates total energy production by two dimensions, for example states by
+     * sources, in a single scan that adds every amount straight into a dense matrix.
+     *
+     * @param rows the dimension along the rows
+     * @param columns the dimension along the columns, different from {@code rows}
+     * @return the pivot table with row and column totals
+     */
+    public PivotTable pivot(PivotDimension rows, PivotDimension columns) {
+        if (rows == columns) {
+            throw new IllegalArgumentException("Pivot dimensions must differ");
+        }
+        long start = System.nanoTime();
+        try {
+            StateDictionary dictionary = store.dictionary();
+            String[] rowLabels = rows.labels(dictionary);
+            String[] columnLabels = columns.labels(dictionary);
+            int width = columnLabels.length;
+            // index of cell (row key, column key) is rowKey * width + columnKey - offset
+            int offset = rows.base() * width + columns.base();
+            double[] cells = new double[rowLabels.length * width];
+            store.scan(rows.column() | columns.column() | ColumnBatch.AMOUNT, batch -> {
+                int[] rowKeys = rows.keys(batch);
+                int[] columnKeys = columns.keys(batch);
+                double[] amounts = batch.amounts();
+                for (int i = 0; i < batch.size(); i++) {
+                    cells[rowKeys[i] * width + columnKeys[i] - offset] += amounts[i];
+                }
+            });
+            return new PivotTable(rows, columns, rowLabels, columnLabels, cells);
+        } finally {
+            recordQuery("pivot", start);
+        }
+    }
+
+    /**
+     * Totals the amounts and counts the rows of every distinct combination of some columns,
+     * for example per plant and month, in a single scan within a fixed heap budget. Unlike
+     * {@link #pivot(PivotDimension, PivotDimension)} the number of groups is unbounded: the
+     * columns of a row are packed into one {@code long} key, with as many bits per column as
+     * its distinct values need, and aggregated in a primitive hash table that spills
+     * partitioned runs to temporary files whenever it fills up, merging them afterwards.
+     *
+     * @param columns the columns to group by, each at most once, not including {@link EnergyColumn#AMOUNT}
+     * @param memoryBytes the heap the aggregation may use, at least about 150 KB
+     * @param visitor receives every group once, in no particular order
+     * @throws IOException if spilled groups cannot be written or read back
+     * @throws IllegalArgumentException if a column is the amount or repeated, the packed key
+     *                                  would not fit 63 bits or the budget is too small
+     */
+    public void groupBy(List<EnergyColumn> columns, long memoryBytes, GroupVisitor visitor) throws IOException {
+        long start = System.nanoTime();
+        try {
+            StateDictionary dictionary = store.dictionary();
+            StateDictionary counties = store.counties();
+            EnergyColumn[] keyColumns = columns.toArray(EnergyColumn[]::new);
+            int[] shifts = new int[keyColumns.length];
+            long[] masks = new long[keyColumns.length];
+            int[] bases = new int[keyColumns.length];
+            int flags = ColumnBatch.AMOUNT;
+            int bits = 0;
+            for (int c = 0; c < keyColumns.length; c++) {
+                EnergyColumn column = keyColumns[c];
+                if ((flags & column.flag()) != 0) {
+                    throw new IllegalArgumentException("Cannot group by " + column + " twice or by the amount");
+                }
+                int width = bitsFor(switch (column) {
+                    case YEAR -> LAST_YEAR - FIRST_YEAR;
+                    case MONTH -> 12;
+                    case STATE -> Math.max(dictionary.size() - 1, 0);
+                    case SOURCE -> EnergySource.values().length - 1;
+                    case PRODUCER -> EnergyProducer.values().length - 1;
+                    case PLANT -> MAX_PLANT;
+                    case COUNTY -> counties.size();
+                    case AMOUNT -> throw new IllegalStateException();
+                });
+                bases[c] = column == EnergyColumn.YEAR ? FIRST_YEAR : 0;
+                shifts[c] = bits;
+                masks[c] = (1L << width) - 1;
+                bits += width;
+                flags |= column.flag();
+            }
+            if (bits > 63) {
+                throw new IllegalArgumentException("A group key of " + bits + " bits does not fit in 63");
+            }
+            try (SpillingAggregator aggregator = new SpillingAggregator(memoryBytes)) {
+                int[][] values = new int[keyColumns.length][];
+                store.scan(flags, batch -> {
+                    for (int c = 0; c < keyColumns.length; c++) {
+                        values[c] = columnValues(batch, keyColumns[c]);
+                    }
+                    double[] amounts = batch.amounts();
+                    try {
+                        for (int i = 0; i < batch.size(); i++) {
+                            long key = 0;
+                            for (int c = 0; c < keyColumns.length; c++) {
+                                key |= (long) (values[c][i] - bases[c]) << shifts[c];
+                            }
+                            aggregator.add(key, amounts[i]);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                Object[] key = new Object[keyColumns.length];
+                aggregator.finish((packed, total, rows) -> {
+                    for (int c = 0; c < keyColumns.length; c++) {
+                        int value = (int) (packed >>> shifts[c] & masks[c]) + bases[c];
+                        key[c] = switch (keyColumns[c]) {
+                            case STATE -> dictionary.state(value);
+                            case SOURCE -> EnergySource.values()[value];
+                            case PRODUCER -> EnergyProducer.values()[value];
+                            case COUNTY -> value == 0 ? null : counties.state(value - 1);
+                            default -> value;
+                        };
+                    }
+                    visitor.visit(key, total, rows);
+                });
+                metrics.recordGroupsSpilled(aggregator.spilledGroups());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } finally {
+            recordQuery("groupBy", start);
+        }
+    }
+
+    private static int bitsFor(int maxValue) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(maxValue);
+    }
+
+    private static int[] columnValues(ColumnBatch batch, EnergyColumn column) {
+        return switch (column) {
+            case YEAR -> batch.years();
+            case MONTH -> batch.months();
+            case STATE -> batch.states();
+            case SOURCE -> batch.sources();
+            case PRODUCER -> batch.producers();
+            case PLANT -> batch.plants();
+            case COUNTY -> batch.counties();
+            case AMOUNT -> throw new IllegalStateException();
+        };
+    }
+
+    /**
+     * Retrieves the monthly energy production over the whole timeline, one series per
+     * state, source or producer, in a single scan that adds every amount straight into
+     * its series and month.
+     *
+     * @param series the dimension to split the series by: state, source or producer
+     * @return the monthly series
+     * @throws IllegalArgumentException if {@code series} is the year or month dimension
+     */
+    public TimeSeries getTimeSeries(PivotDimension series) {
+        if (series == PivotDimension.YEAR || series == PivotDimension.MONTH) {
+            throw new IllegalArgumentException("Time series cannot be split by " + series.getDisplayName());
+        }
+        long start = System.nanoTime();
+        try {
+            String[] labels = series.labels(store.dictionary());
+            double[][] values = new double[labels.length][TimelineIndex.BUCKETS];
+            int columns = series.column() | ColumnBatch.YEAR | ColumnBatch.MONTH | ColumnBatch.AMOUNT;
+            store.scan(columns, batch -> {
+                int[] keys = series.keys(batch);
+                int[] years = batch.years();
+                int[] months = batch.months();
+                double[] amounts = batch.amounts();
+                for (int i = 0; i < batch.size(); i++) {
+                    values[keys[i]][TimelineIndex.bucket(years[i], months[i])] += amounts[i];
+                }
+            });
+            return new TimeSeries(series, labels, values);
+        } finally {
+            recordQuery("getTimeSeries", start);
+        }
+    }
+
+    /**
+     * Forecasts the monthly generation of every (state, source, producer) series with at
+     * least two years between its first and last month of data, using additive
+     * Holt-Winters with a 12-month season. Fits are cached per series; only series
+     * written since the previous forecast are fitted again, in parallel on the common
+     * fork-join pool. To forecast off the thread that writes the model, forecast on a
+     * {@link #snapshot()}; its fits are kept for the next snapshot.
+     *
+     * @param months the number of months to forecast, 1 to {@link #MAX_FORECAST_MONTHS}
+     * @return the forecasts ordered by state, source and producer
+     * @throws IllegalArgumentException if {@code months} is out of range
+     */
+    public List<Forecast> forecast(int months) {
+        if (months < 1 || months > MAX_FORECAST_MONTHS) {
+            throw new IllegalArgumentException("Forecasts cover 1 to " + MAX_FORECAST_MONTHS + " months: " + months);
+        }
+        long start = System.nanoTime();
+        try {
+            takeOfferedForecaster();
+            SeasonalForecaster series = forecaster;
+            boolean built = series == null;
+            if (built) {
+                series = SeasonalForecaster.of(store);
+                forecaster = series;
+            }
+            series.refit(ForkJoinPool.commonPool());
+            if (built && origin != null) {
+                // the origin takes it over on its own thread unless it was written meanwhile
+                origin.offeredForecaster = new Offer<>(series, originWrites);
+            }
+            StateDictionary dictionary = store.dictionary();
+            int sources = EnergySource.values().length;
+            int producers = EnergyProducer.values().length;
+            YearMonth first = YearMonth.of(FIRST_YEAR, 1);
+            List<Forecast> forecasts = new ArrayList<>();
+            for (int fitted : series.fittedSeries()) {
+                int pair = fitted / producers;
+                forecasts.add(new Forecast(dictionary.state(pair / sources), EnergySource.values()[pair % sources],
+                    EnergyProducer.values()[fitted % producers],
+                    first.plusMonths(series.firstForecastBucket(fitted)),
+                    series.forecast(fitted, months), series.rmse(fitted)));
+            }
+            forecasts.sort(Comparator.comparing(Forecast::state).thenComparing(Forecast::source)
+                .thenComparing(Forecast::producer));
+            return forecasts;
+        } finally {
+            recordQuery("forecast", start);
+        }
+    }
+
+    /**
+     * Compares an earlier version of the data with this one, for example the history as
+     * loaded before a monthly revision with the revised history. Rows are matched by year,
+     * month, state, source, producer and plant, with the amounts of duplicate keys summed,
+     * and every inserted, removed and changed key is passed to the visitor. When the keys of
+     * both versions do not fit the memory budget, they are partitioned by hash into
+     * temporary files and the partitions are compared in parallel on the common pool.
+     * Neither model may be written to while they are compared; to go on writing this one,
+     * compare a {@link #snapshot()} of it on another thread.
+     *
+     * @param previous the earlier version
+     * @param memoryBytes the heap the comparison may use
+     * @param visitor receives every differing key, one call at a time
+     * @return the counts of differing keys and the changes of the totals
+     * @throws IOException if partitions cannot be written or read back
+     * @throws IllegalArgumentException if the budget is too small for the larger version
+     */
+    public DiffSummary diff(Model previous, long memoryBytes, DiffVisitor visitor) throws IOException {
+        Objects.requireNonNull(visitor, "Visitor cannot be null");
+        long start = System.nanoTime();
+        try {
+            return SnapshotDiff.compare(previous.store, store, memoryBytes, ForkJoinPool.commonPool(), visitor);
+        } finally {
+            recordQuery("diff", start);
+        }
+    }
+
+    /**
+     * Returns the positions of all entries in {@link #getEnergyDataList()} in ascending
+     * order of a column, ties in list order. The permutation is built with a radix sort on
+     * first use and kept up to date: added entries are merged in on the next call, while
+     * deletes and replaced amounts make it rebuild.
+     *
+     * @param column the column to sort by
+     * @return the sorted positions, shared with the model and not to be modified
+     */
+    public int[] getSortedPositions(EnergyColumn column) {
+        long start = System.nanoTime();
+        try {
+            if (sortIndex == null) {
+                sortIndex = new SortIndex();
+            }
+            return sortIndex.order(store, column);
+        } finally {
+            recordQuery("getSortedPositions", start);
+        }
+    }
+
+    /**
+     * Finds the positions in {@link #getEnergyDataList()} of the entries matching a filter.
+     * Segments whose zone maps rule the filter out are skipped without decoding.
+     *
+     * @param filter the filter to apply
+     * @return a bit set with the position of every matching entry set
+     */
+    public BitSet filterPositions(EnergyFilter filter) {
+        long start = System.nanoTime();
+        try {
+            BitSet matches = new BitSet(store.size());
+            if (filter.isEmpty()) {
+                matches.set(0, store.size());
+                return matches;
+            }
+            int state = filter.state() == null ? -1 : store.dictionary().lookup(filter.state());
+            if (filter.state() != null && state < 0) {
+                return matches;
+            }
+            int source = filter.source() == null ? -1 : filter.source().ordinal();
+            int producer = filter.producer() == null ? -1 : filter.producer().ordinal();
+            int year = filter.year() == null ? -1 : filter.year();
+            int columns = (state >= 0 ? ColumnBatch.STATE : 0) | (source >= 0 ? ColumnBatch.SOURCE : 0)
+                | (producer >= 0 ? ColumnBatch.PRODUCER : 0) | (year >= 0 ? ColumnBatch.YEAR : 0);
+            store.scan(columns, new SegmentVisitor() {
+                private int position;
+
+                @Override
+                public boolean accept(SegmentSummary summary) {
+                    boolean possible = (state < 0 || state >= summary.getMinStateId() && state <= summary.getMaxStateId())
+                        && (source < 0 || (summary.getSourceMask() & 1 << source) != 0)
+                        && (producer < 0 || (summary.getProducerMask() & 1 << producer) != 0)
+                        && (year < 0 || summary.overlapsYear(year));
+                    if (!possible) {
+                        position += summary.getRowCount();
+                    }
+                    return possible;
+                }
+
+                @Override
+                public void visit(ColumnBatch batch) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        if ((state < 0 || batch.states()[i] == state)
+                                && (source < 0 || batch.sources()[i] == source)
+                                && (producer < 0 || batch.producers()[i] == producer)
+                                && (year < 0 || batch.years()[i] == year)) {
+                            matches.set(position + i);
+                        }
+                    }
+                    position += batch.size();
+                }
+            });
+            return matches;
+        } finally {
+            recordQuery("filterPositions", start);
+        }
+    }
+
+    /**
+     * Records the latency of a query started at the given time.
+     *
+     * @param query the query name
+     * @param startNanos the {@link System#nanoTime()} value taken when the query started
+     */
+    private void recordQuery(String query, long startNanos) {
+        metrics.recordQuery(query, System.nanoTime() - startNanos);
     }
 }
\ No newline at end of file
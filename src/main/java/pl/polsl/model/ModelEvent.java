@@ -0,0 +1,49 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * A change of the rows of a {@link Model}, as a range of positions in the list returned by
+ * {@link Model#getEnergyDataList()}. Positions are those right after the change, except
+ * for {@link Type#REMOVED} whose positions are those the rows had before it.
+ *
+ * @param type the kind of change
+ * @param from the first position changed
+ * @param to the position after the last one changed
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public record ModelEvent(Type type, int from, int to) {
+
+    /**
+     * Kinds of changes.
+     */
+    public enum Type {
+
+        /**
+         * Rows were appended at the end of the list.
+         */
+        APPENDED,
+
+        /**
+         * The amounts of rows were replaced in place.
+         */
+        UPDATED,
+
+        /**
+         * Rows were deleted; later rows moved up.
+         */
+        REMOVED,
+
+        /**
+         * Every row may have changed, for example after a file was loaded; the range covers the new rows.
+         */
+        RELOADED
+    }
+
+    /**
+     * @return the number of rows in the range
+     */
+    public int size() {
+        return to - from;
+    }
+}
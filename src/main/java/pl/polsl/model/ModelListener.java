@@ -0,0 +1,20 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Receives the row changes of a {@link Model}. A listener is called synchronously on the
+ * thread that made the change, once per row or once per range for the rows of a bulk
+ * load, so it should only record the change and do its work later.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface ModelListener {
+
+    /**
+     * Called after rows of the model changed.
+     *
+     * @param event the changed range
+     */
+    void modelChanged(ModelEvent event);
+}
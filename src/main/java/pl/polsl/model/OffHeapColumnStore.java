@@ -0,0 +1,457 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Off-heap columnar store for datasets of hundreds of millions of rows.
+ * Rows live outside the Java heap in fixed-size chunks of {@link #CHUNK_ROWS} rows,
+ * each chunk laid out column by column ({@link #ROW_BYTES} bytes per row: a two-byte
+ * year, state id and source/producer/month bytes, an eight-byte amount and four-byte
+ * plant and county ids), so the garbage collector never has to trace them. Chunks are either anonymous direct memory
+ * or pages of a memory-mapped file, which lets the dataset exceed the heap.
+ * Scans copy column slices into a reused {@link ColumnBatch} and create no garbage.
+ * <p>
+ * Deleted rows are tombstoned per slice and filtered out while copying; since every
+ * row has a fixed slot, their space is not reclaimed until the rows are copied into a
+ * new store, for example with {@link ColumnStore#copyOf(EnergyStore)}.
+ * <p>
+ * {@link #close()} drops the chunks and every later accessor fails because the store is
+ * closed; buffer accesses are bounds-checked. It does not free the memory: direct
+ * buffers and mappings are only released when the garbage collector finds them
+ * unreachable, which may be much later, and until then they still count against
+ * {@code -XX:MaxDirectMemorySize} and the address space. Freeing them on close would
+ * need the foreign memory API, a preview feature on Java 21. The upside is that a scan
+ * that is still running when the store is closed either finishes or fails but never
+ * reads freed memory.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class OffHeapColumnStore implements EnergyStore {
+
+    /**
+     * Number of rows per off-heap chunk.
+     */
+    public static final int CHUNK_ROWS = 1 << 20;
+
+    /**
+     * Number of off-heap bytes per row.
+     */
+    public static final int ROW_BYTES = 2 * Short.BYTES + 3 + Double.BYTES + 2 * Integer.BYTES;
+
+    private static final int YEAR_OFFSET = 0;
+    private static final int MONTH_OFFSET = YEAR_OFFSET + Short.BYTES * CHUNK_ROWS;
+    private static final int STATE_OFFSET = MONTH_OFFSET + CHUNK_ROWS;
+    private static final int SOURCE_OFFSET = STATE_OFFSET + Short.BYTES * CHUNK_ROWS;
+    private static final int PRODUCER_OFFSET = SOURCE_OFFSET + CHUNK_ROWS;
+    private static final int AMOUNT_OFFSET = PRODUCER_OFFSET + CHUNK_ROWS;
+    private static final int PLANT_OFFSET = AMOUNT_OFFSET + Double.BYTES * CHUNK_ROWS;
+    private static final int COUNTY_OFFSET = PLANT_OFFSET + Integer.BYTES * CHUNK_ROWS;
+    private static final int CHUNK_BYTES = ROW_BYTES * CHUNK_ROWS;
+    private static final int SEGMENT_ROWS = ColumnStore.SEGMENT_ROWS;
+
+    private final StateDictionary dictionary = new StateDictionary();
+    private final StateDictionary counties = new StateDictionary();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final List<SegmentSummary> summaries = new ArrayList<>();
+    private final List<long[]> tombstones = new ArrayList<>();
+    private final AtomicReference<ColumnBatch> spareBatch = new AtomicReference<>();
+    private final FileChannel channel;
+    private int size;
+    private int deletedRows;
+    private boolean closed;
+
+    private OffHeapColumnStore(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a store backed by anonymous off-heap memory.
+     *
+     * @return the empty store
+     */
+    public static OffHeapColumnStore allocate() {
+        return new OffHeapColumnStore(null);
+    }
+
+    /**
+     * Creates a store backed by a memory-mapped file, which is created or truncated.
+     * The file grows by one chunk at a time as rows are appended.
+     *
+     * @param file the backing file
+     * @return the empty store
+     * @throws IOException if the file cannot be opened
+     */
+    public static OffHeapColumnStore mapped(Path file) throws IOException {
+        return new OffHeapColumnStore(FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    @Override
+    public int append(EnergyData data) {
+        ensureOpen();
+        int stateId = dictionary.lookup(data.state());
+        if (stateId < 0 && dictionary.size() > Short.MAX_VALUE * 2 + 1) {
+            // checked before the state is added, so a rejected row leaves the dictionary as it was
+            throw new IllegalStateException("Too many distinct states for the off-heap layout");
+        }
+        int rowId = size;
+        int offset = rowId % CHUNK_ROWS;
+        if (offset == 0) {
+            chunks.add(allocateChunk(chunks.size()));
+        }
+        if (rowId % SEGMENT_ROWS == 0) {
+            summaries.add(new SegmentSummary());
+            tombstones.add(null);
+        }
+        if (stateId < 0) {
+            stateId = dictionary.idOf(data.state());
+        }
+        ByteBuffer buffer = chunks.get(rowId / CHUNK_ROWS).buffer;
+        buffer.putShort(YEAR_OFFSET + offset * Short.BYTES, (short) data.year());
+        buffer.put(MONTH_OFFSET + offset, (byte) data.month());
+        buffer.putShort(STATE_OFFSET + offset * Short.BYTES, (short) stateId);
+        buffer.put(SOURCE_OFFSET + offset, (byte) data.source().ordinal());
+        buffer.put(PRODUCER_OFFSET + offset, (byte) data.producer().ordinal());
+        buffer.putDouble(AMOUNT_OFFSET + offset * Double.BYTES, data.amount());
+        buffer.putInt(PLANT_OFFSET + offset * Integer.BYTES, data.plant());
+        buffer.putInt(COUNTY_OFFSET + offset * Integer.BYTES,
+            data.county() == null ? 0 : counties.idOf(data.county()) + 1);
+        summaries.get(rowId / SEGMENT_ROWS).include(data.year(), data.month(), stateId,
+            data.source().ordinal(), data.producer().ordinal(), data.amount());
+        size++;
+        return rowId;
+    }
+
+    /**
+     * Overwrites the amount in place; only when the old value was an extreme of its
+     * slice is the slice copied to the heap to recompute its zone map.
+     */
+    @Override
+    public double replaceAmount(int rowId, double amount) {
+        checkLive(rowId);
+        DoubleBuffer amounts = chunks.get(rowId / CHUNK_ROWS).amounts;
+        int offset = rowId % CHUNK_ROWS;
+        double previous = amounts.get(offset);
+        amounts.put(offset, amount);
+        SegmentSummary summary = summaries.get(rowId / SEGMENT_ROWS);
+        if (summary.replaceAmount(previous, amount)) {
+            ColumnBatch live = copySlice(rowId / SEGMENT_ROWS, ColumnBatch.AMOUNT);
+            summary.recomputeExtremes(live.amounts(), live.size());
+        }
+        return previous;
+    }
+
+    /**
+     * Tombstones a row and rebuilds the zone map of its slice from the remaining live rows.
+     */
+    @Override
+    public boolean delete(int rowId) {
+        ensureOpen();
+        if (rowId < 0 || rowId >= size) {
+            throw new IndexOutOfBoundsException(rowId);
+        }
+        int slice = rowId / SEGMENT_ROWS;
+        long[] deleted = tombstones.get(slice);
+        if (deleted == null) {
+            deleted = new long[SEGMENT_ROWS / Long.SIZE];
+            tombstones.set(slice, deleted);
+        } else if (BitPacking.isSet(deleted, rowId % SEGMENT_ROWS)) {
+            return false;
+        }
+        BitPacking.setBit(deleted, rowId % SEGMENT_ROWS);
+        deletedRows++;
+        ColumnBatch live = copySlice(slice, ColumnBatch.ALL_COLUMNS);
+        summaries.set(slice, SegmentSummary.of(live, live.size()));
+        return true;
+    }
+
+    @Override
+    public boolean isDeleted(int rowId) {
+        ensureOpen();
+        if (rowId < 0 || rowId >= size) {
+            throw new IndexOutOfBoundsException(rowId);
+        }
+        long[] deleted = tombstones.get(rowId / SEGMENT_ROWS);
+        return deleted != null && BitPacking.isSet(deleted, rowId % SEGMENT_ROWS);
+    }
+
+    /**
+     * @return the number of live rows
+     */
+    @Override
+    public int size() {
+        return size - deletedRows;
+    }
+
+    @Override
+    public int rowIdAt(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException(position);
+        }
+        if (deletedRows == 0) {
+            return position;
+        }
+        int remaining = position;
+        for (int slice = 0; slice < summaries.size(); slice++) {
+            int live = summaries.get(slice).getRowCount();
+            if (remaining >= live) {
+                remaining -= live;
+                continue;
+            }
+            long[] deleted = tombstones.get(slice);
+            for (int offset = 0; ; offset++) {
+                if ((deleted == null || !BitPacking.isSet(deleted, offset)) && remaining-- == 0) {
+                    return slice * SEGMENT_ROWS + offset;
+                }
+            }
+        }
+        throw new IndexOutOfBoundsException(position);
+    }
+
+    private ColumnBatch copySlice(int slice, int columns) {
+        ColumnBatch batch = new ColumnBatch(SEGMENT_ROWS);
+        int first = slice * SEGMENT_ROWS;
+        copyRows(first, Math.min(SEGMENT_ROWS, size - first), columns, batch);
+        return batch;
+    }
+
+    private void checkLive(int rowId) {
+        if (isDeleted(rowId)) {
+            throw new NoSuchElementException("Row " + rowId + " has been deleted");
+        }
+    }
+
+    @Override
+    public StateDictionary dictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public StateDictionary counties() {
+        return counties;
+    }
+
+    /**
+     * Visits the store in slices of {@link ColumnStore#SEGMENT_ROWS} rows, each with its own zone map.
+     */
+    @Override
+    public void scan(int columns, SegmentVisitor visitor) {
+        ensureOpen();
+        ColumnBatch batch = spareBatch.getAndSet(null);
+        if (batch == null) {
+            batch = new ColumnBatch(SEGMENT_ROWS);
+        }
+        try {
+            for (int segment = 0; segment < summaries.size(); segment++) {
+                SegmentSummary summary = summaries.get(segment);
+                if (summary.getRowCount() == 0 || !visitor.accept(summary)) {
+                    continue;
+                }
+                int first = segment * SEGMENT_ROWS;
+                copyRows(first, Math.min(SEGMENT_ROWS, size - first), columns, batch);
+                visitor.visit(batch);
+            }
+        } finally {
+            spareBatch.set(batch);
+        }
+    }
+
+    /**
+     * Copies the requested columns of the live rows among {@code count} rows starting at
+     * {@code first} into a batch. {@code first} is the start of a slice, and slices never
+     * straddle chunks because the chunk size is a multiple of the slice size.
+     */
+    private void copyRows(int first, int count, int columns, ColumnBatch batch) {
+        Chunk chunk = chunks.get(first / CHUNK_ROWS);
+        int offset = first % CHUNK_ROWS;
+        ByteBuffer buffer = chunk.buffer;
+        if ((columns & ColumnBatch.YEAR) != 0) {
+            int[] years = batch.years();
+            for (int i = 0; i < count; i++) {
+                years[i] = chunk.years.get(offset + i);
+            }
+        }
+        if ((columns & ColumnBatch.MONTH) != 0) {
+            int[] months = batch.months();
+            for (int i = 0; i < count; i++) {
+                months[i] = buffer.get(MONTH_OFFSET + offset + i);
+            }
+        }
+        if ((columns & ColumnBatch.STATE) != 0) {
+            int[] states = batch.states();
+            for (int i = 0; i < count; i++) {
+                states[i] = Short.toUnsignedInt(chunk.states.get(offset + i));
+            }
+        }
+        if ((columns & ColumnBatch.SOURCE) != 0) {
+            int[] sources = batch.sources();
+            for (int i = 0; i < count; i++) {
+                sources[i] = buffer.get(SOURCE_OFFSET + offset + i);
+            }
+        }
+        if ((columns & ColumnBatch.PRODUCER) != 0) {
+            int[] producers = batch.producers();
+            for (int i = 0; i < count; i++) {
+                producers[i] = buffer.get(PRODUCER_OFFSET + offset + i);
+            }
+        }
+        if ((columns & ColumnBatch.AMOUNT) != 0) {
+            chunk.amounts.get(offset, batch.amounts(), 0, count);
+        }
+        if ((columns & ColumnBatch.PLANT) != 0) {
+            chunk.plants.get(offset, batch.plants(), 0, count);
+        }
+        if ((columns & ColumnBatch.COUNTY) != 0) {
+            chunk.counties.get(offset, batch.counties(), 0, count);
+        }
+        if ((columns & ColumnBatch.ROW_ID) != 0) {
+            int[] rowIds = batch.rowIds();
+            for (int i = 0; i < count; i++) {
+                rowIds[i] = first + i;
+            }
+        }
+        batch.setSize(count);
+        long[] deleted = tombstones.get(first / SEGMENT_ROWS);
+        if (deleted != null) {
+            batch.removeDeleted(columns, deleted, null);
+        }
+    }
+
+    @Override
+    public EnergyData row(int rowId) {
+        checkLive(rowId);
+        Chunk chunk = chunks.get(rowId / CHUNK_ROWS);
+        int offset = rowId % CHUNK_ROWS;
+        int county = chunk.counties.get(offset);
+        return new EnergyData(
+            chunk.years.get(offset),
+            chunk.buffer.get(MONTH_OFFSET + offset),
+            dictionary.state(Short.toUnsignedInt(chunk.states.get(offset))),
+            EnergySource.values()[chunk.buffer.get(SOURCE_OFFSET + offset)],
+            EnergyProducer.values()[chunk.buffer.get(PRODUCER_OFFSET + offset)],
+            chunk.amounts.get(offset),
+            chunk.plants.get(offset),
+            county == 0 ? null : counties.state(county - 1));
+    }
+
+    /**
+     * @param rowId the row id
+     * @return the amount of the row, read without materializing the row
+     */
+    public double amount(int rowId) {
+        checkLive(rowId);
+        return chunks.get(rowId / CHUNK_ROWS).amounts.get(rowId % CHUNK_ROWS);
+    }
+
+    @Override
+    public Iterator<EnergyData> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                while (next < size && isDeleted(next)) {
+                    next++;
+                }
+                return next < size;
+            }
+
+            @Override
+            public EnergyData next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return row(next++);
+            }
+        };
+    }
+
+    /**
+     * @return the off-heap bytes of all chunks plus the heap bytes of summaries and the dictionaries
+     */
+    @Override
+    public long sizeInBytes() {
+        return (long) chunks.size() * CHUNK_BYTES + summaries.size() * 64L + dictionary.sizeInBytes()
+            + counties.sizeInBytes();
+    }
+
+    /**
+     * Drops every chunk and closes the backing file, if any. Mapped chunks stay valid
+     * after the file is closed, so a reader still holding one is not affected. The
+     * memory is freed later by the garbage collector, not by this call.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        chunks.clear();
+        summaries.clear();
+        tombstones.clear();
+        size = 0;
+        deletedRows = 0;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not close the backing file", e);
+            }
+        }
+    }
+
+    private Chunk allocateChunk(int index) {
+        ByteBuffer buffer;
+        if (channel == null) {
+            buffer = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        } else {
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * CHUNK_BYTES, CHUNK_BYTES);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not map chunk " + index + " of the backing file", e);
+            }
+        }
+        return new Chunk(buffer.order(ByteOrder.nativeOrder()));
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The off-heap store has been closed");
+        }
+    }
+
+    /**
+     * One off-heap chunk with typed views created once, so reads allocate nothing.
+     */
+    private static final class Chunk {
+        private final ByteBuffer buffer;
+        private final ShortBuffer years;
+        private final ShortBuffer states;
+        private final DoubleBuffer amounts;
+        private final IntBuffer plants;
+        private final IntBuffer counties;
+
+        Chunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.years = buffer.slice(YEAR_OFFSET, Short.BYTES * CHUNK_ROWS).order(buffer.order()).asShortBuffer();
+            this.states = buffer.slice(STATE_OFFSET, Short.BYTES * CHUNK_ROWS).order(buffer.order()).asShortBuffer();
+            this.amounts = buffer.slice(AMOUNT_OFFSET, Double.BYTES * CHUNK_ROWS).order(buffer.order()).asDoubleBuffer();
+            this.plants = buffer.slice(PLANT_OFFSET, Integer.BYTES * CHUNK_ROWS).order(buffer.order()).asIntBuffer();
+            this.counties = buffer.slice(COUNTY_OFFSET, Integer.BYTES * CHUNK_ROWS).order(buffer.order()).asIntBuffer();
+        }
+    }
+}
@@ -0,0 +1,626 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import com.mycompany.energiawusawlatach2001.metrics.EnergyMetrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Store over a directory of year partitions that is larger than the available memory.
+ * Only the zone map of every segment is resident, so queries answered from summaries
+ * never touch the disk. Segments are read on demand into a memory-bounded
+ * {@link SegmentCache}, and a miss in one year prefetches the neighbouring years on a
+ * background thread, which keeps scans over consecutive years mostly in memory.
+ * <p>
+ * The files are never modified. New rows go to an in-memory {@link ColumnStore}, and
+ * a deleted or replaced row pins a rewritten copy of its segment in memory; both are
+ * written back by saving the model again. A {@link #snapshot()} shares the file and the
+ * segment cache with this store, which must stay open while the snapshot is read.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class PartitionedStore implements EnergyStore {
+
+    /**
+     * Default memory budget of the segment cache.
+     */
+    public static final long DEFAULT_CACHE_BYTES = 256L << 20;
+
+    private static final String MANIFEST_FILE = "manifest.bin";
+    private static final String SEGMENTS_FILE = "segments.bin";
+    private static final int MANIFEST_MAGIC = 0x454E5250;
+    private static final int MANIFEST_VERSION = 2;
+    private static final int SEGMENT_ROWS = ColumnStore.SEGMENT_ROWS;
+
+    private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "energy-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final StateDictionary dictionary;
+    private final StateDictionary counties;
+    private final boolean withPlants;
+    private final FileChannel channel;
+    private final int[] years;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] firstRowIds;
+    private final SegmentSummary[] summaries;
+    private final int persistedRows;
+    private final SegmentCache cache;
+    private final long prefetchBytes;
+    private final Map<Integer, EncodedSegment> pinned = new ConcurrentHashMap<>();
+    private final Set<Integer> prefetching = ConcurrentHashMap.newKeySet();
+    private final ColumnStore delta;
+    private final boolean ownsFile;
+    private volatile int deletedPersisted;
+    private volatile boolean closed;
+    private ColumnBatch writeBatch;
+
+    private EncodedSegment decodedFrom;
+    private ColumnBatch decodedSegment;
+
+    private PartitionedStore(StateDictionary dictionary, StateDictionary counties, boolean withPlants,
+            FileChannel channel, int[] years, long[] offsets, int[] lengths, SegmentSummary[] summaries,
+            long cacheBytes, EnergyMetrics metrics) {
+        this.dictionary = dictionary;
+        this.counties = counties;
+        this.withPlants = withPlants;
+        this.channel = channel;
+        this.years = years;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.summaries = summaries;
+        this.firstRowIds = new int[summaries.length];
+        int rows = 0;
+        for (int i = 0; i < summaries.length; i++) {
+            firstRowIds[i] = rows;
+            rows += summaries[i].getRowCount();
+        }
+        this.persistedRows = rows;
+        this.cache = new SegmentCache(cacheBytes, metrics);
+        this.prefetchBytes = cacheBytes / 4;
+        this.delta = new ColumnStore(dictionary, counties);
+        this.ownsFile = true;
+    }
+
+    /**
+     * Creates a snapshot of a store over the same file and cache, with copies of what
+     * writes change: the dictionaries, the zone maps, the pinned segments and the delta.
+     */
+    private PartitionedStore(PartitionedStore source) {
+        this.dictionary = source.dictionary.copy();
+        this.counties = source.counties.copy();
+        this.withPlants = source.withPlants;
+        this.channel = source.channel;
+        this.years = source.years;
+        this.offsets = source.offsets;
+        this.lengths = source.lengths;
+        this.summaries = source.summaries.clone();
+        this.firstRowIds = source.firstRowIds;
+        this.persistedRows = source.persistedRows;
+        this.cache = source.cache;
+        this.prefetchBytes = source.prefetchBytes;
+        this.pinned.putAll(source.pinned);
+        this.delta = source.delta.snapshot(dictionary, counties);
+        this.deletedPersisted = source.deletedPersisted;
+        this.ownsFile = false;
+    }
+
+    /**
+     * Writes the live rows of a store to a directory, one partition per year.
+     * Rows keep their order within a year; the years follow each other in ascending order.
+     *
+     * @param source the store to write
+     * @param directory the target directory, created if needed; existing partitions are replaced
+     * @throws IOException if the files cannot be written
+     */
+    public static void write(EnergyStore source, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<Partition> partitions = new ArrayList<>();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(directory.resolve(SEGMENTS_FILE)))) {
+            SegmentWriter writer = new SegmentWriter(out, partitions);
+            Map<Integer, ColumnBatch> open = new HashMap<>();
+            source.scan(ColumnBatch.ALL_COLUMNS, batch -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    ColumnBatch year = open.computeIfAbsent(batch.years()[i], key -> new ColumnBatch(SEGMENT_ROWS));
+                    year.add(batch.years()[i], batch.months()[i], batch.states()[i], batch.sources()[i],
+                        batch.producers()[i], batch.amounts()[i], batch.plants()[i], batch.counties()[i]);
+                    if (year.isFull()) {
+                        writer.write(batch.years()[i], year);
+                    }
+                }
+            });
+            for (Map.Entry<Integer, ColumnBatch> year : open.entrySet()) {
+                if (year.getValue().size() > 0) {
+                    writer.write(year.getKey(), year.getValue());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // stable sort, so segments of a year stay in insertion order
+        partitions.sort(Comparator.comparingInt(Partition::year));
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(directory.resolve(MANIFEST_FILE))))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(MANIFEST_VERSION);
+            source.dictionary().writeTo(out);
+            source.counties().writeTo(out);
+            out.writeInt(partitions.size());
+            for (Partition partition : partitions) {
+                out.writeInt(partition.year());
+                out.writeLong(partition.offset());
+                out.writeInt(partition.length());
+                partition.summary().writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Opens a directory written by {@link #write(EnergyStore, Path)}. Only the manifest is read.
+     *
+     * @param directory the partition directory
+     * @param cacheBytes the memory budget of the segment cache
+     * @param metrics the registry receiving cache hits, misses and evictions
+     * @return the opened store
+     * @throws IOException if the manifest cannot be read or has an unknown format
+     */
+    public static PartitionedStore open(Path directory, long cacheBytes, EnergyMetrics metrics) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(directory.resolve(MANIFEST_FILE))))) {
+            int version = in.readInt() == MANIFEST_MAGIC ? in.readInt() : -1;
+            if (version < 1 || version > MANIFEST_VERSION) {
+                throw new IOException("Not an energy partition directory: " + directory);
+            }
+            boolean withPlants = version >= 2;
+            StateDictionary dictionary = StateDictionary.readFrom(in);
+            StateDictionary counties = withPlants ? StateDictionary.readFrom(in) : new StateDictionary();
+            int count = in.readInt();
+            int[] years = new int[count];
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            SegmentSummary[] summaries = new SegmentSummary[count];
+            for (int i = 0; i < count; i++) {
+                years[i] = in.readInt();
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+                summaries[i] = SegmentSummary.readFrom(in);
+            }
+            FileChannel channel = FileChannel.open(directory.resolve(SEGMENTS_FILE), StandardOpenOption.READ);
+            return new PartitionedStore(dictionary, counties, withPlants, channel, years, offsets, lengths, summaries,
+                cacheBytes, metrics);
+        }
+    }
+
+    @Override
+    public int append(EnergyData data) {
+        return persistedRows + delta.append(data);
+    }
+
+    /**
+     * The segment cache only ever holds segments as they are in the file, so it is shared;
+     * segments pinned by later writes stay private to this store.
+     */
+    @Override
+    public synchronized PartitionedStore snapshot() {
+        ensureOpen();
+        return new PartitionedStore(this);
+    }
+
+    /**
+     * Replaces an amount. A row from the files pins a rewritten copy of its segment in memory.
+     */
+    @Override
+    public synchronized double replaceAmount(int rowId, double amount) {
+        if (rowId >= persistedRows) {
+            return delta.replaceAmount(rowId - persistedRows, amount);
+        }
+        checkLive(rowId);
+        int segment = segmentOf(rowId);
+        EncodedSegment.AmountReplacement replacement =
+            segment(segment).withAmount(rowId - firstRowIds[segment], amount, writeBatch());
+        pin(segment, replacement.segment());
+        return replacement.previousAmount();
+    }
+
+    /**
+     * Tombstones a row. A row from the files pins a rewritten copy of its segment in memory.
+     */
+    @Override
+    public synchronized boolean delete(int rowId) {
+        if (rowId >= persistedRows) {
+            return delta.delete(rowId - persistedRows);
+        }
+        checkRowId(rowId);
+        int segment = segmentOf(rowId);
+        EncodedSegment stored = segment(segment);
+        int offset = rowId - firstRowIds[segment];
+        if (stored.isDeleted(offset)) {
+            return false;
+        }
+        pin(segment, stored.withDeleted(offset, writeBatch()));
+        deletedPersisted++;
+        return true;
+    }
+
+    @Override
+    public boolean isDeleted(int rowId) {
+        if (rowId >= persistedRows) {
+            return delta.isDeleted(rowId - persistedRows);
+        }
+        checkRowId(rowId);
+        int segment = segmentOf(rowId);
+        return deletedPersisted > 0 && segment(segment).isDeleted(rowId - firstRowIds[segment]);
+    }
+
+    /**
+     * @return the number of live rows, in the files and in memory
+     */
+    @Override
+    public int size() {
+        return persistedRows - deletedPersisted + delta.size();
+    }
+
+    @Override
+    public int rowIdAt(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException(position);
+        }
+        int persistedLive = persistedRows - deletedPersisted;
+        if (position >= persistedLive) {
+            return persistedRows + delta.rowIdAt(position - persistedLive);
+        }
+        if (deletedPersisted == 0) {
+            return position;
+        }
+        int remaining = position;
+        for (int segment = 0; segment < summaries.length; segment++) {
+            int live = summaries[segment].getRowCount();
+            if (remaining < live) {
+                return firstRowIds[segment] + segment(segment).liveOffset(remaining);
+            }
+            remaining -= live;
+        }
+        throw new IndexOutOfBoundsException(position);
+    }
+
+    @Override
+    public StateDictionary dictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public StateDictionary counties() {
+        return counties;
+    }
+
+    /**
+     * Visits the partitions in year order, then the rows added in memory.
+     * Segments rejected by their resident zone map are never read from disk.
+     */
+    @Override
+    public void scan(int columns, SegmentVisitor visitor) {
+        ensureOpen();
+        ColumnBatch batch = null;
+        for (int i = 0; i < summaries.length; i++) {
+            SegmentSummary summary = summaries[i];
+            if (summary.getRowCount() == 0 || !visitor.accept(summary)) {
+                continue;
+            }
+            EncodedSegment segment = segment(i);
+            if (!segment.hasDeletes() && visitor.visitEncoded(segment)) {
+                continue;
+            }
+            if (batch == null) {
+                batch = new ColumnBatch(SEGMENT_ROWS);
+            }
+            segment.decode(columns, batch, firstRowIds[i]);
+            visitor.visit(batch);
+        }
+        if ((columns & ColumnBatch.ROW_ID) == 0 || delta.size() == 0) {
+            delta.scan(columns, visitor);
+            return;
+        }
+        ColumnBatch shifted = batch != null ? batch : new ColumnBatch(SEGMENT_ROWS);
+        delta.scan(columns, new SegmentVisitor() {
+            @Override
+            public boolean accept(SegmentSummary summary) {
+                return visitor.accept(summary);
+            }
+
+            @Override
+            public boolean visitEncoded(EncodedSegment segment) {
+                return visitor.visitEncoded(segment);
+            }
+
+            @Override
+            public void visit(ColumnBatch deltaBatch) {
+                // the delta numbers its rows from zero and may hand out its live tail, so shift a copy
+                shifted.copyFrom(deltaBatch, columns);
+                for (int i = 0; i < shifted.size(); i++) {
+                    shifted.rowIds()[i] += persistedRows;
+                }
+                visitor.visit(shifted);
+            }
+        });
+    }
+
+    @Override
+    public EnergyData row(int rowId) {
+        if (rowId >= persistedRows) {
+            return delta.row(rowId - persistedRows);
+        }
+        checkLive(rowId);
+        int index = segmentOf(rowId);
+        EncodedSegment segment = segment(index);
+        if (segment != decodedFrom) {
+            if (decodedSegment == null) {
+                decodedSegment = new ColumnBatch(SEGMENT_ROWS);
+            }
+            segment.decodeStored(ColumnBatch.ALL_COLUMNS, decodedSegment);
+            decodedFrom = segment;
+        }
+        return decodedSegment.toEnergyData(segment.storedIndex(rowId - firstRowIds[index]), dictionary, counties);
+    }
+
+    /**
+     * Iterates over the live rows in row id order, loading one segment at a time.
+     */
+    @Override
+    public Iterator<EnergyData> iterator() {
+        return new Iterator<>() {
+            private final ColumnBatch batch = new ColumnBatch(SEGMENT_ROWS);
+            private final Iterator<EnergyData> deltaRows = delta.iterator();
+            private int segment = -1;
+            private int offset;
+
+            private boolean persistedRemaining() {
+                while (offset >= batch.size() && segment + 1 < summaries.length) {
+                    segment++;
+                    offset = 0;
+                    segment(segment).decode(ColumnBatch.ALL_COLUMNS, batch);
+                }
+                return offset < batch.size();
+            }
+
+            @Override
+            public boolean hasNext() {
+                return persistedRemaining() || deltaRows.hasNext();
+            }
+
+            @Override
+            public EnergyData next() {
+                if (persistedRemaining()) {
+                    return batch.toEnergyData(offset++, dictionary, counties);
+                }
+                return deltaRows.next();
+            }
+        };
+    }
+
+    /**
+     * @return the heap bytes of the resident summaries, cached and pinned segments and the in-memory rows
+     */
+    @Override
+    public long sizeInBytes() {
+        long bytes = summaries.length * 96L + cache.cachedBytes() + delta.sizeInBytes();
+        for (EncodedSegment segment : pinned.values()) {
+            bytes += segment.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the bytes of the segments cached from the file
+     */
+    @Override
+    public long cacheBytes() {
+        return cache.cachedBytes();
+    }
+
+    /**
+     * Evicts every cached segment; pinned segments and in-memory rows are kept.
+     */
+    @Override
+    public void dropCaches() {
+        cache.clear();
+    }
+
+    /**
+     * Closes the segment file and drops the cache. Pinned and in-memory rows are discarded.
+     * A snapshot leaves the file and the cache to the store it was taken from.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pinned.clear();
+        if (!ownsFile) {
+            return;
+        }
+        cache.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not close the partition file", e);
+        }
+    }
+
+    /**
+     * Returns a segment, from memory if possible, otherwise read from disk. A miss
+     * prefetches the neighbouring years.
+     */
+    private EncodedSegment segment(int index) {
+        EncodedSegment segment = pinned.get(index);
+        if (segment != null) {
+            return segment;
+        }
+        segment = cache.get(index);
+        if (segment == null) {
+            segment = cache.put(index, read(index));
+            prefetch(years[index] - 1);
+            prefetch(years[index] + 1);
+        }
+        return segment;
+    }
+
+    /**
+     * Loads the segments of a year in the background, up to a quarter of the cache budget.
+     */
+    private void prefetch(int year) {
+        int first = firstSegmentOf(year);
+        long bytes = 0;
+        for (int index = first; index < years.length && years[index] == year; index++) {
+            bytes += lengths[index];
+            if (bytes > prefetchBytes) {
+                return;
+            }
+            int segment = index;
+            if (!pinned.containsKey(segment) && !cache.contains(segment) && prefetching.add(segment)) {
+                PREFETCHER.execute(() -> {
+                    try {
+                        if (!closed && !cache.contains(segment)) {
+                            cache.put(segment, read(segment));
+                        }
+                    } catch (UncheckedIOException | IllegalStateException e) {
+                        // a prefetch is only a hint, a later lookup reads the segment again
+                    } finally {
+                        prefetching.remove(segment);
+                    }
+                });
+            }
+        }
+    }
+
+    private int firstSegmentOf(int year) {
+        int low = 0;
+        int high = years.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (years[middle] < year) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private EncodedSegment read(int index) {
+        ensureOpen();
+        ByteBuffer buffer = ByteBuffer.allocate(lengths[index]);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offsets[index] + buffer.position()) < 0) {
+                    throw new EOFException("Partition file ends inside segment " + index);
+                }
+            }
+            return EncodedSegment.readFrom(new DataInputStream(new ByteArrayInputStream(buffer.array())), true,
+                withPlants);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load segment " + index, e);
+        }
+    }
+
+    private void pin(int index, EncodedSegment segment) {
+        pinned.put(index, segment);
+        summaries[index] = segment.summary();
+        cache.remove(index);
+    }
+
+    private int segmentOf(int rowId) {
+        int index = Arrays.binarySearch(firstRowIds, rowId);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private void checkRowId(int rowId) {
+        ensureOpen();
+        if (rowId < 0 || rowId >= persistedRows) {
+            throw new IndexOutOfBoundsException(rowId);
+        }
+    }
+
+    private void checkLive(int rowId) {
+        if (isDeleted(rowId)) {
+            throw new NoSuchElementException("Row " + rowId + " has been deleted");
+        }
+    }
+
+    private ColumnBatch writeBatch() {
+        if (writeBatch == null) {
+            writeBatch = new ColumnBatch(SEGMENT_ROWS);
+        }
+        return writeBatch;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The partitioned store has been closed");
+        }
+    }
+
+    /**
+     * Location and zone map of one segment in the partition file.
+     */
+    private record Partition(int year, long offset, int length, SegmentSummary summary) {
+    }
+
+    /**
+     * Encodes full year batches and appends them to the partition file.
+     */
+    private static final class SegmentWriter {
+        private final OutputStream out;
+        private final List<Partition> partitions;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private long offset;
+
+        SegmentWriter(OutputStream out, List<Partition> partitions) {
+            this.out = out;
+            this.partitions = partitions;
+        }
+
+        void write(int year, ColumnBatch batch) {
+            EncodedSegment segment = EncodedSegment.encode(batch, batch.size());
+            buffer.reset();
+            try {
+                segment.writeTo(new DataOutputStream(buffer));
+                buffer.writeTo(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            partitions.add(new Partition(year, offset, buffer.size(), segment.summary()));
+            offset += buffer.size();
+            batch.setSize(0);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.time.Month;
+import java.time.format.TextStyle;
+import java.util.Locale;
+
+/**
+ * Dimension by which {@link Model#pivot(PivotDimension, PivotDimension)} groups energy data.
+ * Every dimension maps to a dense range of small integer keys read straight from a
+ * {@link ColumnBatch} column, so a pivot is filled without hashing or boxing.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public enum PivotDimension {
+
+    /**
+     * States, in order of first appearance.
+     */
+    STATE("State", ColumnBatch.STATE, 0),
+
+    /**
+     * Energy sources.
+     */
+    SOURCE("Source", ColumnBatch.SOURCE, 0),
+
+    /**
+     * Energy producers.
+     */
+    PRODUCER("Producer", ColumnBatch.PRODUCER, 0),
+
+    /**
+     * Years from 2001 to 2022.
+     */
+    YEAR("Year", ColumnBatch.YEAR, Model.FIRST_YEAR),
+
+    /**
+     * Calendar months.
+     */
+    MONTH("Month", ColumnBatch.MONTH, 1);
+
+    private final String displayName;
+    private final int column;
+    private final int base;
+
+    PivotDimension(String displayName, int column, int base) {
+        this.displayName = displayName;
+        this.column = column;
+        this.base = base;
+    }
+
+    /**
+     * @return the human-readable name of the dimension
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @return the {@link ColumnBatch} column flag holding the keys
+     */
+    int column() {
+        return column;
+    }
+
+    /**
+     * @return the key value that maps to index 0
+     */
+    int base() {
+        return base;
+    }
+
+    /**
+     * @return the key column of a batch
+     */
+    int[] keys(ColumnBatch batch) {
+        return switch (this) {
+            case STATE -> batch.states();
+            case SOURCE -> batch.sources();
+            case PRODUCER -> batch.producers();
+            case YEAR -> batch.years();
+            case MONTH -> batch.months();
+        };
+    }
+
+    /**
+     * @return the label of every key index
+     */
+    String[] labels(StateDictionary dictionary) {
+        String[] labels;
+        switch (this) {
+            case STATE -> {
+                labels = new String[dictionary.size()];
+                for (int id = 0; id < labels.length; id++) {
+                    labels[id] = dictionary.state(id);
+                }
+            }
+            case SOURCE -> {
+                labels = new String[EnergySource.values().length];
+                for (EnergySource source : EnergySource.values()) {
+                    labels[source.ordinal()] = source.getDisplayName();
+                }
+            }
+            case PRODUCER -> {
+                labels = new String[EnergyProducer.values().length];
+                for (EnergyProducer producer : EnergyProducer.values()) {
+                    labels[producer.ordinal()] = producer.getDisplayName();
+                }
+            }
+            case YEAR -> {
+                labels = new String[Model.LAST_YEAR - Model.FIRST_YEAR + 1];
+                for (int i = 0; i < labels.length; i++) {
+                    labels[i] = Integer.toString(Model.FIRST_YEAR + i);
+                }
+            }
+            default -> {
+                labels = new String[12];
+                for (int i = 0; i < labels.length; i++) {
+                    labels[i] = Month.of(i + 1).getDisplayName(TextStyle.SHORT, Locale.ENGLISH);
+                }
+            }
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,163 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Result of {@link Model#pivot(PivotDimension, PivotDimension)}: a dense matrix of
+ * total energy production in MWh with row totals, column totals and a grand total.
+ * The arrays returned by the accessors are shared rather than copied, so renderers can
+ * read them without allocating; they must not be modified.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class PivotTable {
+
+    /**
+     * Base of the percentage returned by {@link #share(int, int, Normalization)}.
+     */
+    public enum Normalization {
+
+        /**
+         * Plain totals in MWh, no percentage.
+         */
+        NONE,
+
+        /**
+         * Percentage of the row total, e.g. the source mix of every state.
+         */
+        ROW,
+
+        /**
+         * Percentage of the column total, e.g. how a source is spread over states.
+         */
+        COLUMN,
+
+        /**
+         * Percentage of the grand total.
+         */
+        TOTAL
+    }
+
+    private final PivotDimension rowDimension;
+    private final PivotDimension columnDimension;
+    private final String[] rowLabels;
+    private final String[] columnLabels;
+    private final double[][] values;
+    private final double[] rowTotals;
+    private final double[] columnTotals;
+    private final double total;
+
+    /**
+     * Builds the table from row-major cells of {@code rowLabels.length * columnLabels.length} totals.
+     */
+    PivotTable(PivotDimension rowDimension, PivotDimension columnDimension, String[] rowLabels,
+            String[] columnLabels, double[] cells) {
+        this.rowDimension = rowDimension;
+        this.columnDimension = columnDimension;
+        this.rowLabels = rowLabels;
+        this.columnLabels = columnLabels;
+        int width = columnLabels.length;
+        values = new double[rowLabels.length][width];
+        rowTotals = new double[rowLabels.length];
+        columnTotals = new double[width];
+        double sum = 0;
+        for (int row = 0; row < rowLabels.length; row++) {
+            System.arraycopy(cells, row * width, values[row], 0, width);
+            for (int column = 0; column < width; column++) {
+                rowTotals[row] += values[row][column];
+                columnTotals[column] += values[row][column];
+            }
+            sum += rowTotals[row];
+        }
+        total = sum;
+    }
+
+    /**
+     * @return the dimension along the rows
+     */
+    public PivotDimension getRowDimension() {
+        return rowDimension;
+    }
+
+    /**
+     * @return the dimension along the columns
+     */
+    public PivotDimension getColumnDimension() {
+        return columnDimension;
+    }
+
+    /**
+     * @return the label of every row
+     */
+    public String[] getRowLabels() {
+        return rowLabels;
+    }
+
+    /**
+     * @return the label of every column
+     */
+    public String[] getColumnLabels() {
+        return columnLabels;
+    }
+
+    /**
+     * @return the totals in MWh, indexed {@code [row][column]}
+     */
+    public double[][] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the total of every row in MWh
+     */
+    public double[] getRowTotals() {
+        return rowTotals;
+    }
+
+    /**
+     * @return the total of every column in MWh
+     */
+    public double[] getColumnTotals() {
+        return columnTotals;
+    }
+
+    /**
+     * @return the sum of all cells in MWh
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns a cell as a percentage of its row, its column or the grand total,
+     * or as the plain total for {@link Normalization#NONE}. An empty base gives 0.
+     *
+     * @param row the row index
+     * @param column the column index
+     * @param normalization the base of the percentage
+     * @return the normalized cell value
+     */
+    public double share(int row, int column, Normalization normalization) {
+        double value = values[row][column];
+        double base = switch (normalization) {
+            case NONE -> 1.0;
+            case ROW -> rowTotals[row] / 100.0;
+            case COLUMN -> columnTotals[column] / 100.0;
+            case TOTAL -> total / 100.0;
+        };
+        return base == 0 ? 0.0 : value / base;
+    }
+
+    /**
+     * @param normalization the base of the percentages
+     * @return a new matrix with every cell normalized by {@link #share(int, int, Normalization)}
+     */
+    public double[][] normalized(Normalization normalization) {
+        double[][] result = new double[rowLabels.length][columnLabels.length];
+        for (int row = 0; row < result.length; row++) {
+            for (int column = 0; column < result[row].length; column++) {
+                result[row][column] = share(row, column, normalization);
+            }
+        }
+        return result;
+    }
+}
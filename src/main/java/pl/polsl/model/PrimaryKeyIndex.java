@@ -0,0 +1,196 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.Arrays;
+
+/**
+ * Primary index from the (year, month, state, source, producer, plant) key to a row id.
+ * The six key fields are packed into one {@code long} and stored in an
+ * open-addressing hash table with linear probing over parallel primitive arrays,
+ * so lookups, inserts and removals never box and never allocate.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class PrimaryKeyIndex {
+
+    private static final long EMPTY = -1L;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] rowIds;
+    private int size;
+
+    PrimaryKeyIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    PrimaryKeyIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        rowIds = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Packs a key into 63 bits: state id (22), plant (24), year since {@link Model#FIRST_YEAR} (5),
+     * month (4), source (4) and producer (4). The result is never negative, so -1 can mark
+     * empty slots. Years and plants outside the model's range alias other keys, see {@link #fits}.
+     */
+    static long pack(int year, int month, int stateId, int source, int producer, int plant) {
+        return ((long) stateId << 41) | ((long) plant << 17) | ((year - Model.FIRST_YEAR & 0x1F) << 12)
+            | (month << 8) | (source << 4) | producer;
+    }
+
+    /**
+     * Packs the key of a row whose state is already in the dictionary.
+     */
+    static long pack(EnergyData data, int stateId) {
+        return pack(data.year(), data.month(), stateId, data.source().ordinal(), data.producer().ordinal(),
+            data.plant());
+    }
+
+    /**
+     * @return the state id of a packed key
+     */
+    static int stateIdOf(long key) {
+        return (int) (key >>> 41);
+    }
+
+    /**
+     * Unpacks a key into a row without a county.
+     *
+     * @param key the packed key
+     * @param amount the amount of the row
+     * @param dictionary the dictionary the state id of the key refers to
+     */
+    static EnergyData unpack(long key, double amount, StateDictionary dictionary) {
+        return new EnergyData(Model.FIRST_YEAR + (int) (key >>> 12 & 0x1F), (int) (key >>> 8 & 0xF),
+            dictionary.state(stateIdOf(key)), EnergySource.values()[(int) (key >>> 4 & 0xF)],
+            EnergyProducer.values()[(int) (key & 0xF)], amount, (int) (key >>> 17 & Model.MAX_PLANT), null);
+    }
+
+    /**
+     * @return {@code true} if the year and plant of a key can be packed without aliasing;
+     *         keys of unvalidated entries are checked with this before they are looked up
+     */
+    static boolean fits(EnergyData data) {
+        return data.year() >= Model.FIRST_YEAR && data.year() <= Model.LAST_YEAR
+            && data.plant() >= 0 && data.plant() <= Model.MAX_PLANT;
+    }
+
+    /**
+     * @return the row id stored for the key, or -1 if the key is absent
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == key) {
+                return rowIds[slot];
+            }
+            if (current == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Maps the key to a row id, replacing any previous mapping.
+     *
+     * @return the previous row id, or -1 if the key was absent
+     */
+    int put(long key, int rowId) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == key) {
+                int previous = rowIds[slot];
+                rowIds[slot] = rowId;
+                return previous;
+            }
+            if (current == EMPTY) {
+                keys[slot] = key;
+                rowIds[slot] = rowId;
+                size++;
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Removes the key, shifting later entries of its probe chain back so no tombstones are needed.
+     *
+     * @return the removed row id, or -1 if the key was absent
+     */
+    int remove(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int removed = rowIds[slot];
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slot(keys[next], mask);
+            // move the entry into the hole unless its home lies cyclically within (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                rowIds[hole] = rowIds[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        size--;
+        return removed;
+    }
+
+    /**
+     * @return the number of keys in the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of heap bytes used by the hash table
+     */
+    long sizeInBytes() {
+        return 16L + 2 * 16 + (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldRowIds = rowIds;
+        keys = new long[capacity];
+        rowIds = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i], mask);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                rowIds[slot] = oldRowIds[i];
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        // murmur3 finalizer, spreads the structured key bits over the table
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+}
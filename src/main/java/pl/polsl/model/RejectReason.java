@@ -0,0 +1,120 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Why a row failed validation, with the column at fault. The rules are the ones of
+ * {@link Model#addEnergyData(EnergyData)}, {@link EnergySource#fromString(String)} and
+ * {@link EnergyProducer#fromString(String)}, checked in that order, and the messages are
+ * those of the {@link InvalidEnergyDataException} each one throws.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public enum RejectReason {
+
+    /**
+     * The source text matches no {@link EnergySource} display name.
+     */
+    UNKNOWN_SOURCE(EnergyColumn.SOURCE, "Invalid energy source"),
+
+    /**
+     * The producer text matches no {@link EnergyProducer} display name.
+     */
+    UNKNOWN_PRODUCER(EnergyColumn.PRODUCER, "Invalid energy producer"),
+
+    /**
+     * The amount is zero or negative.
+     */
+    AMOUNT_NOT_POSITIVE(EnergyColumn.AMOUNT, "Energy amount must be greater than 0"),
+
+    /**
+     * The month is outside 1 to 12.
+     */
+    MONTH_OUT_OF_RANGE(EnergyColumn.MONTH, "Month must be between 1 and 12"),
+
+    /**
+     * The year is outside 2001 to 2022.
+     */
+    YEAR_OUT_OF_RANGE(EnergyColumn.YEAR, "Year must be between 2001 and 2022"),
+
+    /**
+     * The state is missing or blank.
+     */
+    STATE_EMPTY(EnergyColumn.STATE, "State cannot be empty"),
+
+    /**
+     * The plant id is negative or above {@link Model#MAX_PLANT}.
+     */
+    PLANT_OUT_OF_RANGE(EnergyColumn.PLANT, "Plant id must be between 0 and " + Model.MAX_PLANT),
+
+    /**
+     * The county is given but blank.
+     */
+    COUNTY_BLANK(EnergyColumn.COUNTY, "County cannot be blank");
+
+    private final EnergyColumn column;
+    private final String message;
+
+    RejectReason(EnergyColumn column, String message) {
+        this.column = column;
+        this.message = message;
+    }
+
+    /**
+     * @return the column holding the invalid value
+     */
+    public EnergyColumn getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the message of the exception thrown for this reason by the single-row methods
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Checks an entry against the rules of {@link Model#addEnergyData(EnergyData)}, for
+     * callers that validate a batch as a whole before storing any of it. A missing source
+     * or producer counts as unknown.
+     *
+     * @param data the entry to check
+     * @return the first broken rule, or {@code null} if the entry is valid
+     */
+    public static RejectReason of(EnergyData data) {
+        if (data.source() == null) {
+            return UNKNOWN_SOURCE;
+        }
+        if (data.producer() == null) {
+            return UNKNOWN_PRODUCER;
+        }
+        return check(data.year(), data.month(), data.state(), data.amount(), data.plant(), data.county());
+    }
+
+    /**
+     * Checks the rules of a parsed entry, in the order {@link Model#addEnergyData(EnergyData)} applies them.
+     *
+     * @return the first broken rule, or {@code null} if the entry is valid
+     */
+    static RejectReason check(int year, int month, String state, double amount, int plant, String county) {
+        if (amount <= 0) {
+            return AMOUNT_NOT_POSITIVE;
+        }
+        if (month < 1 || month > 12) {
+            return MONTH_OUT_OF_RANGE;
+        }
+        if (year < Model.FIRST_YEAR || year > Model.LAST_YEAR) {
+            return YEAR_OUT_OF_RANGE;
+        }
+        if (state == null || state.trim().isEmpty()) {
+            return STATE_EMPTY;
+        }
+        if (plant < 0 || plant > Model.MAX_PLANT) {
+            return PLANT_OUT_OF_RANGE;
+        }
+        if (county != null && county.trim().isEmpty()) {
+            return COUNTY_BLANK;
+        }
+        return null;
+    }
+}
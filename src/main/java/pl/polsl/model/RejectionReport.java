@@ -0,0 +1,116 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The rows rejected by bulk validation, one compact record of row number and
+ * {@link RejectReason} each. Rows are numbered from 0 across every batch checked
+ * into the same report, so for a file loaded in batches the number is the position
+ * of the row in the file.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class RejectionReport {
+
+    private static final RejectReason[] REASONS = RejectReason.values();
+
+    private long[] rows = new long[64];
+    private byte[] reasons = new byte[64];
+    private int size;
+    private long rowsChecked;
+
+    /**
+     * @return the number of rejected rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of rows checked, valid or not
+     */
+    public long getRowsChecked() {
+        return rowsChecked;
+    }
+
+    /**
+     * @param index the index of the rejection, in row order
+     * @return the number of the rejected row
+     */
+    public long getRow(int index) {
+        checkIndex(index);
+        return rows[index];
+    }
+
+    /**
+     * @param index the index of the rejection, in row order
+     * @return why the row was rejected
+     */
+    public RejectReason getReason(int index) {
+        checkIndex(index);
+        return REASONS[reasons[index]];
+    }
+
+    /**
+     * @param reason a reason
+     * @return the number of rows rejected for it
+     */
+    public int count(RejectReason reason) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (reasons[i] == reason.ordinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the report as a sidecar CSV file with a {@code row,field,reason} header.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("row,field,reason\n");
+            for (int i = 0; i < size; i++) {
+                RejectReason reason = REASONS[reasons[i]];
+                writer.write(rows[i] + "," + reason.getColumn().name().toLowerCase() + "," + reason.name() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Numbers the next batch of rows, which follows every batch checked before.
+     *
+     * @return the number of the first row of the batch
+     */
+    long startBatch(int batchSize) {
+        long first = rowsChecked;
+        rowsChecked += batchSize;
+        return first;
+    }
+
+    void add(long row, RejectReason reason) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+            reasons = Arrays.copyOf(reasons, size * 2);
+        }
+        rows[size] = row;
+        reasons[size] = (byte) reason.ordinal();
+        size++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Rejection " + index + " of " + size);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Run-length encoded integer column.
+ * Each run stores its value and length, both bit-packed, which makes sorted
+ * columns such as year or producer almost free. Counting and summing by value
+ * touch each run once instead of each row.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class RunLengthIntColumn implements EncodedIntColumn {
+
+    static final byte TAG = 2;
+
+    private final int count;
+    private final int runs;
+    private final int base;
+    private final int valueBits;
+    private final int lengthBits;
+    private final long[] values;
+    private final long[] lengths;
+
+    private RunLengthIntColumn(int count, int runs, int base, int valueBits, int lengthBits,
+            long[] values, long[] lengths) {
+        this.count = count;
+        this.runs = runs;
+        this.base = base;
+        this.valueBits = valueBits;
+        this.lengthBits = lengthBits;
+        this.values = values;
+        this.lengths = lengths;
+    }
+
+    static RunLengthIntColumn encode(int[] data, int count, int base, int valueBits) {
+        int[] runValues = new int[count];
+        int[] runLengths = new int[count];
+        int runs = 0;
+        int longest = 0;
+        for (int i = 0; i < count; i++) {
+            if (runs > 0 && runValues[runs - 1] == data[i]) {
+                runLengths[runs - 1]++;
+            } else {
+                runValues[runs] = data[i];
+                runLengths[runs] = 1;
+                runs++;
+            }
+            longest = Math.max(longest, runLengths[runs - 1]);
+        }
+        // lengths are stored minus one, a run is never empty
+        for (int r = 0; r < runs; r++) {
+            runLengths[r]--;
+        }
+        int lengthBits = BitPacking.bitsRequired(longest - 1L);
+        return new RunLengthIntColumn(count, runs, base, valueBits, lengthBits,
+            BitPacking.pack(runValues, runs, base, valueBits),
+            BitPacking.pack(runLengths, runs, 0, lengthBits));
+    }
+
+    private int runValue(int run) {
+        return (int) (BitPacking.get(values, valueBits, run) + base);
+    }
+
+    private int runLength(int run) {
+        return (int) BitPacking.get(lengths, lengthBits, run) + 1;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int get(int index) {
+        int start = 0;
+        for (int r = 0; r < runs; r++) {
+            start += runLength(r);
+            if (index < start) {
+                return runValue(r);
+            }
+        }
+        throw new IndexOutOfBoundsException(index);
+    }
+
+    @Override
+    public void decode(int[] out) {
+        int row = 0;
+        for (int r = 0; r < runs; r++) {
+            int value = runValue(r);
+            int end = row + runLength(r);
+            while (row < end) {
+                out[row++] = value;
+            }
+        }
+    }
+
+    @Override
+    public void countByValue(long[] counts) {
+        for (int r = 0; r < runs; r++) {
+            counts[runValue(r)] += runLength(r);
+        }
+    }
+
+    @Override
+    public void sumByValue(double[] amounts, double[] sums) {
+        int row = 0;
+        for (int r = 0; r < runs; r++) {
+            int end = row + runLength(r);
+            sums[runValue(r)] += AmountKernels.INSTANCE.sum(amounts, row, end);
+            row = end;
+        }
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return 24 + (long) (values.length + lengths.length) * Long.BYTES;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(TAG);
+        out.writeInt(count);
+        out.writeInt(runs);
+        out.writeInt(base);
+        out.writeByte(valueBits);
+        out.writeByte(lengthBits);
+        EncodedIntColumn.writeWords(out, values);
+        EncodedIntColumn.writeWords(out, lengths);
+    }
+
+    static RunLengthIntColumn readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        int runs = in.readInt();
+        int base = in.readInt();
+        int valueBits = in.readByte();
+        int lengthBits = in.readByte();
+        long[] values = EncodedIntColumn.readWords(in);
+        long[] lengths = EncodedIntColumn.readWords(in);
+        return new RunLengthIntColumn(count, runs, base, valueBits, lengthBits, values, lengths);
+    }
+}
@@ -0,0 +1,69 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Portable scalar implementation of {@link AmountKernels}.
+ * Used when the Vector API is unavailable.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class ScalarAmountKernels implements AmountKernels {
+
+    @Override
+    public double sum(double[] amounts, int from, int to) {
+        double total = 0;
+        for (int i = from; i < to; i++) {
+            total += amounts[i];
+        }
+        return total;
+    }
+
+    @Override
+    public double sumWhere(int[] keys, int key, double[] amounts, int count) {
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == key) {
+                total += amounts[i];
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public double sumWhere(int[] keys, int key, int[] otherKeys, int otherKey, double[] amounts, int count) {
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == key && otherKeys[i] == otherKey) {
+                total += amounts[i];
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public double minWhere(int[] keys, int key, double[] amounts, int count) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == key) {
+                min = Math.min(min, amounts[i]);
+            }
+        }
+        return min;
+    }
+
+    @Override
+    public double maxWhere(int[] keys, int key, double[] amounts, int count) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == key) {
+                max = Math.max(max, amounts[i]);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
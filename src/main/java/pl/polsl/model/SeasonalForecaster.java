@@ -0,0 +1,413 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Additive Holt-Winters forecasts with a 12-month season for every (state, source,
+ * producer) series. The monthly totals of each series are kept in a primitive array
+ * maintained by every write, so a series only has to be fitted again once rows of it
+ * were added, replaced or deleted; the fits of all other series stay cached.
+ * <p>
+ * The smoothing parameters of a series are the ones minimizing the squared one-step
+ * errors over its history, found by a coarse grid search followed by a pattern search
+ * with halving steps. Series are fitted in parallel on a fork-join pool.
+ * <p>
+ * Writes go to the forecaster of the model on its own thread, and forecasts are made on a
+ * {@link #snapshot()} on another thread. A fit made by a snapshot is handed back to the
+ * forecaster it was taken of, unless the series was written there in the meantime, so
+ * the next snapshot does not fit the series again.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class SeasonalForecaster {
+
+    static final int SEASON = 12;
+
+    /**
+     * Number of months a series needs from its first to its last month with rows to be fitted.
+     */
+    static final int MIN_MONTHS = 2 * SEASON;
+
+    private static final int SOURCES = EnergySource.values().length;
+    private static final int PRODUCERS = EnergyProducer.values().length;
+
+    private static final double[] GRID = {0.05, 0.2, 0.35, 0.5, 0.65, 0.8, 0.95};
+    private static final int REFINEMENTS = 4;
+
+    /**
+     * Series fitted by one fork-join task without splitting further.
+     */
+    private static final int SERIES_PER_TASK = 8;
+
+    /**
+     * Fitted state of a series: the three smoothing parameters, level, trend, the
+     * seasonal components of the next 12 months in order, the in-sample RMSE and the
+     * last bucket of the history.
+     */
+    private static final int ALPHA = 0;
+    private static final int BETA = 1;
+    private static final int GAMMA = 2;
+    private static final int LEVEL = 3;
+    private static final int TREND = 4;
+    private static final int SEASONALS = 5;
+    private static final int RMSE = SEASONALS + SEASON;
+    private static final int LAST = RMSE + 1;
+    private static final int FIT_SIZE = LAST + 1;
+
+    /**
+     * Monthly totals per series, indexed by {@link #series(int, int, int)}, {@code null} for series never written.
+     */
+    private double[][] totals = new double[0][];
+    private int[][] counts = new int[0][];
+    private double[][] fits = new double[0][];
+    private boolean[] stale = new boolean[0];
+
+    /**
+     * Number of writes per series, which tells whether a fit made by a snapshot is still current.
+     */
+    private int[] versions = new int[0];
+
+    /**
+     * The forecaster this one is a snapshot of, {@code null} if it is not a snapshot.
+     */
+    private final SeasonalForecaster origin;
+
+    SeasonalForecaster() {
+        this.origin = null;
+    }
+
+    private SeasonalForecaster(SeasonalForecaster origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * Builds the monthly totals of every row in a store in one scan; every series starts unfitted.
+     */
+    static SeasonalForecaster of(EnergyStore store) {
+        SeasonalForecaster forecaster = new SeasonalForecaster();
+        int columns = ColumnBatch.YEAR | ColumnBatch.MONTH | ColumnBatch.STATE | ColumnBatch.SOURCE
+            | ColumnBatch.PRODUCER | ColumnBatch.AMOUNT;
+        store.scan(columns, batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                forecaster.add(batch.states()[i], batch.sources()[i], batch.producers()[i],
+                    TimelineIndex.bucket(batch.years()[i], batch.months()[i]), batch.amounts()[i], 1);
+            }
+        });
+        return forecaster;
+    }
+
+    /**
+     * @return the index of a (state, source, producer) series
+     */
+    static int series(int stateId, int source, int producer) {
+        return (stateId * SOURCES + source) * PRODUCERS + producer;
+    }
+
+    /**
+     * Adds an amount to a month of a series together with a row count: 1 for an added row,
+     * -1 with a negative amount for a deleted one and 0 for a replaced amount. The fit of
+     * the series is dropped.
+     */
+    synchronized void add(int stateId, int source, int producer, int bucket, double amount, int rows) {
+        int series = series(stateId, source, producer);
+        if (series >= totals.length) {
+            int capacity = Math.max(series + 1, totals.length * 2);
+            totals = Arrays.copyOf(totals, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            fits = Arrays.copyOf(fits, capacity);
+            stale = Arrays.copyOf(stale, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+        }
+        if (totals[series] == null) {
+            totals[series] = new double[TimelineIndex.BUCKETS];
+            counts[series] = new int[TimelineIndex.BUCKETS];
+        }
+        totals[series][bucket] += amount;
+        counts[series][bucket] += rows;
+        stale[series] = true;
+        versions[series]++;
+    }
+
+    /**
+     * Copies the monthly totals, so that the copy can be fitted on another thread while this
+     * forecaster goes on being written. Fits are immutable once made and are shared.
+     */
+    synchronized SeasonalForecaster snapshot() {
+        SeasonalForecaster copy = new SeasonalForecaster(this);
+        copy.totals = new double[totals.length][];
+        copy.counts = new int[counts.length][];
+        for (int series = 0; series < totals.length; series++) {
+            if (totals[series] != null) {
+                copy.totals[series] = totals[series].clone();
+                copy.counts[series] = counts[series].clone();
+            }
+        }
+        copy.fits = fits.clone();
+        copy.stale = stale.clone();
+        copy.versions = versions.clone();
+        return copy;
+    }
+
+    /**
+     * Fits every series written since its last fit, in parallel on a pool.
+     *
+     * @return the number of series fitted
+     */
+    int refit(ForkJoinPool pool) {
+        List<Integer> pending = new ArrayList<>();
+        synchronized (this) {
+            for (int series = 0; series < stale.length; series++) {
+                if (stale[series]) {
+                    pending.add(series);
+                }
+            }
+        }
+        int[] work = pending.stream().mapToInt(Integer::intValue).toArray();
+        if (work.length > 0) {
+            pool.invoke(new FitTask(work, 0, work.length));
+        }
+        return work.length;
+    }
+
+    /**
+     * @return the index of every fitted series, ascending
+     */
+    synchronized int[] fittedSeries() {
+        int count = 0;
+        int[] fitted = new int[fits.length];
+        for (int series = 0; series < fits.length; series++) {
+            if (fits[series] != null) {
+                fitted[count++] = series;
+            }
+        }
+        return Arrays.copyOf(fitted, count);
+    }
+
+    /**
+     * @return the bucket after the last month with rows of a fitted series, where its forecast starts
+     */
+    synchronized int firstForecastBucket(int series) {
+        return (int) fits[series][LAST] + 1;
+    }
+
+    synchronized double rmse(int series) {
+        return fits[series][RMSE];
+    }
+
+    /**
+     * @return the number of heap bytes used by the monthly totals and fits of every series written
+     */
+    synchronized long sizeInBytes() {
+        long bytes = 32 + 4 * 16 + 16 + (long) totals.length * (4 * 4 + 1);
+        for (int series = 0; series < totals.length; series++) {
+            if (totals[series] != null) {
+                bytes += 2 * 16 + (long) TimelineIndex.BUCKETS * (Double.BYTES + Integer.BYTES);
+            }
+            if (fits[series] != null) {
+                bytes += 16 + FIT_SIZE * Double.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Projects a fitted series, never below zero.
+     *
+     * @param months the number of months after the history to forecast
+     */
+    double[] forecast(int series, int months) {
+        double[] fit;
+        synchronized (this) {
+            fit = fits[series];
+        }
+        double[] forecast = new double[months];
+        for (int h = 1; h <= months; h++) {
+            double value = fit[LEVEL] + h * fit[TREND] + fit[SEASONALS + (h - 1) % SEASON];
+            forecast[h - 1] = Math.max(0, value);
+        }
+        return forecast;
+    }
+
+    /**
+     * Fits one series, or drops its fit if it has too few months. The totals are only
+     * written by {@link #add} on the thread that waits for {@link #refit} to finish.
+     */
+    private void fit(int series, double[] values, double[] seasonals) {
+        int version;
+        synchronized (this) {
+            version = versions[series];
+        }
+        int first = -1;
+        int last = -1;
+        for (int bucket = 0; bucket < TimelineIndex.BUCKETS; bucket++) {
+            if (counts[series][bucket] > 0) {
+                if (first < 0) {
+                    first = bucket;
+                }
+                last = bucket;
+            }
+        }
+        if (first < 0 || last - first + 1 < MIN_MONTHS) {
+            publish(series, version, null);
+            return;
+        }
+        int length = last - first + 1;
+        for (int i = 0; i < length; i++) {
+            // months without rows, or whose rows were deleted, produced nothing
+            values[i] = counts[series][first + i] > 0 ? totals[series][first + i] : 0;
+        }
+
+        double bestError = Double.POSITIVE_INFINITY;
+        double alpha = 0;
+        double beta = 0;
+        double gamma = 0;
+        for (double a : GRID) {
+            for (double b : GRID) {
+                for (double g : GRID) {
+                    double error = run(values, length, a, b, g, seasonals, null);
+                    if (error < bestError) {
+                        bestError = error;
+                        alpha = a;
+                        beta = b;
+                        gamma = g;
+                    }
+                }
+            }
+        }
+        double step = (GRID[1] - GRID[0]) / 2;
+        for (int round = 0; round < REFINEMENTS; round++, step /= 2) {
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int move = 0; move < 6; move++) {
+                    double delta = move % 2 == 0 ? step : -step;
+                    double a = clamp(alpha + (move / 2 == 0 ? delta : 0));
+                    double b = clamp(beta + (move / 2 == 1 ? delta : 0));
+                    double g = clamp(gamma + (move / 2 == 2 ? delta : 0));
+                    double error = run(values, length, a, b, g, seasonals, null);
+                    if (error < bestError) {
+                        bestError = error;
+                        alpha = a;
+                        beta = b;
+                        gamma = g;
+                        improved = true;
+                    }
+                }
+            }
+        }
+
+        double[] fit = new double[FIT_SIZE];
+        fit[ALPHA] = alpha;
+        fit[BETA] = beta;
+        fit[GAMMA] = gamma;
+        double error = run(values, length, alpha, beta, gamma, seasonals, fit);
+        fit[RMSE] = Math.sqrt(error / (length - SEASON));
+        fit[LAST] = last;
+        publish(series, version, fit);
+    }
+
+    /**
+     * Stores the fit of a series and hands it to the forecaster this one is a snapshot of.
+     */
+    private void publish(int series, int version, double[] fit) {
+        adopt(series, version, fit);
+        if (origin != null) {
+            origin.adopt(series, version, fit);
+        }
+    }
+
+    /**
+     * Takes over a fit unless the series was written after the totals it was fitted on.
+     *
+     * @param fit the fit, or {@code null} if the series has too few months
+     */
+    private synchronized void adopt(int series, int version, double[] fit) {
+        if (series < versions.length && versions[series] == version) {
+            fits[series] = fit;
+            stale[series] = false;
+        }
+    }
+
+    /**
+     * Runs the smoothing over a history and returns the sum of squared one-step errors
+     * after the first season. The first two seasons initialize the level at the end of
+     * the first season, the trend and the seasonal components.
+     * With a fit array, leaves the final level, trend and the next season in it.
+     */
+    private static double run(double[] values, int length, double alpha, double beta, double gamma,
+            double[] seasonals, double[] fit) {
+        double first = 0;
+        double second = 0;
+        for (int i = 0; i < SEASON; i++) {
+            first += values[i];
+            second += values[SEASON + i];
+        }
+        first /= SEASON;
+        second /= SEASON;
+        // the season means lie mid-season, so the trend is taken out of the seasonal components
+        double trend = (second - first) / SEASON;
+        double level = first + (SEASON - 1) / 2.0 * trend;
+        for (int i = 0; i < SEASON; i++) {
+            double offset = (i - (SEASON - 1) / 2.0) * trend;
+            seasonals[i] = (values[i] - first + values[SEASON + i] - second) / 2 - offset;
+        }
+        double error = 0;
+        for (int t = SEASON; t < length; t++) {
+            int phase = t % SEASON;
+            double value = values[t];
+            double residual = value - (level + trend + seasonals[phase]);
+            error += residual * residual;
+            double previousLevel = level;
+            level = alpha * (value - seasonals[phase]) + (1 - alpha) * (level + trend);
+            trend = beta * (level - previousLevel) + (1 - beta) * trend;
+            seasonals[phase] = gamma * (value - level) + (1 - gamma) * seasonals[phase];
+        }
+        if (fit != null) {
+            fit[LEVEL] = level;
+            fit[TREND] = trend;
+            for (int h = 0; h < SEASON; h++) {
+                fit[SEASONALS + h] = seasonals[(length + h) % SEASON];
+            }
+        }
+        return error;
+    }
+
+    private static double clamp(double parameter) {
+        return Math.min(1, Math.max(0, parameter));
+    }
+
+    /**
+     * Fits a range of the pending series, splitting it in halves while it is large.
+     */
+    private final class FitTask extends RecursiveAction {
+
+        private final int[] work;
+        private final int from;
+        private final int to;
+
+        FitTask(int[] work, int from, int to) {
+            this.work = work;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SERIES_PER_TASK) {
+                double[] values = new double[TimelineIndex.BUCKETS];
+                double[] seasonals = new double[SEASON];
+                for (int i = from; i < to; i++) {
+                    fit(work[i], values, seasonals);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new FitTask(work, from, middle), new FitTask(work, middle, to));
+        }
+    }
+}
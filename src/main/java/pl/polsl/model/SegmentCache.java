@@ -0,0 +1,91 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import com.mycompany.energiawusawlatach2001.metrics.EnergyMetrics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory-bounded LRU cache of segments loaded by a {@link PartitionedStore}.
+ * The budget counts {@link EncodedSegment#sizeInBytes()}; least recently used
+ * segments are evicted first, but the segment just added is always kept.
+ * Lookups and evictions are recorded in {@link EnergyMetrics}.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class SegmentCache {
+
+    private final long budgetBytes;
+    private final EnergyMetrics metrics;
+    private final LinkedHashMap<Integer, EncodedSegment> segments = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    SegmentCache(long budgetBytes, EnergyMetrics metrics) {
+        this.budgetBytes = budgetBytes;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Looks up a segment and records the lookup as a hit or a miss.
+     *
+     * @return the cached segment, or {@code null} if it has to be loaded
+     */
+    synchronized EncodedSegment get(int index) {
+        EncodedSegment segment = segments.get(index);
+        metrics.recordCacheLookup(segment != null);
+        return segment;
+    }
+
+    /**
+     * @return {@code true} if the segment is cached; neither recorded nor counted as a use
+     */
+    synchronized boolean contains(int index) {
+        return segments.containsKey(index);
+    }
+
+    /**
+     * Adds a loaded segment and evicts least recently used segments beyond the budget.
+     * If another thread cached the segment first, its copy is kept.
+     *
+     * @return the cached segment
+     */
+    synchronized EncodedSegment put(int index, EncodedSegment segment) {
+        EncodedSegment existing = segments.get(index);
+        if (existing != null) {
+            return existing;
+        }
+        segments.put(index, segment);
+        cachedBytes += segment.sizeInBytes();
+        Iterator<Map.Entry<Integer, EncodedSegment>> eldest = segments.entrySet().iterator();
+        while (cachedBytes > budgetBytes && segments.size() > 1) {
+            cachedBytes -= eldest.next().getValue().sizeInBytes();
+            eldest.remove();
+            metrics.recordCacheEviction();
+        }
+        return segment;
+    }
+
+    /**
+     * Drops a segment, for example once a modified copy of it is pinned in memory.
+     */
+    synchronized void remove(int index) {
+        EncodedSegment removed = segments.remove(index);
+        if (removed != null) {
+            cachedBytes -= removed.sizeInBytes();
+        }
+    }
+
+    synchronized void clear() {
+        segments.clear();
+        cachedBytes = 0;
+    }
+
+    /**
+     * @return the number of bytes of all cached segments
+     */
+    synchronized long cachedBytes() {
+        return cachedBytes;
+    }
+}
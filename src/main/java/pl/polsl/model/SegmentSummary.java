@@ -0,0 +1,219 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Zone map of a storage segment: row count, amount statistics, the range of state ids
+ * and bit masks of the years, months, sources and producers present in it.
+ * Scans consult the summary first and skip segments that cannot match.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class SegmentSummary {
+
+    private int rowCount;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private int minYear = Integer.MAX_VALUE;
+    private int maxYear = Integer.MIN_VALUE;
+    private int minStateId = Integer.MAX_VALUE;
+    private int maxStateId = Integer.MIN_VALUE;
+    private int monthMask;
+    private int sourceMask;
+    private int producerMask;
+
+    /**
+     * Adds a row to the summary.
+     */
+    void include(int year, int month, int stateId, int source, int producer, double amount) {
+        rowCount++;
+        sum += amount;
+        min = Math.min(min, amount);
+        max = Math.max(max, amount);
+        minYear = Math.min(minYear, year);
+        maxYear = Math.max(maxYear, year);
+        minStateId = Math.min(minStateId, stateId);
+        maxStateId = Math.max(maxStateId, stateId);
+        monthMask |= 1 << month;
+        sourceMask |= 1 << source;
+        producerMask |= 1 << producer;
+    }
+
+    /**
+     * Corrects the summary after one amount of the segment was replaced. The sum is
+     * adjusted incrementally and a new extreme widens the bounds, but if the replaced
+     * value was the minimum or maximum the caller has to {@link #recomputeExtremes rescan}.
+     *
+     * @return {@code true} if the extremes must be recomputed
+     */
+    boolean replaceAmount(double oldAmount, double newAmount) {
+        sum += newAmount - oldAmount;
+        if (oldAmount == min || oldAmount == max) {
+            return true;
+        }
+        min = Math.min(min, newAmount);
+        max = Math.max(max, newAmount);
+        return false;
+    }
+
+    /**
+     * Recomputes the smallest and largest amount from the first {@code count} amounts of the segment.
+     */
+    void recomputeExtremes(double[] amounts, int count) {
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, amounts[i]);
+            max = Math.max(max, amounts[i]);
+        }
+    }
+
+    /**
+     * @return an independent copy, used when an immutable segment is rewritten
+     */
+    SegmentSummary copy() {
+        SegmentSummary copy = new SegmentSummary();
+        copy.rowCount = rowCount;
+        copy.sum = sum;
+        copy.min = min;
+        copy.max = max;
+        copy.minYear = minYear;
+        copy.maxYear = maxYear;
+        copy.minStateId = minStateId;
+        copy.maxStateId = maxStateId;
+        copy.monthMask = monthMask;
+        copy.sourceMask = sourceMask;
+        copy.producerMask = producerMask;
+        return copy;
+    }
+
+    /**
+     * Builds the summary of the first {@code count} rows of a batch.
+     */
+    static SegmentSummary of(ColumnBatch batch, int count) {
+        return of(batch, count, null);
+    }
+
+    /**
+     * Builds the summary of the first {@code count} rows of a batch, skipping tombstoned rows.
+     *
+     * @param deleted tombstones by row index, or {@code null} if no row is deleted
+     */
+    static SegmentSummary of(ColumnBatch batch, int count, long[] deleted) {
+        SegmentSummary summary = new SegmentSummary();
+        for (int i = 0; i < count; i++) {
+            if (deleted != null && BitPacking.isSet(deleted, i)) {
+                continue;
+            }
+            summary.include(batch.years()[i], batch.months()[i], batch.states()[i], batch.sources()[i],
+                batch.producers()[i], batch.amounts()[i]);
+        }
+        return summary;
+    }
+
+    /**
+     * @return the number of live rows in the segment
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the sum of all amounts in the segment
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the smallest amount in the segment
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return the largest amount in the segment
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @param year the year to test
+     * @return {@code true} if the segment may contain rows of that year
+     */
+    public boolean overlapsYear(int year) {
+        return year >= minYear && year <= maxYear;
+    }
+
+    /**
+     * @return the smallest state dictionary id in the segment
+     */
+    public int getMinStateId() {
+        return minStateId;
+    }
+
+    /**
+     * @return the largest state dictionary id in the segment
+     */
+    public int getMaxStateId() {
+        return maxStateId;
+    }
+
+    /**
+     * @param month the month to test (1-12)
+     * @return {@code true} if the segment contains rows of that month
+     */
+    public boolean containsMonth(int month) {
+        return month >= 1 && month <= 12 && (monthMask & (1 << month)) != 0;
+    }
+
+    /**
+     * @return bit mask of {@link EnergySource} ordinals present in the segment
+     */
+    public int getSourceMask() {
+        return sourceMask;
+    }
+
+    /**
+     * @return bit mask of {@link EnergyProducer} ordinals present in the segment
+     */
+    public int getProducerMask() {
+        return producerMask;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(rowCount);
+        out.writeDouble(sum);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeInt(minYear);
+        out.writeInt(maxYear);
+        out.writeInt(minStateId);
+        out.writeInt(maxStateId);
+        out.writeInt(monthMask);
+        out.writeInt(sourceMask);
+        out.writeInt(producerMask);
+    }
+
+    static SegmentSummary readFrom(DataInput in) throws IOException {
+        SegmentSummary summary = new SegmentSummary();
+        summary.rowCount = in.readInt();
+        summary.sum = in.readDouble();
+        summary.min = in.readDouble();
+        summary.max = in.readDouble();
+        summary.minYear = in.readInt();
+        summary.maxYear = in.readInt();
+        summary.minStateId = in.readInt();
+        summary.maxStateId = in.readInt();
+        summary.monthMask = in.readInt();
+        summary.sourceMask = in.readInt();
+        summary.producerMask = in.readInt();
+        return summary;
+    }
+}
@@ -0,0 +1,40 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * Callback of a segment-at-a-time scan over a {@link ColumnStore}.
+ * For every segment the scan first offers its {@link SegmentSummary}, then the
+ * encoded segment itself, and only decodes it into a {@link ColumnBatch} when
+ * the visitor could not answer from the encoded form.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public interface SegmentVisitor {
+
+    /**
+     * Decides from the zone map whether the segment can contribute to the result.
+     *
+     * @param summary the summary of the segment
+     * @return {@code false} to skip the segment entirely
+     */
+    default boolean accept(SegmentSummary summary) {
+        return true;
+    }
+
+    /**
+     * Gives the visitor a chance to aggregate directly on the compressed segment.
+     *
+     * @param segment the encoded segment
+     * @return {@code true} if the segment was fully handled and need not be decoded
+     */
+    default boolean visitEncoded(EncodedSegment segment) {
+        return false;
+    }
+
+    /**
+     * Processes a block of decoded rows.
+     *
+     * @param batch the rows, only the requested columns are guaranteed to be filled
+     */
+    void visit(ColumnBatch batch);
+}
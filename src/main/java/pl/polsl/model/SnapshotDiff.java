@@ -0,0 +1,353 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/**
+ * Hash-partitioned comparison of two stores by the primary key. Both stores are scanned
+ * once and every row is packed into its {@link PrimaryKeyIndex} key, with state ids
+ * translated to one dictionary holding the states of both. When the keys of both sides do
+ * not fit the memory budget at once, the (key, amount) pairs are written to run files by
+ * the top bits of the key hash, so that a key lands in the same partition on both sides,
+ * and the partitions are compared in parallel on a fork-join pool, as many at a time as
+ * the budget allows.
+ * <p>
+ * Within a partition the amounts of each side are summed per key in a primary key index,
+ * then the keys of the older side are looked up in the newer one. Duplicates of a key are
+ * thereby compared by their total.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class SnapshotDiff {
+
+    /**
+     * Heap bytes per row of one side while its partition is compared: the key, the summed
+     * amount and up to four slots of the primary key index.
+     */
+    static final int ROW_BYTES = Long.BYTES + Double.BYTES + 4 * (Long.BYTES + Integer.BYTES);
+
+    private static final int COLUMNS = ColumnBatch.YEAR | ColumnBatch.MONTH | ColumnBatch.STATE | ColumnBatch.SOURCE
+        | ColumnBatch.PRODUCER | ColumnBatch.PLANT | ColumnBatch.AMOUNT;
+    private static final int BUFFER_BYTES = 8192;
+    private static final int MAX_PARTITION_BITS = 12;
+    private static final int SOURCES = EnergySource.values().length;
+    private static final int YEARS = Model.LAST_YEAR - Model.FIRST_YEAR + 1;
+
+    /**
+     * The states of both stores; packed keys refer to these ids.
+     */
+    private final StateDictionary states = new StateDictionary();
+    private final DiffVisitor visitor;
+
+    // totals of the partitions compared so far, guarded by this
+    private long inserted;
+    private long removed;
+    private long changed;
+    private long unchanged;
+    private double[] stateDeltas;
+    private final double[] sourceDeltas = new double[SOURCES];
+    private final double[] yearDeltas = new double[YEARS];
+
+    private SnapshotDiff(DiffVisitor visitor) {
+        this.visitor = visitor;
+    }
+
+    /**
+     * Compares two stores.
+     *
+     * @param before the older version
+     * @param after the newer version
+     * @param memoryBytes the heap the comparison may use
+     * @param pool the pool comparing partitions
+     * @param visitor receives every differing key
+     * @return the counts and deltas
+     * @throws IOException if partitions cannot be written or read back
+     * @throws IllegalArgumentException if the budget cannot hold a partition of the largest partitioning
+     */
+    static DiffSummary compare(EnergyStore before, EnergyStore after, long memoryBytes, ForkJoinPool pool,
+            DiffVisitor visitor) throws IOException {
+        SnapshotDiff diff = new SnapshotDiff(visitor);
+        int[] beforeStates = diff.union(before.dictionary());
+        int[] afterStates = diff.union(after.dictionary());
+        diff.stateDeltas = new double[diff.states.size()];
+        int bits = partitionBits(Math.max(before.size(), after.size()), memoryBytes, pool.getParallelism());
+        if (bits == 0) {
+            diff.compare(Side.of(before, beforeStates), Side.of(after, afterStates));
+            return diff.summary();
+        }
+        Path directory = Files.createTempDirectory("energy-diff");
+        try {
+            Path[] beforeRuns = partition(before, beforeStates, directory.resolve("before"), bits);
+            Path[] afterRuns = partition(after, afterStates, directory.resolve("after"), bits);
+            pool.invoke(diff.new CompareTask(beforeRuns, afterRuns, 0, beforeRuns.length));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+        return diff.summary();
+    }
+
+    /**
+     * Chooses the fewest partitions, as a number of hash bits, whose comparison fits the
+     * budget with the partitions compared in parallel by the pool threads and the calling
+     * thread, allowing one eighth more rows than the average partition holds.
+     */
+    static int partitionBits(long rows, long memoryBytes, int parallelism) {
+        for (int bits = 0; bits <= MAX_PARTITION_BITS; bits++) {
+            long partitionRows = (rows >> bits) + (rows >> bits >> 3) + 1;
+            int parallel = Math.min(parallelism + 1, 1 << bits);
+            long bytes = parallel * (2 * partitionRows * ROW_BYTES + 2L * BUFFER_BYTES);
+            if (bits > 0) {
+                // the runs of one side are written at a time
+                bytes = Math.max(bytes, (long) BUFFER_BYTES << bits);
+            }
+            if (bytes <= memoryBytes) {
+                return bits;
+            }
+        }
+        throw new IllegalArgumentException("A diff of " + rows + " rows needs more than " + memoryBytes
+            + " bytes of memory");
+    }
+
+    /**
+     * Adds the states of a dictionary to the union.
+     *
+     * @return the union id of every id of the dictionary
+     */
+    private int[] union(StateDictionary dictionary) {
+        int[] ids = new int[dictionary.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = states.idOf(dictionary.state(id));
+        }
+        return ids;
+    }
+
+    /**
+     * Writes the (key, amount) pair of every row of a store to the run of its partition.
+     */
+    private static Path[] partition(EnergyStore store, int[] stateIds, Path prefix, int bits) throws IOException {
+        int shift = Long.SIZE - bits;
+        Path[] files = new Path[1 << bits];
+        DataOutputStream[] runs = new DataOutputStream[files.length];
+        try {
+            for (int partition = 0; partition < files.length; partition++) {
+                files[partition] = prefix.resolveSibling(prefix.getFileName() + "-" + Integer.toHexString(partition));
+                runs[partition] = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(files[partition]), BUFFER_BYTES));
+            }
+            store.scan(COLUMNS, batch -> {
+                double[] amounts = batch.amounts();
+                for (int i = 0; i < batch.size(); i++) {
+                    long key = key(batch, i, stateIds);
+                    DataOutputStream run = runs[(int) (SpillingAggregator.hash(key) >>> shift)];
+                    try {
+                        run.writeLong(key);
+                        run.writeDouble(amounts[i]);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } finally {
+            for (DataOutputStream run : runs) {
+                if (run != null) {
+                    run.close();
+                }
+            }
+        }
+        return files;
+    }
+
+    private static long key(ColumnBatch batch, int row, int[] stateIds) {
+        return PrimaryKeyIndex.pack(batch.years()[row], batch.months()[row], stateIds[batch.states()[row]],
+            batch.sources()[row], batch.producers()[row], batch.plants()[row]);
+    }
+
+    /**
+     * Compares the keys of one partition, visiting every difference and adding the counts
+     * and deltas to the totals.
+     */
+    private void compare(Side before, Side after) {
+        BitSet matched = new BitSet(after.size);
+        long same = 0;
+        for (int i = 0; i < before.size; i++) {
+            long key = before.keys[i];
+            int j = after.index.get(key);
+            if (j < 0) {
+                report(key, before.amounts[i], Double.NaN);
+            } else {
+                matched.set(j);
+                if (before.amounts[i] != after.amounts[j]) {
+                    report(key, before.amounts[i], after.amounts[j]);
+                } else {
+                    same++;
+                }
+            }
+        }
+        synchronized (this) {
+            unchanged += same;
+        }
+        for (int j = matched.nextClearBit(0); j < after.size; j = matched.nextClearBit(j + 1)) {
+            report(after.keys[j], Double.NaN, after.amounts[j]);
+        }
+    }
+
+    /**
+     * Counts and visits one differing key; a missing side has a NaN amount.
+     */
+    private synchronized void report(long key, double before, double after) {
+        EnergyData row = PrimaryKeyIndex.unpack(key, Double.isNaN(after) ? before : after, states);
+        double delta;
+        if (Double.isNaN(before)) {
+            inserted++;
+            delta = after;
+            visitor.inserted(row);
+        } else if (Double.isNaN(after)) {
+            removed++;
+            delta = -before;
+            visitor.removed(row);
+        } else {
+            changed++;
+            delta = after - before;
+            visitor.changed(PrimaryKeyIndex.unpack(key, before, states), row);
+        }
+        stateDeltas[PrimaryKeyIndex.stateIdOf(key)] += delta;
+        sourceDeltas[row.source().ordinal()] += delta;
+        yearDeltas[row.year() - Model.FIRST_YEAR] += delta;
+    }
+
+    private DiffSummary summary() {
+        Map<String, Double> byState = new TreeMap<>();
+        for (int id = 0; id < stateDeltas.length; id++) {
+            if (stateDeltas[id] != 0) {
+                byState.put(states.state(id), stateDeltas[id]);
+            }
+        }
+        Map<EnergySource, Double> bySource = new EnumMap<>(EnergySource.class);
+        double total = 0;
+        for (EnergySource source : EnergySource.values()) {
+            double delta = sourceDeltas[source.ordinal()];
+            total += delta;
+            if (delta != 0) {
+                bySource.put(source, delta);
+            }
+        }
+        Map<Integer, Double> byYear = new TreeMap<>();
+        for (int year = 0; year < YEARS; year++) {
+            if (yearDeltas[year] != 0) {
+                byYear.put(Model.FIRST_YEAR + year, yearDeltas[year]);
+            }
+        }
+        return new DiffSummary(inserted, removed, changed, unchanged, total, byState, bySource, byYear);
+    }
+
+    /**
+     * The distinct keys of one side of a partition with their summed amounts.
+     */
+    private static final class Side {
+        private final PrimaryKeyIndex index;
+        private final long[] keys;
+        private final double[] amounts;
+        private int size;
+
+        private Side(int rows) {
+            index = new PrimaryKeyIndex(rows);
+            keys = new long[rows];
+            amounts = new double[rows];
+        }
+
+        /**
+         * Collects every row of a store.
+         */
+        static Side of(EnergyStore store, int[] stateIds) {
+            Side side = new Side(store.size());
+            store.scan(COLUMNS, batch -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    side.add(key(batch, i, stateIds), batch.amounts()[i]);
+                }
+            });
+            return side;
+        }
+
+        /**
+         * Reads back the run of one partition.
+         */
+        static Side read(Path run) throws IOException {
+            int rows = (int) (Files.size(run) / (Long.BYTES + Double.BYTES));
+            Side side = new Side(rows);
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(run), BUFFER_BYTES))) {
+                for (int i = 0; i < rows; i++) {
+                    side.add(in.readLong(), in.readDouble());
+                }
+            }
+            return side;
+        }
+
+        private void add(long key, double amount) {
+            int position = index.get(key);
+            if (position >= 0) {
+                amounts[position] += amount;
+                return;
+            }
+            index.put(key, size);
+            keys[size] = key;
+            amounts[size++] = amount;
+        }
+    }
+
+    /**
+     * Compares a range of partitions, splitting it until one partition is left per task.
+     */
+    private final class CompareTask extends RecursiveAction {
+
+        private final Path[] beforeRuns;
+        private final Path[] afterRuns;
+        private final int from;
+        private final int to;
+
+        CompareTask(Path[] beforeRuns, Path[] afterRuns, int from, int to) {
+            this.beforeRuns = beforeRuns;
+            this.afterRuns = afterRuns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    compare(Side.read(beforeRuns[from]), Side.read(afterRuns[from]));
+                    Files.delete(beforeRuns[from]);
+                    Files.delete(afterRuns[from]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new CompareTask(beforeRuns, afterRuns, from, middle),
+                new CompareTask(beforeRuns, afterRuns, middle, to));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.Arrays;
+
+/**
+ * Sort permutations of the live rows, one per {@link EnergyColumn}, built on first use.
+ * Every permutation lists row positions (indexes into {@link Model#getEnergyDataList()})
+ * in ascending order of an unsigned integer sort key, ties in position order. Keys are
+ * sorted with an LSD radix sort: enums, years and months need a single counting pass,
+ * plants at most three and amounts at most eight byte passes, and passes in which every key has the same byte
+ * are skipped. Appended rows wait in a pending buffer and are merged in on the next
+ * request, sorting only the new rows.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class SortIndex {
+
+    private static final int COLUMNS = EnergyColumn.values().length;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private final int[][] orders = new int[COLUMNS][];
+    private final long[][] sortedKeys = new long[COLUMNS][];
+    private final int[][] pendingPositions = new int[COLUMNS][];
+    private final long[][] pendingKeys = new long[COLUMNS][];
+    private final int[] pendingCounts = new int[COLUMNS];
+
+    /**
+     * Alphabetical rank of every state id known when the state order was built.
+     */
+    private int[] stateRanks = new int[0];
+
+    /**
+     * Alphabetical rank of every county id known when the county order was built.
+     */
+    private int[] countyRanks = new int[0];
+
+    /**
+     * Returns the positions of all live rows in ascending order of a column,
+     * building the permutation or merging pending rows into it first.
+     */
+    int[] order(EnergyStore store, EnergyColumn column) {
+        int c = column.ordinal();
+        if (orders[c] == null) {
+            build(store, column);
+        } else if (pendingCounts[c] > 0) {
+            merge(c);
+        }
+        return orders[c];
+    }
+
+    /**
+     * Records a row appended at the given position in every built permutation.
+     * A new state or county changes the alphabetical ranks, so its permutation is dropped instead.
+     *
+     * @param county the county as stored, its dictionary id plus one or 0 for none
+     */
+    void appended(EnergyData data, int stateId, int county, int position) {
+        for (EnergyColumn column : EnergyColumn.values()) {
+            int c = column.ordinal();
+            if (orders[c] == null) {
+                continue;
+            }
+            if (column == EnergyColumn.STATE && stateId >= stateRanks.length) {
+                invalidate(column);
+                continue;
+            }
+            if (column == EnergyColumn.COUNTY && county > countyRanks.length) {
+                invalidate(column);
+                continue;
+            }
+            if (pendingPositions[c] == null || pendingCounts[c] == pendingPositions[c].length) {
+                int capacity = pendingPositions[c] == null ? 16 : pendingCounts[c] * 2;
+                pendingPositions[c] = pendingPositions[c] == null ? new int[capacity]
+                    : Arrays.copyOf(pendingPositions[c], capacity);
+                pendingKeys[c] = pendingKeys[c] == null ? new long[capacity]
+                    : Arrays.copyOf(pendingKeys[c], capacity);
+            }
+            pendingPositions[c][pendingCounts[c]] = position;
+            pendingKeys[c][pendingCounts[c]] = key(column, data.year(), data.month(), stateId,
+                data.source().ordinal(), data.producer().ordinal(), data.amount(), data.plant(), county);
+            pendingCounts[c]++;
+        }
+    }
+
+    /**
+     * Drops the permutation of a column, for example after an amount was replaced in place.
+     */
+    void invalidate(EnergyColumn column) {
+        int c = column.ordinal();
+        orders[c] = null;
+        sortedKeys[c] = null;
+        pendingPositions[c] = null;
+        pendingKeys[c] = null;
+        pendingCounts[c] = 0;
+    }
+
+    /**
+     * @return the number of heap bytes used by the permutations, their keys and the pending rows
+     */
+    long sizeInBytes() {
+        long bytes = 40 + 5 * (16 + COLUMNS * 4L) + 2 * 16
+            + (long) (stateRanks.length + countyRanks.length) * Integer.BYTES;
+        for (int c = 0; c < COLUMNS; c++) {
+            if (orders[c] != null) {
+                bytes += 2 * 16 + (long) orders[c].length * (Integer.BYTES + Long.BYTES);
+            }
+            if (pendingPositions[c] != null) {
+                bytes += 2 * 16 + (long) pendingPositions[c].length * (Integer.BYTES + Long.BYTES);
+            }
+        }
+        return bytes;
+    }
+
+    private void build(EnergyStore store, EnergyColumn column) {
+        if (column == EnergyColumn.STATE) {
+            stateRanks = stateRanks(store.dictionary());
+        } else if (column == EnergyColumn.COUNTY) {
+            countyRanks = stateRanks(store.counties());
+        }
+        int size = store.size();
+        long[] keys = new long[size];
+        int[] positions = new int[size];
+        int[] next = new int[1];
+        store.scan(column.flag(), batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                int position = next[0]++;
+                positions[position] = position;
+                keys[position] = switch (column) {
+                    case YEAR -> batch.years()[i] - Model.FIRST_YEAR;
+                    case MONTH -> batch.months()[i];
+                    case STATE -> stateRanks[batch.states()[i]];
+                    case SOURCE -> batch.sources()[i];
+                    case PRODUCER -> batch.producers()[i];
+                    case AMOUNT -> sortableBits(batch.amounts()[i]);
+                    case PLANT -> batch.plants()[i];
+                    case COUNTY -> countyKey(batch.counties()[i]);
+                };
+            }
+        });
+        radixSort(keys, positions, size);
+        int c = column.ordinal();
+        orders[c] = positions;
+        sortedKeys[c] = keys;
+    }
+
+    /**
+     * Sorts the pending rows of a column and merges them into its permutation in one linear pass.
+     * Pending rows were appended after every sorted row, so sorted rows win ties.
+     */
+    private void merge(int c) {
+        int count = pendingCounts[c];
+        long[] newKeys = Arrays.copyOf(pendingKeys[c], count);
+        int[] newPositions = Arrays.copyOf(pendingPositions[c], count);
+        radixSort(newKeys, newPositions, count);
+        int[] order = orders[c];
+        long[] keys = sortedKeys[c];
+        int[] mergedOrder = new int[order.length + count];
+        long[] mergedKeys = new long[mergedOrder.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < mergedOrder.length; k++) {
+            if (j == count || (i < order.length && Long.compareUnsigned(keys[i], newKeys[j]) <= 0)) {
+                mergedOrder[k] = order[i];
+                mergedKeys[k] = keys[i++];
+            } else {
+                mergedOrder[k] = newPositions[j];
+                mergedKeys[k] = newKeys[j++];
+            }
+        }
+        orders[c] = mergedOrder;
+        sortedKeys[c] = mergedKeys;
+        pendingCounts[c] = 0;
+    }
+
+    private long key(EnergyColumn column, int year, int month, int stateId, int source, int producer,
+            double amount, int plant, int county) {
+        return switch (column) {
+            case YEAR -> year - Model.FIRST_YEAR;
+            case MONTH -> month;
+            case STATE -> stateRanks[stateId];
+            case SOURCE -> source;
+            case PRODUCER -> producer;
+            case AMOUNT -> sortableBits(amount);
+            case PLANT -> plant;
+            case COUNTY -> countyKey(county);
+        };
+    }
+
+    /**
+     * @return 0 for entries without a county, otherwise the alphabetical rank plus one
+     */
+    private long countyKey(int county) {
+        return county == 0 ? 0 : countyRanks[county - 1] + 1;
+    }
+
+    /**
+     * Maps a double to a long whose unsigned order is the numeric order of the doubles:
+     * positive values get the sign bit set, negative values have all bits flipped.
+     */
+    static long sortableBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    /**
+     * Ranks the entries of a state or county dictionary alphabetically.
+     */
+    private static int[] stateRanks(StateDictionary dictionary) {
+        Integer[] ids = new Integer[dictionary.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        // only the few distinct states are compared as strings, never the rows
+        Arrays.sort(ids, (a, b) -> dictionary.state(a).compareTo(dictionary.state(b)));
+        int[] ranks = new int[ids.length];
+        for (int rank = 0; rank < ids.length; rank++) {
+            ranks[ids[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * Stable LSD radix sort of unsigned keys, moving the values along with them.
+     * Only the bytes up to the highest set bit of any key are sorted on.
+     */
+    static void radixSort(long[] keys, int[] values, int count) {
+        long any = 0;
+        for (int i = 0; i < count; i++) {
+            any |= keys[i];
+        }
+        int passes = (64 - Long.numberOfLeadingZeros(any) + RADIX_BITS - 1) / RADIX_BITS;
+        if (passes == 0 || count < 2) {
+            return;
+        }
+        long[] keyBuffer = new long[count];
+        int[] valueBuffer = new int[count];
+        long[] sourceKeys = keys;
+        int[] sourceValues = values;
+        long[] targetKeys = keyBuffer;
+        int[] targetValues = valueBuffer;
+        int[] offsets = new int[RADIX];
+        for (int pass = 0; pass < passes; pass++) {
+            int shift = pass * RADIX_BITS;
+            Arrays.fill(offsets, 0);
+            for (int i = 0; i < count; i++) {
+                offsets[(int) (sourceKeys[i] >>> shift) & (RADIX - 1)]++;
+            }
+            if (offsets[(int) (sourceKeys[0] >>> shift) & (RADIX - 1)] == count) {
+                // every key has the same byte here, the pass would not move anything
+                continue;
+            }
+            int offset = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                int digitCount = offsets[digit];
+                offsets[digit] = offset;
+                offset += digitCount;
+            }
+            for (int i = 0; i < count; i++) {
+                int target = offsets[(int) (sourceKeys[i] >>> shift) & (RADIX - 1)]++;
+                targetKeys[target] = sourceKeys[i];
+                targetValues[target] = sourceValues[i];
+            }
+            long[] swapKeys = sourceKeys;
+            sourceKeys = targetKeys;
+            targetKeys = swapKeys;
+            int[] swapValues = sourceValues;
+            sourceValues = targetValues;
+            targetValues = swapValues;
+        }
+        if (sourceKeys != keys) {
+            System.arraycopy(sourceKeys, 0, keys, 0, count);
+            System.arraycopy(sourceValues, 0, values, 0, count);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Hash aggregation of amount totals and row counts by packed {@code long} keys within a
+ * fixed memory budget. Groups are kept in an open-addressing table with linear probing
+ * over parallel primitive arrays, 24 bytes per slot, sized once from the budget.
+ * <p>
+ * When the table passes three quarters full, its groups are spilled to one of
+ * {@link #PARTITIONS} run files chosen by four bits of the key hash, and the table is
+ * emptied. At the end every run file is aggregated on its own; a key lands in the same
+ * partition on every spill, so its partial groups meet again there. A partition holding
+ * more distinct keys than the table fits is spilled once more by the next four hash bits.
+ * The hash is a bijection of the key, so splitting always ends, at the latest when all
+ * 64 bits are used and every partition holds a single key.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class SpillingAggregator implements AutoCloseable {
+
+    /**
+     * Heap bytes per table slot: key, total and row count.
+     */
+    static final int SLOT_BYTES = Long.BYTES + Double.BYTES + Long.BYTES;
+
+    /**
+     * Number of run files a spill is partitioned into.
+     */
+    static final int PARTITIONS = 16;
+
+    private static final int PARTITION_BITS = 4;
+    private static final int BUFFER_BYTES = 8192;
+    private static final int MIN_SLOTS = 64;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /**
+     * Receives the finished groups.
+     */
+    @FunctionalInterface
+    interface Sink {
+        void accept(long key, double total, long rows);
+    }
+
+    private final long[] keys;
+    private final double[] totals;
+    private final long[] counts;
+    private final int limit;
+    private int size;
+    private Path directory;
+
+    /**
+     * The runs being written, or {@code null} while none are open.
+     */
+    private Run[] runs;
+    private long spilledGroups;
+
+    /**
+     * Creates an aggregator holding at most the given number of bytes on the heap, including
+     * the buffers of the run files; at most one level of runs is written and one run read at a time.
+     *
+     * @param memoryBytes the memory budget
+     * @throws IllegalArgumentException if the budget cannot hold a minimal table and the buffers
+     */
+    SpillingAggregator(long memoryBytes) {
+        long tableBytes = memoryBytes - (PARTITIONS + 1L) * BUFFER_BYTES;
+        if (tableBytes < (long) MIN_SLOTS * SLOT_BYTES) {
+            throw new IllegalArgumentException("A group-by needs at least "
+                + ((long) MIN_SLOTS * SLOT_BYTES + (PARTITIONS + 1L) * BUFFER_BYTES) + " bytes of memory");
+        }
+        int slots = (int) Math.min(1 << 30, Long.highestOneBit(tableBytes / SLOT_BYTES));
+        keys = new long[slots];
+        totals = new double[slots];
+        counts = new long[slots];
+        limit = slots / 4 * 3;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Adds one row to the group of a key, spilling the table first if it is full.
+     *
+     * @param key the packed group key, never {@link Long#MIN_VALUE}
+     * @param amount the amount of the row
+     */
+    void add(long key, double amount) throws IOException {
+        if (size >= limit) {
+            if (runs == null) {
+                directory = Files.createTempDirectory("energy-groupby");
+                runs = openRuns("0");
+            }
+            spill(runs, 0);
+        }
+        insert(key, amount, 1);
+    }
+
+    /**
+     * Emits every group once, merging spilled runs partition by partition, and deletes the run files.
+     * The order of the groups is unspecified.
+     */
+    void finish(Sink sink) throws IOException {
+        if (runs == null) {
+            emit(sink);
+            return;
+        }
+        spill(runs, 0);
+        merge(runs, 1, sink);
+    }
+
+    /**
+     * @return the number of partial groups written to run files so far
+     */
+    long spilledGroups() {
+        return spilledGroups;
+    }
+
+    /**
+     * Deletes any run files left behind by a failed aggregation.
+     */
+    @Override
+    public void close() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        if (runs != null) {
+            for (Run run : runs) {
+                run.out.close();
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+        directory = null;
+    }
+
+    /**
+     * Aggregates the runs of one level, one partition at a time; a partition too large for
+     * the table is spilled into the next level.
+     */
+    private void merge(Run[] level, int depth, Sink sink) throws IOException {
+        for (Run run : level) {
+            run.out.close();
+        }
+        runs = null;
+        for (Run run : level) {
+            Run[] children = null;
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(run.file), BUFFER_BYTES))) {
+                for (long i = 0; i < run.groups; i++) {
+                    if (size >= limit) {
+                        if (children == null) {
+                            children = openRuns(run.file.getFileName().toString());
+                            runs = children;
+                        }
+                        spill(children, depth);
+                    }
+                    insert(in.readLong(), in.readDouble(), in.readLong());
+                }
+            }
+            Files.delete(run.file);
+            if (children == null) {
+                emit(sink);
+            } else {
+                spill(children, depth);
+                merge(children, depth + 1, sink);
+            }
+        }
+    }
+
+    private void insert(long key, double total, long rows) {
+        int mask = keys.length - 1;
+        for (int slot = (int) hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == key) {
+                totals[slot] += total;
+                counts[slot] += rows;
+                return;
+            }
+            if (current == EMPTY) {
+                keys[slot] = key;
+                totals[slot] = total;
+                counts[slot] = rows;
+                size++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes every group of the table to the run of its partition at the given depth and empties the table.
+     */
+    private void spill(Run[] target, int depth) throws IOException {
+        int shift = Long.SIZE - PARTITION_BITS * (depth + 1);
+        for (int slot = 0; slot < keys.length; slot++) {
+            long key = keys[slot];
+            if (key == EMPTY) {
+                continue;
+            }
+            Run run = target[(int) (hash(key) >>> shift) & (PARTITIONS - 1)];
+            run.out.writeLong(key);
+            run.out.writeDouble(totals[slot]);
+            run.out.writeLong(counts[slot]);
+            run.groups++;
+            keys[slot] = EMPTY;
+        }
+        spilledGroups += size;
+        size = 0;
+    }
+
+    private void emit(Sink sink) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                sink.accept(keys[slot], totals[slot], counts[slot]);
+                keys[slot] = EMPTY;
+            }
+        }
+        size = 0;
+    }
+
+    private Run[] openRuns(String prefix) throws IOException {
+        Run[] level = new Run[PARTITIONS];
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            Path file = directory.resolve(prefix + "-" + Integer.toHexString(partition));
+            level[partition] = new Run(file, new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), BUFFER_BYTES)));
+        }
+        return level;
+    }
+
+    /**
+     * Mixes every bit of a key into every bit of the hash with the murmur3 finalizer, a
+     * bijection, so distinct keys never share all hash bits.
+     */
+    static long hash(long key) {
+        long hash = key;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * One run file being written, with the number of groups in it.
+     */
+    private static final class Run {
+        private final Path file;
+        private final DataOutputStream out;
+        private long groups;
+
+        Run(Path file, DataOutputStream out) {
+            this.file = file;
+            this.out = out;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of state codes.
+ * Every distinct state string gets a dense integer id in order of first appearance,
+ * so the store keeps only small integers in its state column. County names are
+ * encoded by a dictionary of their own.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class StateDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> states = new ArrayList<>();
+
+    /**
+     * Returns the id of a state, assigning a new one if the state is unknown.
+     *
+     * @param state the state code
+     * @return the dictionary id of the state
+     */
+    public int idOf(String state) {
+        Integer id = ids.get(state);
+        if (id == null) {
+            id = states.size();
+            ids.put(state, id);
+            states.add(state);
+        }
+        return id;
+    }
+
+    /**
+     * Looks up the id of a state without assigning a new one.
+     *
+     * @param state the state code
+     * @return the dictionary id, or -1 if the state is unknown
+     */
+    public int lookup(String state) {
+        Integer id = ids.get(state);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Resolves a dictionary id back to the state code.
+     *
+     * @param id the dictionary id
+     * @return the state code
+     */
+    public String state(int id) {
+        return states.get(id);
+    }
+
+    /**
+     * @return the number of distinct states
+     */
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * @return an independent dictionary with the same ids
+     */
+    StateDictionary copy() {
+        StateDictionary copy = new StateDictionary();
+        states.forEach(copy::idOf);
+        return copy;
+    }
+
+    /**
+     * @return an estimate of the heap bytes used by the dictionary
+     */
+    long sizeInBytes() {
+        long bytes = 0;
+        for (String state : states) {
+            // string object, backing array, map entry and boxed id
+            bytes += 24 + 16 + state.length() + 32 + 16;
+        }
+        return bytes;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(states.size());
+        for (String state : states) {
+            out.writeUTF(state);
+        }
+    }
+
+    static StateDictionary readFrom(DataInput in) throws IOException {
+        StateDictionary dictionary = new StateDictionary();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            dictionary.idOf(in.readUTF());
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,274 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Reservoir sample of the rows of every (state, source) stratum, behind the estimates that
+ * answer a query before its full scan does. Each stratum keeps up to {@link #CAPACITY} rows
+ * drawn uniformly from its rows, with the number of rows it was drawn from; adding a row
+ * takes constant time and estimating touches at most {@code CAPACITY} rows per stratum,
+ * whatever the size of the store.
+ * <p>
+ * A deleted row leaves the sample if it was drawn, which keeps the rest uniform; a stratum
+ * whose sample shrinks below half its capacity that way is no longer worth estimating
+ * from, so {@link #remove(int, int, int)} asks for it to be drawn again with
+ * {@link #redraw(EnergyStore, int, int)}, which reads only the segments whose zone maps
+ * hold the stratum. Only the rows of that stratum have to be deleted for it to shrink,
+ * about half of them, so redraws are rare next to the deletes that cause them.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class StratifiedSample {
+
+    /**
+     * Most rows kept per stratum.
+     */
+    static final int CAPACITY = 64;
+
+    /**
+     * Normal quantile of the two-sided 95% confidence intervals.
+     */
+    static final double Z_95 = 1.959964;
+
+    private static final int SOURCES = EnergySource.values().length;
+
+    /**
+     * Strata indexed by {@code stateId * SOURCES + source}, {@code null} while empty.
+     */
+    private Stratum[] strata = new Stratum[0];
+    private final SplittableRandom random;
+    private int size;
+
+    StratifiedSample(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    private StratifiedSample(SplittableRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * Draws the sample of every row in a store in one scan.
+     */
+    static StratifiedSample of(EnergyStore store, long seed) {
+        StratifiedSample sample = new StratifiedSample(seed);
+        int columns = ColumnBatch.ROW_ID | ColumnBatch.MONTH | ColumnBatch.STATE | ColumnBatch.SOURCE
+            | ColumnBatch.AMOUNT;
+        store.scan(columns, batch -> {
+            int[] rowIds = batch.rowIds();
+            int[] months = batch.months();
+            int[] states = batch.states();
+            int[] sources = batch.sources();
+            double[] amounts = batch.amounts();
+            for (int i = 0; i < batch.size(); i++) {
+                sample.add(states[i], sources[i], rowIds[i], months[i], amounts[i]);
+            }
+        });
+        return sample;
+    }
+
+    /**
+     * @return an independent copy of the sample, which draws with a random split off this one
+     */
+    StratifiedSample copy() {
+        StratifiedSample copy = new StratifiedSample(random.split());
+        copy.strata = new Stratum[strata.length];
+        for (int index = 0; index < strata.length; index++) {
+            copy.strata[index] = strata[index] == null ? null : strata[index].copy();
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Draws the sample of one stratum again from the live rows of a store.
+     */
+    void redraw(EnergyStore store, int stateId, int source) {
+        Stratum stratum = stratum(stateId, source);
+        size -= stratum.size;
+        stratum.size = 0;
+        stratum.population = 0;
+        int columns = ColumnBatch.ROW_ID | ColumnBatch.MONTH | ColumnBatch.STATE | ColumnBatch.SOURCE
+            | ColumnBatch.AMOUNT;
+        store.scan(columns, new SegmentVisitor() {
+            @Override
+            public boolean accept(SegmentSummary summary) {
+                return summary.getMinStateId() <= stateId && stateId <= summary.getMaxStateId()
+                    && (summary.getSourceMask() & 1 << source) != 0;
+            }
+
+            @Override
+            public void visit(ColumnBatch batch) {
+                int[] states = batch.states();
+                int[] sources = batch.sources();
+                for (int i = 0; i < batch.size(); i++) {
+                    if (states[i] == stateId && sources[i] == source) {
+                        add(stateId, source, batch.rowIds()[i], batch.months()[i], batch.amounts()[i]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Offers an added row to the reservoir of its stratum.
+     */
+    void add(int stateId, int source, int rowId, int month, double amount) {
+        Stratum stratum = stratum(stateId, source);
+        stratum.population++;
+        int slot;
+        if (stratum.size == stratum.population - 1 && stratum.size < CAPACITY) {
+            // the stratum still holds every one of its rows
+            slot = stratum.size++;
+            size++;
+        } else {
+            long draw = random.nextLong(stratum.population);
+            if (draw >= stratum.size) {
+                return;
+            }
+            slot = (int) draw;
+        }
+        stratum.rowIds[slot] = rowId;
+        stratum.months[slot] = (byte) month;
+        stratum.amounts[slot] = amount;
+    }
+
+    /**
+     * Takes a deleted row out of its stratum.
+     *
+     * @return {@code false} if the sample of the stratum became too small and should be drawn again
+     */
+    boolean remove(int stateId, int source, int rowId) {
+        Stratum stratum = strata[stateId * SOURCES + source];
+        stratum.population--;
+        int slot = stratum.indexOf(rowId);
+        if (slot >= 0) {
+            int last = --stratum.size;
+            stratum.rowIds[slot] = stratum.rowIds[last];
+            stratum.months[slot] = stratum.months[last];
+            stratum.amounts[slot] = stratum.amounts[last];
+            size--;
+        }
+        return stratum.size == stratum.population || stratum.size >= CAPACITY / 2;
+    }
+
+    /**
+     * Follows a row whose amount was replaced in place.
+     */
+    void replaceAmount(int stateId, int source, int rowId, double amount) {
+        Stratum stratum = strata[stateId * SOURCES + source];
+        int slot = stratum.indexOf(rowId);
+        if (slot >= 0) {
+            stratum.amounts[slot] = amount;
+        }
+    }
+
+    /**
+     * Estimates the total amount of every state in one month of the year, summing the
+     * expansion estimates of its strata. The variance of each stratum total is
+     * {@code N^2 (1 - n/N) s^2 / n} for {@code n} of {@code N} rows drawn with sample
+     * variance {@code s^2}, so a stratum drawn completely contributes its exact total.
+     *
+     * @param month the month (1-12)
+     * @param totals receives the estimated total per state id, sized to the state dictionary
+     * @param variances receives the variance of each total
+     * @param hits receives whether any sampled row of the state falls in the month
+     */
+    void estimateMonth(int month, double[] totals, double[] variances, boolean[] hits) {
+        for (int index = 0; index < strata.length; index++) {
+            Stratum stratum = strata[index];
+            if (stratum == null || stratum.size == 0) {
+                continue;
+            }
+            int n = stratum.size;
+            double sum = 0;
+            double squares = 0;
+            for (int i = 0; i < n; i++) {
+                if (stratum.months[i] == month) {
+                    double amount = stratum.amounts[i];
+                    sum += amount;
+                    squares += amount * amount;
+                }
+            }
+            if (sum == 0) {
+                continue;
+            }
+            int state = index / SOURCES;
+            double population = stratum.population;
+            double mean = sum / n;
+            totals[state] += population * mean;
+            hits[state] = true;
+            if (n < population) {
+                // a single drawn row has no spread to measure, take its own square as the variance
+                double variance = n > 1 ? (squares - n * mean * mean) / (n - 1) : squares;
+                variances[state] += population * population * (1 - n / population) * Math.max(variance, 0) / n;
+            }
+        }
+    }
+
+    /**
+     * @return the number of rows drawn
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of heap bytes used by the strata
+     */
+    long sizeInBytes() {
+        long bytes = 32 + 16 + (long) strata.length * Integer.BYTES;
+        for (Stratum stratum : strata) {
+            if (stratum != null) {
+                bytes += 32 + 3 * 16 + CAPACITY * (Integer.BYTES + 1 + Double.BYTES);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the stratum of a pair, allocating it and growing the stratum table when needed.
+     */
+    private Stratum stratum(int stateId, int source) {
+        int index = stateId * SOURCES + source;
+        if (index >= strata.length) {
+            strata = Arrays.copyOf(strata, Math.max(index + 1, strata.length * 2));
+        }
+        if (strata[index] == null) {
+            strata[index] = new Stratum();
+        }
+        return strata[index];
+    }
+
+    /**
+     * The drawn rows of one stratum and the number of rows they were drawn from.
+     */
+    private static final class Stratum {
+        private final int[] rowIds = new int[CAPACITY];
+        private final byte[] months = new byte[CAPACITY];
+        private final double[] amounts = new double[CAPACITY];
+        private int size;
+        private long population;
+
+        private Stratum copy() {
+            Stratum copy = new Stratum();
+            System.arraycopy(rowIds, 0, copy.rowIds, 0, size);
+            System.arraycopy(months, 0, copy.months, 0, size);
+            System.arraycopy(amounts, 0, copy.amounts, 0, size);
+            copy.size = size;
+            copy.population = population;
+            return copy;
+        }
+
+        private int indexOf(int rowId) {
+            for (int i = 0; i < size; i++) {
+                if (rowIds[i] == rowId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.time.YearMonth;
+
+/**
+ * Result of {@link Model#getTimeSeries(PivotDimension)}: the monthly energy production
+ * of every state, source or producer over the whole timeline, one point per month from
+ * January 2001 to December 2022. The arrays returned by the accessors are shared rather
+ * than copied, so the chart can read them without allocating; they must not be modified.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class TimeSeries {
+
+    private final PivotDimension dimension;
+    private final String[] labels;
+    private final double[][] values;
+    private final double max;
+
+    TimeSeries(PivotDimension dimension, String[] labels, double[][] values) {
+        this.dimension = dimension;
+        this.labels = labels;
+        this.values = values;
+        double largest = 0;
+        for (double[] series : values) {
+            for (double value : series) {
+                largest = Math.max(largest, value);
+            }
+        }
+        max = largest;
+    }
+
+    /**
+     * @return the dimension the series are split by
+     */
+    public PivotDimension getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the label of every series
+     */
+    public String[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * @return the monthly totals in MWh, indexed {@code [series][month]} with month 0 at {@link #getStart()}
+     */
+    public double[][] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the largest monthly total of any series
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return the month of the first point of every series
+     */
+    public YearMonth getStart() {
+        return YearMonth.of(Model.FIRST_YEAR, 1);
+    }
+}
@@ -0,0 +1,179 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.Arrays;
+
+/**
+ * Range-sum index over the monthly timeline: one Fenwick tree of totals and one of row
+ * counts per (state, source) pair, each over the 264 year-month buckets from
+ * {@link Model#FIRST_YEAR} to {@link Model#LAST_YEAR}. Adding a row and summing any
+ * range of months both take O(log 264) steps; trees of pairs without rows are never allocated.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class TimelineIndex {
+
+    /**
+     * Number of year-month buckets on the timeline.
+     */
+    static final int BUCKETS = (Model.LAST_YEAR - Model.FIRST_YEAR + 1) * 12;
+
+    private static final int SOURCES = EnergySource.values().length;
+
+    /**
+     * One-based Fenwick trees indexed by {@code stateId * SOURCES + source}.
+     */
+    private double[][] totals = new double[0][];
+    private int[][] counts = new int[0][];
+
+    /**
+     * @return the bucket of a year and month, 0 for January of the first year
+     */
+    static int bucket(int year, int month) {
+        return (year - Model.FIRST_YEAR) * 12 + month - 1;
+    }
+
+    /**
+     * Builds the index of every row in a store in one scan, then turns the per-bucket
+     * totals into Fenwick trees in linear time.
+     */
+    static TimelineIndex of(EnergyStore store) {
+        TimelineIndex index = new TimelineIndex();
+        int columns = ColumnBatch.YEAR | ColumnBatch.MONTH | ColumnBatch.STATE | ColumnBatch.SOURCE | ColumnBatch.AMOUNT;
+        store.scan(columns, batch -> {
+            int[] years = batch.years();
+            int[] months = batch.months();
+            int[] states = batch.states();
+            int[] sources = batch.sources();
+            double[] amounts = batch.amounts();
+            for (int i = 0; i < batch.size(); i++) {
+                int tree = index.tree(states[i], sources[i]);
+                int node = bucket(years[i], months[i]) + 1;
+                index.totals[tree][node] += amounts[i];
+                index.counts[tree][node]++;
+            }
+        });
+        for (int tree = 0; tree < index.totals.length; tree++) {
+            if (index.totals[tree] != null) {
+                build(index.totals[tree], index.counts[tree]);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Adds an amount to a bucket together with a row count: 1 for an added row,
+     * -1 with a negative amount for a deleted one and 0 for a replaced amount.
+     */
+    void add(int stateId, int source, int bucket, double amount, int rows) {
+        int tree = tree(stateId, source);
+        double[] total = totals[tree];
+        int[] count = counts[tree];
+        for (int node = bucket + 1; node <= BUCKETS; node += node & -node) {
+            total[node] += amount;
+            count[node] += rows;
+        }
+    }
+
+    /**
+     * @return the total of a (state, source) pair over the buckets {@code from} to {@code to} inclusive
+     */
+    double sum(int stateId, int source, int from, int to) {
+        int tree = stateId * SOURCES + source;
+        if (tree >= totals.length || totals[tree] == null || count(counts[tree], from, to) == 0) {
+            // no rows left, do not report what remains of rounding errors
+            return 0;
+        }
+        return prefix(totals[tree], to + 1) - prefix(totals[tree], from);
+    }
+
+    /**
+     * @return the total of a state over all sources and the buckets {@code from} to {@code to} inclusive
+     */
+    double sum(int stateId, int from, int to) {
+        double sum = 0;
+        for (int source = 0; source < SOURCES; source++) {
+            sum += sum(stateId, source, from, to);
+        }
+        return sum;
+    }
+
+    /**
+     * @return whether a state has any row in the buckets {@code from} to {@code to} inclusive
+     */
+    boolean contains(int stateId, int from, int to) {
+        for (int source = 0; source < SOURCES; source++) {
+            int tree = stateId * SOURCES + source;
+            if (tree < counts.length && counts[tree] != null && count(counts[tree], from, to) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of heap bytes used by the allocated trees
+     */
+    long sizeInBytes() {
+        long bytes = 32 + 2 * 16 + (long) (totals.length + counts.length) * Long.BYTES;
+        for (double[] tree : totals) {
+            if (tree != null) {
+                bytes += (long) tree.length * (Double.BYTES + Integer.BYTES);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the tree of a pair, allocating it and growing the tree table when needed.
+     */
+    private int tree(int stateId, int source) {
+        int tree = stateId * SOURCES + source;
+        if (tree >= totals.length) {
+            int capacity = Math.max(tree + 1, totals.length * 2);
+            totals = Arrays.copyOf(totals, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        if (totals[tree] == null) {
+            totals[tree] = new double[BUCKETS + 1];
+            counts[tree] = new int[BUCKETS + 1];
+        }
+        return tree;
+    }
+
+    private static int count(int[] tree, int from, int to) {
+        return prefix(tree, to + 1) - prefix(tree, from);
+    }
+
+    /**
+     * @return the sum of the first {@code length} buckets
+     */
+    private static double prefix(double[] tree, int length) {
+        double sum = 0;
+        for (int node = length; node > 0; node -= node & -node) {
+            sum += tree[node];
+        }
+        return sum;
+    }
+
+    private static int prefix(int[] tree, int length) {
+        int sum = 0;
+        for (int node = length; node > 0; node -= node & -node) {
+            sum += tree[node];
+        }
+        return sum;
+    }
+
+    /**
+     * Turns per-bucket values into a Fenwick tree in place by pushing every node into its parent.
+     */
+    private static void build(double[] total, int[] count) {
+        for (int node = 1; node <= BUCKETS; node++) {
+            int parent = node + (node & -node);
+            if (parent <= BUCKETS) {
+                total[parent] += total[node];
+                count[parent] += count[node];
+            }
+        }
+    }
+}
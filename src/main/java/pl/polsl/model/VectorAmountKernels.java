@@ -0,0 +1,134 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of {@link AmountKernels} on the incubating Vector API.
+ * Doubles use the preferred vector shape of the CPU (4 lanes on AVX2, 8 on AVX-512)
+ * and key columns are loaded with the same lane count at half the width, so an
+ * integer comparison mask can be cast directly onto the amount lanes.
+ * <p>
+ * This class is only loaded through {@link AmountKernels#INSTANCE}, which falls
+ * back to {@link ScalarAmountKernels} when the JVM runs without
+ * {@code --add-modules jdk.incubator.vector}.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class VectorAmountKernels implements AmountKernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+        VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    /**
+     * Creates the kernels.
+     *
+     * @throws UnsupportedOperationException if the CPU has no vector shape wider than one double
+     */
+    VectorAmountKernels() {
+        if (DOUBLES.length() < 2 || INTS.length() != DOUBLES.length()) {
+            throw new UnsupportedOperationException("No usable vector shape: " + DOUBLES);
+        }
+    }
+
+    @Override
+    public double sum(double[] amounts, int from, int to) {
+        DoubleVector total = DoubleVector.zero(DOUBLES);
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+            total = total.add(DoubleVector.fromArray(DOUBLES, amounts, i));
+        }
+        double result = total.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            result += amounts[i];
+        }
+        return result;
+    }
+
+    @Override
+    public double sumWhere(int[] keys, int key, double[] amounts, int count) {
+        DoubleVector total = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(count); i < bound; i += DOUBLES.length()) {
+            VectorMask<Double> match = IntVector.fromArray(INTS, keys, i).eq(key).cast(DOUBLES);
+            total = total.add(DoubleVector.fromArray(DOUBLES, amounts, i), match);
+        }
+        double result = total.reduceLanes(VectorOperators.ADD);
+        for (; i < count; i++) {
+            if (keys[i] == key) {
+                result += amounts[i];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public double sumWhere(int[] keys, int key, int[] otherKeys, int otherKey, double[] amounts, int count) {
+        DoubleVector total = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(count); i < bound; i += DOUBLES.length()) {
+            VectorMask<Integer> both = IntVector.fromArray(INTS, keys, i).eq(key)
+                .and(IntVector.fromArray(INTS, otherKeys, i).eq(otherKey));
+            total = total.add(DoubleVector.fromArray(DOUBLES, amounts, i), both.cast(DOUBLES));
+        }
+        double result = total.reduceLanes(VectorOperators.ADD);
+        for (; i < count; i++) {
+            if (keys[i] == key && otherKeys[i] == otherKey) {
+                result += amounts[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keeps, per lane, the smaller of the current minimum and each matching amount.
+     * Operators must be constants at the call site for the JIT to intrinsify them,
+     * which is why minimum and maximum are written out separately.
+     */
+    @Override
+    public double minWhere(int[] keys, int key, double[] amounts, int count) {
+        DoubleVector min = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(count); i < bound; i += DOUBLES.length()) {
+            VectorMask<Double> match = IntVector.fromArray(INTS, keys, i).eq(key).cast(DOUBLES);
+            DoubleVector values = DoubleVector.fromArray(DOUBLES, amounts, i);
+            min = min.blend(values, values.lt(min).and(match));
+        }
+        double result = min.reduceLanes(VectorOperators.MIN);
+        for (; i < count; i++) {
+            if (keys[i] == key) {
+                result = Math.min(result, amounts[i]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public double maxWhere(int[] keys, int key, double[] amounts, int count) {
+        DoubleVector max = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(count); i < bound; i += DOUBLES.length()) {
+            VectorMask<Double> match = IntVector.fromArray(INTS, keys, i).eq(key).cast(DOUBLES);
+            DoubleVector values = DoubleVector.fromArray(DOUBLES, amounts, i);
+            max = max.blend(values, max.lt(values).and(match));
+        }
+        double result = max.reduceLanes(VectorOperators.MAX);
+        for (; i < count; i++) {
+            if (keys[i] == key) {
+                result = Math.max(result, amounts[i]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String name() {
+        return "vector-" + DOUBLES.vectorBitSize();
+    }
+}
@@ -0,0 +1,21 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+/**
+ * How {@link Model#addEnergyData(EnergyData)} treats a row whose key
+ * (year, month, state, source, producer, plant) is already stored.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public enum WriteMode {
+
+    /**
+     * Every row is appended, duplicates of a key are kept side by side.
+     */
+    APPEND,
+
+    /**
+     * A row with a stored key replaces the amount of the stored row.
+     */
+    UPSERT
+}
@@ -5,7 +5,34 @@
  * - EnergyData record for data structure
  * - EnergySource enum for valid energy sources
  * - EnergyProducer enum for valid energy producers
- * - InvalidEnergyDataException for error handling
+ * - InvalidEnergyDataException for error handling, and for bulk loads EnergyColumns batches
+ *   validated without exceptions into a RejectionReport of RejectReason codes
+ * - EnergyStore, the storage backend interface of Model, implemented by
+ *   ColumnStore (compressed, on the heap) and OffHeapColumnStore (direct or mapped memory),
+ *   both with tombstone deletes; ColumnStore compacts segments in the background
+ * - PartitionedStore, year partitions on disk loaded on demand through an LRU SegmentCache
+ * - EncodedSegment blocks, SegmentSummary zone maps and StateDictionary
+ * - ColumnBatch and SegmentVisitor for allocation-free segment scans
+ * - WriteMode and the PrimaryKeyIndex behind upserts
+ * - SnapshotDiff, hash-partitioned comparison of two versions of the data by primary key,
+ *   reporting every difference to a DiffVisitor and the totals in a DiffSummary
+ * - GroupVisitor of group-by results, aggregated by the SpillingAggregator within a memory
+ *   budget by spilling hash partitions to run files
+ * - ModelListener, notified of every change of the rows as a ModelEvent range of positions
+ * - AnomalyDetector, online per state, source and month scoring of amounts, with the
+ *   AnomalyPolicy that flags or quarantines each Anomaly
+ * - TimelineIndex, Fenwick trees of monthly totals behind the range queries
+ * - StratifiedSample, reservoirs per state and source behind the Estimate of a query
+ *   with its confidence interval
+ * - PivotDimension and PivotTable, dense single-pass pivots with totals and percentages
+ * - DimensionTable reference data per state, joined on the state id by HashJoin
+ * - TimeSeries, monthly totals per state, source or producer for the chart
+ * - SeasonalForecaster, cached Holt-Winters fits per state, source and producer series
+ *   fitted in parallel on a fork-join pool, and the Forecast results
+ * - SortIndex, radix-sorted row permutations per EnergyColumn, and EnergyFilter quick filters
+ * - AmountKernels for SIMD (Vector API) or scalar aggregation over the amount column
+ * - ArrowIpc, Apache Arrow IPC stream and file import and export, with the FlatBuffers
+ *   metadata encoding it needs
  * This package follows the MVC pattern and represents the data layer.
  * 
  * @author Aleksandra Nizio
@@ -0,0 +1,411 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+import com.mycompany.energiawusawlatach2001.model.Anomaly;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumns;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyStore;
+import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.ModelEvent;
+import com.mycompany.energiawusawlatach2001.model.RejectionReport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link Model} that ships its changes to follower {@link ShardWorker}s over a Unix
+ * domain socket, so that read-only copies on other JVMs can share its query load through
+ * a {@link ReplicaSet}. Every appended row, replaced amount and deleted key gets the next
+ * sequence number and is kept in a tail of the most recent changes; each follower is sent
+ * the changes after the last one it applied, in order, by a thread of its own, so a slow
+ * follower never holds up writes.
+ * <p>
+ * A follower that is new, or whose position has left the tail, is first sent a snapshot
+ * of all rows in the columnar file format, saved while writes wait, and then the changes
+ * made after it. Loading a file starts a new epoch of the log, which makes every follower
+ * take a new snapshot. Writes are serialized on this model.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class LeaderModel extends Model {
+
+    /**
+     * Number of changes kept for followers that reconnect, unless given otherwise.
+     */
+    public static final int DEFAULT_RETAINED_CHANGES = 1 << 16;
+
+    /**
+     * How often an idle follower is told the last sequence number, in milliseconds.
+     */
+    static final long HEARTBEAT_MILLIS = 100;
+
+    private static final int BATCH_CHANGES = 1024;
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final Set<SocketChannel> followers = new HashSet<>();
+
+    // the log, guarded by this
+    /**
+     * The most recent changes, the change with sequence number {@code s} at {@code s % tail.length}.
+     */
+    private final Change[] tail;
+    private long epoch = newEpoch();
+    private long sequence;
+
+    /**
+     * The first sequence number of the current epoch.
+     */
+    private long epochStart = 1;
+    private boolean closed;
+
+    /**
+     * Creates a leader preloaded with the sample data of {@link Model#Model()}, listening
+     * for followers on a socket file, which is replaced if it exists.
+     *
+     * @param socket the socket file for followers
+     * @throws IOException if the socket cannot be opened
+     */
+    public LeaderModel(Path socket) throws IOException {
+        super();
+        this.socket = socket;
+        this.tail = new Change[DEFAULT_RETAINED_CHANGES];
+        this.server = listen(socket);
+        start();
+    }
+
+    /**
+     * Creates a leader on a store, listening for followers on a socket file, which is
+     * replaced if it exists. The rows already in the store are at sequence number 0.
+     *
+     * @param store the store holding the energy data
+     * @param socket the socket file for followers
+     * @param retainedChanges the number of recent changes kept for followers that fall behind
+     * @throws IOException if the socket cannot be opened
+     */
+    public LeaderModel(EnergyStore store, Path socket, int retainedChanges) throws IOException {
+        super(store);
+        if (retainedChanges < 1) {
+            throw new IllegalArgumentException("At least one change must be retained");
+        }
+        this.socket = socket;
+        this.tail = new Change[retainedChanges];
+        this.server = listen(socket);
+        start();
+    }
+
+    private static ServerSocketChannel listen(Path socket) throws IOException {
+        Files.deleteIfExists(socket);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        return server;
+    }
+
+    private void start() {
+        addModelListener(this::log);
+        Thread thread = new Thread(this::serve, "replication-accept");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static long newEpoch() {
+        long epoch;
+        do {
+            epoch = ThreadLocalRandom.current().nextLong();
+        } while (epoch == 0);
+        return epoch;
+    }
+
+    /**
+     * @return the socket file followers connect to
+     */
+    public Path getSocket() {
+        return socket;
+    }
+
+    /**
+     * @return the sequence number of the last change, which a follower has to reach to
+     *         reflect every write made so far
+     */
+    public synchronized long getLastSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the number of followers connected
+     */
+    public synchronized int getFollowerCount() {
+        return followers.size();
+    }
+
+    @Override
+    public synchronized void addEnergyData(EnergyData data) throws InvalidEnergyDataException {
+        super.addEnergyData(data);
+    }
+
+    @Override
+    public synchronized int addAll(EnergyColumns batch, RejectionReport report) {
+        return super.addAll(batch, report);
+    }
+
+    @Override
+    public synchronized boolean upsertEnergyData(EnergyData data) throws InvalidEnergyDataException {
+        return super.upsertEnergyData(data);
+    }
+
+    /**
+     * Deletes like {@link Model#deleteEnergyData(EnergyData)} and logs the key, since a
+     * removed row can no longer be read back when the change is announced.
+     */
+    @Override
+    public synchronized boolean deleteEnergyData(EnergyData data) {
+        if (!super.deleteEnergyData(data)) {
+            return false;
+        }
+        append(ShardProtocol.LOG_DELETE, data);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean updateEnergyData(EnergyData oldData, EnergyData newData)
+            throws InvalidEnergyDataException {
+        return super.updateEnergyData(oldData, newData);
+    }
+
+    @Override
+    public synchronized boolean releaseQuarantined(Anomaly anomaly) {
+        return super.releaseQuarantined(anomaly);
+    }
+
+    @Override
+    public synchronized void load(Path file) throws IOException {
+        super.load(file);
+    }
+
+    @Override
+    public synchronized void loadArrow(Path file) throws IOException {
+        super.loadArrow(file);
+    }
+
+    @Override
+    public synchronized void readArrowStream(ReadableByteChannel channel) throws IOException {
+        super.readArrowStream(channel);
+    }
+
+    @Override
+    public synchronized void openPartitioned(Path directory, long cacheBytes) throws IOException {
+        super.openPartitioned(directory, cacheBytes);
+    }
+
+    /**
+     * Stops shipping changes, disconnects the followers and closes the store.
+     *
+     * @throws UncheckedIOException if the socket could not be closed
+     */
+    @Override
+    public void close() {
+        List<SocketChannel> connections;
+        synchronized (this) {
+            closed = true;
+            connections = new ArrayList<>(followers);
+            notifyAll();
+        }
+        try {
+            server.close();
+            for (SocketChannel connection : connections) {
+                connection.close();
+            }
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            super.close();
+        }
+    }
+
+    /**
+     * Logs the rows a change left behind; deletes are logged by {@link #deleteEnergyData(EnergyData)}.
+     * Runs inside the synchronized write that made the change.
+     */
+    private void log(ModelEvent event) {
+        switch (event.type()) {
+            case APPENDED, UPDATED -> {
+                byte type = event.type() == ModelEvent.Type.APPENDED ? ShardProtocol.LOG_APPEND
+                    : ShardProtocol.LOG_REPLACE;
+                List<EnergyData> rows = getEnergyDataList();
+                for (int position = event.from(); position < event.to(); position++) {
+                    append(type, rows.get(position));
+                }
+            }
+            case RELOADED -> {
+                // followers cannot apply a reload row by row, so they start over from a snapshot
+                epoch = newEpoch();
+                epochStart = sequence + 1;
+                Arrays.fill(tail, null);
+                notifyAll();
+            }
+            case REMOVED -> {
+            }
+        }
+    }
+
+    private void append(byte type, EnergyData row) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        try {
+            ShardProtocol.writeRow(new DataOutputStream(bytes), row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sequence++;
+        tail[(int) (sequence % tail.length)] = new Change(sequence, System.currentTimeMillis(), type,
+            bytes.toByteArray());
+        notifyAll();
+    }
+
+    /**
+     * @return the first sequence number still in the tail, or the next one if the tail is empty
+     */
+    private long firstRetained() {
+        return Math.max(epochStart, sequence - tail.length + 1);
+    }
+
+    private void serve() {
+        while (server.isOpen()) {
+            SocketChannel connection;
+            try {
+                connection = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                continue;
+            }
+            synchronized (this) {
+                if (closed) {
+                    closeQuietly(connection);
+                    return;
+                }
+                followers.add(connection);
+            }
+            Thread thread = new Thread(() -> ship(connection), "replication-shipper");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Sends one follower a snapshot if it needs one, then every change after its position
+     * until it disconnects, the leader closes, a reload starts a new epoch or the follower
+     * falls out of the tail. The follower reconnects in each case but the close.
+     */
+    private void ship(SocketChannel connection) {
+        try (connection;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(connection)))) {
+            long followerEpoch = in.readLong();
+            long next = in.readLong() + 1;
+            long shippedEpoch;
+            Path snapshot = null;
+            synchronized (this) {
+                shippedEpoch = epoch;
+                if (followerEpoch != epoch || next < firstRetained() || next > sequence + 1) {
+                    snapshot = Files.createTempFile("energy-snapshot", ".col");
+                    try {
+                        save(snapshot);
+                    } catch (IOException | RuntimeException e) {
+                        Files.deleteIfExists(snapshot);
+                        throw e;
+                    }
+                    next = sequence + 1;
+                }
+            }
+            if (snapshot != null) {
+                try {
+                    out.writeByte(ShardProtocol.LOG_SNAPSHOT);
+                    out.writeLong(shippedEpoch);
+                    out.writeLong(next - 1);
+                    out.writeLong(Files.size(snapshot));
+                    Files.copy(snapshot, out);
+                } finally {
+                    Files.deleteIfExists(snapshot);
+                }
+            }
+            List<Change> batch = new ArrayList<>(BATCH_CHANGES);
+            while (true) {
+                long last;
+                synchronized (this) {
+                    if (!closed && epoch == shippedEpoch && next > sequence) {
+                        wait(HEARTBEAT_MILLIS);
+                    }
+                    if (closed || epoch != shippedEpoch || next < firstRetained()) {
+                        return;
+                    }
+                    last = sequence;
+                    for (long s = next; s <= last && batch.size() < BATCH_CHANGES; s++) {
+                        batch.add(tail[(int) (s % tail.length)]);
+                    }
+                }
+                for (Change change : batch) {
+                    out.writeByte(change.type());
+                    out.writeLong(change.sequence());
+                    out.writeLong(change.time());
+                    out.write(change.row());
+                }
+                next += batch.size();
+                batch.clear();
+                out.writeByte(ShardProtocol.LOG_HEARTBEAT);
+                out.writeLong(last);
+                out.writeLong(System.currentTimeMillis());
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the follower went away, it reconnects if it is still running
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                followers.remove(connection);
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // nothing was sent on it yet
+        }
+    }
+
+    /**
+     * One logged change: its sequence number, when the leader made it, and its encoded row.
+     */
+    private record Change(long sequence, long time, byte type, byte[] row) {
+    }
+}
@@ -0,0 +1,252 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
+import com.mycompany.energiawusawlatach2001.model.Model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Applies the change log of a {@link LeaderModel} to the model of a follower worker, in
+ * order and while holding the lock the worker serves requests under, so a query sees
+ * either all or none of a change. A lost connection is retried until the worker shuts
+ * down; the follower then continues after the last change it applied. A change that does
+ * not apply as it did on the leader means the copies diverged, and the follower asks for
+ * a new snapshot.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class LogFollower implements Runnable {
+
+    private static final long RETRY_MILLIS = 100;
+
+    private final Path leader;
+    private final Model model;
+    private final Object lock;
+
+    // replication state, guarded by this
+    private long epoch;
+    private long appliedSequence;
+    private long appliedTime;
+    private long leaderSequence;
+    private SocketChannel channel;
+    private boolean stopped;
+
+    /**
+     * @param leader the socket file of the leader
+     * @param model the model the changes are applied to
+     * @param lock the lock the model is read under
+     */
+    LogFollower(Path leader, Model model, Object lock) {
+        this.leader = leader;
+        this.model = model;
+        this.lock = lock;
+    }
+
+    @Override
+    public void run() {
+        while (!isStopped()) {
+            try (SocketChannel connection = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                connection.connect(UnixDomainSocketAddress.of(leader));
+                if (!connected(connection)) {
+                    return;
+                }
+                follow(connection);
+            } catch (IOException e) {
+                // the leader is not up yet, went away or sent a change that did not apply
+            } finally {
+                connected(null);
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow(SocketChannel connection) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(connection)));
+        synchronized (this) {
+            out.writeLong(epoch);
+            out.writeLong(appliedSequence);
+        }
+        out.flush();
+        while (true) {
+            byte type = in.readByte();
+            switch (type) {
+                case ShardProtocol.LOG_SNAPSHOT -> applySnapshot(in);
+                case ShardProtocol.LOG_HEARTBEAT -> {
+                    long sequence = in.readLong();
+                    in.readLong();
+                    synchronized (this) {
+                        leaderSequence = Math.max(leaderSequence, sequence);
+                    }
+                }
+                case ShardProtocol.LOG_APPEND, ShardProtocol.LOG_REPLACE, ShardProtocol.LOG_DELETE -> {
+                    long sequence = in.readLong();
+                    long time = in.readLong();
+                    EnergyData row = ShardProtocol.readRow(in);
+                    apply(type, sequence, time, row);
+                }
+                default -> throw new IOException("Unknown log entry " + type);
+            }
+        }
+    }
+
+    /**
+     * Replaces the model with the snapshot that follows in the stream.
+     */
+    private void applySnapshot(DataInputStream in) throws IOException {
+        long snapshotEpoch = in.readLong();
+        long sequence = in.readLong();
+        long length = in.readLong();
+        Path file = Files.createTempFile("energy-replica", ".col");
+        try {
+            try (InputStream body = new BoundedInputStream(in, length)) {
+                Files.copy(body, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            synchronized (lock) {
+                model.load(file);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        synchronized (this) {
+            epoch = snapshotEpoch;
+            appliedSequence = sequence;
+            appliedTime = System.currentTimeMillis();
+            leaderSequence = Math.max(leaderSequence, sequence);
+        }
+    }
+
+    private void apply(byte type, long sequence, long time, EnergyData row) throws IOException {
+        synchronized (this) {
+            if (sequence != appliedSequence + 1) {
+                throw new IOException("Expected change " + (appliedSequence + 1) + " but got " + sequence);
+            }
+        }
+        boolean applied;
+        synchronized (lock) {
+            try {
+                applied = switch (type) {
+                    case ShardProtocol.LOG_APPEND -> {
+                        model.addEnergyData(row);
+                        yield true;
+                    }
+                    case ShardProtocol.LOG_REPLACE -> model.upsertEnergyData(row);
+                    default -> model.deleteEnergyData(row);
+                };
+            } catch (InvalidEnergyDataException | RuntimeException e) {
+                applied = false;
+            }
+        }
+        synchronized (this) {
+            if (!applied) {
+                epoch = 0;
+                throw new IOException("Change " + sequence + " did not apply, taking a new snapshot");
+            }
+            appliedSequence = sequence;
+            appliedTime = time;
+            leaderSequence = Math.max(leaderSequence, sequence);
+        }
+    }
+
+    /**
+     * Records the current connection, or that there is none.
+     *
+     * @return {@code false} if the follower was stopped meanwhile
+     */
+    private synchronized boolean connected(SocketChannel connection) {
+        channel = connection;
+        return !stopped;
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return how far the model is behind the leader
+     */
+    synchronized ReplicationStatus status() {
+        long delay = appliedSequence >= leaderSequence ? 0 : Math.max(0, System.currentTimeMillis() - appliedTime);
+        return new ReplicationStatus(appliedSequence, leaderSequence, delay, channel != null);
+    }
+
+    /**
+     * Disconnects from the leader for good.
+     */
+    void stop() {
+        SocketChannel connection;
+        synchronized (this) {
+            stopped = true;
+            connection = channel;
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // the replication thread sees the closed channel and ends
+            }
+        }
+    }
+
+    /**
+     * The next bytes of a stream up to a length, leaving the stream open.
+     */
+    private static final class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Snapshot ended early");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read < 0) {
+                throw new IOException("Snapshot ended early");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // the stream goes on with the changes after the snapshot
+        }
+    }
+}
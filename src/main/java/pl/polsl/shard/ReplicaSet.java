@@ -0,0 +1,231 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.Model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-only followers of a {@link LeaderModel}, each a {@link ShardWorker} process on this
+ * host with a full copy of the rows. Queries go to the followers in turn, so concurrent
+ * callers spread the query load over the processes, while writes go to the leader alone.
+ * A follower answers from the changes it has applied so far; a caller that has to see its
+ * own write waits for the sequence number the leader reported after it with
+ * {@link #awaitSequence(long, long)}.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class ReplicaSet implements AutoCloseable {
+
+    private static final long POLL_MILLIS = 10;
+
+    private final Path leader;
+    private final Path directory;
+    private final List<ShardClient> followers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    private ReplicaSet(Path leader, Path directory) {
+        this.leader = leader;
+        this.directory = directory;
+    }
+
+    /**
+     * Starts follower processes of a leader on this host, with their sockets in a directory.
+     * They catch up in the background; the followers are shut down when the set is closed.
+     *
+     * @param leader the socket file of the leader, see {@link LeaderModel#getSocket()}
+     * @param followers the number of followers
+     * @param directory the directory for the socket files, which should be short
+     * @return the followers
+     * @throws IOException if a follower cannot be started
+     */
+    public static ReplicaSet launch(Path leader, int followers, Path directory) throws IOException {
+        if (followers < 1) {
+            throw new IllegalArgumentException("At least one follower is needed");
+        }
+        ReplicaSet replicas = new ReplicaSet(leader, directory);
+        List<Process> processes = new ArrayList<>();
+        try {
+            // the JVMs start in parallel, then each is waited for
+            for (int follower = 0; follower < followers; follower++) {
+                processes.add(ShardClient.start(replicas.socket(follower), leader));
+            }
+            for (int follower = 0; follower < followers; follower++) {
+                replicas.followers.add(ShardClient.await(processes.get(follower), replicas.socket(follower)));
+            }
+            return replicas;
+        } catch (IOException e) {
+            processes.forEach(Process::destroyForcibly);
+            replicas.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts one more follower. It takes a snapshot of the leader, then follows its log.
+     *
+     * @return the index of the new follower
+     * @throws IOException if the follower cannot be started
+     */
+    public synchronized int launchFollower() throws IOException {
+        Path socket = socket(followers.size());
+        followers.add(ShardClient.await(ShardClient.start(socket, leader), socket));
+        return followers.size() - 1;
+    }
+
+    private Path socket(int follower) {
+        return directory.resolve("replica-" + follower + ".sock");
+    }
+
+    /**
+     * @return the number of followers
+     */
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    /**
+     * @return how far each follower is behind the leader, in follower order
+     */
+    public List<ReplicationStatus> getReplicationStatus() {
+        List<ReplicationStatus> statuses = new ArrayList<>();
+        try {
+            for (ShardClient follower : followers) {
+                statuses.add(follower.replicationStatus());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return statuses;
+    }
+
+    /**
+     * Waits until every follower has applied the changes up to a sequence number.
+     *
+     * @param sequence the sequence number, see {@link LeaderModel#getLastSequence()}
+     * @param timeoutMillis how long to wait at most
+     * @return {@code true} if every follower got there in time
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (true) {
+            boolean caughtUp = true;
+            for (ReplicationStatus status : getReplicationStatus()) {
+                caughtUp &= status.appliedSequence() >= sequence;
+            }
+            if (caughtUp) {
+                return true;
+            }
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    /**
+     * @return the number of energy data entries on the next follower
+     */
+    public int size() {
+        return query(ShardClient::size);
+    }
+
+    /**
+     * @return the minimum amount per state on the next follower
+     * @see Model#calculateMinEnergy()
+     */
+    public Map<String, Double> calculateMinEnergy() {
+        return query(ShardClient::minEnergy);
+    }
+
+    /**
+     * @return the maximum amount per state on the next follower
+     * @see Model#calculateMaxEnergy()
+     */
+    public Map<String, Double> calculateMaxEnergy() {
+        return query(ShardClient::maxEnergy);
+    }
+
+    /**
+     * @param month the month (1-12)
+     * @return the total energy per state in that month on the next follower
+     * @see Model#getEnergyByStateForMonth(int)
+     */
+    public Map<String, Double> getEnergyByStateForMonth(int month) {
+        return query(follower -> follower.energyByMonth(month));
+    }
+
+    /**
+     * @param state the state code
+     * @param source the energy source, or {@code null} for all sources
+     * @param from the first month of the range
+     * @param to the last month of the range
+     * @return the total energy of the state in the range on the next follower
+     * @see Model#getEnergyInRange(String, EnergySource, YearMonth, YearMonth)
+     */
+    public double getEnergyInRange(String state, EnergySource source, YearMonth from, YearMonth to) {
+        return query(follower -> follower.energyInRange(state, source, from, to));
+    }
+
+    /**
+     * @param from the first month of the range
+     * @param to the last month of the range
+     * @return the total energy per state in the range on the next follower
+     * @see Model#getEnergyByStateInRange(YearMonth, YearMonth)
+     */
+    public Map<String, Double> getEnergyByStateInRange(YearMonth from, YearMonth to) {
+        return query(follower -> follower.energyByStateInRange(from, to));
+    }
+
+    /**
+     * Shuts down the followers.
+     */
+    @Override
+    public synchronized void close() {
+        IOException failure = null;
+        for (ShardClient follower : followers) {
+            try {
+                follower.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        followers.clear();
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    /**
+     * A request to one follower.
+     */
+    private interface FollowerCall<T> {
+        T call(ShardClient follower) throws IOException;
+    }
+
+    /**
+     * Sends a request to the follower whose turn it is.
+     */
+    private <T> T query(FollowerCall<T> call) {
+        List<ShardClient> current = followers;
+        if (current.isEmpty()) {
+            throw new IllegalStateException("No follower is running");
+        }
+        ShardClient follower = current.get(Math.floorMod(next.getAndIncrement(), current.size()));
+        try {
+            return call.call(follower);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+/**
+ * How far a follower worker is behind its {@link LeaderModel}. Sequence numbers count the
+ * changes of the leader; the rows the leader held when it started are at sequence 0.
+ *
+ * @param appliedSequence the sequence number of the last change the follower applied
+ * @param leaderSequence the last sequence number of the leader the follower has heard of
+ * @param delayMillis how long ago the leader made the last change the follower applied,
+ *                    or 0 if the follower has applied every change it has heard of
+ * @param connected whether the follower is connected to the leader
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public record ReplicationStatus(long appliedSequence, long leaderSequence, long delayMillis, boolean connected) {
+
+    /**
+     * @return the number of changes the follower has heard of but not applied
+     */
+    public long lag() {
+        return Math.max(0, leaderSequence - appliedSequence);
+    }
+}
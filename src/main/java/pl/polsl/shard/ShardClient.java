@@ -0,0 +1,291 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The connection of a {@link ShardedModel} or {@link ReplicaSet} to one {@link ShardWorker},
+ * with one method per request. Requests on one client are sent one at a time.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class ShardClient implements Closeable {
+
+    private static final long SHUTDOWN_SECONDS = 10;
+
+    private final Path socket;
+
+    /**
+     * The worker process if this client started it, or {@code null}.
+     */
+    private final Process process;
+
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    private ShardClient(Path socket, Process process) throws IOException {
+        this.socket = socket;
+        this.process = process;
+        channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(socket));
+        in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Connects to a running worker.
+     */
+    static ShardClient connect(Path socket) throws IOException {
+        return new ShardClient(socket, null);
+    }
+
+    /**
+     * Starts a worker process on the class path of this JVM without waiting for it.
+     */
+    static Process start(Path socket) throws IOException {
+        return start(socket, null);
+    }
+
+    /**
+     * Starts a worker process that follows a leader, or a plain worker for a {@code null} leader.
+     */
+    static Process start(Path socket, Path leader) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            command.add("--add-modules");
+            command.add("jdk.incubator.vector");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.add(socket.toString());
+        if (leader != null) {
+            command.add(leader.toString());
+        }
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * Waits until a started worker accepts connections and connects to it. The worker is
+     * shut down when the client is closed.
+     */
+    static ShardClient await(Process process, Path socket) throws IOException {
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(),
+            StandardCharsets.US_ASCII));
+        if (!ShardProtocol.READY.equals(output.readLine())) {
+            process.destroyForcibly();
+            throw new IOException("Shard worker for " + socket + " did not start");
+        }
+        try {
+            return new ShardClient(socket, process);
+        } catch (IOException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+    }
+
+    Path getSocket() {
+        return socket;
+    }
+
+    /**
+     * The first row a worker did not append.
+     *
+     * @param row the index of the row in the request
+     * @param message why the row is invalid
+     */
+    record Rejection(int row, String message) {
+    }
+
+    /**
+     * Appends rows until the first invalid one.
+     *
+     * @return {@code null} if every row was appended, otherwise the invalid row
+     */
+    synchronized Rejection append(List<EnergyData> rows) throws IOException {
+        request(ShardProtocol.APPEND);
+        ShardProtocol.writeRows(out, rows);
+        response();
+        int invalid = in.readInt();
+        return invalid < 0 ? null : new Rejection(invalid, in.readUTF());
+    }
+
+    synchronized int size() throws IOException {
+        request(ShardProtocol.SIZE);
+        response();
+        return in.readInt();
+    }
+
+    synchronized int sourceMask() throws IOException {
+        request(ShardProtocol.SOURCES);
+        response();
+        return in.readInt();
+    }
+
+    synchronized double[] producerTotals() throws IOException {
+        request(ShardProtocol.PRODUCER_TOTALS);
+        response();
+        return ShardProtocol.readDoubles(in);
+    }
+
+    synchronized long[] sourceCounts() throws IOException {
+        request(ShardProtocol.SOURCE_COUNTS);
+        response();
+        return ShardProtocol.readLongs(in);
+    }
+
+    synchronized Map<String, Double> minEnergy() throws IOException {
+        request(ShardProtocol.MIN_ENERGY);
+        response();
+        return ShardProtocol.readTotals(in);
+    }
+
+    synchronized Map<String, Double> maxEnergy() throws IOException {
+        request(ShardProtocol.MAX_ENERGY);
+        response();
+        return ShardProtocol.readTotals(in);
+    }
+
+    synchronized Map<String, Double> energyByMonth(int month) throws IOException {
+        request(ShardProtocol.ENERGY_BY_MONTH);
+        out.writeInt(month);
+        response();
+        return ShardProtocol.readTotals(in);
+    }
+
+    synchronized double energyInRange(String state, EnergySource source, YearMonth from, YearMonth to)
+            throws IOException {
+        request(ShardProtocol.ENERGY_IN_RANGE);
+        out.writeUTF(state);
+        out.writeByte(source == null ? -1 : source.ordinal());
+        ShardProtocol.writeYearMonth(out, from);
+        ShardProtocol.writeYearMonth(out, to);
+        response();
+        return in.readDouble();
+    }
+
+    synchronized Map<String, Double> energyByStateInRange(YearMonth from, YearMonth to) throws IOException {
+        request(ShardProtocol.ENERGY_BY_STATE_IN_RANGE);
+        ShardProtocol.writeYearMonth(out, from);
+        ShardProtocol.writeYearMonth(out, to);
+        response();
+        return ShardProtocol.readTotals(in);
+    }
+
+    /**
+     * @return the states with at least one row on the shard
+     */
+    synchronized Set<String> states() throws IOException {
+        request(ShardProtocol.STATES);
+        response();
+        return ShardProtocol.readStates(in);
+    }
+
+    /**
+     * A batch of rows exported from a worker.
+     *
+     * @param rows the rows
+     * @param next the position to continue from, or -1 if there are no more rows
+     */
+    record Export(List<EnergyData> rows, int next) {
+    }
+
+    /**
+     * Exports at most {@code limit} rows of some states, starting at a position.
+     */
+    synchronized Export exportStates(Set<String> states, int from, int limit) throws IOException {
+        request(ShardProtocol.EXPORT_STATES);
+        ShardProtocol.writeStates(out, states);
+        out.writeInt(from);
+        out.writeInt(limit);
+        response();
+        List<EnergyData> rows = ShardProtocol.readRows(in);
+        return new Export(rows, in.readInt());
+    }
+
+    /**
+     * @return the number of rows removed
+     */
+    synchronized int dropStates(Set<String> states) throws IOException {
+        request(ShardProtocol.DROP_STATES);
+        ShardProtocol.writeStates(out, states);
+        response();
+        return in.readInt();
+    }
+
+    synchronized ReplicationStatus replicationStatus() throws IOException {
+        request(ShardProtocol.REPLICATION_STATUS);
+        response();
+        return new ReplicationStatus(in.readLong(), in.readLong(), in.readLong(), in.readBoolean());
+    }
+
+    private void request(byte request) throws IOException {
+        out.writeByte(request);
+    }
+
+    /**
+     * Sends the request and reads the status of the response.
+     *
+     * @throws IllegalArgumentException if the worker rejected an argument
+     * @throws IOException if the worker failed
+     */
+    private void response() throws IOException {
+        out.flush();
+        byte status = in.readByte();
+        if (status == ShardProtocol.INVALID_ARGUMENT) {
+            throw new IllegalArgumentException(in.readUTF());
+        }
+        if (status != ShardProtocol.OK) {
+            throw new IOException("Shard " + socket + " failed: " + in.readUTF());
+        }
+    }
+
+    /**
+     * Closes the connection and shuts down the worker if this client started it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (process != null && process.isAlive()) {
+                request(ShardProtocol.SHUTDOWN);
+                response();
+            }
+        } finally {
+            channel.close();
+            if (process != null) {
+                try {
+                    if (!process.waitFor(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
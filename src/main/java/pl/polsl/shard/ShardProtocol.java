@@ -0,0 +1,182 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The binary protocol between {@link ShardedModel} and its {@link ShardWorker}s.
+ * A request is one opcode byte followed by its arguments, a response is one status
+ * byte followed by the result for {@link #OK} or by a UTF message otherwise. A row takes
+ * 23 bytes plus its state code and county, with the source and producer as ordinal bytes
+ * and the county as a presence flag followed by its name.
+ * <p>
+ * A follower worker reads the change log of a {@link LeaderModel} over another socket.
+ * It sends the epoch and sequence number of the last change it applied; the leader answers
+ * with a {@link #LOG_SNAPSHOT} if it cannot continue from there, then streams
+ * {@link #LOG_APPEND}, {@link #LOG_REPLACE} and {@link #LOG_DELETE} entries, each with its
+ * sequence number, the leader time in milliseconds and one row, and a {@link #LOG_HEARTBEAT}
+ * with its last sequence number and time after every batch and while it is idle.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class ShardProtocol {
+
+    /**
+     * Printed by a worker on its standard output once it accepts connections.
+     */
+    static final String READY = "READY";
+
+    static final byte APPEND = 1;
+    static final byte SIZE = 2;
+    static final byte SOURCES = 3;
+    static final byte PRODUCER_TOTALS = 4;
+    static final byte SOURCE_COUNTS = 5;
+    static final byte MIN_ENERGY = 6;
+    static final byte MAX_ENERGY = 7;
+    static final byte ENERGY_BY_MONTH = 8;
+    static final byte ENERGY_IN_RANGE = 9;
+    static final byte ENERGY_BY_STATE_IN_RANGE = 10;
+    static final byte STATES = 11;
+    static final byte EXPORT_STATES = 12;
+    static final byte DROP_STATES = 13;
+    static final byte SHUTDOWN = 14;
+    static final byte REPLICATION_STATUS = 15;
+
+    static final byte OK = 0;
+    static final byte INVALID_ARGUMENT = 1;
+    static final byte FAILURE = 2;
+
+    static final byte LOG_SNAPSHOT = 1;
+    static final byte LOG_APPEND = 2;
+    static final byte LOG_REPLACE = 3;
+    static final byte LOG_DELETE = 4;
+    static final byte LOG_HEARTBEAT = 5;
+
+    private static final EnergySource[] ENERGY_SOURCES = EnergySource.values();
+    private static final EnergyProducer[] ENERGY_PRODUCERS = EnergyProducer.values();
+
+    private ShardProtocol() {
+    }
+
+    static void writeRows(DataOutput out, List<EnergyData> rows) throws IOException {
+        out.writeInt(rows.size());
+        for (EnergyData row : rows) {
+            writeRow(out, row);
+        }
+    }
+
+    static List<EnergyData> readRows(DataInput in) throws IOException {
+        int count = in.readInt();
+        List<EnergyData> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(readRow(in));
+        }
+        return rows;
+    }
+
+    static void writeRow(DataOutput out, EnergyData row) throws IOException {
+        out.writeInt(row.year());
+        out.writeInt(row.month());
+        out.writeUTF(row.state());
+        out.writeByte(row.source().ordinal());
+        out.writeByte(row.producer().ordinal());
+        out.writeDouble(row.amount());
+        out.writeInt(row.plant());
+        out.writeBoolean(row.county() != null);
+        if (row.county() != null) {
+            out.writeUTF(row.county());
+        }
+    }
+
+    static EnergyData readRow(DataInput in) throws IOException {
+        return new EnergyData(in.readInt(), in.readInt(), in.readUTF(), ENERGY_SOURCES[in.readByte()],
+            ENERGY_PRODUCERS[in.readByte()], in.readDouble(), in.readInt(),
+            in.readBoolean() ? in.readUTF() : null);
+    }
+
+    static void writeTotals(DataOutput out, Map<String, Double> totals) throws IOException {
+        out.writeInt(totals.size());
+        for (Map.Entry<String, Double> entry : totals.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeDouble(entry.getValue());
+        }
+    }
+
+    static Map<String, Double> readTotals(DataInput in) throws IOException {
+        int count = in.readInt();
+        Map<String, Double> totals = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            totals.put(in.readUTF(), in.readDouble());
+        }
+        return totals;
+    }
+
+    static void writeStates(DataOutput out, Collection<String> states) throws IOException {
+        out.writeInt(states.size());
+        for (String state : states) {
+            out.writeUTF(state);
+        }
+    }
+
+    static Set<String> readStates(DataInput in) throws IOException {
+        int count = in.readInt();
+        Set<String> states = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            states.add(in.readUTF());
+        }
+        return states;
+    }
+
+    static void writeDoubles(DataOutput out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    static double[] readDoubles(DataInput in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    static void writeLongs(DataOutput out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    static long[] readLongs(DataInput in) throws IOException {
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    static void writeYearMonth(DataOutput out, YearMonth month) throws IOException {
+        out.writeInt(month.getYear());
+        out.writeByte(month.getMonthValue());
+    }
+
+    static YearMonth readYearMonth(DataInput in) throws IOException {
+        return YearMonth.of(in.readInt(), in.readByte());
+    }
+}
@@ -0,0 +1,58 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of states onto shards. Every shard owns {@link #VIRTUAL_NODES}
+ * points on a ring of 32-bit hashes and a state belongs to the shard of the first point
+ * at or after its hash. Adding a shard therefore only moves the states that now hash
+ * closest to one of its points, about {@code 1 / shards} of them, all onto the new shard.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class ShardRing {
+
+    static final int VIRTUAL_NODES = 64;
+
+    private final TreeMap<Integer, Integer> points = new TreeMap<>();
+    private int shards;
+
+    /**
+     * Adds the points of the next shard.
+     *
+     * @return the index of the new shard
+     */
+    int addShard() {
+        int shard = shards++;
+        for (int node = 0; node < VIRTUAL_NODES; node++) {
+            points.putIfAbsent(mix(shard * VIRTUAL_NODES + node + 0x9E3779B9), shard);
+        }
+        return shard;
+    }
+
+    int size() {
+        return shards;
+    }
+
+    /**
+     * @return the index of the shard holding a state
+     */
+    int shardOf(String state) {
+        Map.Entry<Integer, Integer> point = points.ceilingEntry(mix(state.hashCode()));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    /**
+     * The MurmurHash3 finalizer, which spreads similar inputs such as two-letter codes over the ring.
+     */
+    static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
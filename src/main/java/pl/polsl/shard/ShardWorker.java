@@ -0,0 +1,291 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+import com.mycompany.energiawusawlatach2001.model.ColumnStore;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
+import com.mycompany.energiawusawlatach2001.model.Model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A shard process: one {@link Model} on a heap {@link ColumnStore}, answering the partial
+ * aggregates of {@link ShardedModel} over a Unix domain socket. Requests of all
+ * connections are served one at a time.
+ * <p>
+ * Started with the socket of a {@link LeaderModel}, the worker is a read-only follower
+ * for a {@link ReplicaSet}: it applies the change log of the leader to its model and
+ * refuses requests that would write to it.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class ShardWorker {
+
+    private final ServerSocketChannel server;
+    private Model model = new Model(new ColumnStore());
+
+    /**
+     * The replication of the leader, or {@code null} unless this worker is a follower.
+     */
+    private LogFollower follower;
+
+    private ShardWorker(ServerSocketChannel server) {
+        this.server = server;
+    }
+
+    /**
+     * Starts a worker listening on a socket file, which is replaced if it exists.
+     * Prints {@code READY} on standard output once it accepts connections and runs
+     * until a coordinator shuts it down. With a second path the worker follows the leader
+     * listening there, connecting and reconnecting to it in the background.
+     *
+     * @param args the path of the socket file, optionally followed by that of the leader
+     * @throws IOException if the socket cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: ShardWorker <socket file> [leader socket file]");
+            System.exit(2);
+        }
+        Path socket = Path.of(args[0]);
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            ShardWorker worker = new ShardWorker(server);
+            if (args.length == 2) {
+                worker.follow(Path.of(args[1]));
+            }
+            System.out.println(ShardProtocol.READY);
+            System.out.flush();
+            worker.serve();
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    private void follow(Path leader) {
+        follower = new LogFollower(leader, model, this);
+        Thread thread = new Thread(follower, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void serve() throws IOException {
+        while (server.isOpen()) {
+            SocketChannel connection;
+            try {
+                connection = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+            Thread thread = new Thread(() -> handle(connection), "shard-connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void handle(SocketChannel connection) {
+        try (connection;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(connection)));
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(connection)))) {
+            while (true) {
+                byte request;
+                try {
+                    request = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                synchronized (this) {
+                    respond(request, in, out);
+                }
+                out.flush();
+                if (request == ShardProtocol.SHUTDOWN) {
+                    server.close();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // the coordinator went away, it reconnects if it needs to
+        }
+    }
+
+    /**
+     * Reads the arguments of a request, runs it and writes the response.
+     */
+    private void respond(byte request, DataInputStream in, DataOutputStream out) throws IOException {
+        try {
+            switch (request) {
+                case ShardProtocol.APPEND -> {
+                    List<EnergyData> rows = ShardProtocol.readRows(in);
+                    requireWritable();
+                    int invalid = -1;
+                    String message = null;
+                    for (int i = 0; i < rows.size() && invalid < 0; i++) {
+                        try {
+                            model.addEnergyData(rows.get(i));
+                        } catch (InvalidEnergyDataException e) {
+                            invalid = i;
+                            message = e.getMessage();
+                        }
+                    }
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeInt(invalid);
+                    if (invalid >= 0) {
+                        out.writeUTF(message);
+                    }
+                }
+                case ShardProtocol.SIZE -> {
+                    int size = model.getEnergyDataList().size();
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeInt(size);
+                }
+                case ShardProtocol.SOURCES -> {
+                    int mask = 0;
+                    for (EnergySource source : model.getEnergySources()) {
+                        mask |= 1 << source.ordinal();
+                    }
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeInt(mask);
+                }
+                case ShardProtocol.PRODUCER_TOTALS -> {
+                    double[] totals = new double[EnergyProducer.values().length];
+                    for (Map.Entry<EnergyProducer, Double> entry : model.sortProducersByTotalEnergy()) {
+                        totals[entry.getKey().ordinal()] = entry.getValue();
+                    }
+                    out.writeByte(ShardProtocol.OK);
+                    ShardProtocol.writeDoubles(out, totals);
+                }
+                case ShardProtocol.SOURCE_COUNTS -> {
+                    long[] counts = model.countEntriesBySource();
+                    out.writeByte(ShardProtocol.OK);
+                    ShardProtocol.writeLongs(out, counts);
+                }
+                case ShardProtocol.MIN_ENERGY -> writeTotals(out, model.calculateMinEnergy());
+                case ShardProtocol.MAX_ENERGY -> writeTotals(out, model.calculateMaxEnergy());
+                case ShardProtocol.ENERGY_BY_MONTH -> writeTotals(out, model.getEnergyByStateForMonth(in.readInt()));
+                case ShardProtocol.ENERGY_IN_RANGE -> {
+                    String state = in.readUTF();
+                    int source = in.readByte();
+                    YearMonth from = ShardProtocol.readYearMonth(in);
+                    YearMonth to = ShardProtocol.readYearMonth(in);
+                    double total = model.getEnergyInRange(state, source < 0 ? null : EnergySource.values()[source],
+                        from, to);
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeDouble(total);
+                }
+                case ShardProtocol.ENERGY_BY_STATE_IN_RANGE -> {
+                    YearMonth from = ShardProtocol.readYearMonth(in);
+                    YearMonth to = ShardProtocol.readYearMonth(in);
+                    writeTotals(out, model.getEnergyByStateInRange(from, to));
+                }
+                case ShardProtocol.STATES -> {
+                    Set<String> states = model.calculateMinEnergy().keySet();
+                    out.writeByte(ShardProtocol.OK);
+                    ShardProtocol.writeStates(out, states);
+                }
+                case ShardProtocol.EXPORT_STATES -> {
+                    Set<String> states = ShardProtocol.readStates(in);
+                    int position = in.readInt();
+                    int limit = in.readInt();
+                    List<EnergyData> all = model.getEnergyDataList();
+                    List<EnergyData> rows = new ArrayList<>();
+                    while (position < all.size() && rows.size() < limit) {
+                        EnergyData row = all.get(position++);
+                        if (states.contains(row.state())) {
+                            rows.add(row);
+                        }
+                    }
+                    out.writeByte(ShardProtocol.OK);
+                    ShardProtocol.writeRows(out, rows);
+                    out.writeInt(position < all.size() ? position : -1);
+                }
+                case ShardProtocol.DROP_STATES -> {
+                    Set<String> states = ShardProtocol.readStates(in);
+                    requireWritable();
+                    int dropped = dropStates(states);
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeInt(dropped);
+                }
+                case ShardProtocol.REPLICATION_STATUS -> {
+                    if (follower == null) {
+                        throw new IllegalStateException("Worker is not a follower");
+                    }
+                    ReplicationStatus status = follower.status();
+                    out.writeByte(ShardProtocol.OK);
+                    out.writeLong(status.appliedSequence());
+                    out.writeLong(status.leaderSequence());
+                    out.writeLong(status.delayMillis());
+                    out.writeBoolean(status.connected());
+                }
+                case ShardProtocol.SHUTDOWN -> {
+                    if (follower != null) {
+                        follower.stop();
+                    }
+                    model.close();
+                    out.writeByte(ShardProtocol.OK);
+                }
+                default -> throw new IOException("Unknown shard request " + request);
+            }
+        } catch (IllegalArgumentException e) {
+            out.writeByte(ShardProtocol.INVALID_ARGUMENT);
+            out.writeUTF(String.valueOf(e.getMessage()));
+        } catch (RuntimeException e) {
+            out.writeByte(ShardProtocol.FAILURE);
+            out.writeUTF(e.toString());
+        }
+    }
+
+    /**
+     * Refuses a write to a follower, whose rows only change by the log of its leader.
+     */
+    private void requireWritable() {
+        if (follower != null) {
+            throw new IllegalStateException("Follower workers are read-only");
+        }
+    }
+
+    private static void writeTotals(DataOutputStream out, Map<String, Double> totals) throws IOException {
+        out.writeByte(ShardProtocol.OK);
+        ShardProtocol.writeTotals(out, totals);
+    }
+
+    /**
+     * Removes every row of some states by copying the other rows into a new store,
+     * which is cheaper than deleting row by row when a rebalance moves whole states.
+     */
+    private int dropStates(Set<String> states) {
+        ColumnStore kept = new ColumnStore();
+        int dropped = 0;
+        for (EnergyData row : model.getEnergyDataList()) {
+            if (states.contains(row.state())) {
+                dropped++;
+            } else {
+                kept.append(row);
+            }
+        }
+        model.close();
+        model = new Model(kept);
+        return dropped;
+    }
+}
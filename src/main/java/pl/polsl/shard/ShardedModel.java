@@ -0,0 +1,452 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.RejectReason;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BinaryOperator;
+
+/**
+ * Coordinator of a sharded deployment: energy data is partitioned by state over
+ * {@link ShardWorker} processes on the same host, each holding its rows in its own
+ * {@link Model} and heap. A write goes to the shard of its state; a query is sent to
+ * every shard at once and their partial aggregates are merged here, so each answer
+ * matches that of a single {@code Model} over all rows, up to the order in which
+ * floating point sums are added. States are placed by consistent hashing, so a shard
+ * added later takes over about its share of the states and nothing else moves.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class ShardedModel implements AutoCloseable {
+
+    /**
+     * Rows a rebalance moves per request, which bounds the rows held here at once.
+     */
+    static final int MOVE_BATCH_ROWS = 1 << 16;
+
+    private final List<ShardClient> shards = new ArrayList<>();
+    private final ShardRing ring = new ShardRing();
+
+    /**
+     * Directory of the sockets of started workers, or {@code null} if only connected.
+     */
+    private final Path directory;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "shard-scatter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Rows moved per request, {@link #MOVE_BATCH_ROWS} unless lowered by a test.
+     */
+    int moveBatchRows = MOVE_BATCH_ROWS;
+
+    private ShardedModel(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Starts empty worker processes on this host, with their sockets in a directory.
+     * The workers are shut down when the model is closed.
+     *
+     * @param workers the number of workers
+     * @param directory the directory for the socket files, which should be short
+     * @return the coordinator of the workers
+     * @throws IOException if a worker cannot be started
+     */
+    public static ShardedModel launch(int workers, Path directory) throws IOException {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one shard worker is needed");
+        }
+        ShardedModel model = new ShardedModel(directory);
+        List<Process> processes = new ArrayList<>();
+        try {
+            // the JVMs start in parallel, then each is waited for
+            for (int shard = 0; shard < workers; shard++) {
+                processes.add(ShardClient.start(model.socket(shard)));
+            }
+            for (int shard = 0; shard < workers; shard++) {
+                model.shards.add(ShardClient.await(processes.get(shard), model.socket(shard)));
+                model.ring.addShard();
+            }
+            return model;
+        } catch (IOException e) {
+            processes.forEach(Process::destroyForcibly);
+            model.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Connects to running, empty workers. Their processes are left running when the model is closed.
+     *
+     * @param sockets the socket files of the workers
+     * @return the coordinator of the workers
+     * @throws IOException if a worker cannot be reached
+     */
+    public static ShardedModel connect(List<Path> sockets) throws IOException {
+        if (sockets.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard worker is needed");
+        }
+        ShardedModel model = new ShardedModel(null);
+        try {
+            for (Path socket : sockets) {
+                model.shards.add(ShardClient.connect(socket));
+                model.ring.addShard();
+            }
+            return model;
+        } catch (IOException e) {
+            model.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts one more worker and moves the states that now belong to it.
+     *
+     * @return the number of rows moved to the new shard
+     * @throws IOException if the worker cannot be started or rows cannot be moved
+     * @throws IllegalStateException if this model was connected to running workers
+     */
+    public synchronized int launchShard() throws IOException {
+        if (directory == null) {
+            throw new IllegalStateException("Only a launched sharded model can start workers");
+        }
+        Path socket = socket(shards.size());
+        return addShard(ShardClient.await(ShardClient.start(socket), socket));
+    }
+
+    /**
+     * Connects one more running, empty worker and moves the states that now belong to it.
+     *
+     * @param socket the socket file of the worker
+     * @return the number of rows moved to the new shard
+     * @throws IOException if the worker cannot be reached or rows cannot be moved
+     */
+    public synchronized int addShard(Path socket) throws IOException {
+        return addShard(ShardClient.connect(socket));
+    }
+
+    /**
+     * Rebalances onto a new shard: every old shard copies the rows of its states that the
+     * ring now assigns elsewhere to their new shard, then drops them. A row is on two
+     * shards between the copy and the drop, never on none. Rows are passed on in batches
+     * of {@link #moveBatchRows}, so moving a large shard does not hold all its rows here.
+     */
+    private int addShard(ShardClient shard) throws IOException {
+        shards.add(shard);
+        ring.addShard();
+        int moved = 0;
+        for (int from = 0; from < shards.size() - 1; from++) {
+            ShardClient source = shards.get(from);
+            Set<String> moving = new HashSet<>();
+            for (String state : source.states()) {
+                if (ring.shardOf(state) != from) {
+                    moving.add(state);
+                }
+            }
+            if (moving.isEmpty()) {
+                continue;
+            }
+            for (int position = 0; position >= 0; ) {
+                ShardClient.Export export = source.exportStates(moving, position, moveBatchRows);
+                for (Map.Entry<Integer, List<EnergyData>> target : partition(export.rows()).entrySet()) {
+                    if (shards.get(target.getKey()).append(target.getValue()) != null) {
+                        throw new IOException("Shard " + target.getKey() + " rejected rows moved from shard " + from);
+                    }
+                }
+                moved += export.rows().size();
+                position = export.next();
+            }
+            source.dropStates(moving);
+        }
+        return moved;
+    }
+
+    private Path socket(int shard) {
+        return directory.resolve("shard-" + shard + ".sock");
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public synchronized int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * @return the number of energy data entries on every shard
+     */
+    public synchronized int[] getShardSizes() {
+        List<Integer> sizes = scatter(ShardClient::size);
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return the number of energy data entries on all shards
+     */
+    public int size() {
+        int size = 0;
+        for (int shardSize : getShardSizes()) {
+            size += shardSize;
+        }
+        return size;
+    }
+
+    /**
+     * Adds an entry to the shard of its state.
+     *
+     * @param data the entry to add
+     * @throws InvalidEnergyDataException if the entry is invalid
+     * @see Model#addEnergyData(EnergyData)
+     */
+    public void addEnergyData(EnergyData data) throws InvalidEnergyDataException {
+        addAllEnergyData(List.of(data));
+    }
+
+    /**
+     * Adds entries in one request per shard. The whole batch is checked against the rules
+     * of {@link Model#addEnergyData(EnergyData)} first, so an invalid entry leaves every
+     * shard as it was.
+     *
+     * @param data the entries to add
+     * @throws InvalidEnergyDataException if an entry is invalid, naming the first one
+     */
+    public synchronized void addAllEnergyData(Collection<EnergyData> data) throws InvalidEnergyDataException {
+        List<EnergyData> rows = new ArrayList<>(data.size());
+        for (EnergyData row : data) {
+            if (row == null) {
+                throw new InvalidEnergyDataException("Energy data cannot be null");
+            }
+            RejectReason reason = RejectReason.of(row);
+            if (reason != null) {
+                throw new InvalidEnergyDataException(reason.getMessage() + ": " + row);
+            }
+            rows.add(row);
+        }
+        Map<Integer, List<EnergyData>> parts = partition(rows);
+        List<Integer> targets = new ArrayList<>(parts.keySet());
+        List<Future<ShardClient.Rejection>> futures = new ArrayList<>();
+        for (int shard : targets) {
+            futures.add(executor.submit(() -> shards.get(shard).append(parts.get(shard))));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            ShardClient.Rejection rejection = gather(futures.get(i));
+            if (rejection != null) {
+                EnergyData row = parts.get(targets.get(i)).get(rejection.row());
+                throw new InvalidEnergyDataException(rejection.message() + ": " + row);
+            }
+        }
+    }
+
+    /**
+     * @return the energy sources of all shards
+     * @see Model#getEnergySources()
+     */
+    public synchronized Set<EnergySource> getEnergySources() {
+        int mask = 0;
+        for (int shardMask : scatter(ShardClient::sourceMask)) {
+            mask |= shardMask;
+        }
+        Set<EnergySource> sources = EnumSet.noneOf(EnergySource.class);
+        for (EnergySource source : EnergySource.values()) {
+            if ((mask & (1 << source.ordinal())) != 0) {
+                sources.add(source);
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * @return producers sorted by their total energy over all shards, highest first
+     * @see Model#sortProducersByTotalEnergy()
+     */
+    public synchronized List<Map.Entry<EnergyProducer, Double>> sortProducersByTotalEnergy() {
+        double[] totals = new double[EnergyProducer.values().length];
+        for (double[] shardTotals : scatter(ShardClient::producerTotals)) {
+            for (int producer = 0; producer < totals.length; producer++) {
+                totals[producer] += shardTotals[producer];
+            }
+        }
+        List<Map.Entry<EnergyProducer, Double>> result = new ArrayList<>();
+        for (EnergyProducer producer : EnergyProducer.values()) {
+            if (totals[producer.ordinal()] > 0) {
+                result.add(Map.entry(producer, totals[producer.ordinal()]));
+            }
+        }
+        result.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
+        return result;
+    }
+
+    /**
+     * @return the minimum amount per state
+     * @see Model#calculateMinEnergy()
+     */
+    public synchronized Map<String, Double> calculateMinEnergy() {
+        return merge(scatter(ShardClient::minEnergy), Math::min);
+    }
+
+    /**
+     * @return the maximum amount per state
+     * @see Model#calculateMaxEnergy()
+     */
+    public synchronized Map<String, Double> calculateMaxEnergy() {
+        return merge(scatter(ShardClient::maxEnergy), Math::max);
+    }
+
+    /**
+     * @return the source with the most entries over all shards, or {@code null} if there are none
+     * @see Model#getMostUsedEnergySource()
+     */
+    public synchronized EnergySource getMostUsedEnergySource() {
+        long[] counts = new long[EnergySource.values().length];
+        for (long[] shardCounts : scatter(ShardClient::sourceCounts)) {
+            for (int source = 0; source < counts.length; source++) {
+                counts[source] += shardCounts[source];
+            }
+        }
+        EnergySource mostUsed = null;
+        for (EnergySource source : EnergySource.values()) {
+            if (counts[source.ordinal()] > 0
+                    && (mostUsed == null || counts[source.ordinal()] > counts[mostUsed.ordinal()])) {
+                mostUsed = source;
+            }
+        }
+        return mostUsed;
+    }
+
+    /**
+     * @param month the month (1-12)
+     * @return the total energy per state in that month
+     * @see Model#getEnergyByStateForMonth(int)
+     */
+    public synchronized Map<String, Double> getEnergyByStateForMonth(int month) {
+        return merge(scatter(shard -> shard.energyByMonth(month)), Double::sum);
+    }
+
+    /**
+     * Asks only the shard that holds the state.
+     *
+     * @param state the state code
+     * @param source the energy source, or {@code null} for all sources
+     * @param from the first month of the range
+     * @param to the last month of the range
+     * @return the total energy of the state in the range
+     * @see Model#getEnergyInRange(String, EnergySource, YearMonth, YearMonth)
+     */
+    public synchronized double getEnergyInRange(String state, EnergySource source, YearMonth from, YearMonth to) {
+        try {
+            return shards.get(ring.shardOf(state)).energyInRange(state, source, from, to);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param from the first month of the range
+     * @param to the last month of the range
+     * @return the total energy per state in the range
+     * @see Model#getEnergyByStateInRange(YearMonth, YearMonth)
+     */
+    public synchronized Map<String, Double> getEnergyByStateInRange(YearMonth from, YearMonth to) {
+        return merge(scatter(shard -> shard.energyByStateInRange(from, to)), Double::sum);
+    }
+
+    /**
+     * Shuts down the workers this model started and disconnects from all others.
+     */
+    @Override
+    public synchronized void close() {
+        IOException failure = null;
+        for (ShardClient shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        shards.clear();
+        executor.shutdownNow();
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    private Map<Integer, List<EnergyData>> partition(List<EnergyData> rows) {
+        Map<Integer, List<EnergyData>> parts = new HashMap<>();
+        for (EnergyData row : rows) {
+            parts.computeIfAbsent(ring.shardOf(row.state()), shard -> new ArrayList<>()).add(row);
+        }
+        return parts;
+    }
+
+    /**
+     * A request to one shard.
+     */
+    private interface ShardCall<T> {
+        T call(ShardClient shard) throws IOException;
+    }
+
+    /**
+     * Sends a request to every shard in parallel and returns the results in shard order.
+     */
+    private <T> List<T> scatter(ShardCall<T> call) {
+        List<Future<T>> futures = new ArrayList<>();
+        for (ShardClient shard : shards) {
+            futures.add(executor.submit(() -> call.call(shard)));
+        }
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(gather(future));
+        }
+        return results;
+    }
+
+    private static <T> T gather(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a shard", e);
+        }
+    }
+
+    private static Map<String, Double> merge(List<Map<String, Double>> partials, BinaryOperator<Double> combine) {
+        Map<String, Double> result = new HashMap<>();
+        for (Map<String, Double> partial : partials) {
+            partial.forEach((state, value) -> result.merge(state, value, combine));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * The shard package spreads energy data, or copies of it, over worker processes on one host.
+ * It includes:
+ * - ShardedModel, the coordinator that routes rows by state and merges partial aggregates
+ * - ShardWorker, the process holding one Model and answering over a Unix domain socket
+ * - ShardClient, the connection to one worker
+ * - ShardProtocol, the binary requests and responses
+ * - ShardRing, consistent hashing of states onto shards
+ * - LeaderModel, a model that ships its change log to follower workers
+ * - LogFollower, the replication of the leader log inside a follower worker
+ * - ReplicaSet, the read-only followers of a leader, queried in turn
+ * - ReplicationStatus, how far a follower is behind its leader
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+package com.mycompany.energiawusawlatach2001.shard;
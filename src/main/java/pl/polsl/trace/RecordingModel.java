@@ -0,0 +1,428 @@
+package com.mycompany.energiawusawlatach2001.trace;
+
+import com.mycompany.energiawusawlatach2001.model.Anomaly;
+import com.mycompany.energiawusawlatach2001.model.AnomalyPolicy;
+import com.mycompany.energiawusawlatach2001.model.DiffSummary;
+import com.mycompany.energiawusawlatach2001.model.DiffVisitor;
+import com.mycompany.energiawusawlatach2001.model.DimensionTable;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumn;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumns;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyFilter;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.EnergyStore;
+import com.mycompany.energiawusawlatach2001.model.Estimate;
+import com.mycompany.energiawusawlatach2001.model.Forecast;
+import com.mycompany.energiawusawlatach2001.model.GroupVisitor;
+import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.PivotDimension;
+import com.mycompany.energiawusawlatach2001.model.PivotTable;
+import com.mycompany.energiawusawlatach2001.model.RejectionReport;
+import com.mycompany.energiawusawlatach2001.model.TimeSeries;
+import com.mycompany.energiawusawlatach2001.model.WriteMode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link Model} that records every write and query made through it, with its arguments
+ * and timing, to a trace that {@link TraceReplayer} can run again. Calls that throw are
+ * recorded too; calls a traced operation makes internally are not. File operations are not
+ * traced, so a trace is only replayed faithfully if the recorded session did not load or
+ * open files. Bulk loads are recorded with every row of the batch, joins with the
+ * dimension table on its first use and diffs with every row of the earlier version,
+ * which makes their records as large as their input. A {@link #snapshot()} records to the same trace, so queries handed to
+ * a background thread are traced as well.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class RecordingModel extends Model {
+
+    private final TraceWriter trace;
+
+    /**
+     * Whether this model is a snapshot, which leaves the trace open when it is closed.
+     */
+    private final boolean snapshot;
+
+    /**
+     * Traced calls running on the current thread, so that only the outermost one is recorded.
+     */
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * Creates a model preloaded with the sample data of {@link Model#Model()} that records
+     * to a trace file.
+     *
+     * @param traceFile the trace file, created or replaced
+     * @throws IOException if the trace cannot be written
+     */
+    public RecordingModel(Path traceFile) throws IOException {
+        super();
+        trace = new TraceWriter(traceFile, getEnergyDataList());
+        snapshot = false;
+    }
+
+    /**
+     * Creates a model on a store that records to a trace file. The rows already in the
+     * store are written to the trace as its initial rows.
+     *
+     * @param store the store holding the energy data
+     * @param traceFile the trace file, created or replaced
+     * @throws IOException if the trace cannot be written
+     */
+    public RecordingModel(EnergyStore store, Path traceFile) throws IOException {
+        super(store);
+        trace = new TraceWriter(traceFile, getEnergyDataList());
+        snapshot = false;
+    }
+
+    /**
+     * Creates a snapshot of a recording model that records to its trace.
+     */
+    private RecordingModel(RecordingModel origin) {
+        super(origin);
+        trace = origin.trace;
+        snapshot = true;
+    }
+
+    /**
+     * @return the trace this model records to
+     */
+    public TraceWriter getTrace() {
+        return trace;
+    }
+
+    /**
+     * Returns a snapshot whose calls are recorded to the trace of this model, see
+     * {@link Model#snapshot()}. Closing it leaves the trace open.
+     *
+     * @return the snapshot, to be read and closed by one other thread
+     */
+    @Override
+    public RecordingModel snapshot() {
+        return new RecordingModel(this);
+    }
+
+    /**
+     * Closes the trace, then the store; a snapshot only closes its store.
+     *
+     * @throws UncheckedIOException if the trace could not be written
+     */
+    @Override
+    public void close() {
+        if (snapshot) {
+            super.close();
+            return;
+        }
+        try {
+            trace.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            super.close();
+        }
+    }
+
+    private long begin() {
+        depth.get()[0]++;
+        return System.nanoTime();
+    }
+
+    private void end(TraceOperation operation, long start, Object... arguments) {
+        long end = System.nanoTime();
+        if (--depth.get()[0] == 0) {
+            trace.record(operation, start, end, arguments);
+        }
+    }
+
+    @Override
+    public void addEnergyData(EnergyData data) throws InvalidEnergyDataException {
+        long start = begin();
+        try {
+            super.addEnergyData(data);
+        } finally {
+            end(TraceOperation.ADD_ENERGY_DATA, start, data);
+        }
+    }
+
+    @Override
+    public boolean upsertEnergyData(EnergyData data) throws InvalidEnergyDataException {
+        long start = begin();
+        try {
+            return super.upsertEnergyData(data);
+        } finally {
+            end(TraceOperation.UPSERT_ENERGY_DATA, start, data);
+        }
+    }
+
+    @Override
+    public boolean deleteEnergyData(EnergyData data) {
+        long start = begin();
+        try {
+            return super.deleteEnergyData(data);
+        } finally {
+            end(TraceOperation.DELETE_ENERGY_DATA, start, data);
+        }
+    }
+
+    @Override
+    public boolean updateEnergyData(EnergyData oldData, EnergyData newData) throws InvalidEnergyDataException {
+        long start = begin();
+        try {
+            return super.updateEnergyData(oldData, newData);
+        } finally {
+            end(TraceOperation.UPDATE_ENERGY_DATA, start, oldData, newData);
+        }
+    }
+
+    @Override
+    public int addAll(EnergyColumns batch, RejectionReport report) {
+        long start = begin();
+        try {
+            return super.addAll(batch, report);
+        } finally {
+            end(TraceOperation.ADD_ALL, start, batch);
+        }
+    }
+
+    @Override
+    public void setWriteMode(WriteMode writeMode) {
+        long start = begin();
+        try {
+            super.setWriteMode(writeMode);
+        } finally {
+            end(TraceOperation.SET_WRITE_MODE, start, writeMode);
+        }
+    }
+
+    @Override
+    public void setAnomalyPolicy(AnomalyPolicy anomalyPolicy) {
+        long start = begin();
+        try {
+            super.setAnomalyPolicy(anomalyPolicy);
+        } finally {
+            end(TraceOperation.SET_ANOMALY_POLICY, start, anomalyPolicy);
+        }
+    }
+
+    @Override
+    public boolean releaseQuarantined(Anomaly anomaly) {
+        long start = begin();
+        try {
+            return super.releaseQuarantined(anomaly);
+        } finally {
+            end(TraceOperation.RELEASE_QUARANTINED, start, anomaly.data());
+        }
+    }
+
+    @Override
+    public boolean dismissAnomaly(Anomaly anomaly) {
+        long start = begin();
+        try {
+            return super.dismissAnomaly(anomaly);
+        } finally {
+            end(TraceOperation.DISMISS_ANOMALY, start, anomaly.data());
+        }
+    }
+
+    @Override
+    public void clearAnomalies() {
+        long start = begin();
+        try {
+            super.clearAnomalies();
+        } finally {
+            end(TraceOperation.CLEAR_ANOMALIES, start);
+        }
+    }
+
+    @Override
+    public Set<EnergySource> getEnergySources() {
+        long start = begin();
+        try {
+            return super.getEnergySources();
+        } finally {
+            end(TraceOperation.GET_ENERGY_SOURCES, start);
+        }
+    }
+
+    @Override
+    public List<Map.Entry<EnergyProducer, Double>> sortProducersByTotalEnergy() {
+        long start = begin();
+        try {
+            return super.sortProducersByTotalEnergy();
+        } finally {
+            end(TraceOperation.SORT_PRODUCERS_BY_TOTAL_ENERGY, start);
+        }
+    }
+
+    @Override
+    public Map<String, Double> calculateMinEnergy() {
+        long start = begin();
+        try {
+            return super.calculateMinEnergy();
+        } finally {
+            end(TraceOperation.CALCULATE_MIN_ENERGY, start);
+        }
+    }
+
+    @Override
+    public Map<String, Double> calculateMaxEnergy() {
+        long start = begin();
+        try {
+            return super.calculateMaxEnergy();
+        } finally {
+            end(TraceOperation.CALCULATE_MAX_ENERGY, start);
+        }
+    }
+
+    @Override
+    public EnergySource getMostUsedEnergySource() {
+        long start = begin();
+        try {
+            return super.getMostUsedEnergySource();
+        } finally {
+            end(TraceOperation.GET_MOST_USED_ENERGY_SOURCE, start);
+        }
+    }
+
+    @Override
+    public long[] countEntriesBySource() {
+        long start = begin();
+        try {
+            return super.countEntriesBySource();
+        } finally {
+            end(TraceOperation.COUNT_ENTRIES_BY_SOURCE, start);
+        }
+    }
+
+    @Override
+    public Map<String, Double> getEnergyByStateForMonth(int month) {
+        long start = begin();
+        try {
+            return super.getEnergyByStateForMonth(month);
+        } finally {
+            end(TraceOperation.GET_ENERGY_BY_STATE_FOR_MONTH, start, month);
+        }
+    }
+
+    @Override
+    public double getEnergyInRange(String state, EnergySource source, YearMonth from, YearMonth to) {
+        long start = begin();
+        try {
+            return super.getEnergyInRange(state, source, from, to);
+        } finally {
+            end(TraceOperation.GET_ENERGY_IN_RANGE, start, state, source, from, to);
+        }
+    }
+
+    @Override
+    public Map<String, Double> getEnergyByStateInRange(YearMonth from, YearMonth to) {
+        long start = begin();
+        try {
+            return super.getEnergyByStateInRange(from, to);
+        } finally {
+            end(TraceOperation.GET_ENERGY_BY_STATE_IN_RANGE, start, from, to);
+        }
+    }
+
+    @Override
+    public Map<String, Estimate> estimateEnergyByStateForMonth(int month) {
+        long start = begin();
+        try {
+            return super.estimateEnergyByStateForMonth(month);
+        } finally {
+            end(TraceOperation.ESTIMATE_ENERGY_BY_STATE_FOR_MONTH, start, month);
+        }
+    }
+
+    @Override
+    public Map<String, Double> getEnergyPer(DimensionTable table, String per, String groupBy,
+            YearMonth from, YearMonth to) {
+        long start = begin();
+        try {
+            return super.getEnergyPer(table, per, groupBy, from, to);
+        } finally {
+            end(TraceOperation.GET_ENERGY_PER, start, table, per, groupBy, from, to);
+        }
+    }
+
+    @Override
+    public PivotTable pivot(PivotDimension rows, PivotDimension columns) {
+        long start = begin();
+        try {
+            return super.pivot(rows, columns);
+        } finally {
+            end(TraceOperation.PIVOT, start, rows, columns);
+        }
+    }
+
+    @Override
+    public TimeSeries getTimeSeries(PivotDimension series) {
+        long start = begin();
+        try {
+            return super.getTimeSeries(series);
+        } finally {
+            end(TraceOperation.GET_TIME_SERIES, start, series);
+        }
+    }
+
+    @Override
+    public void groupBy(List<EnergyColumn> columns, long memoryBytes, GroupVisitor visitor) throws IOException {
+        long start = begin();
+        try {
+            super.groupBy(columns, memoryBytes, visitor);
+        } finally {
+            end(TraceOperation.GROUP_BY, start, columns, memoryBytes);
+        }
+    }
+
+    @Override
+    public DiffSummary diff(Model previous, long memoryBytes, DiffVisitor visitor) throws IOException {
+        long start = begin();
+        try {
+            return super.diff(previous, memoryBytes, visitor);
+        } finally {
+            end(TraceOperation.DIFF, start, previous, memoryBytes);
+        }
+    }
+
+    @Override
+    public List<Forecast> forecast(int months) {
+        long start = begin();
+        try {
+            return super.forecast(months);
+        } finally {
+            end(TraceOperation.FORECAST, start, months);
+        }
+    }
+
+    @Override
+    public int[] getSortedPositions(EnergyColumn column) {
+        long start = begin();
+        try {
+            return super.getSortedPositions(column);
+        } finally {
+            end(TraceOperation.GET_SORTED_POSITIONS, start, column);
+        }
+    }
+
+    @Override
+    public BitSet filterPositions(EnergyFilter filter) {
+        long start = begin();
+        try {
+            return super.filterPositions(filter);
+        } finally {
+            end(TraceOperation.FILTER_POSITIONS, start, filter);
+        }
+    }
+}
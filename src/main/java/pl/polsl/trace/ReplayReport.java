@@ -0,0 +1,95 @@
+package com.mycompany.energiawusawlatach2001.trace;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Result of {@link TraceReplayer#replay(java.nio.file.Path)}: throughput and latency percentiles per
+ * operation, next to the latencies the trace recorded.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class ReplayReport {
+
+    private final List<OperationStats> operations;
+    private final long elapsedNanos;
+
+    ReplayReport(List<OperationStats> operations, long elapsedNanos) {
+        this.operations = List.copyOf(operations);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * The replayed statistics of one operation. Latencies are in microseconds.
+     *
+     * @param operation the operation
+     * @param count how many times it ran
+     * @param errors how many of the runs threw a validation or argument error
+     * @param perSecond runs per second of the whole replay
+     * @param p50Micros the median latency
+     * @param p90Micros the 90th percentile latency
+     * @param p99Micros the 99th percentile latency
+     * @param maxMicros the largest latency
+     * @param recordedP50Micros the median latency when the trace was recorded
+     * @param recordedP99Micros the 99th percentile latency when the trace was recorded
+     */
+    public record OperationStats(
+        TraceOperation operation,
+        long count,
+        long errors,
+        double perSecond,
+        double p50Micros,
+        double p90Micros,
+        double p99Micros,
+        double maxMicros,
+        double recordedP50Micros,
+        double recordedP99Micros
+    ) {}
+
+    /**
+     * @return the statistics of every operation that ran, in {@link TraceOperation} order
+     */
+    public List<OperationStats> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return the wall time of the replay in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the number of operations replayed
+     */
+    public long getOperationCount() {
+        return operations.stream().mapToLong(OperationStats::count).sum();
+    }
+
+    /**
+     * @return operations replayed per second
+     */
+    public double getThroughput() {
+        return getOperationCount() / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Formats the report as a table with one line per operation.
+     */
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT,
+            "%d operations in %.3f s, %.0f/s%n%-30s %9s %7s %10s %10s %10s %10s %10s %12s %12s%n",
+            getOperationCount(), elapsedNanos / 1e9, getThroughput(), "operation", "count", "errors", "per s",
+            "p50 us", "p90 us", "p99 us", "max us", "rec p50 us", "rec p99 us"));
+        for (OperationStats stats : operations) {
+            table.append(String.format(Locale.ROOT, "%-30s %9d %7d %10.1f %10.1f %10.1f %10.1f %10.1f %12.1f %12.1f%n",
+                stats.operation(), stats.count(), stats.errors(), stats.perSecond(), stats.p50Micros(),
+                stats.p90Micros(), stats.p99Micros(), stats.maxMicros(), stats.recordedP50Micros(),
+                stats.recordedP99Micros()));
+        }
+        return table.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package com.mycompany.energiawusawlatach2001.trace;
+
+import java.util.List;
+
+/**
+ * One recorded operation of a trace.
+ *
+ * @param operation the operation
+ * @param startNanos when it started, in nanoseconds after the trace was opened
+ * @param durationNanos how long it took when it was recorded
+ * @param arguments its arguments in the order of the method parameters, possibly {@code null}
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public record TraceEvent(
+    TraceOperation operation,
+    long startNanos,
+    long durationNanos,
+    List<Object> arguments
+) {}
@@ -0,0 +1,348 @@
+package com.mycompany.energiawusawlatach2001.trace;
+
+import com.mycompany.energiawusawlatach2001.model.AnomalyPolicy;
+import com.mycompany.energiawusawlatach2001.model.ColumnStore;
+import com.mycompany.energiawusawlatach2001.model.DimensionTable;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumn;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumns;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyFilter;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.PivotDimension;
+import com.mycompany.energiawusawlatach2001.model.WriteMode;
+
+import java.io.IOException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link com.mycompany.energiawusawlatach2001.model.Model} operations a trace records,
+ * each with the kinds of its arguments in the order of the method parameters. Visitors
+ * and rejection reports are left out; a replay passes ones that discard what they get. The
+ * ordinal is the opcode in the trace file, so constants are only ever added at the end.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public enum TraceOperation {
+
+    ADD_ENERGY_DATA(false, Argument.ROW),
+    UPSERT_ENERGY_DATA(false, Argument.ROW),
+    DELETE_ENERGY_DATA(false, Argument.ROW),
+    UPDATE_ENERGY_DATA(false, Argument.ROW, Argument.ROW),
+    SET_WRITE_MODE(false, Argument.WRITE_MODE),
+    SET_ANOMALY_POLICY(false, Argument.ANOMALY_POLICY),
+    RELEASE_QUARANTINED(false, Argument.ROW),
+    DISMISS_ANOMALY(false, Argument.ROW),
+    CLEAR_ANOMALIES(false),
+    GET_ENERGY_SOURCES(true),
+    SORT_PRODUCERS_BY_TOTAL_ENERGY(true),
+    CALCULATE_MIN_ENERGY(true),
+    CALCULATE_MAX_ENERGY(true),
+    GET_MOST_USED_ENERGY_SOURCE(true),
+    COUNT_ENTRIES_BY_SOURCE(true),
+    GET_ENERGY_BY_STATE_FOR_MONTH(true, Argument.INT),
+    GET_ENERGY_IN_RANGE(false, Argument.STATE, Argument.SOURCE, Argument.MONTH, Argument.MONTH),
+    GET_ENERGY_BY_STATE_IN_RANGE(false, Argument.MONTH, Argument.MONTH),
+    PIVOT(true, Argument.DIMENSION, Argument.DIMENSION),
+    GET_TIME_SERIES(true, Argument.DIMENSION),
+    FORECAST(false, Argument.INT),
+    GET_SORTED_POSITIONS(false, Argument.COLUMN),
+    FILTER_POSITIONS(true, Argument.FILTER),
+    ADD_ALL(false, Argument.BATCH),
+    ESTIMATE_ENERGY_BY_STATE_FOR_MONTH(false, Argument.INT),
+    GROUP_BY(true, Argument.COLUMNS, Argument.LONG),
+    GET_ENERGY_PER(true, Argument.TABLE, Argument.TEXT, Argument.TEXT, Argument.MONTH, Argument.MONTH),
+    DIFF(true, Argument.MODEL, Argument.LONG);
+
+    private final boolean shared;
+    private final Argument[] arguments;
+
+    TraceOperation(boolean shared, Argument... arguments) {
+        this.shared = shared;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Tells whether the operation only scans the rows, so that several may run at once.
+     * Writes and queries that build or update an index of the model, such as the range
+     * queries, the forecast, the sort orders and the sample of the estimates, have to run alone.
+     *
+     * @return {@code true} if the operation may run concurrently with other shared ones
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    void writeArguments(TraceWriter writer, Object[] values) throws IOException {
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i].write(writer, values[i]);
+        }
+    }
+
+    Object[] readArguments(TraceReader reader) throws IOException {
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            values[i] = arguments[i].read(reader);
+        }
+        return values;
+    }
+
+    /**
+     * Kinds of arguments and their encoding. Every argument may be {@code null}, since a
+     * trace also records calls that were rejected.
+     */
+    enum Argument {
+        ROW {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeRow((EnergyData) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return reader.readRow();
+            }
+        },
+        STATE {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeState((String) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return reader.readState();
+            }
+        },
+        /**
+         * Any other string, such as an attribute name, numbered like the states.
+         */
+        TEXT {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeState((String) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return reader.readState();
+            }
+        },
+        INT {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeSigned((Integer) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return (int) reader.readSigned();
+            }
+        },
+        LONG {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeSigned((Long) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return reader.readSigned();
+            }
+        },
+        MONTH {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                YearMonth month = (YearMonth) value;
+                writer.writeOptional(month == null ? null : month.getYear() * 12L + month.getMonthValue() - 1);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                Long months = reader.readOptional();
+                return months == null ? null
+                    : YearMonth.of((int) Math.floorDiv(months, 12), (int) Math.floorMod(months, 12) + 1);
+            }
+        },
+        SOURCE {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeConstant((EnergySource) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return reader.readConstant(EnergySource.values());
+            }
+        },
+        DIMENSION {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeConstant((PivotDimension) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return reader.readConstant(PivotDimension.values());
+            }
+        },
+        COLUMN {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeConstant((EnergyColumn) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return reader.readConstant(EnergyColumn.values());
+            }
+        },
+        WRITE_MODE {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeConstant((WriteMode) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return reader.readConstant(WriteMode.values());
+            }
+        },
+        ANOMALY_POLICY {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeConstant((AnomalyPolicy) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return reader.readConstant(AnomalyPolicy.values());
+            }
+        },
+        FILTER {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                EnergyFilter filter = value == null ? EnergyFilter.ALL : (EnergyFilter) value;
+                writer.writeState(filter.state());
+                writer.writeConstant(filter.source());
+                writer.writeConstant(filter.producer());
+                writer.writeOptional(filter.year() == null ? null : (long) filter.year());
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                String state = reader.readState();
+                EnergySource source = reader.readConstant(EnergySource.values());
+                EnergyProducer producer = reader.readConstant(EnergyProducer.values());
+                Long year = reader.readOptional();
+                return new EnergyFilter(state, source, producer, year == null ? null : year.intValue());
+            }
+        },
+        /**
+         * A batch of raw rows, with sources and producers as read, so that a replay rejects
+         * the same rows.
+         */
+        BATCH {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                EnergyColumns batch = (EnergyColumns) value;
+                writer.writeUnsigned(batch == null ? 0 : batch.size() + 1L);
+                for (int row = 0; batch != null && row < batch.size(); row++) {
+                    writer.writeSigned(batch.getYear(row));
+                    writer.writeSigned(batch.getMonth(row));
+                    writer.writeState(batch.getState(row));
+                    writer.writeState(batch.getSource(row));
+                    writer.writeState(batch.getProducer(row));
+                    writer.writeDouble(batch.getAmount(row));
+                    writer.writeSigned(batch.getPlant(row));
+                    writer.writeState(batch.getCounty(row));
+                }
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                long rows = reader.readUnsigned();
+                if (rows == 0) {
+                    return null;
+                }
+                EnergyColumns batch = new EnergyColumns();
+                for (long row = 1; row < rows; row++) {
+                    batch.add((int) reader.readSigned(), (int) reader.readSigned(), reader.readState(),
+                        reader.readState(), reader.readState(), reader.readDouble(), (int) reader.readSigned(),
+                        reader.readState());
+                }
+                return batch;
+            }
+        },
+        COLUMNS {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                @SuppressWarnings("unchecked")
+                List<EnergyColumn> columns = (List<EnergyColumn>) value;
+                writer.writeUnsigned(columns == null ? 0 : columns.size() + 1L);
+                for (int i = 0; columns != null && i < columns.size(); i++) {
+                    writer.writeConstant(columns.get(i));
+                }
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                long count = reader.readUnsigned();
+                if (count == 0) {
+                    return null;
+                }
+                List<EnergyColumn> columns = new ArrayList<>();
+                for (long i = 1; i < count; i++) {
+                    columns.add(reader.readConstant(EnergyColumn.values()));
+                }
+                return columns;
+            }
+        },
+        TABLE {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                writer.writeTable((DimensionTable) value);
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                return reader.readTable();
+            }
+        },
+        /**
+         * Another version of the data, written as all its rows and read back as a model on
+         * a heap store, so that a replayed comparison does not count loading it.
+         */
+        MODEL {
+            @Override
+            void write(TraceWriter writer, Object value) throws IOException {
+                List<EnergyData> rows = value == null ? null : ((Model) value).getEnergyDataList();
+                writer.writeUnsigned(rows == null ? 0 : rows.size() + 1L);
+                for (int i = 0; rows != null && i < rows.size(); i++) {
+                    writer.writeRow(rows.get(i));
+                }
+            }
+
+            @Override
+            Object read(TraceReader reader) throws IOException {
+                long rows = reader.readUnsigned();
+                if (rows == 0) {
+                    return null;
+                }
+                ColumnStore store = new ColumnStore();
+                for (long i = 1; i < rows; i++) {
+                    store.append(reader.readRow());
+                }
+                return new Model(store);
+            }
+        };
+
+        abstract void write(TraceWriter writer, Object value) throws IOException;
+
+        abstract Object read(TraceReader reader) throws IOException;
+    }
+}
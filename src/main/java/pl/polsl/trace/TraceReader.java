@@ -0,0 +1,173 @@
+package com.mycompany.energiawusawlatach2001.trace;
+
+import com.mycompany.energiawusawlatach2001.model.DimensionTable;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads a trace written by {@link TraceWriter}, one operation at a time.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class TraceReader implements AutoCloseable {
+
+    private final DataInputStream in;
+    private final List<String> states = new ArrayList<>();
+    private final List<DimensionTable> tables = new ArrayList<>();
+    private final List<EnergyData> initialRows;
+    private final int version;
+    private long previousStart;
+
+    /**
+     * Opens a trace and reads its header.
+     *
+     * @param file the trace file
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public TraceReader(Path file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        try {
+            if (in.readInt() != TraceWriter.MAGIC) {
+                throw new IOException(file + " is not a workload trace");
+            }
+            version = in.readUnsignedByte();
+            if (version < 1 || version > TraceWriter.VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+            int rows = (int) readUnsigned();
+            List<EnergyData> initial = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                initial.add(readRow());
+            }
+            initialRows = Collections.unmodifiableList(initial);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the rows the model held before the first recorded operation
+     */
+    public List<EnergyData> getInitialRows() {
+        return initialRows;
+    }
+
+    /**
+     * Reads the next operation.
+     *
+     * @return the operation, or {@code null} at the end of the trace
+     * @throws IOException if the file cannot be read or is truncated inside a record
+     */
+    public TraceEvent next() throws IOException {
+        int opcode = in.read();
+        if (opcode < 0) {
+            return null;
+        }
+        TraceOperation[] operations = TraceOperation.values();
+        if (opcode >= operations.length) {
+            throw new IOException("Unknown trace operation " + opcode);
+        }
+        TraceOperation operation = operations[opcode];
+        long start = previousStart + readSigned();
+        long duration = readUnsigned();
+        List<Object> arguments = Collections.unmodifiableList(Arrays.asList(operation.readArguments(this)));
+        previousStart = start;
+        return new TraceEvent(operation, start, duration, arguments);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    EnergyData readRow() throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int year = (int) readSigned();
+        int month = (int) readSigned();
+        String state = readState();
+        EnergySource source = readConstant(EnergySource.values());
+        EnergyProducer producer = readConstant(EnergyProducer.values());
+        double amount = in.readDouble();
+        if (version < 2) {
+            return new EnergyData(year, month, state, source, producer, amount);
+        }
+        return new EnergyData(year, month, state, source, producer, amount, (int) readSigned(), readState());
+    }
+
+    String readState() throws IOException {
+        int index = (int) readUnsigned();
+        if (index == 0) {
+            return null;
+        }
+        if (index == states.size() + 1) {
+            states.add(in.readUTF());
+        } else if (index > states.size()) {
+            throw new IOException("Unknown state index " + index + " in trace");
+        }
+        return states.get(index - 1);
+    }
+
+    DimensionTable readTable() throws IOException {
+        int index = (int) readUnsigned();
+        if (index == 0) {
+            return null;
+        }
+        if (index == tables.size() + 1) {
+            byte[] csv = new byte[(int) readUnsigned()];
+            in.readFully(csv);
+            tables.add(DimensionTable.parse(new String(csv, StandardCharsets.UTF_8)));
+        } else if (index > tables.size()) {
+            throw new IOException("Unknown table index " + index + " in trace");
+        }
+        return tables.get(index - 1);
+    }
+
+    double readDouble() throws IOException {
+        return in.readDouble();
+    }
+
+    <E extends Enum<E>> E readConstant(E[] constants) throws IOException {
+        int value = in.readUnsignedByte();
+        if (value > constants.length) {
+            throw new IOException("Unknown constant " + value + " in trace");
+        }
+        return value == 0 ? null : constants[value - 1];
+    }
+
+    Long readOptional() throws IOException {
+        return in.readBoolean() ? readSigned() : null;
+    }
+
+    long readSigned() throws IOException {
+        long value = readUnsigned();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readUnsigned() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in trace");
+    }
+}
@@ -0,0 +1,277 @@
+package com.mycompany.energiawusawlatach2001.trace;
+
+import com.mycompany.energiawusawlatach2001.metrics.LatencyHistogram;
+import com.mycompany.energiawusawlatach2001.model.Anomaly;
+import com.mycompany.energiawusawlatach2001.model.AnomalyPolicy;
+import com.mycompany.energiawusawlatach2001.model.ColumnStore;
+import com.mycompany.energiawusawlatach2001.model.DiffVisitor;
+import com.mycompany.energiawusawlatach2001.model.DimensionTable;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumn;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumns;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyFilter;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.OffHeapColumnStore;
+import com.mycompany.energiawusawlatach2001.model.PivotDimension;
+import com.mycompany.energiawusawlatach2001.model.RejectionReport;
+import com.mycompany.energiawusawlatach2001.model.WriteMode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a recorded trace again against a model, which may use another store, write mode
+ * or number of query threads than the one it was recorded on, and reports throughput and
+ * latency percentiles per operation.
+ * <p>
+ * The model is first loaded with the initial rows of the trace. Operations then start in
+ * trace order, at their recorded times divided by the speed factor or back to back at
+ * infinite speed. With one thread every operation runs on the calling thread. With more,
+ * {@link TraceOperation#isShared() shared} queries run on a pool while every other
+ * operation waits for the running queries and runs alone, so each query still sees
+ * exactly the writes recorded before it and a replay returns the same results every time.
+ * <p>
+ * A paced replay measures latency from the time an operation was due, so that time spent
+ * waiting behind a slow operation counts against the replay instead of being hidden.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class TraceReplayer {
+
+    private final Model model;
+    private final double speed;
+    private final int threads;
+    private final boolean paced;
+
+    /**
+     * Creates a replayer.
+     *
+     * @param model the model to replay against, normally empty
+     * @param speed how many times faster than recorded to replay, {@link Double#POSITIVE_INFINITY} for no pauses
+     * @param threads the number of threads running shared queries, 1 to run everything on the calling thread
+     * @throws IllegalArgumentException if the speed is not positive or the thread count is below 1
+     */
+    public TraceReplayer(Model model, double speed, int threads) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.model = model;
+        this.speed = speed;
+        this.threads = threads;
+        paced = !Double.isInfinite(speed);
+    }
+
+    /**
+     * Replays a trace file.
+     *
+     * @param file a trace written by {@link TraceWriter}
+     * @return the statistics per operation
+     * @throws IOException if the trace cannot be read
+     */
+    public ReplayReport replay(Path file) throws IOException {
+        Map<TraceOperation, Stats> stats = new EnumMap<>(TraceOperation.class);
+        ExecutorService pool = threads == 1 ? null : Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "trace-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long elapsed;
+        try (TraceReader reader = new TraceReader(file)) {
+            for (EnergyData row : reader.getInitialRows()) {
+                try {
+                    model.addEnergyData(row);
+                } catch (InvalidEnergyDataException e) {
+                    throw new IOException("Initial row " + row + " of the trace is invalid", e);
+                }
+            }
+            List<Future<?>> running = new ArrayList<>();
+            long origin = System.nanoTime();
+            TraceEvent event;
+            while ((event = reader.next()) != null) {
+                long due = origin + (long) (event.startNanos() / speed);
+                while (paced && System.nanoTime() < due) {
+                    LockSupport.parkNanos(due - System.nanoTime());
+                }
+                Stats operation = stats.computeIfAbsent(event.operation(), key -> new Stats());
+                operation.recorded.record(event.durationNanos());
+                TraceEvent current = event;
+                if (pool != null && event.operation().isShared()) {
+                    running.add(pool.submit(() -> run(current, due, operation)));
+                } else {
+                    awaitAll(running);
+                    try {
+                        run(event, due, operation);
+                    } catch (UncheckedIOException e) {
+                        throw new IOException("Replayed " + event.operation() + " failed", e.getCause());
+                    }
+                }
+            }
+            awaitAll(running);
+            elapsed = System.nanoTime() - origin;
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+
+        List<ReplayReport.OperationStats> operations = new ArrayList<>();
+        double seconds = Math.max(elapsed, 1) / 1e9;
+        for (Map.Entry<TraceOperation, Stats> entry : stats.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            LatencyHistogram recorded = entry.getValue().recorded;
+            operations.add(new ReplayReport.OperationStats(entry.getKey(), latency.getCount(),
+                entry.getValue().errors.sum(), latency.getCount() / seconds, latency.getP50Micros(),
+                latency.getP90Micros(), latency.getP99Micros(), latency.getMaxMicros(), recorded.getP50Micros(),
+                recorded.getP99Micros()));
+        }
+        return new ReplayReport(operations, elapsed);
+    }
+
+    private void run(TraceEvent event, long due, Stats stats) {
+        long start = paced ? due : System.nanoTime();
+        try {
+            invoke(event.operation(), event.arguments());
+        } catch (InvalidEnergyDataException | IllegalArgumentException e) {
+            // the recorded call failed the same way
+            stats.errors.increment();
+        } catch (IOException e) {
+            // spill files of a group-by or diff, a failure of the replay rather than of the call
+            throw new UncheckedIOException(e);
+        } finally {
+            stats.latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> running) throws IOException {
+        try {
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Replay interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Replayed query failed", e.getCause());
+        }
+        running.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void invoke(TraceOperation operation, List<Object> arguments)
+            throws InvalidEnergyDataException, IOException {
+        switch (operation) {
+            case ADD_ENERGY_DATA -> model.addEnergyData(row(arguments, 0));
+            case UPSERT_ENERGY_DATA -> model.upsertEnergyData(row(arguments, 0));
+            case DELETE_ENERGY_DATA -> model.deleteEnergyData(row(arguments, 0));
+            case UPDATE_ENERGY_DATA -> model.updateEnergyData(row(arguments, 0), row(arguments, 1));
+            case SET_WRITE_MODE -> model.setWriteMode((WriteMode) arguments.get(0));
+            case SET_ANOMALY_POLICY -> model.setAnomalyPolicy((AnomalyPolicy) arguments.get(0));
+            case RELEASE_QUARANTINED -> {
+                Anomaly anomaly = anomaly(row(arguments, 0));
+                if (anomaly != null) {
+                    model.releaseQuarantined(anomaly);
+                }
+            }
+            case DISMISS_ANOMALY -> {
+                Anomaly anomaly = anomaly(row(arguments, 0));
+                if (anomaly != null) {
+                    model.dismissAnomaly(anomaly);
+                }
+            }
+            case CLEAR_ANOMALIES -> model.clearAnomalies();
+            case GET_ENERGY_SOURCES -> model.getEnergySources();
+            case SORT_PRODUCERS_BY_TOTAL_ENERGY -> model.sortProducersByTotalEnergy();
+            case CALCULATE_MIN_ENERGY -> model.calculateMinEnergy();
+            case CALCULATE_MAX_ENERGY -> model.calculateMaxEnergy();
+            case GET_MOST_USED_ENERGY_SOURCE -> model.getMostUsedEnergySource();
+            case COUNT_ENTRIES_BY_SOURCE -> model.countEntriesBySource();
+            case GET_ENERGY_BY_STATE_FOR_MONTH -> model.getEnergyByStateForMonth((Integer) arguments.get(0));
+            case GET_ENERGY_IN_RANGE -> model.getEnergyInRange((String) arguments.get(0),
+                (EnergySource) arguments.get(1), (YearMonth) arguments.get(2), (YearMonth) arguments.get(3));
+            case GET_ENERGY_BY_STATE_IN_RANGE -> model.getEnergyByStateInRange((YearMonth) arguments.get(0),
+                (YearMonth) arguments.get(1));
+            case PIVOT -> model.pivot((PivotDimension) arguments.get(0), (PivotDimension) arguments.get(1));
+            case GET_TIME_SERIES -> model.getTimeSeries((PivotDimension) arguments.get(0));
+            case FORECAST -> model.forecast((Integer) arguments.get(0));
+            case GET_SORTED_POSITIONS -> model.getSortedPositions((EnergyColumn) arguments.get(0));
+            case FILTER_POSITIONS -> model.filterPositions((EnergyFilter) arguments.get(0));
+            case ADD_ALL -> model.addAll((EnergyColumns) arguments.get(0), new RejectionReport());
+            case ESTIMATE_ENERGY_BY_STATE_FOR_MONTH ->
+                model.estimateEnergyByStateForMonth((Integer) arguments.get(0));
+            case GROUP_BY -> model.groupBy((List<EnergyColumn>) arguments.get(0), (Long) arguments.get(1),
+                (key, total, rows) -> { });
+            case GET_ENERGY_PER -> model.getEnergyPer((DimensionTable) arguments.get(0), (String) arguments.get(1),
+                (String) arguments.get(2), (YearMonth) arguments.get(3), (YearMonth) arguments.get(4));
+            case DIFF -> model.diff((Model) arguments.get(0), (Long) arguments.get(1), new DiffVisitor() { });
+        }
+    }
+
+    private static EnergyData row(List<Object> arguments, int index) {
+        return (EnergyData) arguments.get(index);
+    }
+
+    /**
+     * @return the latest listed anomaly of an entry, or {@code null} if the replay did not flag it
+     */
+    private Anomaly anomaly(EnergyData data) {
+        List<Anomaly> anomalies = model.getAnomalies();
+        for (int i = anomalies.size() - 1; i >= 0; i--) {
+            if (anomalies.get(i).data().equals(data)) {
+                return anomalies.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replay statistics of one operation.
+     */
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram recorded = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * Replays a trace from the command line and prints the report.
+     *
+     * @param args the trace file, then optionally the store ({@code heap} or {@code offheap}),
+     *             the number of query threads and the speed factor ({@code max} for no pauses)
+     * @throws IOException if the trace cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: TraceReplayer <trace file> [heap|offheap] [threads] [speed|max]");
+            System.exit(2);
+        }
+        String store = args.length > 1 ? args[1] : "heap";
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        double speed = args.length > 3 && !args[3].equals("max") ? Double.parseDouble(args[3])
+            : Double.POSITIVE_INFINITY;
+        try (Model model = switch (store) {
+            case "heap" -> new Model(new ColumnStore());
+            case "offheap" -> new Model(OffHeapColumnStore.allocate());
+            default -> throw new IllegalArgumentException("Unknown store " + store);
+        }) {
+            System.out.print(new TraceReplayer(model, speed, threads).replay(Path.of(args[0])));
+        }
+    }
+}
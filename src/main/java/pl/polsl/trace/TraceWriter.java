@@ -0,0 +1,198 @@
+package com.mycompany.energiawusawlatach2001.trace;
+
+import com.mycompany.energiawusawlatach2001.model.DimensionTable;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Writes a workload trace: the rows a model started with, then one record per operation
+ * with its start time, its duration and its arguments.
+ * <p>
+ * The format is compact binary. A header holds the magic number, the version and the
+ * initial rows. Every record is an opcode byte, the start as a zigzag varint in
+ * nanoseconds after the previous start, the duration as a varint and the arguments.
+ * Integers are varints, enum constants a byte holding the ordinal plus one and state codes
+ * and counties an index into the strings seen so far, with the string itself following its
+ * first use, so a state-level row takes 17 bytes once its state is known. Dimension tables
+ * are numbered the same way and written as CSV on first use. Version 1 traces
+ * have rows without plant and county. Records are written when an operation
+ * returns, so with several threads the starts are not always ascending.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public final class TraceWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x45545243;
+    static final int VERSION = 2;
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> states = new HashMap<>();
+    private final Map<DimensionTable, Integer> tables = new IdentityHashMap<>();
+    private final long origin;
+    private long previousStart;
+    private long records;
+
+    /**
+     * The first write failure; recording stops after it and {@link #close()} throws it.
+     */
+    private IOException failure;
+
+    /**
+     * Creates a trace file, replacing an existing one, and writes its header.
+     *
+     * @param file the trace file
+     * @param initialRows the rows stored before the first recorded operation
+     * @throws IOException if the file cannot be written
+     */
+    public TraceWriter(Path file, Collection<EnergyData> initialRows) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeUnsigned(initialRows.size());
+            for (EnergyData row : initialRows) {
+                writeRow(row);
+            }
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        origin = System.nanoTime();
+    }
+
+    /**
+     * Records a finished operation. A write failure is kept for {@link #close()} instead of
+     * being thrown, so that tracing never breaks the operation it records.
+     *
+     * @param operation the operation
+     * @param startNanos the {@link System#nanoTime()} the operation started at
+     * @param endNanos the {@link System#nanoTime()} it returned or threw at
+     * @param arguments its arguments, in the order of {@link TraceOperation}
+     */
+    public synchronized void record(TraceOperation operation, long startNanos, long endNanos, Object... arguments) {
+        if (failure != null) {
+            return;
+        }
+        try {
+            long start = startNanos - origin;
+            out.writeByte(operation.ordinal());
+            writeSigned(start - previousStart);
+            writeUnsigned(endNanos - startNanos);
+            operation.writeArguments(this, arguments);
+            previousStart = start;
+            records++;
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * @return the number of operations recorded so far
+     */
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Flushes and closes the file.
+     *
+     * @throws IOException if a record or the file could not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    void writeRow(EnergyData row) throws IOException {
+        out.writeBoolean(row != null);
+        if (row != null) {
+            writeSigned(row.year());
+            writeSigned(row.month());
+            writeState(row.state());
+            writeConstant(row.source());
+            writeConstant(row.producer());
+            out.writeDouble(row.amount());
+            writeSigned(row.plant());
+            writeState(row.county());
+        }
+    }
+
+    void writeState(String state) throws IOException {
+        if (state == null) {
+            writeUnsigned(0);
+            return;
+        }
+        Integer index = states.get(state);
+        if (index != null) {
+            writeUnsigned(index + 1);
+        } else {
+            writeUnsigned(states.size() + 1);
+            out.writeUTF(state);
+            states.put(state, states.size());
+        }
+    }
+
+    void writeTable(DimensionTable table) throws IOException {
+        if (table == null) {
+            writeUnsigned(0);
+            return;
+        }
+        Integer index = tables.get(table);
+        if (index != null) {
+            writeUnsigned(index + 1);
+        } else {
+            writeUnsigned(tables.size() + 1);
+            byte[] csv = table.toCsv().getBytes(StandardCharsets.UTF_8);
+            writeUnsigned(csv.length);
+            out.write(csv);
+            tables.put(table, tables.size());
+        }
+    }
+
+    void writeDouble(double value) throws IOException {
+        out.writeDouble(value);
+    }
+
+    void writeConstant(Enum<?> constant) throws IOException {
+        out.writeByte(constant == null ? 0 : constant.ordinal() + 1);
+    }
+
+    void writeOptional(Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeSigned(value);
+        }
+    }
+
+    void writeSigned(long value) throws IOException {
+        writeUnsigned((value << 1) ^ (value >> 63));
+    }
+
+    void writeUnsigned(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -0,0 +1,13 @@
+/**
+ * The trace package records the operations made on a model and replays them as a benchmark.
+ * It includes:
+ * - RecordingModel, a Model that records every write and query with its arguments and timing
+ * - TraceWriter and TraceReader, the compact binary trace format, with TraceOperation
+ *   opcodes and TraceEvent records
+ * - TraceReplayer, which runs a trace against any store, speed and number of query threads,
+ *   and the ReplayReport of throughput and latency percentiles per operation
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+package com.mycompany.energiawusawlatach2001.trace;
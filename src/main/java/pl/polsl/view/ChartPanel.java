@@ -0,0 +1,362 @@
+package com.mycompany.energiawusawlatach2001.view;
+
+import com.mycompany.energiawusawlatach2001.model.TimeSeries;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Line chart of a {@link TimeSeries} that pans by dragging and zooms with the mouse wheel.
+ * The plot is split into fixed-width tiles, each rendered once per zoom level into an
+ * image kept in a small LRU cache, so panning only copies images. Missing tiles are
+ * rendered within a per-frame time budget and the rest on the following frames. At every
+ * zoom level each series is first reduced with {@link Lttb} to about one point per pixel.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class ChartPanel extends JPanel {
+
+    private static final int TILE_WIDTH = 256;
+    private static final int MAX_TILES = 48;
+    private static final long FRAME_BUDGET_NANOS = 8_000_000L;
+    private static final double ZOOM_STEP = 1.25;
+    private static final int MIN_LEVEL = -10;
+    private static final int MAX_LEVEL = 20;
+    private static final int LEFT = 80;
+    private static final int RIGHT = 20;
+    private static final int TOP = 24;
+    private static final int BOTTOM = 30;
+    private static final int LEGEND_ROWS = 12;
+    private static final Color[] COLORS = {
+        new Color(31, 119, 180), new Color(255, 127, 14), new Color(44, 160, 44), new Color(214, 39, 40),
+        new Color(148, 103, 189), new Color(140, 86, 75), new Color(227, 119, 194), new Color(127, 127, 127),
+        new Color(188, 189, 34), new Color(23, 190, 207)
+    };
+    private static final BasicStroke LINE = new BasicStroke(1.5f);
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("MMM yyyy", Locale.ENGLISH);
+
+    private TimeSeries series;
+    private boolean[] plotted;
+    private double fitScale;
+    private int level;
+    private double offset;
+    private int tileHeight;
+    private int dragX;
+
+    /**
+     * Rendered tiles keyed by zoom level and tile index, least recently used first.
+     */
+    private final Map<Long, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+
+    /**
+     * Downsampled point indexes of every series, per zoom level.
+     */
+    private final Map<Integer, int[][]> keptByLevel = new HashMap<>();
+
+    private int[] xs = new int[0];
+    private int[] ys = new int[0];
+
+    /**
+     * Creates an empty chart.
+     */
+    public ChartPanel() {
+        setBackground(Color.WHITE);
+        setToolTipText("");
+        getAccessibleContext().setAccessibleDescription(
+            "Chart of monthly energy production, drag to pan and use the mouse wheel to zoom");
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                offset = clamp(offset - (e.getX() - dragX));
+                dragX = e.getX();
+                repaint();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoom(-e.getWheelRotation(), e.getX() - LEFT);
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    level = 0;
+                    offset = 0;
+                    repaint();
+                }
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    /**
+     * Shows new series fitted to the current width of the chart.
+     *
+     * @param series the series to plot
+     */
+    public void setSeries(TimeSeries series) {
+        this.series = series;
+        markPlotted();
+        int width = Math.max(getWidth() - LEFT - RIGHT, TILE_WIDTH);
+        fitScale = (double) (width - 1) / Math.max(points() - 1, 1);
+        level = 0;
+        offset = 0;
+        tiles.clear();
+        keptByLevel.clear();
+        repaint();
+    }
+
+    /**
+     * Shows updated values of the series already plotted, keeping the zoom and the scroll
+     * position; series of another dimension are shown as by {@link #setSeries(TimeSeries)}.
+     *
+     * @param series the updated series
+     */
+    public void updateSeries(TimeSeries series) {
+        if (this.series == null || this.series.getDimension() != series.getDimension()) {
+            setSeries(series);
+            return;
+        }
+        this.series = series;
+        markPlotted();
+        tiles.clear();
+        keptByLevel.clear();
+        repaint();
+    }
+
+    /**
+     * Plots only the series with at least one month other than zero.
+     */
+    private void markPlotted() {
+        plotted = new boolean[series.getLabels().length];
+        for (int s = 0; s < plotted.length; s++) {
+            plotted[s] = Arrays.stream(series.getValues()[s]).anyMatch(value -> value != 0);
+        }
+    }
+
+    /**
+     * Zooms in ({@code steps > 0}) or out around a point of the plot, keeping it under the cursor.
+     */
+    private void zoom(int steps, int anchorX) {
+        int newLevel = Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level + steps));
+        if (series == null || newLevel == level) {
+            return;
+        }
+        double point = (offset + anchorX) / scale(level);
+        level = newLevel;
+        offset = clamp(point * scale(level) - anchorX);
+        repaint();
+    }
+
+    private double scale(int zoomLevel) {
+        return fitScale * Math.pow(ZOOM_STEP, zoomLevel);
+    }
+
+    private int points() {
+        return series.getValues().length == 0 ? 0 : series.getValues()[0].length;
+    }
+
+    private double clamp(double newOffset) {
+        double plotWidth = (points() - 1) * scale(level) + 1;
+        return Math.max(0, Math.min(newOffset, plotWidth - (getWidth() - LEFT - RIGHT)));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        long start = System.nanoTime();
+        FontMetrics metrics = g.getFontMetrics();
+        if (series == null) {
+            g.setColor(Color.GRAY);
+            g.drawString("Choose a dimension and press Show Chart", 10, metrics.getAscent() + TOP);
+            return;
+        }
+        int plotWidth = getWidth() - LEFT - RIGHT;
+        int plotHeight = getHeight() - TOP - BOTTOM;
+        if (plotWidth <= 0 || plotHeight <= 1) {
+            return;
+        }
+        if (plotHeight != tileHeight) {
+            tiles.clear();
+            tileHeight = plotHeight;
+        }
+        offset = clamp(offset);
+
+        Graphics clipped = g.create(LEFT, TOP, plotWidth, plotHeight);
+        boolean pending = false;
+        int first = (int) (offset / TILE_WIDTH);
+        int last = (int) ((offset + plotWidth) / TILE_WIDTH);
+        for (int tile = first; tile <= last; tile++) {
+            long key = ((long) level << 32) | tile;
+            BufferedImage image = tiles.get(key);
+            if (image == null) {
+                if (System.nanoTime() - start > FRAME_BUDGET_NANOS) {
+                    pending = true;
+                    continue;
+                }
+                image = renderTile(tile);
+                tiles.put(key, image);
+            }
+            clipped.drawImage(image, (int) Math.round(tile * TILE_WIDTH - offset), 0, null);
+        }
+        clipped.dispose();
+        paintAxes(g, metrics, plotWidth, plotHeight);
+        paintLegend(g, metrics);
+        if (pending) {
+            // finish the remaining tiles on the next frames
+            repaint();
+        }
+    }
+
+    /**
+     * Renders one tile of the current zoom level from the downsampled points.
+     */
+    private BufferedImage renderTile(int tile) {
+        BufferedImage image = new BufferedImage(TILE_WIDTH, tileHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setStroke(LINE);
+        double scale = scale(level);
+        double x0 = (double) tile * TILE_WIDTH;
+        double x1 = x0 + TILE_WIDTH;
+        double yScale = (tileHeight - 1) / Math.max(series.getMax(), 1);
+        int[][] kept = kept();
+        for (int s = 0; s < kept.length; s++) {
+            if (!plotted[s]) {
+                continue;
+            }
+            double[] values = series.getValues()[s];
+            int[] indexes = kept[s];
+            // start at the last kept point left of the tile, so the line enters it from the edge
+            int k = Arrays.binarySearch(indexes, (int) Math.floor(x0 / scale));
+            k = Math.max(0, k >= 0 ? k : -k - 2);
+            int count = 0;
+            for (; k < indexes.length; k++) {
+                double x = indexes[k] * scale;
+                xs[count] = (int) Math.round(x - x0);
+                ys[count] = (int) Math.round(tileHeight - 1 - values[indexes[k]] * yScale);
+                count++;
+                if (x > x1) {
+                    break;
+                }
+            }
+            g.setColor(COLORS[s % COLORS.length]);
+            g.drawPolyline(xs, ys, count);
+        }
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Returns the downsampled point indexes of every series at the current zoom level,
+     * about one point per horizontal pixel.
+     */
+    private int[][] kept() {
+        return keptByLevel.computeIfAbsent(level, zoomLevel -> {
+            int points = points();
+            int threshold = Math.max(3, (int) ((points - 1) * scale(zoomLevel)) + 1);
+            int[][] kept = new int[series.getValues().length][];
+            int[] buffer = new int[Math.min(threshold, points)];
+            for (int s = 0; s < kept.length; s++) {
+                int count = Lttb.downsample(series.getValues()[s], 0, points, threshold, buffer);
+                kept[s] = Arrays.copyOf(buffer, count);
+            }
+            if (xs.length < buffer.length) {
+                xs = new int[buffer.length];
+                ys = new int[buffer.length];
+            }
+            return kept;
+        });
+    }
+
+    private void paintAxes(Graphics g, FontMetrics metrics, int plotWidth, int plotHeight) {
+        g.setColor(Color.GRAY);
+        g.drawLine(LEFT, TOP, LEFT, TOP + plotHeight);
+        g.drawLine(LEFT, TOP + plotHeight, LEFT + plotWidth, TOP + plotHeight);
+        for (int tick = 0; tick <= 4; tick++) {
+            int y = TOP + plotHeight - 1 - (plotHeight - 1) * tick / 4;
+            String label = String.format("%,.0f", series.getMax() * tick / 4);
+            g.drawString(label, LEFT - 6 - metrics.stringWidth(label), y + metrics.getAscent() / 2);
+            g.drawLine(LEFT - 3, y, LEFT, y);
+        }
+        double scale = scale(level);
+        // label every year, or every few years when they would overlap
+        int years = Math.max(1, (int) Math.ceil(metrics.stringWidth("0000") * 2 / (12 * scale)));
+        YearMonth start = series.getStart();
+        int firstYear = (int) Math.ceil(offset / scale / 12 / years) * years;
+        for (int year = firstYear; year * 12 < points(); year += years) {
+            int x = LEFT + (int) Math.round(year * 12 * scale - offset);
+            if (x > LEFT + plotWidth) {
+                break;
+            }
+            g.drawLine(x, TOP + plotHeight, x, TOP + plotHeight + 3);
+            g.drawString(Integer.toString(start.getYear() + year), x - metrics.stringWidth("0000") / 2,
+                TOP + plotHeight + 4 + metrics.getAscent());
+        }
+        g.drawString(series.getDimension().getDisplayName() + " [MWh]", 4, metrics.getAscent() + 2);
+    }
+
+    private void paintLegend(Graphics g, FontMetrics metrics) {
+        int row = 0;
+        String[] labels = series.getLabels();
+        for (int s = 0; s < labels.length && row < LEGEND_ROWS; s++) {
+            if (plotted[s]) {
+                int y = TOP + 4 + row * (metrics.getHeight() + 2);
+                g.setColor(COLORS[s % COLORS.length]);
+                g.fillRect(LEFT + 8, y + 2, 10, metrics.getAscent() - 2);
+                g.setColor(Color.DARK_GRAY);
+                g.drawString(labels[s], LEFT + 22, y + metrics.getAscent());
+                row++;
+            }
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        if (series == null || tileHeight <= 1 || event.getX() < LEFT) {
+            return null;
+        }
+        int point = (int) Math.round((event.getX() - LEFT + offset) / scale(level));
+        if (point < 0 || point >= points()) {
+            return null;
+        }
+        // name the series drawn closest to the cursor
+        double value = (getHeight() - BOTTOM - 1 - event.getY()) * Math.max(series.getMax(), 1) / (tileHeight - 1);
+        int closest = -1;
+        for (int s = 0; s < plotted.length; s++) {
+            if (plotted[s] && (closest < 0 || Math.abs(series.getValues()[s][point] - value)
+                    < Math.abs(series.getValues()[closest][point] - value))) {
+                closest = s;
+            }
+        }
+        if (closest < 0) {
+            return null;
+        }
+        return String.format("%s, %s: %,.0f MWh", series.getLabels()[closest],
+            MONTH_FORMAT.format(series.getStart().plusMonths(point)), series.getValues()[closest][point]);
+    }
+}
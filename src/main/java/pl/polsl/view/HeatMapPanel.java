@@ -0,0 +1,193 @@
+package com.mycompany.energiawusawlatach2001.view;
+
+import com.mycompany.energiawusawlatach2001.model.PivotTable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+
+/**
+ * Panel rendering a {@link PivotTable} as a heat map with a totals row and column.
+ * Colors come from a palette built once and the text of every cell is formatted once
+ * per table, so repainting allocates nothing per cell; only visible cells are painted.
+ * 
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class HeatMapPanel extends JPanel {
+
+    private static final Color[] PALETTE = buildPalette(256);
+    private static final Color TOTAL_COLOR = new Color(230, 230, 230);
+    private static final Color GRID_COLOR = new Color(200, 200, 200);
+    private static final int LABEL_WIDTH = 180;
+    private static final int HEADER_HEIGHT = 24;
+    private static final int CELL_WIDTH = 90;
+    private static final int CELL_HEIGHT = 22;
+
+    private PivotTable pivot;
+    private PivotTable.Normalization normalization = PivotTable.Normalization.NONE;
+    private String[][] cellTexts;
+    private byte[][] shades;
+    private String[] rowTotalTexts;
+    private String[] columnTotalTexts;
+
+    /**
+     * Creates an empty heat map.
+     */
+    public HeatMapPanel() {
+        setBackground(Color.WHITE);
+        setToolTipText("");
+        getAccessibleContext().setAccessibleDescription("Heat map of the pivot table");
+    }
+
+    /**
+     * Shows a pivot table. Cell texts and shades are computed here, not while painting.
+     *
+     * @param pivot the table to show
+     * @param normalization how cells are normalized before they are colored and labeled
+     */
+    public void setPivot(PivotTable pivot, PivotTable.Normalization normalization) {
+        this.pivot = pivot;
+        this.normalization = normalization;
+        int rows = pivot.getRowLabels().length;
+        int columns = pivot.getColumnLabels().length;
+        double[][] shares = pivot.normalized(normalization);
+        double max = 0;
+        for (double[] row : shares) {
+            for (double share : row) {
+                max = Math.max(max, share);
+            }
+        }
+        cellTexts = new String[rows][columns];
+        shades = new byte[rows][columns];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                cellTexts[row][column] = format(shares[row][column]);
+                shades[row][column] = (byte) (max == 0 ? 0 : Math.round(shares[row][column] / max * (PALETTE.length - 1)));
+            }
+        }
+        rowTotalTexts = new String[rows];
+        for (int row = 0; row < rows; row++) {
+            rowTotalTexts[row] = formatTotal(pivot.getRowTotals()[row]);
+        }
+        columnTotalTexts = new String[columns];
+        for (int column = 0; column < columns; column++) {
+            columnTotalTexts[column] = formatTotal(pivot.getColumnTotals()[column]);
+        }
+        revalidate();
+        repaint();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (pivot == null) {
+            return new Dimension(400, 200);
+        }
+        return new Dimension(LABEL_WIDTH + (pivot.getColumnLabels().length + 1) * CELL_WIDTH,
+            HEADER_HEIGHT + (pivot.getRowLabels().length + 1) * CELL_HEIGHT);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        FontMetrics metrics = g.getFontMetrics();
+        int baseline = (CELL_HEIGHT + metrics.getAscent() - metrics.getDescent()) / 2;
+        if (pivot == null) {
+            g.setColor(Color.GRAY);
+            g.drawString("Choose two dimensions and press Show Pivot", 10, baseline);
+            return;
+        }
+        Rectangle clip = g.getClipBounds();
+        String[] rowLabels = pivot.getRowLabels();
+        String[] columnLabels = pivot.getColumnLabels();
+        int rows = rowLabels.length;
+        int columns = columnLabels.length;
+        int firstRow = Math.max(0, (clip.y - HEADER_HEIGHT) / CELL_HEIGHT);
+        int lastRow = Math.min(rows, (clip.y + clip.height - HEADER_HEIGHT) / CELL_HEIGHT);
+        int firstColumn = Math.max(0, (clip.x - LABEL_WIDTH) / CELL_WIDTH);
+        int lastColumn = Math.min(columns, (clip.x + clip.width - LABEL_WIDTH) / CELL_WIDTH);
+
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            int x = LABEL_WIDTH + column * CELL_WIDTH;
+            drawText(g, clip, column < columns ? columnLabels[column] : "Total", x, 0, CELL_WIDTH, baseline, Color.BLACK);
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            int y = HEADER_HEIGHT + row * CELL_HEIGHT;
+            drawText(g, clip, row < rows ? rowLabels[row] : "Total", 0, y, LABEL_WIDTH, baseline, Color.BLACK);
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int x = LABEL_WIDTH + column * CELL_WIDTH;
+                if (row < rows && column < columns) {
+                    int shade = shades[row][column] & 0xFF;
+                    g.setColor(PALETTE[shade]);
+                    g.fillRect(x, y, CELL_WIDTH, CELL_HEIGHT);
+                    drawText(g, clip, cellTexts[row][column], x, y, CELL_WIDTH, baseline,
+                        shade > PALETTE.length * 3 / 5 ? Color.WHITE : Color.BLACK);
+                } else {
+                    g.setColor(TOTAL_COLOR);
+                    g.fillRect(x, y, CELL_WIDTH, CELL_HEIGHT);
+                    String total = row < rows ? rowTotalTexts[row]
+                        : column < columns ? columnTotalTexts[column] : formatTotal(pivot.getTotal());
+                    drawText(g, clip, total, x, y, CELL_WIDTH, baseline, Color.BLACK);
+                }
+                g.setColor(GRID_COLOR);
+                g.drawRect(x, y, CELL_WIDTH, CELL_HEIGHT);
+            }
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        if (pivot == null) {
+            return null;
+        }
+        int row = (event.getY() - HEADER_HEIGHT) / CELL_HEIGHT;
+        int column = (event.getX() - LABEL_WIDTH) / CELL_WIDTH;
+        if (event.getY() < HEADER_HEIGHT || event.getX() < LABEL_WIDTH
+                || row >= pivot.getRowLabels().length || column >= pivot.getColumnLabels().length) {
+            return null;
+        }
+        return String.format("%s / %s: %,.0f MWh (%.1f%% of row, %.1f%% of column)",
+            pivot.getRowLabels()[row], pivot.getColumnLabels()[column], pivot.getValues()[row][column],
+            pivot.share(row, column, PivotTable.Normalization.ROW),
+            pivot.share(row, column, PivotTable.Normalization.COLUMN));
+    }
+
+    /**
+     * Draws text clipped to its cell, so long labels are cut instead of copied into shorter strings.
+     */
+    private static void drawText(Graphics g, Rectangle clip, String text, int x, int y, int width,
+            int baseline, Color color) {
+        g.setColor(color);
+        g.clipRect(x + 2, y, width - 4, CELL_HEIGHT);
+        g.drawString(text, x + 4, y + baseline);
+        g.setClip(clip.x, clip.y, clip.width, clip.height);
+    }
+
+    private String format(double value) {
+        return normalization == PivotTable.Normalization.NONE
+            ? String.format("%,.0f", value)
+            : String.format("%.1f%%", value);
+    }
+
+    private static String formatTotal(double value) {
+        return String.format("%,.0f", value);
+    }
+
+    /**
+     * Builds a white, orange to dark red color ramp.
+     */
+    private static Color[] buildPalette(int size) {
+        Color[] palette = new Color[size];
+        int[][] stops = {{255, 255, 255}, {253, 174, 97}, {165, 0, 38}};
+        for (int i = 0; i < size; i++) {
+            double position = (double) i / (size - 1) * (stops.length - 1);
+            int stop = Math.min((int) position, stops.length - 2);
+            double fraction = position - stop;
+            palette[i] = new Color(
+                (int) Math.round(stops[stop][0] + (stops[stop + 1][0] - stops[stop][0]) * fraction),
+                (int) Math.round(stops[stop][1] + (stops[stop + 1][1] - stops[stop][1]) * fraction),
+                (int) Math.round(stops[stop][2] + (stops[stop + 1][2] - stops[stop][2]) * fraction));
+        }
+        return palette;
+    }
+}
@@ -0,0 +1,190 @@
+package com.mycompany.energiawusawlatach2001.view;
+
+import com.mycompany.energiawusawlatach2001.model.EnergyColumn;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.table.TableModel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Row sorter for the energy data table that never compares table values. Sorting reads
+ * a precomputed permutation of row positions per column, supplied by the model, and
+ * filtering reads a bit set of matching positions, so a re-sort is one pass over an
+ * {@code int[]}. Table column {@code i} is sorted by {@code EnergyColumn.values()[i]}.
+ * Only the primary sort key is used; ties keep table order when ascending.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+public class IndexRowSorter extends RowSorter<TableModel> {
+
+    private final TableModel model;
+    private final Function<EnergyColumn, int[]> orders;
+    private List<SortKey> sortKeys = List.of();
+    private BitSet filter;
+
+    /**
+     * View row to model row, or {@code null} while rows are neither sorted nor filtered.
+     */
+    private int[] viewToModel;
+
+    /**
+     * Model row to view row, built on first use after every sort.
+     */
+    private int[] modelToView;
+
+    /**
+     * Creates a sorter over a table model whose rows are in model list order.
+     *
+     * @param model the table model
+     * @param orders supplies the ascending row positions of a column, e.g. {@code Model::getSortedPositions}
+     */
+    public IndexRowSorter(TableModel model, Function<EnergyColumn, int[]> orders) {
+        this.model = model;
+        this.orders = orders;
+    }
+
+    /**
+     * Shows only the rows whose position is set, or all rows for {@code null}.
+     *
+     * @param filter the positions of the rows to show, or {@code null}
+     */
+    public void setFilter(BitSet filter) {
+        this.filter = filter;
+        sort();
+    }
+
+    /**
+     * @return the positions of the rows shown, or {@code null} if all are shown
+     */
+    public BitSet getFilter() {
+        return filter;
+    }
+
+    @Override
+    public TableModel getModel() {
+        return model;
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        SortOrder order = SortOrder.ASCENDING;
+        if (!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column
+                && sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING) {
+            order = SortOrder.DESCENDING;
+        }
+        setSortKeys(List.of(new SortKey(column, order)));
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (viewToModel == null) {
+            return index;
+        }
+        return viewToModel[index];
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (viewToModel == null) {
+            return index;
+        }
+        if (modelToView == null) {
+            modelToView = new int[model.getRowCount()];
+            Arrays.fill(modelToView, -1);
+            for (int row = 0; row < viewToModel.length; row++) {
+                modelToView[viewToModel[row]] = row;
+            }
+        }
+        return index < modelToView.length ? modelToView[index] : -1;
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        sortKeys = keys == null ? List.of() : List.copyOf(keys);
+        fireSortOrderChanged();
+        sort();
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return viewToModel == null ? model.getRowCount() : viewToModel.length;
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        sortKeys = List.of();
+        filter = null;
+        sort();
+    }
+
+    @Override
+    public void allRowsChanged() {
+        sort();
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        sort();
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        sort();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        sort();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        if (!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column) {
+            sort();
+        }
+    }
+
+    /**
+     * Rebuilds the view order from the permutation of the primary sort column and the filter.
+     */
+    private void sort() {
+        int[] previous = viewToModel;
+        int rows = model.getRowCount();
+        SortKey key = sortKeys.isEmpty() || sortKeys.get(0).getSortOrder() == SortOrder.UNSORTED
+            ? null : sortKeys.get(0);
+        if (key == null && filter == null) {
+            viewToModel = null;
+        } else {
+            int[] order = key == null ? null : orders.apply(EnergyColumn.values()[key.getColumn()]);
+            int length = order == null ? rows : order.length;
+            boolean descending = key != null && key.getSortOrder() == SortOrder.DESCENDING;
+            int[] result = new int[filter == null ? rows : Math.min(rows, filter.cardinality())];
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                int index = descending ? length - 1 - i : i;
+                int position = order == null ? index : order[index];
+                if (position < rows && (filter == null || filter.get(position))) {
+                    result[count++] = position;
+                }
+            }
+            viewToModel = count == result.length ? result : Arrays.copyOf(result, count);
+        }
+        modelToView = null;
+        fireRowSorterChanged(previous);
+    }
+}
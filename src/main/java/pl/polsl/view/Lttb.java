@@ -0,0 +1,73 @@
+package com.mycompany.energiawusawlatach2001.view;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of evenly spaced points.
+ * The first and last point are kept and every bucket in between contributes the point
+ * that forms the largest triangle with the previously kept point and the average of the
+ * next bucket, which preserves peaks and dips that plain decimation would drop.
+ *
+ * @author Aleksandra Nizio
+ * @version 1.0
+ */
+final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * Picks at most {@code threshold} of the points {@code from} (inclusive) to {@code to}
+     * (exclusive) and writes their indexes, in ascending order, to {@code out}.
+     *
+     * @param values the y value of every point, x being the index
+     * @param from the first point
+     * @param to the end of the points
+     * @param threshold the number of points to keep
+     * @param out receives the kept indexes, at least {@code min(threshold, to - from)} long
+     * @return the number of kept indexes
+     */
+    static int downsample(double[] values, int from, int to, int threshold, int[] out) {
+        int count = to - from;
+        if (threshold >= count || threshold < 3) {
+            for (int i = 0; i < count; i++) {
+                out[i] = from + i;
+            }
+            return Math.max(count, 0);
+        }
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+        int kept = 0;
+        int previous = from;
+        out[kept++] = previous;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int nextStart = from + (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min(from + (int) ((bucket + 2) * bucketSize) + 1, to);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += i;
+                averageY += values[i];
+            }
+            int length = nextEnd - nextStart;
+            averageX /= length;
+            averageY /= length;
+
+            int start = from + (int) (bucket * bucketSize) + 1;
+            int end = from + (int) ((bucket + 1) * bucketSize) + 1;
+            double previousY = values[previous];
+            double largestArea = -1;
+            int largest = start;
+            for (int i = start; i < end; i++) {
+                // twice the triangle area, the factor does not change which point wins
+                double area = Math.abs((previous - averageX) * (values[i] - previousY)
+                    - (previous - i) * (averageY - previousY));
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = i;
+                }
+            }
+            out[kept++] = largest;
+            previous = largest;
+        }
+        out[kept++] = to - 1;
+        return kept;
+    }
+}
@@ -1,12 +1,23 @@
 package com.mycompany.energiawusawlatach2001.view;
 
 import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumn;
 import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.PivotDimension;
+import com.mycompany.energiawusawlatach2001.model.PivotTable;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.KeyEvent;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Vector;
+import java.util.function.Function;
 
 /**
  * The View class represents the user interface of the application.
@@ -27,6 +38,8 @@ public class View extends JFrame {
     private final JButton addButton;
     private final JButton mostUsedSourceButton;
     private final JButton energyByMonthButton;
+    private final JButton exportButton;
+    private final JButton compareButton;
 
     /**
      * Text fields and combo boxes for user input.
@@ -44,6 +57,54 @@ public class View extends JFrame {
      */
     private final JTable dataTable;
     private final DefaultTableModel tableModel;
+    private IndexRowSorter rowSorter;
+
+    /**
+     * Quick filter controls above the table.
+     */
+    private final JTextField filterStateField;
+    private final JComboBox<EnergySource> filterSourceComboBox;
+    private final JTextField filterYearField;
+    private final JButton applyFilterButton;
+    private final JButton clearFilterButton;
+
+    /**
+     * Range selector for the energy produced between two months.
+     */
+    private final JComboBox<YearMonth> rangeFromComboBox;
+    private final JComboBox<YearMonth> rangeToComboBox;
+    private final JTextField rangeStateField;
+    private final JButton energyInRangeButton;
+
+    /**
+     * Pivot controls and the heat map rendering the pivot.
+     */
+    private final JComboBox<PivotDimension> pivotRowsComboBox;
+    private final JComboBox<PivotDimension> pivotColumnsComboBox;
+    private final JComboBox<PivotTable.Normalization> normalizationComboBox;
+    private final JButton pivotButton;
+    private final HeatMapPanel heatMapPanel;
+
+    /**
+     * Chart controls and the chart of monthly energy production.
+     */
+    private final JComboBox<PivotDimension> chartDimensionComboBox;
+    private final JButton chartButton;
+    private final ChartPanel chartPanel;
+
+    /**
+     * Forecast controls and the table of projected monthly production per series.
+     */
+    private final JComboBox<Integer> forecastMonthsComboBox;
+    private final JButton forecastButton;
+    private final DefaultTableModel forecastTableModel;
+
+    /**
+     * Window of query results that are shown as estimates first and refined in place.
+     */
+    private final JDialog resultsDialog;
+    private final DefaultTableModel resultsTableModel;
+    private final JLabel resultsStatusLabel;
 
     /**
      * Constructor initializes the GUI components, such as buttons, text fields, 
@@ -53,7 +114,7 @@ public class View extends JFrame {
      */
     public View() {
         setTitle("Energy Data Management");
-        setSize(1000, 600);
+        setSize(1200, 700);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         // Set main layout
@@ -218,6 +279,18 @@ public class View extends JFrame {
         buttonPanel.add(minMaxButton);
         buttonPanel.add(mostUsedSourceButton);
 
+        exportButton = new JButton("Export...");
+        exportButton.setToolTipText("Click to save the data or a query result as CSV or JSON");
+        exportButton.setMnemonic(KeyEvent.VK_X);
+        exportButton.getAccessibleContext().setAccessibleDescription("Exports data or query results to a file");
+        buttonPanel.add(exportButton);
+
+        compareButton = new JButton("Compare...");
+        compareButton.setToolTipText("Click to list what changed since an earlier version saved to a file");
+        compareButton.setMnemonic(KeyEvent.VK_A);
+        compareButton.getAccessibleContext().setAccessibleDescription("Compares the data with an earlier version from a file");
+        buttonPanel.add(compareButton);
+
         // Panel for energy by month
         JPanel monthPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         JLabel monthInputLabel = new JLabel("Month:");
@@ -229,8 +302,52 @@ public class View extends JFrame {
 
         monthPanel.setBorder(BorderFactory.createTitledBorder("Energy by Month"));
 
+        // Panel for energy between two months
+        YearMonth[] months = new YearMonth[(Model.LAST_YEAR - Model.FIRST_YEAR + 1) * 12];
+        for (int i = 0; i < months.length; i++) {
+            months[i] = YearMonth.of(Model.FIRST_YEAR, 1).plusMonths(i);
+        }
+        rangeFromComboBox = new JComboBox<>(months);
+        rangeFromComboBox.getAccessibleContext().setAccessibleDescription("Select the first month of the range");
+        rangeFromComboBox.setRenderer(new YearMonthRenderer());
+
+        rangeToComboBox = new JComboBox<>(months);
+        rangeToComboBox.setSelectedIndex(months.length - 1);
+        rangeToComboBox.getAccessibleContext().setAccessibleDescription("Select the last month of the range");
+        rangeToComboBox.setRenderer(new YearMonthRenderer());
+
+        rangeStateField = new JTextField(5);
+        rangeStateField.getAccessibleContext().setAccessibleDescription("Enter a state code, or leave empty for all states");
+
+        energyInRangeButton = new JButton("Energy in Range");
+        energyInRangeButton.setToolTipText("Click to display energy produced between the selected months");
+        energyInRangeButton.setMnemonic(KeyEvent.VK_G);
+        energyInRangeButton.getAccessibleContext().setAccessibleDescription("Displays energy by state for a range of months");
+
+        JLabel rangeFromLabel = new JLabel("From:");
+        rangeFromLabel.setLabelFor(rangeFromComboBox);
+        JLabel rangeToLabel = new JLabel("To:");
+        rangeToLabel.setLabelFor(rangeToComboBox);
+        JLabel rangeStateLabel = new JLabel("State:");
+        rangeStateLabel.setLabelFor(rangeStateField);
+
+        JPanel rangePanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        rangePanel.add(rangeFromLabel);
+        rangePanel.add(rangeFromComboBox);
+        rangePanel.add(rangeToLabel);
+        rangePanel.add(rangeToComboBox);
+        rangePanel.add(rangeStateLabel);
+        rangePanel.add(rangeStateField);
+        rangePanel.add(energyInRangeButton);
+
+        rangePanel.setBorder(BorderFactory.createTitledBorder("Energy in Range"));
+
+        JPanel queryPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        queryPanel.add(monthPanel);
+        queryPanel.add(rangePanel);
+
         // Initialize table for displaying results
-        String[] columnNames = {"Year", "Month", "State", "Source", "Producer", "Generation"};
+        String[] columnNames = {"Year", "Month", "State", "Source", "Producer", "Generation", "Plant", "County"};
         tableModel = new DefaultTableModel(columnNames, 0);
         dataTable = new JTable(tableModel);
 
@@ -240,11 +357,237 @@ public class View extends JFrame {
 
         JScrollPane scrollPane = new JScrollPane(dataTable);
 
+        // Quick filter bar above the table, an empty field matches everything
+        filterStateField = new JTextField(5);
+        filterStateField.getAccessibleContext().setAccessibleDescription("Show only rows of this state");
+
+        EnergySource[] filterSources = new EnergySource[EnergySource.values().length + 1];
+        System.arraycopy(EnergySource.values(), 0, filterSources, 1, EnergySource.values().length);
+        filterSourceComboBox = new JComboBox<>(filterSources);
+        filterSourceComboBox.getAccessibleContext().setAccessibleDescription("Show only rows of this energy source");
+        filterSourceComboBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, 
+                    int index, boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                setText(value instanceof EnergySource ? ((EnergySource) value).getDisplayName() : "Any");
+                return this;
+            }
+        });
+
+        filterYearField = new JTextField(5);
+        filterYearField.getAccessibleContext().setAccessibleDescription("Show only rows of this year");
+
+        applyFilterButton = new JButton("Filter");
+        applyFilterButton.setToolTipText("Click to show only the rows matching the filter");
+        applyFilterButton.setMnemonic(KeyEvent.VK_F);
+        applyFilterButton.getAccessibleContext().setAccessibleDescription("Filters the table rows");
+
+        clearFilterButton = new JButton("Clear Filter");
+        clearFilterButton.setToolTipText("Click to show all rows again");
+        clearFilterButton.setMnemonic(KeyEvent.VK_L);
+        clearFilterButton.getAccessibleContext().setAccessibleDescription("Shows all table rows");
+
+        JLabel filterStateLabel = new JLabel("State:");
+        filterStateLabel.setLabelFor(filterStateField);
+        JLabel filterSourceLabel = new JLabel("Source:");
+        filterSourceLabel.setLabelFor(filterSourceComboBox);
+        JLabel filterYearLabel = new JLabel("Year:");
+        filterYearLabel.setLabelFor(filterYearField);
+
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterPanel.add(filterStateLabel);
+        filterPanel.add(filterStateField);
+        filterPanel.add(filterSourceLabel);
+        filterPanel.add(filterSourceComboBox);
+        filterPanel.add(filterYearLabel);
+        filterPanel.add(filterYearField);
+        filterPanel.add(applyFilterButton);
+        filterPanel.add(clearFilterButton);
+
+        JPanel dataPanel = new JPanel(new BorderLayout());
+        dataPanel.add(filterPanel, BorderLayout.NORTH);
+        dataPanel.add(scrollPane, BorderLayout.CENTER);
+
+        // Pivot panel with its own controls and a heat map
+        pivotRowsComboBox = new JComboBox<>(PivotDimension.values());
+        pivotRowsComboBox.setSelectedItem(PivotDimension.STATE);
+        pivotRowsComboBox.getAccessibleContext().setAccessibleDescription("Select the dimension along the pivot rows");
+        pivotRowsComboBox.setRenderer(new DimensionRenderer());
+
+        pivotColumnsComboBox = new JComboBox<>(PivotDimension.values());
+        pivotColumnsComboBox.setSelectedItem(PivotDimension.SOURCE);
+        pivotColumnsComboBox.getAccessibleContext().setAccessibleDescription("Select the dimension along the pivot columns");
+        pivotColumnsComboBox.setRenderer(new DimensionRenderer());
+
+        normalizationComboBox = new JComboBox<>(PivotTable.Normalization.values());
+        normalizationComboBox.getAccessibleContext().setAccessibleDescription("Select how pivot cells are normalized");
+        normalizationComboBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, 
+                    int index, boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (value instanceof PivotTable.Normalization) {
+                    setText(switch ((PivotTable.Normalization) value) {
+                        case NONE -> "MWh";
+                        case ROW -> "% of row";
+                        case COLUMN -> "% of column";
+                        case TOTAL -> "% of total";
+                    });
+                }
+                return this;
+            }
+        });
+
+        pivotButton = new JButton("Show Pivot");
+        pivotButton.setToolTipText("Click to compute the pivot of total energy by the selected dimensions");
+        pivotButton.setMnemonic(KeyEvent.VK_V);
+        pivotButton.getAccessibleContext().setAccessibleDescription("Computes the pivot and shows it as a heat map");
+
+        JLabel pivotRowsLabel = new JLabel("Rows:");
+        pivotRowsLabel.setLabelFor(pivotRowsComboBox);
+        JLabel pivotColumnsLabel = new JLabel("Columns:");
+        pivotColumnsLabel.setLabelFor(pivotColumnsComboBox);
+        JLabel normalizationLabel = new JLabel("Values:");
+        normalizationLabel.setLabelFor(normalizationComboBox);
+
+        JPanel pivotControls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        pivotControls.add(pivotRowsLabel);
+        pivotControls.add(pivotRowsComboBox);
+        pivotControls.add(pivotColumnsLabel);
+        pivotControls.add(pivotColumnsComboBox);
+        pivotControls.add(normalizationLabel);
+        pivotControls.add(normalizationComboBox);
+        pivotControls.add(pivotButton);
+
+        heatMapPanel = new HeatMapPanel();
+
+        JPanel pivotPanel = new JPanel(new BorderLayout());
+        pivotPanel.add(pivotControls, BorderLayout.NORTH);
+        pivotPanel.add(new JScrollPane(heatMapPanel), BorderLayout.CENTER);
+
+        // Chart panel plotting monthly production per state, source or producer
+        chartDimensionComboBox = new JComboBox<>(new PivotDimension[]{
+            PivotDimension.STATE, PivotDimension.SOURCE, PivotDimension.PRODUCER});
+        chartDimensionComboBox.getAccessibleContext().setAccessibleDescription("Select the dimension to plot one line per value of");
+        chartDimensionComboBox.setRenderer(new DimensionRenderer());
+
+        chartButton = new JButton("Show Chart");
+        chartButton.setToolTipText("Click to plot monthly energy production over time");
+        chartButton.setMnemonic(KeyEvent.VK_C);
+        chartButton.getAccessibleContext().setAccessibleDescription("Plots monthly energy production over time");
+
+        JLabel chartDimensionLabel = new JLabel("Lines per:");
+        chartDimensionLabel.setLabelFor(chartDimensionComboBox);
+
+        JPanel chartControls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        chartControls.add(chartDimensionLabel);
+        chartControls.add(chartDimensionComboBox);
+        chartControls.add(chartButton);
+        chartControls.add(new JLabel("Drag to pan, scroll to zoom, double-click to reset"));
+
+        chartPanel = new ChartPanel();
+
+        JPanel chartTab = new JPanel(new BorderLayout());
+        chartTab.add(chartControls, BorderLayout.NORTH);
+        chartTab.add(chartPanel, BorderLayout.CENTER);
+
+        // Forecast panel with one row per state, source and producer series
+        forecastMonthsComboBox = new JComboBox<>(new Integer[]{12, 18, 24});
+        forecastMonthsComboBox.getAccessibleContext().setAccessibleDescription("Select how many months to forecast");
+
+        forecastButton = new JButton("Show Forecast");
+        forecastButton.setToolTipText("Click to forecast monthly energy production of every series");
+        forecastButton.setMnemonic(KeyEvent.VK_T);
+        forecastButton.getAccessibleContext().setAccessibleDescription("Forecasts monthly energy production per state, source and producer");
+
+        JLabel forecastMonthsLabel = new JLabel("Months:");
+        forecastMonthsLabel.setLabelFor(forecastMonthsComboBox);
+
+        JPanel forecastControls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        forecastControls.add(forecastMonthsLabel);
+        forecastControls.add(forecastMonthsComboBox);
+        forecastControls.add(forecastButton);
+        forecastControls.add(new JLabel("Holt-Winters with a 12-month season, series with two years of data"));
+
+        forecastTableModel = new DefaultTableModel(0, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable forecastTable = new JTable(forecastTableModel);
+        forecastTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        forecastTable.setAutoCreateRowSorter(true);
+
+        JPanel forecastPanel = new JPanel(new BorderLayout());
+        forecastPanel.add(forecastControls, BorderLayout.NORTH);
+        forecastPanel.add(new JScrollPane(forecastTable), BorderLayout.CENTER);
+
+        // Results window, left open while an estimate is refined to the exact answer
+        resultsTableModel = new DefaultTableModel(0, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable resultsTable = new JTable(resultsTableModel);
+        resultsTable.setAutoCreateRowSorter(true);
+        resultsStatusLabel = new JLabel(" ");
+        resultsStatusLabel.getAccessibleContext().setAccessibleDescription("Whether the results are estimates or exact");
+
+        resultsDialog = new JDialog(this, false);
+        resultsDialog.setSize(520, 400);
+        resultsDialog.setLocationRelativeTo(this);
+        resultsDialog.add(resultsStatusLabel, BorderLayout.NORTH);
+        resultsDialog.add(new JScrollPane(resultsTable), BorderLayout.CENTER);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Data", dataPanel);
+        tabs.addTab("Pivot", pivotPanel);
+        tabs.addTab("Chart", chartTab);
+        tabs.addTab("Forecast", forecastPanel);
+
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.add(buttonPanel, BorderLayout.NORTH);
+        topPanel.add(queryPanel, BorderLayout.CENTER);
+
         // Add components to the main window
         add(inputPanel, BorderLayout.WEST);
-        add(buttonPanel, BorderLayout.NORTH);
-        add(monthPanel, BorderLayout.CENTER);
-        add(scrollPane, BorderLayout.EAST);
+        add(topPanel, BorderLayout.NORTH);
+        add(tabs, BorderLayout.CENTER);
+    }
+
+    /**
+     * Renders months of the timeline as e.g. "Mar 2008".
+     */
+    private static class YearMonthRenderer extends DefaultListCellRenderer {
+        private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("MMM yyyy", Locale.ENGLISH);
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, 
+                int index, boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            if (value instanceof YearMonth) {
+                setText(FORMAT.format((YearMonth) value));
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Renders pivot dimensions by their display names.
+     */
+    private static class DimensionRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, 
+                int index, boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            if (value instanceof PivotDimension) {
+                setText(((PivotDimension) value).getDisplayName());
+            }
+            return this;
+        }
     }
 
     /**
@@ -263,6 +606,96 @@ public class View extends JFrame {
         tableModel.addRow(rowData);
     }
 
+    /**
+     * Appends rows to the table with a single insert event, so the row sorter merges them
+     * into its order once instead of after every row.
+     *
+     * @param rows the data of every new row
+     */
+    public void addTableRows(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Vector<Vector> data = tableModel.getDataVector();
+        int first = data.size();
+        data.ensureCapacity(first + rows.size());
+        for (Object[] row : rows) {
+            data.add(new Vector<>(Arrays.asList(row)));
+        }
+        tableModel.fireTableRowsInserted(first, data.size() - 1);
+    }
+
+    /**
+     * Replaces consecutive table rows with a single update event.
+     *
+     * @param first the index of the first row to replace
+     * @param rows the new data of every row
+     */
+    public void updateTableRows(int first, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Vector<Vector> data = tableModel.getDataVector();
+        for (int i = 0; i < rows.size(); i++) {
+            data.set(first + i, new Vector<>(Arrays.asList(rows.get(i))));
+        }
+        tableModel.fireTableRowsUpdated(first, first + rows.size() - 1);
+    }
+
+    /**
+     * Replaces all table rows at once, so the row sorter orders them once instead of after every row.
+     * 
+     * @param rows the data of every row
+     */
+    public void setTableRows(List<Object[]> rows) {
+        Vector<Vector> data = tableModel.getDataVector();
+        data.clear();
+        data.ensureCapacity(rows.size());
+        for (Object[] row : rows) {
+            data.add(new Vector<>(Arrays.asList(row)));
+        }
+        tableModel.fireTableDataChanged();
+    }
+
+    /**
+     * Replaces the forecast table.
+     *
+     * @param columnNames the column headers
+     * @param rows the data of every row
+     */
+    public void setForecastRows(String[] columnNames, List<Object[]> rows) {
+        forecastTableModel.setDataVector(rows.toArray(Object[][]::new), columnNames);
+    }
+
+    /**
+     * Shows query results in a window next to the main one, replacing the results shown
+     * before, so that an estimate can be replaced by the exact answer while it is read.
+     *
+     * @param title the window title
+     * @param status a line above the results, e.g. how precise they are
+     * @param columnNames the column headers
+     * @param rows the data of every row
+     */
+    public void showResults(String title, String status, String[] columnNames, List<Object[]> rows) {
+        resultsDialog.setTitle(title);
+        resultsStatusLabel.setText(status);
+        resultsTableModel.setDataVector(rows.toArray(Object[][]::new), columnNames);
+        if (!resultsDialog.isVisible()) {
+            resultsDialog.setVisible(true);
+        }
+    }
+
+    /**
+     * Sorts and filters the table by precomputed row orders instead of comparing cell values.
+     * Rows of the table must be in the order of the model list the orders refer to.
+     *
+     * @param orders supplies the ascending row positions of a column
+     */
+    public void setRowOrders(Function<EnergyColumn, int[]> orders) {
+        rowSorter = new IndexRowSorter(tableModel, orders);
+        dataTable.setRowSorter(rowSorter);
+    }
+
     /**
      * Clears the input fields.
      */
@@ -274,6 +707,7 @@ public class View extends JFrame {
         yearField.setText("");
         producerComboBox.setSelectedIndex(0);
         monthInputField.setText("");
+        rangeStateField.setText("");
     }
 
     // Getters for all components
@@ -318,6 +752,22 @@ public class View extends JFrame {
         return mostUsedSourceButton;
     }
 
+    /**
+     *
+     * @return
+     */
+    public JButton getExportButton() {
+        return exportButton;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JButton getCompareButton() {
+        return compareButton;
+    }
+
     /**
      *
      * @return
@@ -381,4 +831,172 @@ public class View extends JFrame {
     public JTextField getMonthInputField() {
         return monthInputField;
     }
-}
\ No newline at end of file
+
+    /**
+     *
+     * @return
+     */
+    public JComboBox<PivotDimension> getPivotRowsComboBox() {
+        return pivotRowsComboBox;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JComboBox<PivotDimension> getPivotColumnsComboBox() {
+        return pivotColumnsComboBox;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JComboBox<PivotTable.Normalization> getNormalizationComboBox() {
+        return normalizationComboBox;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JButton getPivotButton() {
+        return pivotButton;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public HeatMapPanel getHeatMapPanel() {
+        return heatMapPanel;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JComboBox<YearMonth> getRangeFromComboBox() {
+        return rangeFromComboBox;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JComboBox<YearMonth> getRangeToComboBox() {
+        return rangeToComboBox;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JTextField getRangeStateField() {
+        return rangeStateField;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JButton getEnergyInRangeButton() {
+        return energyInRangeButton;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JComboBox<PivotDimension> getChartDimensionComboBox() {
+        return chartDimensionComboBox;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JButton getChartButton() {
+        return chartButton;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public ChartPanel getChartPanel() {
+        return chartPanel;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JComboBox<Integer> getForecastMonthsComboBox() {
+        return forecastMonthsComboBox;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JButton getForecastButton() {
+        return forecastButton;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public IndexRowSorter getRowSorter() {
+        return rowSorter;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JTextField getFilterStateField() {
+        return filterStateField;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JComboBox<EnergySource> getFilterSourceComboBox() {
+        return filterSourceComboBox;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JTextField getFilterYearField() {
+        return filterYearField;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JButton getApplyFilterButton() {
+        return applyFilterButton;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public JButton getClearFilterButton() {
+        return clearFilterButton;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getTableRowCount() {
+        return tableModel.getRowCount();
+    }
+}
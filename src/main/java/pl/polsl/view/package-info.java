@@ -4,7 +4,9 @@
  * Features include:
  * - Drop-down lists for energy sources and producers
  * - Data input form with validation
- * - Table display for energy data
+ * - Table display for energy data, sorted and filtered by IndexRowSorter from model permutations
+ * - Chart of monthly production with LTTB downsampling and cached tiles for pan and zoom
+ * - Pivot heat map painted from precomputed cell texts and a fixed color palette
  * - Accessibility features (mnemonics, tooltips, screen reader support)
  * This package follows the MVC pattern and represents the presentation layer.
  * 
@@ -0,0 +1,126 @@
+package com.mycompany.energiawusawlatach2001.controller;
+
+import com.mycompany.energiawusawlatach2001.model.ColumnStore;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumns;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.ModelEvent;
+import com.mycompany.energiawusawlatach2001.model.RejectionReport;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for merging model changes into a bounded number of view refreshes.
+ */
+public class RefreshCoalescerTest {
+
+    /**
+     * Tests that changes between two refreshes merge into one span of updated rows and one
+     * range of appended rows, and that a delete turns them into a reload.
+     */
+    @Test
+    void testModelChanged_MergesRanges() throws InterruptedException {
+        Model model = new Model();
+        BlockingQueue<List<ModelEvent>> refreshes = new LinkedBlockingQueue<>();
+        RefreshCoalescer coalescer = new RefreshCoalescer(model, 20, refreshes::add);
+        try {
+            coalescer.modelChanged(new ModelEvent(ModelEvent.Type.APPENDED, 5, 6));
+            coalescer.modelChanged(new ModelEvent(ModelEvent.Type.UPDATED, 2, 3));
+            coalescer.modelChanged(new ModelEvent(ModelEvent.Type.APPENDED, 6, 9));
+            coalescer.modelChanged(new ModelEvent(ModelEvent.Type.UPDATED, 7, 8));
+            coalescer.modelChanged(new ModelEvent(ModelEvent.Type.UPDATED, 0, 1));
+
+            assertEquals(List.of(new ModelEvent(ModelEvent.Type.UPDATED, 0, 3),
+                new ModelEvent(ModelEvent.Type.APPENDED, 5, 9)), refreshes.poll(5, TimeUnit.SECONDS));
+
+            coalescer.modelChanged(new ModelEvent(ModelEvent.Type.APPENDED, 9, 10));
+            coalescer.modelChanged(new ModelEvent(ModelEvent.Type.REMOVED, 1, 2));
+            coalescer.modelChanged(new ModelEvent(ModelEvent.Type.UPDATED, 0, 1));
+
+            assertEquals(List.of(new ModelEvent(ModelEvent.Type.RELOADED, 0, 5)), refreshes.poll(5, TimeUnit.SECONDS));
+            assertNull(refreshes.poll(200, TimeUnit.MILLISECONDS));
+        } finally {
+            coalescer.stop();
+        }
+    }
+
+    /**
+     * Tests that a feed of 100,000 rows per second, parsed on its own thread and added on
+     * the event thread in batches, reaches the view as a few refreshes per second that
+     * cover every row once, while the event thread keeps answering within a few frames.
+     */
+    @Test
+    void testFeed_100kRowsPerSecond_KeepsEventThreadResponsive() throws Exception {
+        int seconds = 2;
+        int batchRows = 1000;
+        int batches = seconds * 100_000 / batchRows;
+        long batchNanos = TimeUnit.SECONDS.toNanos(1) * batchRows / 100_000;
+        int maxRefreshesPerSecond = 10;
+
+        Model model = new Model(new ColumnStore());
+        RejectionReport report = new RejectionReport();
+        List<ModelEvent> refreshes = new ArrayList<>();
+        double[] shown = new double[1];
+        RefreshCoalescer coalescer = new RefreshCoalescer(model, maxRefreshesPerSecond, changes -> {
+            // read the new rows as the table refresh does
+            for (ModelEvent change : changes) {
+                refreshes.add(change);
+                List<EnergyData> rows = model.getEnergyDataList();
+                for (int position = change.from(); position < change.to(); position++) {
+                    shown[0] += rows.get(position).amount();
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        Thread feed = new Thread(() -> {
+            for (int b = 0; b < batches; b++) {
+                EnergyColumns batch = new EnergyColumns();
+                for (int i = 0; i < batchRows; i++) {
+                    int row = b * batchRows + i;
+                    batch.add(2001 + row % 22, 1 + row % 12, "S" + row % 50, "Coal", "Electric Utilities", 1);
+                }
+                SwingUtilities.invokeLater(() -> model.addAll(batch, report));
+                LockSupport.parkNanos(start + (b + 1) * batchNanos - System.nanoTime());
+            }
+        });
+        feed.start();
+        long maxLatency = 0;
+        while (feed.isAlive()) {
+            long probe = System.nanoTime();
+            SwingUtilities.invokeAndWait(() -> { });
+            maxLatency = Math.max(maxLatency, System.nanoTime() - probe);
+            Thread.sleep(5);
+        }
+        feed.join();
+        SwingUtilities.invokeAndWait(() -> { });
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        Thread.sleep(3 * 1000 / maxRefreshesPerSecond);
+        SwingUtilities.invokeAndWait(() -> { });
+        coalescer.stop();
+
+        int total = batches * batchRows;
+        assertEquals(total, model.getEnergyDataList().size());
+        assertEquals(total, shown[0]);
+        int next = 0;
+        for (ModelEvent refresh : refreshes) {
+            assertEquals(ModelEvent.Type.APPENDED, refresh.type());
+            assertEquals(next, refresh.from());
+            next = refresh.to();
+        }
+        assertEquals(total, next);
+        assertTrue(refreshes.size() <= Math.ceil(elapsed * maxRefreshesPerSecond) + 2,
+            refreshes.size() + " refreshes in " + elapsed + " s");
+        assertTrue(maxLatency < TimeUnit.MILLISECONDS.toNanos(250),
+            "event thread answered after " + maxLatency / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,130 @@
+package com.mycompany.energiawusawlatach2001.export;
+
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.PivotDimension;
+import com.mycompany.energiawusawlatach2001.model.PivotTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for exporting rows and query results to CSV and JSON.
+ */
+public class EnergyExporterTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that exported rows read back to the stored entries, including quoted states
+     * and amounts that need decimals or scientific notation.
+     */
+    @Test
+    void testExportRows_Csv_ReadsBackExactly() throws IOException, InvalidEnergyDataException {
+        Model model = new Model();
+        Random random = new Random(11);
+        for (int i = 0; i < 50_000; i++) {
+            double amount = switch (i % 4) {
+                case 0 -> 1 + random.nextInt(1_000_000);
+                case 1 -> Math.round(random.nextDouble() * 1e5) / 100.0;
+                case 2 -> random.nextDouble() * 1e7;
+                default -> 1e-9 + random.nextDouble() * 1e-3;
+            };
+            model.addEnergyData(new EnergyData(2001 + random.nextInt(22), 1 + random.nextInt(12),
+                i % 1000 == 0 ? "New \"York\", NY" : "S" + random.nextInt(50),
+                EnergySource.values()[random.nextInt(EnergySource.values().length)],
+                EnergyProducer.values()[random.nextInt(EnergyProducer.values().length)], amount,
+                i % 3 == 0 ? 0 : 1 + random.nextInt(100_000), i % 3 == 0 ? null : "County " + random.nextInt(300)));
+        }
+        Path file = directory.resolve("rows.csv");
+
+        assertEquals(model.getEnergyDataList().size(), EnergyExporter.exportRows(model, file, ExportFormat.CSV));
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals("year,month,state,source,producer,amount,plant,county", lines.get(0));
+        List<EnergyData> expected = new ArrayList<>(model.getEnergyDataList());
+        assertEquals(expected.size(), lines.size() - 1);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), parseCsv(lines.get(i + 1)), "line " + (i + 2));
+        }
+    }
+
+    /**
+     * Tests the JSON layout of exported rows, also when there are none.
+     */
+    @Test
+    void testExportRows_Json() throws IOException {
+        Path file = directory.resolve("rows.json");
+        assertEquals(5, EnergyExporter.exportRows(new Model(), file, ExportFormat.JSON));
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(7, lines.size());
+        assertEquals("[", lines.get(0));
+        assertEquals("{\"year\":2001,\"month\":1,\"state\":\"AK\",\"source\":\"COAL\","
+            + "\"producer\":\"ELECTRIC_UTILITIES\",\"amount\":46903,\"plant\":0,\"county\":null},", lines.get(1));
+        assertEquals("]", lines.get(6));
+
+        Model empty = new Model();
+        new ArrayList<>(empty.getEnergyDataList()).forEach(empty::deleteEnergyData);
+        assertEquals(0, EnergyExporter.exportRows(empty, file, ExportFormat.JSON));
+        assertEquals(List.of("[", "]"), Files.readAllLines(file));
+    }
+
+    /**
+     * Tests a query result export in both formats.
+     */
+    @ParameterizedTest(name = "Pivot as {0}")
+    @EnumSource(ExportFormat.class)
+    void testExportPivot(ExportFormat format) throws IOException {
+        Model model = new Model();
+        Path file = directory.resolve("pivot." + format.getExtension());
+        EnergyExporter.exportPivot(model.pivot(PivotDimension.STATE, PivotDimension.PRODUCER),
+            PivotTable.Normalization.NONE, file, format);
+        String text = Files.readString(file);
+        if (format == ExportFormat.CSV) {
+            assertTrue(text.startsWith("State,Electric Utilities,"));
+            assertTrue(text.endsWith("\nTotal,46903,138500,90,0,3000,0,0,0,188493\n"), text);
+        } else {
+            assertTrue(text.contains("{\"State\":\"AK\",\"Electric Utilities\":46903,"), text);
+            assertTrue(text.contains("\"Total\":188493}"), text);
+        }
+    }
+
+    private static EnergyData parseCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted && c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                field.append('"');
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return new EnergyData(Integer.parseInt(fields.get(0)), Integer.parseInt(fields.get(1)), fields.get(2),
+            EnergySource.valueOf(fields.get(3)), EnergyProducer.valueOf(fields.get(4)),
+            Double.parseDouble(fields.get(5)), Integer.parseInt(fields.get(6)),
+            fields.get(7).isEmpty() ? null : fields.get(7));
+    }
+}
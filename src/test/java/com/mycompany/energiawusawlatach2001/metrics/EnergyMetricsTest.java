@@ -0,0 +1,42 @@
+package com.mycompany.energiawusawlatach2001.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the metrics registry.
+ */
+public class EnergyMetricsTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    /**
+     * Tests that the ingestion rate averages the complete seconds of the window, that
+     * reading it changes nothing, and that seconds leaving the window stop counting.
+     */
+    @Test
+    void testIngestionRate_SlidingWindowWithoutSideEffects() {
+        AtomicLong clock = new AtomicLong(5 * SECOND);
+        EnergyMetrics metrics = new EnergyMetrics(clock::get, () -> 0, () -> null, () -> Long.MAX_VALUE);
+        assertEquals(0.0, metrics.getIngestionRowsPerSecond());
+
+        metrics.recordIngested(30);
+        clock.addAndGet(SECOND);
+        metrics.recordIngested(10);
+        clock.addAndGet(SECOND);
+        metrics.recordIngested(500);
+
+        // seconds 0 and 1 are complete, the running second 2 is left out
+        assertEquals(20.0, metrics.getIngestionRowsPerSecond());
+        assertEquals(20.0, metrics.getIngestionRowsPerSecond());
+
+        clock.addAndGet((EnergyMetrics.RATE_WINDOW_SECONDS + 1) * SECOND);
+        assertEquals(0.0, metrics.getIngestionRowsPerSecond());
+        clock.addAndGet(-SECOND);
+        assertEquals(500.0 / EnergyMetrics.RATE_WINDOW_SECONDS, metrics.getIngestionRowsPerSecond());
+        assertEquals(540, metrics.getRowsIngested());
+    }
+}
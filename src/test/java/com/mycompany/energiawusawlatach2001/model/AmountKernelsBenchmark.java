@@ -0,0 +1,59 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import java.util.Random;
+
+/**
+ * Throughput benchmark of the aggregation kernels, run manually on the target machine:
+ * <pre>
+ * java --add-modules jdk.incubator.vector -cp target/classes:target/test-classes \
+ *     com.mycompany.energiawusawlatach2001.model.AmountKernelsBenchmark
+ * </pre>
+ * Reports rows per nanosecond for the scalar and the SIMD kernels on one segment-sized batch.
+ */
+public class AmountKernelsBenchmark {
+
+    private static final int ROWS = ColumnStore.SEGMENT_ROWS;
+    private static final int ITERATIONS = 20_000;
+
+    /**
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        int[] months = new int[ROWS];
+        int[] states = new int[ROWS];
+        double[] amounts = new double[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            months[i] = 1 + random.nextInt(12);
+            states[i] = random.nextInt(4);
+            amounts[i] = 1 + random.nextInt(100000);
+        }
+        AmountKernels[] implementations = {new ScalarAmountKernels(), AmountKernels.INSTANCE};
+        for (int round = 0; round < 3; round++) {
+            for (AmountKernels kernels : implementations) {
+                double sink = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    sink += kernels.sumWhere(states, i & 3, amounts, ROWS);
+                }
+                long sumNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    sink += kernels.sumWhere(months, 3, states, i & 3, amounts, ROWS);
+                }
+                long filteredNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    sink += kernels.maxWhere(states, i & 3, amounts, ROWS);
+                }
+                long maxNanos = System.nanoTime() - start;
+                System.out.printf("%-12s sumWhere %.2f  sumWhere2 %.2f  maxWhere %.2f rows/ns (%s)%n",
+                    kernels.name(), rate(sumNanos), rate(filteredNanos), rate(maxNanos), sink > 0 ? "ok" : "");
+            }
+        }
+    }
+
+    private static double rate(long nanos) {
+        return (double) ROWS * ITERATIONS / nanos;
+    }
+}
@@ -0,0 +1,56 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests comparing the SIMD aggregation kernels with the scalar reference.
+ * Row counts that are not a multiple of the vector length exercise the scalar tail loops.
+ */
+public class AmountKernelsTest {
+
+    private final AmountKernels scalar = new ScalarAmountKernels();
+    private final AmountKernels vector = new VectorAmountKernels();
+
+    /**
+     * Tests that masked sums, minima and maxima match the scalar kernels.
+     */
+    @ParameterizedTest(name = "Kernels on {0} rows")
+    @ValueSource(ints = {0, 1, 7, 64, 1001, 8192})
+    void testVectorKernels_MatchScalar(int count) {
+        Random random = new Random(count);
+        int[] months = new int[count];
+        int[] states = new int[count];
+        double[] amounts = new double[count];
+        for (int i = 0; i < count; i++) {
+            months[i] = 1 + random.nextInt(12);
+            states[i] = random.nextInt(4);
+            amounts[i] = 1 + random.nextInt(100000);
+        }
+
+        assertEquals(scalar.sum(amounts, count / 3, count), vector.sum(amounts, count / 3, count));
+        for (int state = 0; state < 4; state++) {
+            assertEquals(scalar.sumWhere(states, state, amounts, count),
+                vector.sumWhere(states, state, amounts, count));
+            assertEquals(scalar.sumWhere(months, 3, states, state, amounts, count),
+                vector.sumWhere(months, 3, states, state, amounts, count));
+            assertEquals(scalar.minWhere(states, state, amounts, count),
+                vector.minWhere(states, state, amounts, count));
+            assertEquals(scalar.maxWhere(states, state, amounts, count),
+                vector.maxWhere(states, state, amounts, count));
+        }
+    }
+
+    /**
+     * Tests that the SIMD kernels are selected when the test JVM has the incubator module.
+     */
+    @Test
+    void testInstance_UsesVectorKernelsWhenModulePresent() {
+        assertTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+        assertTrue(AmountKernels.INSTANCE.name().startsWith("vector"), AmountKernels.INSTANCE.name());
+    }
+}
@@ -0,0 +1,71 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the online anomaly scores.
+ */
+public class AnomalyDetectorTest {
+
+    /**
+     * Tests that the robust score over the sliding window matches a median and median
+     * absolute deviation computed from scratch, including repeated values and window
+     * sizes below, at and past the window length.
+     */
+    @ParameterizedTest(name = "Score after {0} values")
+    @ValueSource(ints = {5, 6, 16, 17, 200})
+    void testScore_MatchesWindowMedianFromScratch(int values) {
+        AnomalyDetector detector = new AnomalyDetector(AnomalyDetector.DEFAULT_THRESHOLD);
+        Random random = new Random(values);
+        List<Double> history = new ArrayList<>();
+        for (int i = 0; i < values; i++) {
+            double amount = random.nextInt(4) == 0 ? 100 : 50 + random.nextInt(100);
+            detector.learn(3, 2, 7, amount);
+            history.add(Math.log(amount));
+        }
+
+        double[] window = history.subList(Math.max(0, values - AnomalyDetector.WINDOW), values).stream()
+            .mapToDouble(Double::doubleValue).sorted().toArray();
+        double median = median(window);
+        double[] deviations = Arrays.stream(window).map(value -> Math.abs(value - median)).sorted().toArray();
+        double spread = Math.max(1.4826 * median(deviations), 0.05);
+        for (double amount : new double[]{1, 80, 1000}) {
+            assertEquals(Math.abs(Math.log(amount) - median) / spread, detector.score(3, 2, 7, amount), 1e-9);
+        }
+        assertEquals(Math.exp(median), detector.expectedAmount(3, 2, 7), 1e-9);
+        assertEquals(0, detector.score(3, 2, 8, 1000));
+        assertEquals(0, detector.score(40, 2, 7, 1000));
+    }
+
+    /**
+     * Tests that a ten times typo stands out from ordinary year-to-year variation
+     * while the variation itself does not.
+     */
+    @Test
+    void testScore_TenTimesTypo() {
+        AnomalyDetector detector = new AnomalyDetector(AnomalyDetector.DEFAULT_THRESHOLD);
+        Random random = new Random(41);
+        for (int year = 0; year < 20; year++) {
+            detector.learn(0, 0, 1, 1000 * (0.8 + 0.4 * random.nextDouble()));
+        }
+
+        assertTrue(detector.score(0, 0, 1, 1150) < AnomalyDetector.DEFAULT_THRESHOLD);
+        assertTrue(detector.score(0, 0, 1, 10_000) > AnomalyDetector.DEFAULT_THRESHOLD);
+        assertTrue(detector.score(0, 0, 1, 100) > AnomalyDetector.DEFAULT_THRESHOLD);
+        assertTrue(detector.zScore(0, 0, 1, 10_000) > AnomalyDetector.DEFAULT_THRESHOLD);
+    }
+
+    private static double median(double[] sorted) {
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+}
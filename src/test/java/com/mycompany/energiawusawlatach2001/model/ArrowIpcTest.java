@@ -0,0 +1,212 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the Arrow IPC import and export of {@link Model}, against golden files
+ * encoded by {@code arrow_goldens.py} next to them, which follows the format specification
+ * independently of {@link ArrowIpc}. {@code sample.arrow} and {@code sample.arrows} hold the
+ * sample data of {@link Model#Model()} in the file and stream format; {@code pandas.arrows}
+ * has the layout a pandas DataFrame gets, with int64 years and months, plain utf8 states and
+ * producers, an int8-indexed source dictionary sent in two parts and an extra column, and
+ * without the plant and county columns. The output of the writer is checked for its framing
+ * and by reading it back, not against bytes it wrote itself.
+ */
+public class ArrowIpcTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests the framing of the sample data as written: every message starts with the
+     * continuation marker and an 8-byte aligned metadata length and is followed by the body
+     * length its metadata gives, the schema comes first, then the four dictionaries and the
+     * record batch, then the end-of-stream marker; the file format wraps the same stream in
+     * the magic and a footer whose blocks point at the dictionaries and the record batch.
+     */
+    @Test
+    void testSaveArrow_Framing() throws IOException {
+        Model model = new Model();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.writeArrowStream(Channels.newChannel(out));
+        byte[] stream = out.toByteArray();
+        ByteBuffer buffer = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+        List<Byte> types = new ArrayList<>();
+        List<long[]> blocks = new ArrayList<>();
+        while (true) {
+            int start = buffer.position();
+            assertEquals(0, start % 8);
+            assertEquals(-1, buffer.getInt());
+            int metadataLength = buffer.getInt();
+            if (metadataLength == 0) {
+                break;
+            }
+            assertEquals(0, metadataLength % 8);
+            ByteBuffer metadata = buffer.slice(buffer.position(), metadataLength).order(ByteOrder.LITTLE_ENDIAN);
+            byte type = metadata.get(field(metadata, 1));
+            long bodyLength = metadata.getLong(field(metadata, 3));
+            assertEquals(0, bodyLength % 8);
+            types.add(type);
+            if (type != 1) {
+                blocks.add(new long[] {8L + start, 8 + metadataLength, bodyLength});
+            }
+            buffer.position(buffer.position() + metadataLength + (int) bodyLength);
+        }
+        assertEquals(stream.length, buffer.position());
+        assertEquals(List.of((byte) 1, (byte) 2, (byte) 2, (byte) 2, (byte) 2, (byte) 3), types);
+
+        Path path = directory.resolve("sample.arrow");
+        model.saveArrow(path);
+        byte[] file = Files.readAllBytes(path);
+        assertArrayEquals("ARROW1\0\0".getBytes(StandardCharsets.US_ASCII), Arrays.copyOf(file, 8));
+        assertArrayEquals(stream, Arrays.copyOfRange(file, 8, 8 + stream.length));
+        assertArrayEquals("ARROW1".getBytes(StandardCharsets.US_ASCII),
+            Arrays.copyOfRange(file, file.length - 6, file.length));
+        ByteBuffer tail = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+        int footerLength = tail.getInt(file.length - 10);
+        assertEquals(8 + stream.length + footerLength + 10, file.length);
+        ByteBuffer footer = tail.slice(8 + stream.length, footerLength).order(ByteOrder.LITTLE_ENDIAN);
+        List<long[]> footerBlocks = new ArrayList<>();
+        for (int vector : new int[] {2, 3}) {
+            int position = field(footer, vector);
+            position += footer.getInt(position);
+            for (int i = 0; i < footer.getInt(position); i++) {
+                int block = position + 4 + 24 * i;
+                footerBlocks.add(new long[] {footer.getLong(block), footer.getInt(block + 8),
+                    footer.getLong(block + 16)});
+            }
+        }
+        assertEquals(blocks.size(), footerBlocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            assertArrayEquals(blocks.get(i), footerBlocks.get(i));
+        }
+    }
+
+    /**
+     * Tests that both golden files load back into the sample data.
+     */
+    @Test
+    void testLoadArrow_GoldenFiles() throws IOException, URISyntaxException {
+        List<EnergyData> expected = new ArrayList<>(new Model().getEnergyDataList());
+        for (String name : List.of("sample.arrow", "sample.arrows")) {
+            Model model = new Model(new ColumnStore());
+            model.loadArrow(golden(name));
+            assertEquals(expected, new ArrayList<>(model.getEnergyDataList()), name);
+        }
+    }
+
+    /**
+     * Tests reading the independently encoded stream with other types and column order.
+     */
+    @Test
+    void testLoadArrow_PandasLayout() throws IOException, URISyntaxException {
+        Model model = new Model(new ColumnStore());
+        model.loadArrow(golden("pandas.arrows"));
+        assertEquals(List.of(
+            new EnergyData(2010, 3, "TX", EnergySource.SOLAR, EnergyProducer.ELECTRIC_UTILITIES, 1500.5),
+            new EnergyData(2011, 12, "NY", EnergySource.COAL, EnergyProducer.NUCLEAR_POWER_PLANTS, 20.25),
+            new EnergyData(2022, 1, "TX", EnergySource.WIND, EnergyProducer.FOSSIL_FUEL_PLANTS, 7),
+            new EnergyData(2001, 6, "WA", EnergySource.NATURAL_GAS, EnergyProducer.RENEWABLE_ENERGY_COMPANIES, 42),
+            new EnergyData(2015, 7, "NY", EnergySource.COAL, EnergyProducer.GEOTHERMAL_PLANTS, 0.125)
+        ), new ArrayList<>(model.getEnergyDataList()));
+        assertEquals(1507.5, model.calculateMaxEnergy().get("TX") + model.calculateMinEnergy().get("TX"));
+    }
+
+    /**
+     * Tests that many segments with deleted rows survive a round trip through both formats.
+     */
+    @Test
+    void testRoundTrip_ManySegments() throws IOException, InvalidEnergyDataException {
+        Model model = new Model(new ColumnStore());
+        Random random = new Random(38);
+        String[] states = {"AK", "CA", "NY", "TX", "WA", "Rhode Island"};
+        for (int i = 0; i < 3 * ColumnStore.SEGMENT_ROWS + 123; i++) {
+            model.addEnergyData(new EnergyData(2001 + random.nextInt(22), 1 + random.nextInt(12),
+                states[random.nextInt(states.length)],
+                EnergySource.values()[random.nextInt(EnergySource.values().length)],
+                EnergyProducer.values()[random.nextInt(EnergyProducer.values().length)],
+                random.nextInt(1_000_000) / 100.0 + 0.01, i % 2 == 0 ? 0 : 1 + random.nextInt(Model.MAX_PLANT),
+                i % 2 == 0 ? null : "County " + random.nextInt(40)));
+        }
+        List<EnergyData> rows = new ArrayList<>(model.getEnergyDataList());
+        for (int i = 0; i < rows.size(); i += 1237) {
+            model.deleteEnergyData(rows.get(i));
+        }
+        List<EnergyData> expected = new ArrayList<>(model.getEnergyDataList());
+
+        Path file = directory.resolve("data.arrow");
+        model.saveArrow(file);
+        Model fromFile = new Model(new ColumnStore());
+        fromFile.loadArrow(file);
+        assertEquals(expected, new ArrayList<>(fromFile.getEnergyDataList()));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        model.writeArrowStream(Channels.newChannel(stream));
+        Model fromStream = new Model(new ColumnStore());
+        fromStream.readArrowStream(Channels.newChannel(new ByteArrayInputStream(stream.toByteArray())));
+        assertEquals(expected, new ArrayList<>(fromStream.getEnergyDataList()));
+        // the loaded rows lie in fewer segments, so the sums are added up in another order
+        Map<String, Double> totals = fromStream.getEnergyByStateForMonth(5);
+        model.getEnergyByStateForMonth(5).forEach((state, total) -> assertEquals(total, totals.get(state), 1e-6));
+    }
+
+    /**
+     * Tests that truncated or invalid data is rejected and leaves the model unchanged.
+     */
+    @Test
+    void testLoadArrow_RejectsInvalidData() throws IOException {
+        Model model = new Model();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.writeArrowStream(Channels.newChannel(out));
+        byte[] written = out.toByteArray();
+        List<EnergyData> before = new ArrayList<>(model.getEnergyDataList());
+
+        Path truncated = directory.resolve("truncated.arrows");
+        Files.write(truncated, Arrays.copyOf(written, written.length - 100));
+        assertThrows(IOException.class, () -> model.loadArrow(truncated));
+
+        // the last record batch body ends with the amounts, two padded int columns of plants
+        // and counties, then the end-of-stream marker
+        byte[] negative = written.clone();
+        negative[written.length - 8 - 48 - 1] = (byte) 0xC0;
+        Path invalid = directory.resolve("negative.arrows");
+        Files.write(invalid, negative);
+        IOException exception = assertThrows(IOException.class, () -> model.loadArrow(invalid));
+        assertTrue(exception.getMessage().contains("row 4"), exception.getMessage());
+
+        assertThrows(IOException.class, () -> model.readArrowStream(
+            Channels.newChannel(new ByteArrayInputStream("year,month\n".getBytes()))));
+        assertEquals(before, new ArrayList<>(model.getEnergyDataList()));
+    }
+
+    /**
+     * Finds a field of the root table of a flatbuffer, as the Arrow metadata is written.
+     *
+     * @return the position of the field, which must be present
+     */
+    private static int field(ByteBuffer flatbuffer, int field) {
+        int table = flatbuffer.getInt(0);
+        int vtable = table - flatbuffer.getInt(table);
+        int offset = flatbuffer.getShort(vtable + 4 + 2 * field);
+        assertNotEquals(0, offset, "field " + field);
+        return table + offset;
+    }
+
+    private static Path golden(String name) throws URISyntaxException {
+        return Path.of(ArrowIpcTest.class.getResource(name).toURI());
+    }
+}
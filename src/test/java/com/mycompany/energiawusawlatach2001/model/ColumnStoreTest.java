@@ -0,0 +1,269 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the compressed columnar store and its encodings.
+ */
+public class ColumnStoreTest {
+
+    /**
+     * Tests that every encoding decodes back to the original values.
+     * Run lengths cover constant, sorted and random columns.
+     */
+    @ParameterizedTest(name = "Integer column with runs of {0}")
+    @ValueSource(ints = {1, 7, 1000, 10000})
+    void testEncodedIntColumn_RoundTrip(int runLength) {
+        Random random = new Random(runLength);
+        int[] values = new int[ColumnStore.SEGMENT_ROWS];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % runLength == 0 || i == 0 ? random.nextInt(51) : values[i - 1];
+        }
+        EncodedIntColumn column = EncodedIntColumn.encode(values, values.length);
+        int[] decoded = new int[values.length];
+        column.decode(decoded);
+
+        assertArrayEquals(values, decoded);
+        assertEquals(values[values.length - 1], column.get(values.length - 1));
+        long[] counts = new long[51];
+        column.countByValue(counts);
+        assertEquals(values.length, Arrays.stream(counts).sum());
+    }
+
+    /**
+     * Tests that XOR compressed amounts decode bit for bit, including repeats and extremes.
+     */
+    @ParameterizedTest(name = "Gorilla column with seed {0}")
+    @ValueSource(ints = {1, 2, 3})
+    void testGorillaDoubleColumn_RoundTrip(int seed) {
+        Random random = new Random(seed);
+        double[] values = new double[ColumnStore.SEGMENT_ROWS];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = switch (i % 5) {
+                case 0 -> Math.round(random.nextDouble() * 100000);
+                case 1 -> values[i - 1];
+                case 2 -> random.nextDouble() * 1e9;
+                case 3 -> Double.MIN_VALUE;
+                default -> Double.MAX_VALUE;
+            };
+        }
+        double[] decoded = new double[values.length];
+        GorillaDoubleColumn.encode(values, values.length).decode(decoded);
+
+        assertArrayEquals(values, decoded);
+    }
+
+    /**
+     * Tests that sealed segments and the tail return the rows in insertion order
+     * and that typical sorted data compresses at least four times.
+     */
+    @Test
+    void testAppend_SealsSegmentsAndCompresses() {
+        ColumnStore store = new ColumnStore();
+        List<EnergyData> expected = sortedRows(3 * ColumnStore.SEGMENT_ROWS + 17);
+        expected.forEach(store::append);
+
+        assertEquals(expected.size(), store.size());
+        assertEquals(expected, iterate(store));
+        assertEquals(expected.get(ColumnStore.SEGMENT_ROWS + 5), store.row(ColumnStore.SEGMENT_ROWS + 5));
+
+        ColumnBatch batch = new ColumnBatch(ColumnStore.SEGMENT_ROWS);
+        expected.stream().limit(ColumnStore.SEGMENT_ROWS).forEach(data -> batch.add(data.year(), data.month(),
+            store.dictionary().lookup(data.state()), data.source().ordinal(), data.producer().ordinal(), data.amount(),
+            0, 0));
+        EncodedSegment segment = EncodedSegment.encode(batch, batch.size());
+        long primitiveBytes = (long) batch.size() * (Short.BYTES + 4 * Byte.BYTES + Double.BYTES);
+        assertTrue(segment.sizeInBytes() * 4 <= primitiveBytes,
+            "segment uses " + segment.sizeInBytes() + " bytes, primitive columns " + primitiveBytes);
+    }
+
+    /**
+     * Tests that a saved store loads back with identical rows and query results,
+     * plant-level rows with their plants and counties included.
+     */
+    @Test
+    void testSaveAndLoad_RoundTrip(@TempDir Path directory) throws IOException, InvalidEnergyDataException {
+        Model model = new Model();
+        for (EnergyData data : sortedRows(ColumnStore.SEGMENT_ROWS + 100)) {
+            model.addEnergyData(data);
+        }
+        for (int plant = 1; plant <= 300; plant++) {
+            model.addEnergyData(new EnergyData(2005, 1 + plant % 12, "TX", EnergySource.WIND,
+                EnergyProducer.ELECTRIC_UTILITIES, plant, plant * 40_000, plant % 3 == 0 ? null : "County " + plant % 7));
+        }
+        Path file = directory.resolve("energy.bin");
+        model.save(file);
+
+        Model loaded = new Model();
+        loaded.load(file);
+
+        assertEquals(iterate(model.getStore()), iterate(loaded.getStore()));
+        assertEquals(model.calculateMaxEnergy(), loaded.calculateMaxEnergy());
+        assertEquals(model.getEnergyByStateForMonth(3), loaded.getEnergyByStateForMonth(3));
+    }
+
+    /**
+     * Tests that deleted rows disappear from iteration, positions and zone maps on both
+     * backends, and that compaction shrinks segments without changing row ids, also after a reload.
+     */
+    @Test
+    void testDelete_SkipsTombstonesAndCompacts(@TempDir Path directory) throws IOException {
+        List<EnergyData> rows = sortedRows(2 * ColumnStore.SEGMENT_ROWS + 300);
+        ColumnStore store = new ColumnStore();
+        rows.forEach(store::append);
+        try (OffHeapColumnStore offHeap = OffHeapColumnStore.allocate()) {
+            rows.forEach(offHeap::append);
+            List<EnergyData> expected = new ArrayList<>();
+            for (int rowId = 0; rowId < rows.size(); rowId++) {
+                boolean sealedOrTail = rowId < ColumnStore.SEGMENT_ROWS || rowId >= 2 * ColumnStore.SEGMENT_ROWS;
+                if (rowId % 3 == 0 && sealedOrTail) {
+                    assertTrue(store.delete(rowId));
+                    assertTrue(offHeap.delete(rowId));
+                } else {
+                    expected.add(rows.get(rowId));
+                }
+            }
+            assertFalse(store.delete(0));
+
+            assertEquals(expected, iterate(store));
+            assertEquals(expected, iterate(offHeap));
+            assertEquals(expected.size(), store.size());
+            assertEquals(expected.get(5000), store.row(store.rowIdAt(5000)));
+            assertEquals(store.rowIdAt(5000), offHeap.rowIdAt(5000));
+            assertThrows(NoSuchElementException.class, () -> store.row(3));
+            double liveSum = expected.stream().mapToDouble(EnergyData::amount).sum();
+            assertEquals(liveSum, summarySum(store), 1e-6);
+            assertEquals(liveSum, summarySum(offHeap), 1e-6);
+        }
+
+        long uncompactedBytes = store.sizeInBytes();
+        store.compact();
+        assertTrue(store.sizeInBytes() < uncompactedBytes);
+        assertEquals(rows.get(1), store.row(1));
+        assertTrue(store.isDeleted(3));
+
+        Path file = directory.resolve("energy.bin");
+        store.writeTo(file);
+        ColumnStore loaded = ColumnStore.readFrom(file);
+        assertEquals(iterate(store), iterate(loaded));
+        assertEquals(store.size(), loaded.size());
+        assertEquals(rows.get(2 * ColumnStore.SEGMENT_ROWS + 1), loaded.row(2 * ColumnStore.SEGMENT_ROWS + 1));
+    }
+
+    /**
+     * Tests that replaced amounts of a sealed segment are kept as patches without re-encoding
+     * the amount column, that rows, zone maps and saved files see them, and that too many
+     * patches or compaction fold them into the column.
+     */
+    @Test
+    void testReplaceAmount_PatchesSealedSegment(@TempDir Path directory) throws IOException {
+        List<EnergyData> rows = new ArrayList<>(sortedRows(ColumnStore.SEGMENT_ROWS + 10));
+        ColumnStore store = new ColumnStore();
+        rows.forEach(store::append);
+        for (int rowId = 0; rowId < EncodedSegment.MAX_AMOUNT_PATCHES; rowId++) {
+            int patched = rowId * 61 % ColumnStore.SEGMENT_ROWS;
+            assertEquals(rows.get(patched).amount(), store.replaceAmount(patched, patched + 0.5));
+            rows.set(patched, withAmount(rows.get(patched), patched + 0.5));
+        }
+        assertEquals(rows.get(61).amount(), store.replaceAmount(61, 7));
+        rows.set(61, withAmount(rows.get(61), 7));
+
+        assertEquals(rows, iterate(store));
+        assertEquals(rows.get(122), store.row(122));
+        assertEquals(rows.stream().mapToDouble(EnergyData::amount).sum(), summarySum(store), 1e-6);
+
+        Path file = directory.resolve("energy.bin");
+        store.writeTo(file);
+        assertEquals(rows, iterate(ColumnStore.readFrom(file)));
+
+        assertEquals(rows.get(5).amount(), store.replaceAmount(5, 99));
+        rows.set(5, withAmount(rows.get(5), 99));
+        store.compact();
+        assertEquals(rows, iterate(store));
+    }
+
+    /**
+     * Tests that a snapshot keeps the rows, row ids and zone maps it was taken with while
+     * the store goes on being appended to, deleted from and updated on another thread.
+     */
+    @Test
+    void testSnapshot_UnaffectedByLaterWrites() throws InterruptedException {
+        List<EnergyData> rows = sortedRows(2 * ColumnStore.SEGMENT_ROWS + 300);
+        ColumnStore store = new ColumnStore();
+        rows.subList(0, ColumnStore.SEGMENT_ROWS + 200).forEach(store::append);
+        store.delete(7);
+        store.delete(ColumnStore.SEGMENT_ROWS + 3);
+        ColumnStore snapshot = store.snapshot();
+        List<EnergyData> expected = iterate(store);
+        double expectedSum = summarySum(store);
+
+        Thread writer = new Thread(() -> {
+            rows.subList(ColumnStore.SEGMENT_ROWS + 200, rows.size()).forEach(store::append);
+            store.replaceAmount(1, 5);
+            store.replaceAmount(ColumnStore.SEGMENT_ROWS + 1, 5);
+            for (int rowId = 8; rowId < ColumnStore.SEGMENT_ROWS; rowId += 2) {
+                store.delete(rowId);
+            }
+        });
+        writer.start();
+        for (int i = 0; i < 20; i++) {
+            assertEquals(expectedSum, summarySum(snapshot), 1e-6);
+        }
+        writer.join();
+
+        assertEquals(expected, iterate(snapshot));
+        assertEquals(expected.size(), snapshot.size());
+        assertEquals(rows.get(ColumnStore.SEGMENT_ROWS + 1), snapshot.row(ColumnStore.SEGMENT_ROWS + 1));
+        assertTrue(snapshot.isDeleted(7));
+        assertNotEquals(iterate(store), iterate(snapshot));
+    }
+
+    private static EnergyData withAmount(EnergyData row, double amount) {
+        return new EnergyData(row.year(), row.month(), row.state(), row.source(), row.producer(), amount,
+            row.plant(), row.county());
+    }
+
+    private static double summarySum(EnergyStore store) {
+        double[] sum = new double[1];
+        store.scan(0, new SegmentVisitor() {
+            @Override
+            public boolean accept(SegmentSummary summary) {
+                sum[0] += summary.getSum();
+                return false;
+            }
+
+            @Override
+            public void visit(ColumnBatch batch) {
+            }
+        });
+        return sum[0];
+    }
+
+    private static List<EnergyData> sortedRows(int count) {
+        Random random = new Random(42);
+        String[] states = {"AK", "CA", "NY", "TX"};
+        List<EnergyData> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int bucket = i / 400;
+            rows.add(new EnergyData(2001 + bucket / 12 % 22, 1 + bucket % 12, states[i / 100 % states.length],
+                EnergySource.values()[i / 20 % EnergySource.values().length],
+                EnergyProducer.values()[i / 4 % EnergyProducer.values().length],
+                Math.round(1000 + random.nextDouble() * 50000)));
+        }
+        return rows;
+    }
+
+    private static List<EnergyData> iterate(EnergyStore store) {
+        List<EnergyData> rows = new ArrayList<>();
+        store.forEach(rows::add);
+        return rows;
+    }
+}
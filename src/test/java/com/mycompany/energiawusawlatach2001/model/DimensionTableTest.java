@@ -0,0 +1,107 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for reference tables and joining them with the energy data.
+ */
+public class DimensionTableTest {
+
+    private static final String STATES = """
+        state,population,capacity_mw,region
+        S0,1000,10,West
+        S1,2000,,West
+        "S2",500,5,"North, East"
+        S3,0,0,North
+        S9,7000,70,South
+        """;
+
+    /**
+     * Tests that columns are typed by their values, quoted fields are unquoted and the
+     * table written back as CSV parses into the same table.
+     */
+    @Test
+    void testParse() throws IOException {
+        DimensionTable table = DimensionTable.parse(STATES);
+
+        assertEquals(5, table.size());
+        assertEquals("S2", table.getState(2));
+        assertEquals(List.of("population", "capacity_mw", "region"), table.getAttributes());
+        assertTrue(table.isNumeric("capacity_mw"));
+        assertFalse(table.isNumeric("region"));
+        assertTrue(Double.isNaN(table.getNumbers("capacity_mw")[1]));
+        assertEquals(List.of("West", "North, East", "North", "South"), table.getLabels("region"));
+        assertThrows(IllegalArgumentException.class, () -> table.getNumbers("region"));
+        assertThrows(IOException.class, () -> DimensionTable.parse("state,x\nS0,1\nS0,2\n"));
+        assertThrows(IOException.class, () -> DimensionTable.parse("state,x\nS0,1,2\n"));
+
+        DimensionTable copy = DimensionTable.parse(table.toCsv());
+        assertEquals(table.getAttributes(), copy.getAttributes());
+        assertEquals(table.getLabels("region"), copy.getLabels("region"));
+        assertArrayEquals(table.getNumbers("capacity_mw"), copy.getNumbers("capacity_mw"));
+        assertEquals(table.toCsv(), copy.toCsv());
+    }
+
+    /**
+     * Tests that joined aggregates equal totals computed row by row with a map lookup.
+     */
+    @ParameterizedTest(name = "Energy per {0} by {1}")
+    @CsvSource(nullValues = "-", value = {"-,-", "population,-", "capacity_mw,-", "population,region", "-,region"})
+    void testGetEnergyPer_MatchesRowByRowJoin(String per, String groupBy) throws IOException, InvalidEnergyDataException {
+        DimensionTable table = DimensionTable.parse(STATES);
+        Model model = new Model(new ColumnStore());
+        Random random = new Random(43);
+        for (int i = 0; i < 30_000; i++) {
+            model.addEnergyData(new EnergyData(2001 + random.nextInt(22), 1 + random.nextInt(12),
+                "S" + random.nextInt(6), EnergySource.values()[random.nextInt(EnergySource.values().length)],
+                EnergyProducer.values()[random.nextInt(EnergyProducer.values().length)], 1 + random.nextInt(1000)));
+        }
+        YearMonth from = YearMonth.of(2004, 5);
+        YearMonth to = YearMonth.of(2015, 2);
+
+        Map<String, Integer> rows = new HashMap<>();
+        for (int row = 0; row < table.size(); row++) {
+            rows.put(table.getState(row), row);
+        }
+        String[] groups = new String[table.size()];
+        Map<String, Double> divisors = new HashMap<>();
+        for (int row = 0; row < table.size(); row++) {
+            groups[row] = groupBy == null ? table.getState(row) : table.getLabels(groupBy).get(table.getCodes(groupBy)[row]);
+            divisors.merge(groups[row], per == null ? 1 : table.getNumbers(per)[row], Double::sum);
+        }
+        Map<String, Double> totals = new HashMap<>();
+        for (EnergyData data : model.getEnergyDataList()) {
+            YearMonth month = YearMonth.of(data.year(), data.month());
+            Integer row = rows.get(data.state());
+            if (row != null && !month.isBefore(from) && !month.isAfter(to)) {
+                totals.merge(groups[row], data.amount(), Double::sum);
+            }
+        }
+        Map<String, Double> expected = new HashMap<>();
+        totals.forEach((group, total) -> {
+            if (per == null) {
+                expected.put(group, total);
+            } else if (divisors.get(group) > 0) {
+                expected.put(group, total / divisors.get(group));
+            }
+        });
+
+        Map<String, Double> actual = model.getEnergyPer(table, per, groupBy, from, to);
+
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((group, value) -> assertEquals(value, actual.get(group), Math.abs(value) * 1e-12));
+        assertFalse(actual.containsKey("S5"));
+        assertFalse(actual.containsKey("S9"));
+    }
+}
@@ -1,12 +1,20 @@
 package com.mycompany.energiawusawlatach2001.model;
 
+import com.mycompany.energiawusawlatach2001.metrics.MemoryFootprint;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Stream;
 import static org.junit.jupiter.api.Assertions.*;
@@ -107,6 +115,842 @@ public class ModelTest {
         });
     }
     
+    /**
+     * Tests that accepted and rejected rows are counted in the metrics registry.
+     * Each invalid row increments the rejection counter exactly once.
+     */
+    @ParameterizedTest(name = "Metrics after {0} invalid rows")
+    @ValueSource(ints = {0, 1, 3})
+    void testMetrics_CountIngestedAndRejectedRows(int invalidRows) throws InvalidEnergyDataException {
+        model.addEnergyData(new EnergyData(2010, 1, "CA", EnergySource.SOLAR,
+            EnergyProducer.RENEWABLE_ENERGY_COMPANIES, 1000.0));
+        for (int i = 0; i < invalidRows; i++) {
+            assertThrows(InvalidEnergyDataException.class, () -> model.addEnergyData(new EnergyData(
+                2010, 13, "CA", EnergySource.SOLAR, EnergyProducer.RENEWABLE_ENERGY_COMPANIES, 1000.0)));
+        }
+        model.sortProducersByTotalEnergy();
+
+        assertEquals(1, model.getMetrics().getRowsIngested());
+        assertEquals(invalidRows, model.getMetrics().getRowsRejected());
+        assertEquals(model.getEnergyDataList().size(), model.getMetrics().getStoreRows());
+        assertEquals(1, model.getMetrics().queryLatency("sortProducersByTotalEnergy").getCount());
+    }
+
+    /**
+     * Tests that bulk validation accepts and rejects the same rows as the single-row path,
+     * with the same rule and message, and numbers rows across batches.
+     */
+    @ParameterizedTest(name = "Bulk load in batches of {0} rows")
+    @ValueSource(ints = {1, 7, 1000})
+    void testAddAll_ReportsRejectionsLikeSingleRowValidation(int batchSize) {
+        String[] sources = {"Coal", "wind", "Nuclear", null};
+        String[] producers = {"Electric Utilities", "ELECTRIC UTILITIES", "Unknown"};
+        String[] states = {"CA", "", " ", null};
+        Model bulk = new Model(new ColumnStore());
+        Model single = new Model(new ColumnStore());
+        RejectionReport report = new RejectionReport();
+        EnergyColumns batch = new EnergyColumns();
+        Random random = new Random(40);
+        List<String> expectedReasons = new ArrayList<>();
+        int rows = 500;
+        for (int row = 0; row < rows; row++) {
+            int year = 2000 + random.nextInt(24);
+            int month = random.nextInt(14);
+            String state = states[random.nextInt(10) < 7 ? 0 : random.nextInt(states.length)];
+            String source = sources[random.nextInt(10) < 7 ? 0 : random.nextInt(sources.length)];
+            String producer = producers[random.nextInt(10) < 7 ? 0 : random.nextInt(producers.length)];
+            double amount = random.nextInt(10) - 1;
+            try {
+                single.addEnergyData(new EnergyData(year, month, state, EnergySource.fromString(source),
+                    EnergyProducer.fromString(producer), amount));
+            } catch (InvalidEnergyDataException e) {
+                expectedReasons.add(row + " " + e.getMessage());
+            }
+            batch.add(year, month, state, source, producer, amount);
+            if (batch.size() == batchSize || row == rows - 1) {
+                bulk.addAll(batch, report);
+                batch.clear();
+            }
+        }
+
+        assertFalse(expectedReasons.isEmpty());
+        assertEquals(rows, report.getRowsChecked());
+        assertEquals(expectedReasons.size(), report.size());
+        for (int i = 0; i < report.size(); i++) {
+            assertTrue(expectedReasons.get(i).startsWith(report.getRow(i) + " " + report.getReason(i).getMessage()),
+                expectedReasons.get(i));
+        }
+        assertEquals(single.getEnergyDataList(), bulk.getEnergyDataList());
+        assertEquals(rows - report.size(), bulk.getMetrics().getRowsIngested());
+        assertEquals(report.size(), bulk.getMetrics().getRowsRejected());
+    }
+
+    /**
+     * Tests that an amount typed ten times too large is held back or flagged against the
+     * history learned from the stored rows, and that a released entry is stored.
+     */
+    @ParameterizedTest(name = "Anomaly policy {0}")
+    @EnumSource(value = AnomalyPolicy.class, names = {"FLAG", "QUARANTINE"})
+    void testAddEnergyData_AnomalousAmount(AnomalyPolicy policy) throws InvalidEnergyDataException {
+        for (int year = 2001; year <= 2020; year++) {
+            model.addEnergyData(new EnergyData(year, 7, "TX", EnergySource.WIND,
+                EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 9000 + 100 * (year % 7)));
+        }
+        model.setAnomalyPolicy(policy);
+        int stored = model.getEnergyDataList().size();
+
+        model.addEnergyData(new EnergyData(2021, 7, "TX", EnergySource.WIND,
+            EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 9400));
+        EnergyData typo = new EnergyData(2022, 7, "TX", EnergySource.WIND,
+            EnergyProducer.ELECTRIC_UTILITIES, 94000);
+        model.addEnergyData(typo);
+
+        assertEquals(1, model.getAnomalies().size());
+        Anomaly anomaly = model.getAnomalies().get(0);
+        assertEquals(typo, anomaly.data());
+        assertEquals(policy == AnomalyPolicy.QUARANTINE, anomaly.quarantined());
+        assertEquals(9000, anomaly.expectedAmount(), 500);
+        if (policy == AnomalyPolicy.QUARANTINE) {
+            assertEquals(stored + 1, model.getEnergyDataList().size());
+            assertTrue(model.releaseQuarantined(anomaly));
+            assertTrue(model.getAnomalies().isEmpty());
+        }
+        assertEquals(stored + 2, model.getEnergyDataList().size());
+        assertEquals(typo, model.getEnergyDataList().get(stored + 1));
+    }
+
+    /**
+     * Tests that a correction typed ten times too large is scored like a new row whether it
+     * comes as an upsert or as an in-place update: quarantined it leaves the stored amount
+     * and every total alone until released, flagged it is stored but not learned.
+     */
+    @ParameterizedTest(name = "Anomaly policy {0}")
+    @EnumSource(value = AnomalyPolicy.class, names = {"FLAG", "QUARANTINE"})
+    void testCorrections_AnomalousAmount(AnomalyPolicy policy) throws InvalidEnergyDataException {
+        for (int year = 2001; year <= 2020; year++) {
+            model.addEnergyData(new EnergyData(year, 7, "TX", EnergySource.WIND,
+                EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 9000 + 100 * (year % 7)));
+        }
+        model.setAnomalyPolicy(policy);
+        boolean quarantined = policy == AnomalyPolicy.QUARANTINE;
+        EnergyData stored = new EnergyData(2020, 7, "TX", EnergySource.WIND,
+            EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 9000 + 100 * (2020 % 7));
+        double total = model.getEnergyByStateForMonth(7).get("TX");
+        int size = model.getEnergyDataList().size();
+
+        EnergyData upsertTypo = new EnergyData(2020, 7, "TX", EnergySource.WIND,
+            EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 94000);
+        assertEquals(!quarantined, model.upsertEnergyData(upsertTypo));
+        EnergyData updateTypo = new EnergyData(2019, 7, "TX", EnergySource.WIND,
+            EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 0.9);
+        assertEquals(!quarantined, model.updateEnergyData(updateTypo, updateTypo));
+
+        List<Anomaly> anomalies = List.copyOf(model.getAnomalies());
+        assertEquals(List.of(upsertTypo, updateTypo), anomalies.stream().map(Anomaly::data).toList());
+        for (Anomaly anomaly : anomalies) {
+            assertEquals(quarantined, anomaly.quarantined());
+            assertTrue(anomaly.replacing());
+        }
+        if (quarantined) {
+            assertEquals(total, model.getEnergyByStateForMonth(7).get("TX"), 1e-9);
+            assertTrue(model.getEnergyDataList().contains(stored));
+            assertTrue(model.releaseQuarantined(anomalies.get(0)));
+            assertTrue(model.releaseQuarantined(anomalies.get(1)));
+        }
+        assertEquals(size, model.getEnergyDataList().size());
+        assertTrue(model.getEnergyDataList().contains(upsertTypo));
+        assertTrue(model.getEnergyDataList().contains(updateTypo));
+        assertEquals(total - stored.amount() + 94000 - (9000 + 100 * (2019 % 7)) + 0.9,
+            model.getEnergyByStateForMonth(7).get("TX"), 1e-6);
+        if (!quarantined) {
+            // neither flagged amount moved the history, so the same typo is flagged again
+            model.upsertEnergyData(new EnergyData(2018, 7, "TX", EnergySource.WIND,
+                EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 94000));
+            assertEquals(3, model.getAnomalies().size());
+        }
+    }
+
+    /**
+     * Tests that a feed of anomalies in flag mode keeps only the latest ones, so the list
+     * and its share of the memory footprint stay bounded.
+     */
+    @Test
+    void testAnomalies_KeepLatestOnly() throws InvalidEnergyDataException {
+        for (int year = 2001; year <= 2020; year++) {
+            model.addEnergyData(new EnergyData(year, 7, "TX", EnergySource.WIND,
+                EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 9000 + 100 * (year % 7)));
+        }
+        model.setAnomalyPolicy(AnomalyPolicy.FLAG);
+        int anomalies = Model.MAX_ANOMALIES + 5;
+        EnergyColumns batch = new EnergyColumns();
+        for (int i = 0; i < anomalies; i++) {
+            batch.add(2021, 7, "TX", "Wind", "Independent Power Producers", 90_000 + i, 0, null);
+        }
+        assertEquals(anomalies, model.addAll(batch, new RejectionReport()));
+
+        List<Anomaly> kept = model.getAnomalies();
+        assertEquals(Model.MAX_ANOMALIES, kept.size());
+        assertEquals(5, model.getAnomaliesDropped());
+        assertEquals(90_005, kept.get(0).data().amount());
+        assertEquals(90_000 + anomalies - 1, kept.get(kept.size() - 1).data().amount());
+        long sketches = model.getMemoryFootprint().sketchBytes();
+        model.addEnergyData(new EnergyData(2022, 7, "TX", EnergySource.WIND,
+            EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 95_000));
+        assertEquals(Model.MAX_ANOMALIES, model.getAnomalies().size());
+        assertEquals(sketches, model.getMemoryFootprint().sketchBytes());
+    }
+
+    /**
+     * Tests that listeners receive the positions of appended, replaced and deleted rows,
+     * one range for a bulk load, and a reload covering every row.
+     */
+    @Test
+    void testModelListener_ReceivesChangedRanges(@TempDir Path directory) throws Exception {
+        List<ModelEvent> events = new ArrayList<>();
+        model.addModelListener(events::add);
+
+        model.addEnergyData(new EnergyData(2003, 3, "TX", EnergySource.WIND, EnergyProducer.ELECTRIC_UTILITIES, 10));
+        assertTrue(model.deleteEnergyData(new EnergyData(2001, 2, "AK", EnergySource.NATURAL_GAS,
+            EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 0)));
+        EnergyData solar = new EnergyData(2002, 1, "CA", EnergySource.SOLAR,
+            EnergyProducer.RENEWABLE_ENERGY_COMPANIES, 3000);
+        assertTrue(model.updateEnergyData(solar, new EnergyData(2002, 1, "CA", EnergySource.SOLAR,
+            EnergyProducer.RENEWABLE_ENERGY_COMPANIES, 3500)));
+        EnergyColumns batch = new EnergyColumns();
+        batch.add(2004, 1, "NY", "Coal", "Electric Utilities", 5);
+        batch.add(2004, 13, "NY", "Coal", "Electric Utilities", 5);
+        batch.add(2004, 2, "NY", "Coal", "Electric Utilities", 5);
+        model.addAll(batch, new RejectionReport());
+        Path file = directory.resolve("data.bin");
+        model.save(file);
+        model.load(file);
+
+        assertEquals(List.of(
+            new ModelEvent(ModelEvent.Type.APPENDED, 5, 6),
+            new ModelEvent(ModelEvent.Type.REMOVED, 1, 2),
+            new ModelEvent(ModelEvent.Type.UPDATED, 3, 4),
+            new ModelEvent(ModelEvent.Type.APPENDED, 5, 7),
+            new ModelEvent(ModelEvent.Type.RELOADED, 0, 7)), events);
+        assertEquals(3500, model.getEnergyDataList().get(3).amount());
+    }
+
+    /**
+     * Tests that the footprint counts each structure once it is built, that the metrics
+     * report it, and that a memory limit first drops the indexes and then refuses rows.
+     */
+    @Test
+    void testMemoryFootprint_LimitEvictsThenRefuses() throws InvalidEnergyDataException {
+        MemoryFootprint empty = model.getMemoryFootprint();
+        assertTrue(empty.rowBytes() > 0);
+        assertTrue(empty.dictionaryBytes() > 0);
+        assertEquals(0, empty.indexBytes());
+        assertEquals(0, empty.aggregateBytes());
+
+        model.getEnergyInRange("AK", EnergySource.COAL, YearMonth.of(2001, 1), YearMonth.of(2002, 12));
+        model.getSortedPositions(EnergyColumn.AMOUNT);
+        model.forecast(3);
+        MemoryFootprint built = model.getMemoryFootprint();
+        assertTrue(built.indexBytes() > 0);
+        assertTrue(built.aggregateBytes() > 0);
+        assertEquals(built.totalBytes(), model.getMetrics().getMemoryBytes());
+        assertEquals(built.storeBytes(), model.getMetrics().getStoreBytes());
+
+        model.setMemoryLimit(built.totalBytes() - 1);
+        model.addEnergyData(new EnergyData(2003, 3, "TX", EnergySource.WIND, EnergyProducer.ELECTRIC_UTILITIES, 10));
+        assertEquals(0, model.getMemoryFootprint().indexBytes());
+        assertEquals(0, model.getMemoryFootprint().aggregateBytes());
+        assertEquals(1, model.getMetrics().getMemoryEvictions());
+
+        model.setMemoryLimit(model.getMemoryFootprint().rowBytes());
+        EnergyData refused = new EnergyData(2003, 4, "TX", EnergySource.WIND, EnergyProducer.ELECTRIC_UTILITIES, 10);
+        assertThrows(IllegalStateException.class, () -> model.addEnergyData(refused));
+        assertEquals(6, model.getEnergyDataList().size());
+        assertEquals(1, model.getMetrics().getRowsRefused());
+        assertEquals(model.getMemoryLimit(), model.getMetrics().getMemoryLimitBytes());
+    }
+
+    /**
+     * Tests a diff against a comparison of maps, once in memory and once with a budget small
+     * enough to partition the keys to files. The earlier version lacks some rows, has other
+     * amounts for some keys and a state of its own.
+     */
+    @ParameterizedTest(name = "Diff partitioned={0}")
+    @ValueSource(booleans = {false, true})
+    void testDiff_MatchesMapComparison(boolean partitioned) throws IOException, InvalidEnergyDataException {
+        addRandomRows(new Random(5), 20_000);
+        long memory = partitioned
+            ? (java.util.concurrent.ForkJoinPool.getCommonPoolParallelism() + 1) * (64L << 10) + (1 << 20)
+            : 1L << 30;
+        assertEquals(partitioned, SnapshotDiff.partitionBits(model.getEnergyDataList().size(), memory,
+            java.util.concurrent.ForkJoinPool.getCommonPoolParallelism()) > 0);
+        try (Model previous = new Model(new ColumnStore())) {
+            List<EnergyData> rows = model.getEnergyDataList();
+            for (int i = 0; i < rows.size(); i++) {
+                EnergyData row = rows.get(i);
+                if (i % 10 == 3) {
+                    continue;
+                }
+                previous.addEnergyData(i % 7 == 0 ? new EnergyData(row.year(), row.month(), row.state(),
+                    row.source(), row.producer(), row.amount() + 1, row.plant(), row.county()) : row);
+            }
+            previous.addEnergyData(new EnergyData(2010, 5, "ZZ", EnergySource.WIND,
+                EnergyProducer.ELECTRIC_UTILITIES, 42));
+
+            Map<List<Object>, Double> before = totalsByKey(previous);
+            Map<List<Object>, Double> after = totalsByKey(model);
+            Map<List<Object>, Double> visited = new HashMap<>();
+            DiffSummary diff = model.diff(previous, memory, new DiffVisitor() {
+                @Override
+                public void inserted(EnergyData row) {
+                    assertNull(visited.put(keyOf(row), row.amount()));
+                }
+
+                @Override
+                public void removed(EnergyData row) {
+                    assertNull(visited.put(keyOf(row), -row.amount()));
+                }
+
+                @Override
+                public void changed(EnergyData oldRow, EnergyData newRow) {
+                    assertEquals(keyOf(oldRow), keyOf(newRow));
+                    assertNull(visited.put(keyOf(newRow), newRow.amount() - oldRow.amount()));
+                }
+            });
+
+            Set<List<Object>> keys = new HashSet<>(before.keySet());
+            keys.addAll(after.keySet());
+            long inserted = 0;
+            long removed = 0;
+            long changed = 0;
+            Map<String, Double> stateDeltas = new HashMap<>();
+            for (List<Object> key : keys) {
+                double delta = after.getOrDefault(key, 0.0) - before.getOrDefault(key, 0.0);
+                if (!before.containsKey(key)) {
+                    inserted++;
+                } else if (!after.containsKey(key)) {
+                    removed++;
+                } else if (delta == 0) {
+                    assertFalse(visited.containsKey(key));
+                    continue;
+                } else {
+                    changed++;
+                }
+                assertEquals(delta, visited.get(key), 1e-6, key.toString());
+                stateDeltas.merge((String) key.get(2), delta, Double::sum);
+            }
+            assertEquals(inserted, diff.inserted());
+            assertEquals(removed, diff.removed());
+            assertEquals(changed, diff.changed());
+            assertEquals(keys.size() - inserted - removed - changed, diff.unchanged());
+            assertTrue(inserted > 0 && removed > 0 && changed > 0);
+            assertEquals(-42, diff.stateDeltas().get("ZZ"), 1e-9);
+            stateDeltas.forEach((state, delta) -> assertEquals(delta, diff.stateDeltas().getOrDefault(state, 0.0), 1e-3));
+            assertEquals(stateDeltas.values().stream().mapToDouble(Double::doubleValue).sum(), diff.totalDelta(), 1e-3);
+            assertTrue(model.diff(model, memory, new DiffVisitor() {}).isEmpty());
+        }
+    }
+
+    private static Map<List<Object>, Double> totalsByKey(Model model) {
+        Map<List<Object>, Double> totals = new HashMap<>();
+        for (EnergyData row : model.getEnergyDataList()) {
+            totals.merge(keyOf(row), row.amount(), Double::sum);
+        }
+        return totals;
+    }
+
+    private static List<Object> keyOf(EnergyData row) {
+        return List.of(row.year(), row.month(), row.state(), row.source(), row.producer(), row.plant());
+    }
+
+    /**
+     * Tests estimates against exact totals: states whose rows all fit in the sample are
+     * exact, and with a sample kept up through appends, deletes and updates, the exact
+     * totals of nearly all larger states lie within their 95% intervals.
+     */
+    @Test
+    void testEstimateEnergyByStateForMonth_CoversExactTotals() throws InvalidEnergyDataException {
+        Map<String, Double> small = model.getEnergyByStateForMonth(1);
+        Map<String, Estimate> smallEstimates = model.estimateEnergyByStateForMonth(1);
+        assertEquals(small.keySet(), smallEstimates.keySet());
+        small.forEach((state, total) -> {
+            assertEquals(total, smallEstimates.get(state).value(), 1e-6);
+            assertEquals(0, smallEstimates.get(state).margin());
+        });
+
+        addRandomRows(new Random(11), 50_000);
+        for (int i = 0; i < 500; i++) {
+            model.deleteEnergyData(model.getEnergyDataList().get(i * 90));
+            EnergyData row = model.getEnergyDataList().get(i * 90 + 45);
+            model.updateEnergyData(row, new EnergyData(row.year(), row.month(), row.state(), row.source(),
+                row.producer(), row.amount() * 2, row.plant(), row.county()));
+        }
+        int covered = 0;
+        int states = 0;
+        for (int month = 1; month <= 12; month++) {
+            Map<String, Estimate> estimates = model.estimateEnergyByStateForMonth(month);
+            for (Map.Entry<String, Double> exact : model.getEnergyByStateForMonth(month).entrySet()) {
+                if (!exact.getKey().startsWith("S")) {
+                    continue;
+                }
+                Estimate estimate = estimates.get(exact.getKey());
+                assertNotNull(estimate, exact.getKey());
+                assertTrue(estimate.margin() > 0);
+                if (estimate.lower() <= exact.getValue() && exact.getValue() <= estimate.upper()) {
+                    covered++;
+                }
+                states++;
+            }
+        }
+        assertEquals(72, states);
+        assertTrue(covered >= states * 0.85, covered + " of " + states + " intervals cover the exact total");
+        assertTrue(model.getSampleSize() < 10_000);
+    }
+
+    /**
+     * Tests that the sample is kept by bulk loads and deletes without a new draw of every
+     * row: a stratum thinned out by deletes is drawn again on its own, so the few rows left
+     * in it give exact totals. A model on year partitions has no sample until a snapshot
+     * draws one, which the model takes over unless it was written meanwhile.
+     */
+    @Test
+    void testEstimateEnergyByStateForMonth_SampleKeptByWrites(@TempDir Path directory)
+            throws IOException, InvalidEnergyDataException {
+        Model bulk = new Model(new ColumnStore());
+        EnergyColumns batch = new EnergyColumns();
+        Random random = new Random(48);
+        for (int i = 0; i < 20_000; i++) {
+            batch.add(2001 + random.nextInt(22), 1 + random.nextInt(12), "T" + random.nextInt(5), "Wind",
+                "Electric Utilities", 1 + random.nextInt(1000), 0, null);
+        }
+        List<EnergyData> thinned = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            EnergyData data = new EnergyData(2001 + i % 22, 1 + i / 22 % 12, "S0", EnergySource.COAL,
+                EnergyProducer.ELECTRIC_UTILITIES, 1 + i, 1 + i, "C");
+            thinned.add(data);
+            batch.add(data.year(), data.month(), data.state(), "Coal", "Electric Utilities", data.amount(),
+                data.plant(), data.county());
+        }
+        bulk.addAll(batch, new RejectionReport());
+        assertTrue(bulk.isSampleDrawn());
+        assertEquals(6 * StratifiedSample.CAPACITY, bulk.getSampleSize());
+
+        for (EnergyData data : thinned.subList(0, 960)) {
+            assertTrue(bulk.deleteEnergyData(data));
+        }
+        assertTrue(bulk.isSampleDrawn());
+        for (int month = 1; month <= 12; month++) {
+            Double exact = bulk.getEnergyByStateForMonth(month).get("S0");
+            Estimate estimate = bulk.estimateEnergyByStateForMonth(month).get("S0");
+            assertEquals(exact == null, estimate == null);
+            if (exact != null) {
+                assertEquals(exact, estimate.value(), 1e-6);
+                assertEquals(0, estimate.margin());
+            }
+        }
+
+        bulk.savePartitioned(directory);
+        try (Model partitioned = new Model(new ColumnStore())) {
+            partitioned.openPartitioned(directory, 1 << 20);
+            assertFalse(partitioned.isSampleDrawn());
+            Model written = partitioned.snapshot();
+            partitioned.deleteEnergyData(thinned.get(999));
+            try (written) {
+                written.getSampleSize();
+            }
+            assertFalse(partitioned.isSampleDrawn());
+            try (Model snapshot = partitioned.snapshot()) {
+                assertEquals(5 * StratifiedSample.CAPACITY + 39, snapshot.getSampleSize());
+            }
+            assertTrue(partitioned.isSampleDrawn());
+            assertEquals(5 * StratifiedSample.CAPACITY + 39, partitioned.getSampleSize());
+            for (int month = 1; month <= 12; month++) {
+                Double exact = partitioned.getEnergyByStateForMonth(month).get("S0");
+                Estimate estimate = partitioned.estimateEnergyByStateForMonth(month).get("S0");
+                assertEquals(exact == null, estimate == null);
+                if (exact != null) {
+                    assertEquals(exact, estimate.value(), 1e-6);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests a group-by over far more groups than its memory budget holds against a map,
+     * and one small enough to finish without spilling.
+     */
+    @Test
+    void testGroupBy_SpillsAndMatchesMap() throws IOException, InvalidEnergyDataException {
+        Model plants = new Model(new ColumnStore());
+        Random random = new Random(47);
+        Map<List<Object>, double[]> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            int plant = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(50_000);
+            EnergyData data = new EnergyData(2001 + random.nextInt(22), 1 + random.nextInt(12),
+                "S" + plant % 40, EnergySource.values()[random.nextInt(EnergySource.values().length)],
+                EnergyProducer.ELECTRIC_UTILITIES, 1 + random.nextInt(1000), plant,
+                plant == 0 ? null : "County " + plant % 900);
+            plants.addEnergyData(data);
+            double[] group = expected.computeIfAbsent(Arrays.asList(data.plant(), data.county(), data.month()),
+                key -> new double[2]);
+            group[0] += data.amount();
+            group[1]++;
+        }
+
+        Map<List<Object>, double[]> actual = new HashMap<>();
+        plants.groupBy(List.of(EnergyColumn.PLANT, EnergyColumn.COUNTY, EnergyColumn.MONTH), 256 << 10,
+            (key, total, rows) -> assertNull(actual.put(Arrays.asList(key.clone()), new double[] {total, rows})));
+        assertEquals(expected.size(), actual.size());
+        expected.forEach((key, group) -> assertArrayEquals(group, actual.get(key), 1e-6, key.toString()));
+        long spilled = plants.getMetrics().getGroupsSpilled();
+        assertTrue(spilled > 0);
+
+        double[] total = new double[1];
+        plants.groupBy(List.of(EnergyColumn.SOURCE, EnergyColumn.YEAR), 1 << 20, (key, sum, rows) -> {
+            assertInstanceOf(EnergySource.class, key[0]);
+            assertInstanceOf(Integer.class, key[1]);
+            total[0] += rows;
+        });
+        assertEquals(200_000, total[0]);
+        assertEquals(spilled, plants.getMetrics().getGroupsSpilled());
+        assertThrows(IllegalArgumentException.class,
+            () -> plants.groupBy(List.of(EnergyColumn.AMOUNT), 1 << 20, (key, sum, rows) -> { }));
+        assertThrows(IllegalArgumentException.class,
+            () -> plants.groupBy(List.of(EnergyColumn.STATE), 1 << 10, (key, sum, rows) -> { }));
+    }
+
+    /**
+     * Tests that upserting a stored key replaces its amount and corrects every aggregate.
+     * With filler rows the replaced sample row lies in a sealed, compressed segment.
+     */
+    @ParameterizedTest(name = "Upsert with {0} filler rows")
+    @ValueSource(ints = {0, 20_000})
+    void testUpsertEnergyData_ReplacesStoredAmount(int fillerRows) throws InvalidEnergyDataException {
+        for (int i = 0; i < fillerRows; i++) {
+            model.addEnergyData(new EnergyData(2010, 6, "S" + i, EnergySource.WIND,
+                EnergyProducer.ELECTRIC_UTILITIES, 1.0 + i % 7));
+        }
+        int size = model.getEnergyDataList().size();
+
+        assertTrue(model.upsertEnergyData(new EnergyData(2001, 1, "AK", EnergySource.COAL,
+            EnergyProducer.ELECTRIC_UTILITIES, 10.0)));
+
+        assertEquals(size, model.getEnergyDataList().size());
+        assertEquals(10.0, model.getEnergyDataList().get(0).amount());
+        assertEquals(100.0, model.getEnergyByStateForMonth(1).get("AK"), 0.01);
+        assertEquals(10.0, model.calculateMinEnergy().get("AK"));
+        assertEquals(36500.0, model.calculateMaxEnergy().get("AK"));
+
+        model.setWriteMode(WriteMode.UPSERT);
+        EnergyData added = new EnergyData(2015, 3, "TX", EnergySource.SOLAR,
+            EnergyProducer.RENEWABLE_ENERGY_COMPANIES, 500.0);
+        model.addEnergyData(added);
+        model.addEnergyData(added);
+        assertEquals(size + 1, model.getEnergyDataList().size());
+        assertEquals(500.0, model.getEnergyByStateForMonth(3).get("TX"), 0.01);
+    }
+
+    /**
+     * Tests that deleted and updated entries are reflected by every query at once.
+     */
+    @ParameterizedTest(name = "Delete and update with {0} filler rows")
+    @ValueSource(ints = {0, 20_000})
+    void testDeleteAndUpdateEnergyData(int fillerRows) throws InvalidEnergyDataException {
+        for (int i = 0; i < fillerRows; i++) {
+            model.addEnergyData(new EnergyData(2010, 6, "S" + i, EnergySource.WIND,
+                EnergyProducer.ELECTRIC_UTILITIES, 1.0 + i % 7));
+        }
+        int size = model.getEnergyDataList().size();
+        EnergyData hydro = new EnergyData(2001, 1, "CA", EnergySource.HYDROELECTRIC,
+            EnergyProducer.INDEPENDENT_POWER_PRODUCERS, 102000);
+
+        assertTrue(model.deleteEnergyData(hydro));
+        assertFalse(model.deleteEnergyData(hydro));
+        assertFalse(model.getEnergyDataList().contains(hydro));
+        assertEquals(size - 1, model.getEnergyDataList().size());
+        assertFalse(model.getEnergySources().contains(EnergySource.HYDROELECTRIC));
+        assertEquals(3000.0, model.getEnergyByStateForMonth(1).get("CA"), 0.01);
+
+        EnergyData wind = new EnergyData(2002, 1, "AK", EnergySource.WIND,
+            EnergyProducer.COMBINED_HEAT_AND_POWER, 90);
+        EnergyData corrected = new EnergyData(2002, 2, "AK", EnergySource.WIND,
+            EnergyProducer.COMBINED_HEAT_AND_POWER, 95);
+        assertTrue(model.updateEnergyData(wind, corrected));
+        assertEquals(46903.0, model.getEnergyByStateForMonth(1).get("AK"), 0.01);
+        assertEquals(36595.0, model.getEnergyByStateForMonth(2).get("AK"), 0.01);
+        assertEquals(size - 1, model.getEnergyDataList().size());
+        assertEquals(corrected, model.getEnergyDataList().get(model.getEnergyDataList().size() - 1));
+    }
+
+    /**
+     * Tests that the monthly totals of a snapshot, scanned on another thread, are those of
+     * the rows it was taken with while the model goes on sealing segments and adding states.
+     */
+    @Test
+    void testSnapshot_MonthTotalsWhileAppending() throws Exception {
+        for (int i = 0; i < ColumnStore.SEGMENT_ROWS + 500; i++) {
+            model.addEnergyData(new EnergyData(2005, 1 + i % 12, "S" + i % 40, EnergySource.WIND,
+                EnergyProducer.ELECTRIC_UTILITIES, 1 + i % 100));
+        }
+        Map<String, Double> expected = model.getEnergyByStateForMonth(3);
+        Model snapshot = model.snapshot();
+        List<Map<String, Double>> totals = Collections.synchronizedList(new ArrayList<>());
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < 50; i++) {
+                totals.add(snapshot.getEnergyByStateForMonth(3));
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 3 * ColumnStore.SEGMENT_ROWS; i++) {
+            model.addEnergyData(new EnergyData(2006, 1 + i % 12, "N" + i % 500, EnergySource.SOLAR,
+                EnergyProducer.ELECTRIC_UTILITIES, 2));
+        }
+        reader.join();
+
+        assertEquals(50, totals.size());
+        totals.forEach(total -> assertEquals(expected, total));
+        assertNotEquals(expected, model.getEnergyByStateForMonth(3));
+    }
+
+    /**
+     * Tests that an update moving an entry to another key keeps the old entry when the new
+     * key is taken, when the memory limit refuses the row and when the row would be quarantined.
+     */
+    @Test
+    void testUpdateEnergyData_KeyChangeAllOrNothing() throws InvalidEnergyDataException {
+        EnergyData wind = new EnergyData(2002, 1, "AK", EnergySource.WIND,
+            EnergyProducer.COMBINED_HEAT_AND_POWER, 90);
+        List<EnergyData> before = new ArrayList<>(model.getEnergyDataList());
+
+        assertFalse(model.updateEnergyData(wind, new EnergyData(2001, 1, "AK", EnergySource.COAL,
+            EnergyProducer.ELECTRIC_UTILITIES, 95)));
+        assertEquals(before, model.getEnergyDataList());
+
+        model.setMemoryLimit(model.getMemoryFootprint().rowBytes());
+        assertThrows(IllegalStateException.class, () -> model.updateEnergyData(wind,
+            new EnergyData(2002, 2, "AK", EnergySource.WIND, EnergyProducer.COMBINED_HEAT_AND_POWER, 95)));
+        assertEquals(before, model.getEnergyDataList());
+        model.setMemoryLimit(Long.MAX_VALUE);
+
+        for (int year = 2003; year <= 2020; year++) {
+            model.addEnergyData(new EnergyData(year, 1, "AK", EnergySource.WIND,
+                EnergyProducer.COMBINED_HEAT_AND_POWER, 90 + year % 5));
+        }
+        model.setAnomalyPolicy(AnomalyPolicy.QUARANTINE);
+        int size = model.getEnergyDataList().size();
+        assertFalse(model.updateEnergyData(wind, new EnergyData(2021, 1, "AK", EnergySource.WIND,
+            EnergyProducer.COMBINED_HEAT_AND_POWER, 9000)));
+        assertEquals(size, model.getEnergyDataList().size());
+        assertTrue(model.getEnergyDataList().contains(wind));
+        assertTrue(model.updateEnergyData(wind, new EnergyData(2021, 1, "AK", EnergySource.WIND,
+            EnergyProducer.COMBINED_HEAT_AND_POWER, 92)));
+        assertFalse(model.getEnergyDataList().contains(wind));
+        assertEquals(size, model.getEnergyDataList().size());
+    }
+
+    /**
+     * Tests the state by source pivot with its totals and row normalization.
+     */
+    @ParameterizedTest(name = "Pivot {0} by {1}")
+    @MethodSource("providePivotData")
+    void testPivot(PivotDimension rows, PivotDimension columns, String rowLabel, String columnLabel,
+            double expectedCell, double expectedRowTotal) {
+        PivotTable pivot = model.pivot(rows, columns);
+        int row = Arrays.asList(pivot.getRowLabels()).indexOf(rowLabel);
+        int column = Arrays.asList(pivot.getColumnLabels()).indexOf(columnLabel);
+
+        assertEquals(expectedCell, pivot.getValues()[row][column], 0.01);
+        assertEquals(expectedRowTotal, pivot.getRowTotals()[row], 0.01);
+        assertEquals(188493.0, pivot.getTotal(), 0.01);
+        assertEquals(188493.0, Arrays.stream(pivot.getColumnTotals()).sum(), 0.01);
+        assertEquals(100.0 * expectedCell / expectedRowTotal,
+            pivot.share(row, column, PivotTable.Normalization.ROW), 0.0001);
+        assertEquals(100.0, Arrays.stream(pivot.normalized(PivotTable.Normalization.ROW)[row]).sum(), 0.0001);
+        assertThrows(IllegalArgumentException.class, () -> model.pivot(rows, rows));
+    }
+
+    /**
+     * Provides pivot dimensions with one expected cell and its row total from the sample data.
+     * @return Stream of arguments containing dimensions, labels and expected totals
+     */
+    static Stream<Arguments> providePivotData() {
+        return Stream.of(
+            Arguments.of(PivotDimension.STATE, PivotDimension.SOURCE, "AK", "Coal", 46903.0, 83493.0),
+            Arguments.of(PivotDimension.STATE, PivotDimension.PRODUCER, "CA",
+                EnergyProducer.INDEPENDENT_POWER_PRODUCERS.getDisplayName(), 102000.0, 105000.0),
+            Arguments.of(PivotDimension.YEAR, PivotDimension.MONTH, "2001", "Jan", 148903.0, 185403.0)
+        );
+    }
+
+    /**
+     * Tests range totals of the sample data, including ranges that cross a year boundary.
+     */
+    @ParameterizedTest(name = "Energy of {0} from {1} to {2}")
+    @MethodSource("provideRangeData")
+    void testGetEnergyInRange(String state, YearMonth from, YearMonth to, double expected) {
+        assertEquals(expected, model.getEnergyInRange(state, null, from, to), 0.01);
+        assertEquals(expected, model.getEnergyByStateInRange(from, to).getOrDefault(state, 0.0), 0.01);
+    }
+
+    /**
+     * Provides states, ranges and their expected totals from the sample data.
+     * @return Stream of arguments containing a state, the range bounds and the expected total
+     */
+    static Stream<Arguments> provideRangeData() {
+        return Stream.of(
+            Arguments.of("AK", YearMonth.of(2001, 1), YearMonth.of(2022, 12), 83493.0),
+            Arguments.of("AK", YearMonth.of(2001, 2), YearMonth.of(2002, 1), 36590.0),
+            Arguments.of("CA", YearMonth.of(2001, 2), YearMonth.of(2001, 12), 0.0),
+            Arguments.of("TX", YearMonth.of(2008, 3), YearMonth.of(2013, 11), 0.0)
+        );
+    }
+
+    /**
+     * Tests that the range index follows adds, upserts, deletes and updates made after it was built.
+     */
+    @ParameterizedTest(name = "Range index with {0} random rows")
+    @ValueSource(ints = {100, 20_000})
+    void testGetEnergyInRange_MaintainedByWrites(int rows) throws InvalidEnergyDataException {
+        Random random = new Random(rows);
+        model.getEnergyInRange("AK", null, YearMonth.of(2001, 1), YearMonth.of(2001, 1));
+        model.setWriteMode(WriteMode.UPSERT);
+        for (int i = 0; i < rows; i++) {
+            model.addEnergyData(new EnergyData(2001 + random.nextInt(22), 1 + random.nextInt(12),
+                "S" + random.nextInt(5), EnergySource.values()[random.nextInt(EnergySource.values().length)],
+                EnergyProducer.ELECTRIC_UTILITIES, 1 + random.nextInt(1000)));
+        }
+        List<EnergyData> snapshot = new ArrayList<>(model.getEnergyDataList());
+        for (int i = 0; i < snapshot.size() / 10; i++) {
+            EnergyData data = snapshot.get(random.nextInt(snapshot.size()));
+            if (i % 2 == 0) {
+                model.deleteEnergyData(data);
+            } else {
+                model.updateEnergyData(data, new EnergyData(data.year(), data.month(), data.state(),
+                    data.source(), data.producer(), data.amount() + 5));
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            YearMonth from = YearMonth.of(2001, 1).plusMonths(random.nextInt(264));
+            YearMonth to = from.plusMonths(random.nextInt((int) from.until(YearMonth.of(2022, 12), ChronoUnit.MONTHS) + 1));
+            String state = "S" + random.nextInt(5);
+            EnergySource source = EnergySource.values()[random.nextInt(EnergySource.values().length)];
+            double expected = model.getEnergyDataList().stream()
+                .filter(d -> d.state().equals(state) && d.source() == source)
+                .filter(d -> !YearMonth.of(d.year(), d.month()).isBefore(from)
+                    && !YearMonth.of(d.year(), d.month()).isAfter(to))
+                .mapToDouble(EnergyData::amount).sum();
+            assertEquals(expected, model.getEnergyInRange(state, source, from, to), 1e-6);
+        }
+        assertThrows(IllegalArgumentException.class,
+            () -> model.getEnergyInRange("AK", null, YearMonth.of(2005, 1), YearMonth.of(2004, 12)));
+        assertThrows(IllegalArgumentException.class,
+            () -> model.getEnergyByStateInRange(YearMonth.of(2000, 12), YearMonth.of(2004, 12)));
+    }
+
+    /**
+     * Tests that monthly series place every amount at its month and add up to the total.
+     */
+    @ParameterizedTest(name = "Time series per {0}")
+    @MethodSource("provideTimeSeriesDimensions")
+    void testGetTimeSeries(PivotDimension dimension) {
+        TimeSeries series = model.getTimeSeries(dimension);
+        assertEquals(dimension.labels(model.getStore().dictionary()).length, series.getLabels().length);
+        assertEquals(264, series.getValues()[0].length);
+        assertEquals(188493.0, Arrays.stream(series.getValues()).flatMapToDouble(Arrays::stream).sum(), 0.01);
+        assertEquals(102000.0, series.getMax(), 0.01);
+        int january2002 = (int) series.getStart().until(YearMonth.of(2002, 1), ChronoUnit.MONTHS);
+        assertEquals(3090.0, Arrays.stream(series.getValues()).mapToDouble(values -> values[january2002]).sum(), 0.01);
+        assertThrows(IllegalArgumentException.class, () -> model.getTimeSeries(PivotDimension.MONTH));
+    }
+
+    /**
+     * Provides the dimensions a time series can be split by.
+     * @return Stream of dimensions
+     */
+    static Stream<PivotDimension> provideTimeSeriesDimensions() {
+        return Stream.of(PivotDimension.STATE, PivotDimension.SOURCE, PivotDimension.PRODUCER);
+    }
+
+    /**
+     * Tests sort permutations against a stable comparison sort, before and after rows are
+     * appended, deleted and replaced, with enough rows to span sealed segments.
+     */
+    @ParameterizedTest(name = "Sorted positions by {0}")
+    @EnumSource(EnergyColumn.class)
+    void testGetSortedPositions(EnergyColumn column) throws InvalidEnergyDataException {
+        Random random = new Random(column.ordinal());
+        addRandomRows(random, 20_000);
+        assertSortedBy(column);
+        addRandomRows(random, 500);
+        model.addEnergyData(new EnergyData(2003, 3, "AA", EnergySource.COAL, EnergyProducer.ELECTRIC_UTILITIES, 0.5));
+        assertSortedBy(column);
+        EnergyData first = model.getEnergyDataList().get(0);
+        assertTrue(model.updateEnergyData(first, new EnergyData(first.year(), first.month(), first.state(),
+            first.source(), first.producer(), 1e9)));
+        assertSortedBy(column);
+        model.deleteEnergyData(model.getEnergyDataList().get(7));
+        assertSortedBy(column);
+    }
+
+    /**
+     * Tests quick filters against filtering the row list, with rows deleted from sealed segments.
+     */
+    @ParameterizedTest(name = "Filter {0}")
+    @MethodSource("provideFilters")
+    void testFilterPositions(EnergyFilter filter) throws InvalidEnergyDataException {
+        addRandomRows(new Random(7), 20_000);
+        for (int i = 0; i < 100; i++) {
+            model.deleteEnergyData(model.getEnergyDataList().get(i * 150));
+        }
+        List<EnergyData> rows = new ArrayList<>(model.getEnergyDataList());
+        BitSet matches = model.filterPositions(filter);
+        for (int position = 0; position < rows.size(); position++) {
+            assertEquals(filter.matches(rows.get(position)), matches.get(position), "position " + position);
+        }
+        assertTrue(matches.length() <= rows.size());
+    }
+
+    /**
+     * Provides quick filters, from matching everything to matching nothing.
+     * @return Stream of filters
+     */
+    static Stream<EnergyFilter> provideFilters() {
+        return Stream.of(
+            EnergyFilter.ALL,
+            new EnergyFilter("S3", null, null, null),
+            new EnergyFilter(null, EnergySource.WIND, null, 2010),
+            new EnergyFilter("S1", EnergySource.SOLAR, EnergyProducer.ELECTRIC_UTILITIES, 2020),
+            new EnergyFilter("XX", null, null, null)
+        );
+    }
+
+    private void addRandomRows(Random random, int count) throws InvalidEnergyDataException {
+        for (int i = 0; i < count; i++) {
+            // rows come in year runs, so zone maps can skip segments for year filters
+            model.addEnergyData(new EnergyData(2001 + i * 22 / count, 1 + random.nextInt(12),
+                "S" + random.nextInt(6), EnergySource.values()[random.nextInt(EnergySource.values().length)],
+                EnergyProducer.values()[random.nextInt(EnergyProducer.values().length)],
+                random.nextInt(3) == 0 ? 100 : random.nextDouble() * 1e6,
+                i % 4 == 0 ? 0 : 1 + i % 500, i % 4 == 0 ? null : "C" + i % 37));
+        }
+    }
+
+    private void assertSortedBy(EnergyColumn column) {
+        List<EnergyData> rows = new ArrayList<>(model.getEnergyDataList());
+        Comparator<EnergyData> comparator = switch (column) {
+            case YEAR -> Comparator.comparingInt(EnergyData::year);
+            case MONTH -> Comparator.comparingInt(EnergyData::month);
+            case STATE -> Comparator.comparing(EnergyData::state);
+            case SOURCE -> Comparator.comparing(EnergyData::source);
+            case PRODUCER -> Comparator.comparing(EnergyData::producer);
+            case AMOUNT -> Comparator.comparingDouble(EnergyData::amount);
+            case PLANT -> Comparator.comparingInt(EnergyData::plant);
+            case COUNTY -> Comparator.comparing(EnergyData::county, Comparator.nullsFirst(Comparator.naturalOrder()));
+        };
+        int[] expected = java.util.stream.IntStream.range(0, rows.size()).boxed()
+            .sorted(Comparator.comparing(rows::get, comparator)).mapToInt(Integer::intValue).toArray();
+        assertArrayEquals(expected, model.getSortedPositions(column));
+    }
+
     /**
      * Provides test data for invalid state scenarios.
      * @return Stream of invalid state values
@@ -0,0 +1,115 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the off-heap storage backend.
+ * Every query must return the same results as on the default heap store.
+ */
+public class OffHeapColumnStoreTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that all queries agree with the heap store, for anonymous and file-mapped memory.
+     */
+    @ParameterizedTest(name = "Off-heap queries, file mapped: {0}")
+    @ValueSource(booleans = {false, true})
+    void testQueries_MatchHeapStore(boolean mapped) throws IOException, InvalidEnergyDataException {
+        Model heap = new Model(new ColumnStore());
+        try (Model offHeap = new Model(mapped
+                ? OffHeapColumnStore.mapped(directory.resolve("energy.dat"))
+                : OffHeapColumnStore.allocate())) {
+            Random random = new Random(7);
+            String[] states = {"AK", "CA", "NY", "TX", "WA"};
+            for (int i = 0; i < 3 * ColumnStore.SEGMENT_ROWS + 11; i++) {
+                EnergyData data = new EnergyData(2001 + random.nextInt(22), 1 + random.nextInt(12),
+                    states[random.nextInt(states.length)],
+                    EnergySource.values()[random.nextInt(EnergySource.values().length)],
+                    EnergyProducer.values()[random.nextInt(EnergyProducer.values().length)],
+                    1 + random.nextInt(100000));
+                heap.addEnergyData(data);
+                offHeap.addEnergyData(data);
+            }
+
+            assertEquals(heap.getEnergyDataList(), offHeap.getEnergyDataList());
+            assertEquals(heap.getEnergySources(), offHeap.getEnergySources());
+            assertEquals(heap.getMostUsedEnergySource(), offHeap.getMostUsedEnergySource());
+            assertEquals(heap.calculateMinEnergy(), offHeap.calculateMinEnergy());
+            assertEquals(heap.calculateMaxEnergy(), offHeap.calculateMaxEnergy());
+            assertEquals(heap.getEnergyByStateForMonth(7), offHeap.getEnergyByStateForMonth(7));
+            assertEquals(heap.sortProducersByTotalEnergy(), offHeap.sortProducersByTotalEnergy());
+
+            // a snapshot keeps the row ids across deleted rows, including a deleted run that fills a segment
+            EnergyStore store = offHeap.getStore();
+            for (int rowId : new int[] {0, 5, 6, 7, 100}) {
+                store.delete(rowId);
+            }
+            for (int rowId = ColumnStore.SEGMENT_ROWS - 3; rowId < 2 * ColumnStore.SEGMENT_ROWS + 2; rowId++) {
+                store.delete(rowId);
+            }
+            try (EnergyStore copy = store.snapshot()) {
+                assertEquals(store.size(), copy.size());
+                for (int position = 0; position < store.size(); position++) {
+                    assertEquals(store.rowIdAt(position), copy.rowIdAt(position));
+                    assertEquals(store.row(store.rowIdAt(position)), copy.row(copy.rowIdAt(position)));
+                }
+                assertTrue(copy.isDeleted(6));
+            }
+            if (mapped) {
+                assertTrue(Files.size(directory.resolve("energy.dat")) > 0);
+            }
+        }
+    }
+
+    /**
+     * Tests that typed accessors are bounds-checked and that a closed store rejects access.
+     */
+    @Test
+    void testAccessors_BoundsCheckedAndClosedStoreRejected() {
+        OffHeapColumnStore store = OffHeapColumnStore.allocate();
+        store.append(new EnergyData(2010, 5, "TX", EnergySource.WIND, EnergyProducer.ELECTRIC_UTILITIES, 42.5));
+
+        assertEquals(42.5, store.amount(0));
+        assertEquals(23, OffHeapColumnStore.ROW_BYTES);
+        assertTrue(store.sizeInBytes() >= (long) OffHeapColumnStore.ROW_BYTES * OffHeapColumnStore.CHUNK_ROWS);
+        assertThrows(IndexOutOfBoundsException.class, () -> store.amount(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.row(-1));
+
+        store.close();
+        assertThrows(IllegalStateException.class, () -> store.amount(0));
+        assertThrows(IllegalStateException.class, () -> store.scan(ColumnBatch.AMOUNT, batch -> { }));
+    }
+
+    /**
+     * Tests that a row with one state too many is rejected without adding its state to the
+     * dictionary, so rows of known states are still stored.
+     */
+    @Test
+    void testAppend_TooManyStates_DictionaryUnchanged() {
+        try (OffHeapColumnStore store = OffHeapColumnStore.allocate()) {
+            for (int i = 0; i <= Short.MAX_VALUE * 2 + 1; i++) {
+                store.append(new EnergyData(2010, 1, "S" + i, EnergySource.WIND, EnergyProducer.ELECTRIC_UTILITIES, 1));
+            }
+
+            assertThrows(IllegalStateException.class, () -> store.append(
+                new EnergyData(2010, 1, "NEW", EnergySource.WIND, EnergyProducer.ELECTRIC_UTILITIES, 1)));
+            assertEquals(1 << 16, store.dictionary().size());
+            assertEquals(-1, store.dictionary().lookup("NEW"));
+            assertEquals(1 << 16, store.size());
+
+            store.append(new EnergyData(2011, 2, "S7", EnergySource.COAL, EnergyProducer.ELECTRIC_UTILITIES, 5));
+            assertEquals("S7", store.row(1 << 16).state());
+        }
+    }
+}
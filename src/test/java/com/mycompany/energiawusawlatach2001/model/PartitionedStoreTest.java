@@ -0,0 +1,80 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the lazily loaded, year-partitioned storage backend.
+ */
+public class PartitionedStoreTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that a model on partitions answers every query like the heap model, that
+     * opening with anomaly scoring on and summary-only queries read nothing from disk and
+     * that a small cache evicts segments.
+     */
+    @Test
+    void testQueries_MatchHeapStoreWithinCacheBudget() throws IOException, InvalidEnergyDataException {
+        Model heap = new Model(new ColumnStore());
+        Random random = new Random(11);
+        String[] states = {"AK", "CA", "NY", "TX", "WA"};
+        for (int i = 0; i < 5 * ColumnStore.SEGMENT_ROWS; i++) {
+            heap.addEnergyData(new EnergyData(2001 + random.nextInt(4), 1 + random.nextInt(12),
+                states[random.nextInt(states.length)],
+                EnergySource.values()[random.nextInt(EnergySource.values().length)],
+                EnergyProducer.values()[random.nextInt(EnergyProducer.values().length)],
+                1 + random.nextInt(100000)));
+        }
+        heap.savePartitioned(directory);
+
+        try (Model lazy = new Model(new ColumnStore())) {
+            // the anomaly statistics are learned by the first scored write, not when opening
+            lazy.setAnomalyPolicy(AnomalyPolicy.QUARANTINE);
+            lazy.openPartitioned(directory, 100_000);
+
+            assertEquals(heap.getEnergySources(), lazy.getEnergySources());
+            assertEquals(0, lazy.getMetrics().getCacheMisses());
+
+            assertEquals(heap.calculateMinEnergy(), lazy.calculateMinEnergy());
+            assertEquals(heap.calculateMaxEnergy(), lazy.calculateMaxEnergy());
+            assertEquals(heap.getEnergyByStateForMonth(4), lazy.getEnergyByStateForMonth(4));
+            assertEquals(heap.sortProducersByTotalEnergy(), lazy.sortProducersByTotalEnergy());
+            assertEquals(heap.getMostUsedEnergySource(), lazy.getMostUsedEnergySource());
+            assertEquals(sorted(heap.getEnergyDataList()), sorted(lazy.getEnergyDataList()));
+            assertTrue(lazy.getMetrics().getCacheMisses() > 0);
+            assertTrue(lazy.getMetrics().getCacheEvictions() > 0);
+
+            EnergyData first = lazy.getEnergyDataList().get(0);
+            EnergyData added = new EnergyData(2022, 12, "OR", EnergySource.SOLAR,
+                EnergyProducer.RENEWABLE_ENERGY_COMPANIES, 700);
+            Model before = lazy.snapshot();
+            Map<String, Double> monthBefore = lazy.getEnergyByStateForMonth(first.month());
+            for (Model model : List.of(heap, lazy)) {
+                assertTrue(model.deleteEnergyData(first));
+                model.addEnergyData(added);
+            }
+            assertEquals(monthBefore, before.getEnergyByStateForMonth(first.month()));
+            assertEquals(first, before.getEnergyDataList().get(0));
+            before.close();
+            assertEquals(heap.getEnergyDataList().size(), lazy.getEnergyDataList().size());
+            assertEquals(heap.getEnergyByStateForMonth(first.month()), lazy.getEnergyByStateForMonth(first.month()));
+            assertEquals(heap.getEnergyByStateForMonth(12), lazy.getEnergyByStateForMonth(12));
+            assertEquals(added, lazy.getEnergyDataList().get(lazy.getEnergyDataList().size() - 1));
+        }
+    }
+
+    private static List<String> sorted(List<EnergyData> rows) {
+        List<String> keys = new ArrayList<>();
+        rows.forEach(row -> keys.add(row.toString()));
+        Collections.sort(keys);
+        return keys;
+    }
+}
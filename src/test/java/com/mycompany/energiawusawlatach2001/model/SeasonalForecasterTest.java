@@ -0,0 +1,151 @@
+package com.mycompany.energiawusawlatach2001.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the Holt-Winters forecasts.
+ */
+public class SeasonalForecasterTest {
+
+    /**
+     * Tests that a series made of a trend and a fixed season is projected almost exactly.
+     */
+    @Test
+    void testForecast_TrendAndSeason() {
+        SeasonalForecaster forecaster = new SeasonalForecaster();
+        for (int bucket = 0; bucket < TimelineIndex.BUCKETS; bucket++) {
+            forecaster.add(0, 1, 2, bucket, expected(bucket), 1);
+        }
+        forecaster.refit(ForkJoinPool.commonPool());
+
+        int series = SeasonalForecaster.series(0, 1, 2);
+        assertArrayEquals(new int[]{series}, forecaster.fittedSeries());
+        assertEquals(TimelineIndex.BUCKETS, forecaster.firstForecastBucket(series));
+        double[] forecast = forecaster.forecast(series, 24);
+        for (int h = 0; h < forecast.length; h++) {
+            assertEquals(expected(TimelineIndex.BUCKETS + h), forecast[h], 1);
+        }
+    }
+
+    /**
+     * Tests that only series written since the last fit are fitted again, and that a
+     * series shorter than two years gets no forecast.
+     */
+    @Test
+    void testRefit_OnlyWrittenSeries() {
+        SeasonalForecaster forecaster = new SeasonalForecaster();
+        Random random = new Random(42);
+        for (int state = 0; state < 20; state++) {
+            for (int bucket = 0; bucket < TimelineIndex.BUCKETS; bucket++) {
+                forecaster.add(state, 0, 0, bucket, 1000 + random.nextInt(100), 1);
+            }
+        }
+        forecaster.add(20, 0, 0, 0, 50, 1);
+        forecaster.add(20, 0, 0, 22, 50, 1);
+
+        assertEquals(21, forecaster.refit(ForkJoinPool.commonPool()));
+        assertEquals(20, forecaster.fittedSeries().length);
+        assertEquals(0, forecaster.refit(ForkJoinPool.commonPool()));
+
+        forecaster.add(3, 0, 0, 10, 50, 0);
+        forecaster.add(20, 0, 0, 23, 50, 1);
+        assertEquals(2, forecaster.refit(ForkJoinPool.commonPool()));
+        assertEquals(21, forecaster.fittedSeries().length);
+    }
+
+    /**
+     * Tests that the model forecasts every long enough series from the month after its
+     * last data and follows later writes.
+     */
+    @Test
+    void testModelForecast_FollowsWrites() throws InvalidEnergyDataException {
+        Model model = new Model(new ColumnStore());
+        for (int bucket = 0; bucket < 36; bucket++) {
+            YearMonth month = YearMonth.of(Model.FIRST_YEAR, 1).plusMonths(bucket);
+            model.addEnergyData(new EnergyData(month.getYear(), month.getMonthValue(), "NV", EnergySource.SOLAR,
+                EnergyProducer.RENEWABLE_ENERGY_COMPANIES, expected(bucket)));
+        }
+
+        List<Forecast> forecasts = model.forecast(12);
+        assertEquals(1, forecasts.size());
+        assertEquals("NV", forecasts.get(0).state());
+        assertEquals(YearMonth.of(2004, 1), forecasts.get(0).start());
+        assertEquals(expected(36), forecasts.get(0).amounts()[0], 1);
+
+        model.addEnergyData(new EnergyData(2004, 1, "NV", EnergySource.SOLAR,
+            EnergyProducer.RENEWABLE_ENERGY_COMPANIES, expected(36)));
+        assertEquals(YearMonth.of(2004, 2), model.forecast(24).get(0).start());
+        assertThrows(IllegalArgumentException.class, () -> model.forecast(25));
+    }
+
+    /**
+     * Tests that snapshots forecast on another thread while rows of new and existing series
+     * are appended, and that the fits they hand back leave the model forecasting exactly like
+     * a model that fitted the same rows from scratch.
+     */
+    @Test
+    void testSnapshotForecast_WhileAppending() throws InvalidEnergyDataException, InterruptedException,
+            ExecutionException {
+        Model model = new Model(new ColumnStore());
+        Random random = new Random(42);
+        ExecutorService forecasting = Executors.newSingleThreadExecutor();
+        List<Future<List<Forecast>>> results = new ArrayList<>();
+        try {
+            for (int bucket = 0; bucket < 120; bucket++) {
+                YearMonth month = YearMonth.of(Model.FIRST_YEAR, 1).plusMonths(bucket);
+                for (int state = 0; state <= bucket / 10; state++) {
+                    model.addEnergyData(new EnergyData(month.getYear(), month.getMonthValue(), "S" + state,
+                        EnergySource.values()[state % 3], EnergyProducer.ELECTRIC_UTILITIES,
+                        expected(bucket) + random.nextInt(200)));
+                }
+                if (bucket % 6 == 5) {
+                    Model snapshot = model.snapshot();
+                    results.add(forecasting.submit(() -> {
+                        try (snapshot) {
+                            return snapshot.forecast(12);
+                        }
+                    }));
+                }
+            }
+            for (Future<List<Forecast>> result : results) {
+                result.get();
+            }
+        } finally {
+            forecasting.shutdown();
+        }
+
+        Model fresh = new Model(new ColumnStore());
+        for (EnergyData row : model.getEnergyDataList()) {
+            fresh.addEnergyData(row);
+        }
+        List<Forecast> expected = fresh.forecast(12);
+        assertSameForecasts(expected, model.snapshot().forecast(12));
+        assertSameForecasts(expected, model.forecast(12));
+    }
+
+    private static void assertSameForecasts(List<Forecast> expected, List<Forecast> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).state(), actual.get(i).state());
+            assertEquals(expected.get(i).source(), actual.get(i).source());
+            assertEquals(expected.get(i).start(), actual.get(i).start());
+            assertArrayEquals(expected.get(i).amounts(), actual.get(i).amounts());
+        }
+    }
+
+    private static double expected(int bucket) {
+        return 5000 + 20 * bucket + 800 * Math.sin(2 * Math.PI * bucket / 12);
+    }
+}
@@ -0,0 +1,124 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+import com.mycompany.energiawusawlatach2001.model.ColumnStore;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for log shipping from a leader model to follower worker processes.
+ */
+public class ReplicationTest {
+
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that followers answer like the leader after appends, upserts, updates and
+     * deletes, that a follower started later catches up from a snapshot while writes go
+     * on, and that the lag returns to zero. Amounts are whole numbers so that sums do not
+     * depend on the order they are added in.
+     */
+    @Test
+    void testFollowers_MatchLeader_AfterWritesAndLateJoin() throws Exception {
+        Random random = new Random(50);
+        try (LeaderModel leader = new LeaderModel(new ColumnStore(), directory.resolve("leader.sock"), 1000);
+                ReplicaSet replicas = ReplicaSet.launch(leader.getSocket(), 2, directory)) {
+            for (int i = 0; i < 3000; i++) {
+                leader.addEnergyData(randomRow(random));
+            }
+            List<EnergyData> rows = leader.getEnergyDataList();
+            for (int i = 0; i < 200; i++) {
+                EnergyData row = rows.get(random.nextInt(rows.size()));
+                leader.upsertEnergyData(withAmount(row, 1 + random.nextInt(10_000)));
+                leader.updateEnergyData(row, withAmount(row, 1 + random.nextInt(10_000)));
+                leader.deleteEnergyData(rows.get(random.nextInt(rows.size())));
+            }
+
+            assertTrue(replicas.awaitSequence(leader.getLastSequence(), TIMEOUT_MILLIS));
+            assertSameResults(leader, replicas);
+
+            Thread writer = new Thread(() -> {
+                Random writes = new Random(51);
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        leader.addEnergyData(randomRow(writes));
+                    }
+                } catch (InvalidEnergyDataException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            writer.start();
+            assertEquals(2, replicas.launchFollower());
+            writer.join();
+
+            assertTrue(replicas.awaitSequence(leader.getLastSequence(), TIMEOUT_MILLIS));
+            for (ReplicationStatus status : replicas.getReplicationStatus()) {
+                assertTrue(status.connected());
+                assertEquals(leader.getLastSequence(), status.appliedSequence());
+            }
+            assertSameResults(leader, replicas);
+        }
+    }
+
+    /**
+     * Tests that a follower refuses writes of its own.
+     */
+    @Test
+    void testFollower_RefusesWrites() throws IOException, InvalidEnergyDataException {
+        try (LeaderModel leader = new LeaderModel(new ColumnStore(), directory.resolve("leader.sock"), 1000)) {
+            leader.addEnergyData(new EnergyData(2010, 5, "TX", EnergySource.WIND, EnergyProducer.values()[0], 10));
+            Path socket = directory.resolve("follower.sock");
+            try (ShardClient follower = ShardClient.await(ShardClient.start(socket, leader.getSocket()), socket)) {
+                assertThrows(IOException.class, () -> follower.append(List.of(
+                    new EnergyData(2010, 6, "TX", EnergySource.WIND, EnergyProducer.values()[0], 10))));
+                assertThrows(IOException.class, () -> follower.dropStates(Set.of("TX")));
+                assertTrue(follower.replicationStatus().appliedSequence() <= leader.getLastSequence());
+            }
+        }
+    }
+
+    private static EnergyData randomRow(Random random) {
+        return new EnergyData(2001 + random.nextInt(22), 1 + random.nextInt(12), "S" + random.nextInt(20),
+            EnergySource.values()[random.nextInt(EnergySource.values().length - 1)],
+            EnergyProducer.values()[random.nextInt(EnergyProducer.values().length)], 1 + random.nextInt(10_000));
+    }
+
+    private static EnergyData withAmount(EnergyData row, double amount) {
+        return new EnergyData(row.year(), row.month(), row.state(), row.source(), row.producer(), amount,
+            row.plant(), row.county());
+    }
+
+    /**
+     * Asks every follower once per query: queries go to the followers in turn and seven
+     * queries per round shift the follower each query goes to, with two or three followers.
+     */
+    private static void assertSameResults(LeaderModel leader, ReplicaSet replicas) {
+        YearMonth from = YearMonth.of(2005, 3);
+        YearMonth to = YearMonth.of(2015, 9);
+        for (int i = 0; i < replicas.getFollowerCount(); i++) {
+            assertEquals(leader.getEnergyDataList().size(), replicas.size());
+            assertEquals(leader.calculateMinEnergy(), replicas.calculateMinEnergy());
+            assertEquals(leader.calculateMaxEnergy(), replicas.calculateMaxEnergy());
+            assertEquals(leader.getEnergyByStateForMonth(1), replicas.getEnergyByStateForMonth(1));
+            assertEquals(leader.getEnergyByStateForMonth(7), replicas.getEnergyByStateForMonth(7));
+            assertEquals(leader.getEnergyByStateInRange(from, to), replicas.getEnergyByStateInRange(from, to));
+            assertEquals(leader.getEnergyInRange("S3", EnergySource.values()[0], from, to),
+                replicas.getEnergyInRange("S3", EnergySource.values()[0], from, to));
+        }
+    }
+}
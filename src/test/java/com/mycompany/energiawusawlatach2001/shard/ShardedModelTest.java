@@ -0,0 +1,115 @@
+package com.mycompany.energiawusawlatach2001.shard;
+
+import com.mycompany.energiawusawlatach2001.model.ColumnStore;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
+import com.mycompany.energiawusawlatach2001.model.RejectReason;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for scatter-gather queries over shard worker processes.
+ */
+public class ShardedModelTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that sharded queries match a single model before and after a shard is added,
+     * and that the rebalance moves only some rows without losing any, in batches smaller
+     * than the rows it moves. Amounts are whole
+     * numbers so that sums do not depend on the order they are added in.
+     */
+    @Test
+    void testQueries_MatchSingleModel_BeforeAndAfterRebalance() throws IOException, InvalidEnergyDataException {
+        Model local = new Model(new ColumnStore());
+        List<EnergyData> rows = new ArrayList<>();
+        Random random = new Random(39);
+        for (int i = 0; i < 20_000; i++) {
+            rows.add(new EnergyData(2001 + random.nextInt(22), 1 + random.nextInt(12), "S" + random.nextInt(50),
+                EnergySource.values()[random.nextInt(EnergySource.values().length - 1)],
+                EnergyProducer.values()[random.nextInt(EnergyProducer.values().length)], 1 + random.nextInt(10_000)));
+        }
+        for (EnergyData row : rows) {
+            local.addEnergyData(row);
+        }
+
+        try (ShardedModel sharded = ShardedModel.launch(3, directory)) {
+            sharded.addAllEnergyData(rows);
+            int[] sizes = sharded.getShardSizes();
+            assertEquals(3, sizes.length);
+            for (int size : sizes) {
+                assertTrue(size > 0);
+            }
+            assertSameResults(local, sharded);
+
+            sharded.moveBatchRows = 1000;
+            int moved = sharded.launchShard();
+
+            assertEquals(4, sharded.getShardCount());
+            assertTrue(moved > sharded.moveBatchRows && moved < rows.size());
+            assertEquals(moved, sharded.getShardSizes()[3]);
+            assertEquals(rows.size(), sharded.size());
+            assertSameResults(local, sharded);
+        }
+    }
+
+    /**
+     * Tests that an invalid row is reported with its own values and that a batch holding
+     * one is not added to any shard.
+     */
+    @Test
+    void testAddEnergyData_InvalidRow_Rejected() throws IOException, InvalidEnergyDataException {
+        try (ShardedModel sharded = ShardedModel.launch(2, directory)) {
+            sharded.addEnergyData(new EnergyData(2010, 5, "TX", EnergySource.WIND, EnergyProducer.values()[0], 10));
+
+            InvalidEnergyDataException e = assertThrows(InvalidEnergyDataException.class, () -> sharded.addEnergyData(
+                new EnergyData(2010, 13, "TX", EnergySource.WIND, EnergyProducer.values()[0], 10)));
+            assertTrue(e.getMessage().contains("13"));
+            assertEquals(1, sharded.size());
+
+            List<EnergyData> batch = new ArrayList<>();
+            for (int state = 0; state < 20; state++) {
+                batch.add(new EnergyData(2011, 1, "S" + state, EnergySource.COAL, EnergyProducer.values()[0], 5));
+            }
+            batch.add(new EnergyData(2011, 1, "S0", EnergySource.COAL, EnergyProducer.values()[0], 5, -1, null));
+            InvalidEnergyDataException partial = assertThrows(InvalidEnergyDataException.class,
+                () -> sharded.addAllEnergyData(batch));
+            assertTrue(partial.getMessage().startsWith(RejectReason.PLANT_OUT_OF_RANGE.getMessage()));
+            assertEquals(1, sharded.size());
+            assertThrows(IllegalArgumentException.class, () -> sharded.getEnergyInRange("TX", null,
+                YearMonth.of(2010, 6), YearMonth.of(2010, 1)));
+        }
+    }
+
+    private static void assertSameResults(Model local, ShardedModel sharded) {
+        assertEquals(local.getEnergySources(), sharded.getEnergySources());
+        assertEquals(local.sortProducersByTotalEnergy(), sharded.sortProducersByTotalEnergy());
+        assertEquals(local.calculateMinEnergy(), sharded.calculateMinEnergy());
+        assertEquals(local.calculateMaxEnergy(), sharded.calculateMaxEnergy());
+        assertEquals(local.getMostUsedEnergySource(), sharded.getMostUsedEnergySource());
+        for (int month = 1; month <= 12; month++) {
+            assertEquals(local.getEnergyByStateForMonth(month), sharded.getEnergyByStateForMonth(month));
+        }
+        YearMonth from = YearMonth.of(2005, 3);
+        YearMonth to = YearMonth.of(2017, 11);
+        assertEquals(local.getEnergyByStateInRange(from, to), sharded.getEnergyByStateInRange(from, to));
+        for (int state = 0; state < 50; state++) {
+            assertEquals(local.getEnergyInRange("S" + state, EnergySource.WIND, from, to),
+                sharded.getEnergyInRange("S" + state, EnergySource.WIND, from, to));
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.mycompany.energiawusawlatach2001.trace;
+
+import com.mycompany.energiawusawlatach2001.model.ColumnStore;
+import com.mycompany.energiawusawlatach2001.model.DiffVisitor;
+import com.mycompany.energiawusawlatach2001.model.DimensionTable;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumn;
+import com.mycompany.energiawusawlatach2001.model.EnergyColumns;
+import com.mycompany.energiawusawlatach2001.model.EnergyData;
+import com.mycompany.energiawusawlatach2001.model.EnergyFilter;
+import com.mycompany.energiawusawlatach2001.model.EnergyProducer;
+import com.mycompany.energiawusawlatach2001.model.EnergySource;
+import com.mycompany.energiawusawlatach2001.model.InvalidEnergyDataException;
+import com.mycompany.energiawusawlatach2001.model.Model;
+import com.mycompany.energiawusawlatach2001.model.OffHeapColumnStore;
+import com.mycompany.energiawusawlatach2001.model.PivotDimension;
+import com.mycompany.energiawusawlatach2001.model.RejectionReport;
+import com.mycompany.energiawusawlatach2001.model.WriteMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for recording workload traces and replaying them.
+ */
+public class TraceReplayerTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Tests that a recorded session of writes and queries reads back with its arguments
+     * and that replaying it on another store with several query threads ends with the
+     * same rows, running every operation as often as recorded.
+     */
+    @Test
+    void testReplay_OtherStoreAndThreads_ReproducesSession() throws IOException, InvalidEnergyDataException {
+        Path file = directory.resolve("session.trace");
+        ColumnStore store = new ColumnStore();
+        store.append(new EnergyData(2001, 1, "AK", EnergySource.COAL, EnergyProducer.ELECTRIC_UTILITIES, 100));
+        List<EnergyData> recordedRows;
+        Map<TraceOperation, Integer> counts = new EnumMap<>(TraceOperation.class);
+        try (RecordingModel model = new RecordingModel(store, file)) {
+            Random random = new Random(45);
+            for (int i = 0; i < 2000; i++) {
+                model.addEnergyData(new EnergyData(2001 + random.nextInt(22), 1 + random.nextInt(12),
+                    "S" + random.nextInt(20), EnergySource.values()[random.nextInt(5)],
+                    EnergyProducer.values()[random.nextInt(EnergyProducer.values().length)], 1 + random.nextInt(1000)));
+                if (i % 100 == 0) {
+                    model.getEnergyByStateForMonth(1 + i % 12);
+                    model.pivot(PivotDimension.STATE, PivotDimension.SOURCE);
+                    model.filterPositions(new EnergyFilter("S3", null, null, 2005));
+                    model.getEnergyInRange("S" + i % 20, null, YearMonth.of(2003, 4), YearMonth.of(2019, 9));
+                    model.getSortedPositions(EnergyColumn.AMOUNT);
+                }
+            }
+            assertThrows(InvalidEnergyDataException.class, () -> model.addEnergyData(
+                new EnergyData(2010, 13, "S1", EnergySource.WIND, EnergyProducer.ELECTRIC_UTILITIES, 5)));
+            model.setWriteMode(WriteMode.UPSERT);
+            EnergyData first = model.getEnergyDataList().get(1);
+            model.upsertEnergyData(new EnergyData(first.year(), first.month(), first.state(), first.source(),
+                first.producer(), 7));
+            EnergyData second = model.getEnergyDataList().get(2);
+            model.updateEnergyData(second, new EnergyData(2022, 12, "XX", second.source(), second.producer(), 9));
+            model.deleteEnergyData(model.getEnergyDataList().get(3));
+            model.getEnergySources();
+            model.forecast(6);
+            recordedRows = List.copyOf(model.getEnergyDataList());
+            assertEquals(2000 + 5 * 20 + 1 + 6, model.getTrace().getRecordCount());
+        }
+
+        try (TraceReader reader = new TraceReader(file)) {
+            assertEquals(1, reader.getInitialRows().size());
+            TraceEvent event;
+            long previous = 0;
+            while ((event = reader.next()) != null) {
+                counts.merge(event.operation(), 1, Integer::sum);
+                assertTrue(event.startNanos() >= previous);
+                previous = event.startNanos();
+                if (event.operation() == TraceOperation.FILTER_POSITIONS) {
+                    assertEquals(List.of(new EnergyFilter("S3", null, null, 2005)), event.arguments());
+                } else if (event.operation() == TraceOperation.GET_ENERGY_IN_RANGE) {
+                    assertNull(event.arguments().get(1));
+                    assertEquals(YearMonth.of(2019, 9), event.arguments().get(3));
+                }
+            }
+        }
+        assertEquals(2001, counts.get(TraceOperation.ADD_ENERGY_DATA));
+        assertEquals(1, counts.get(TraceOperation.UPDATE_ENERGY_DATA));
+        assertEquals(1, counts.get(TraceOperation.DELETE_ENERGY_DATA));
+
+        try (Model replica = new Model(OffHeapColumnStore.allocate())) {
+            ReplayReport report = new TraceReplayer(replica, Double.POSITIVE_INFINITY, 4).replay(file);
+
+            assertEquals(recordedRows, replica.getEnergyDataList());
+            for (ReplayReport.OperationStats stats : report.getOperations()) {
+                assertEquals((long) counts.get(stats.operation()), stats.count(), stats.operation().name());
+                assertEquals(stats.operation() == TraceOperation.ADD_ENERGY_DATA ? 1 : 0, stats.errors());
+                assertTrue(stats.p50Micros() <= stats.p99Micros());
+            }
+            assertEquals(counts.values().stream().mapToLong(Integer::longValue).sum(), report.getOperationCount());
+            assertTrue(report.toString().contains("GET_SORTED_POSITIONS"));
+        }
+    }
+
+    /**
+     * Tests that bulk loads, sampled estimates, group-bys, joins with a dimension table and
+     * diffs are recorded with their inputs and replay to the same rows and results.
+     */
+    @Test
+    void testReplay_BulkLoadsJoinsAndDiffs_ReproducesSession() throws Exception {
+        Path file = directory.resolve("bulk.trace");
+        DimensionTable table = DimensionTable.parse("state,population,region\nS0,100,West\nS1,50,\"North, East\"\n");
+        List<EnergyData> recordedRows;
+        Map<String, Double> recordedPer;
+        try (RecordingModel model = new RecordingModel(new ColumnStore(), file)) {
+            EnergyColumns batch = new EnergyColumns();
+            for (int i = 0; i < 300; i++) {
+                batch.add(2001 + i % 22, 1 + i % 12, "S" + i % 3, i == 7 ? "Peat" : "Wind", "Electric Utilities",
+                    1 + i, i, i % 2 == 0 ? null : "C" + i % 5);
+            }
+            RejectionReport report = new RejectionReport();
+            assertEquals(299, model.addAll(batch, report));
+            Model before = model.snapshot();
+            model.deleteEnergyData(model.getEnergyDataList().get(0));
+            model.estimateEnergyByStateForMonth(4);
+            model.groupBy(List.of(EnergyColumn.STATE, EnergyColumn.COUNTY), 1 << 20, (key, total, rows) -> { });
+            model.getEnergyPer(table, "population", "region", YearMonth.of(2001, 1), YearMonth.of(2022, 12));
+            recordedPer = model.getEnergyPer(table, null, null, YearMonth.of(2001, 1), YearMonth.of(2010, 6));
+            try (before) {
+                assertEquals(1, model.diff(before, 1 << 20, new DiffVisitor() { }).removed());
+            }
+            recordedRows = List.copyOf(model.getEnergyDataList());
+        }
+
+        try (TraceReader reader = new TraceReader(file)) {
+            TraceEvent event;
+            while ((event = reader.next()) != null) {
+                if (event.operation() == TraceOperation.GET_ENERGY_PER) {
+                    assertEquals(table.toCsv(), ((DimensionTable) event.arguments().get(0)).toCsv());
+                } else if (event.operation() == TraceOperation.DIFF) {
+                    assertEquals(300 - 1, ((Model) event.arguments().get(0)).getEnergyDataList().size());
+                }
+            }
+        }
+
+        Map<TraceOperation, Long> counts = new EnumMap<>(TraceOperation.class);
+        try (Model replica = new Model(new ColumnStore())) {
+            ReplayReport report = new TraceReplayer(replica, Double.POSITIVE_INFINITY, 2).replay(file);
+
+            assertEquals(recordedRows, replica.getEnergyDataList());
+            assertEquals(recordedPer, replica.getEnergyPer(table, null, null, YearMonth.of(2001, 1),
+                YearMonth.of(2010, 6)));
+            assertEquals(1, replica.getMetrics().getRowsRejected());
+            for (ReplayReport.OperationStats stats : report.getOperations()) {
+                counts.put(stats.operation(), stats.count());
+                assertEquals(0, stats.errors(), stats.operation().name());
+            }
+        }
+        assertEquals(1, counts.get(TraceOperation.ADD_ALL));
+        assertEquals(1, counts.get(TraceOperation.ESTIMATE_ENERGY_BY_STATE_FOR_MONTH));
+        assertEquals(1, counts.get(TraceOperation.GROUP_BY));
+        assertEquals(2, counts.get(TraceOperation.GET_ENERGY_PER));
+        assertEquals(1, counts.get(TraceOperation.DIFF));
+    }
+
+    /**
+     * Tests that queries run on a snapshot in another thread are recorded to the trace of
+     * the model and that closing the snapshot leaves the trace open.
+     */
+    @Test
+    void testRecord_Snapshot_RecordsToSameTrace() throws Exception {
+        Path file = directory.resolve("snapshot.trace");
+        try (RecordingModel model = new RecordingModel(file)) {
+            RecordingModel snapshot = model.snapshot();
+            Thread worker = new Thread(() -> {
+                try (snapshot) {
+                    snapshot.getEnergyByStateForMonth(1);
+                    snapshot.forecast(3);
+                }
+            });
+            worker.start();
+            worker.join();
+            model.getEnergySources();
+            assertEquals(3, model.getTrace().getRecordCount());
+        }
+
+        ReplayReport report = new TraceReplayer(new Model(), Double.POSITIVE_INFINITY, 1).replay(file);
+
+        assertEquals(3, report.getOperationCount());
+        assertTrue(report.toString().contains("FORECAST"));
+    }
+
+    /**
+     * Tests that a paced replay keeps the recorded gaps between operations, shortened by the speed factor.
+     */
+    @Test
+    void testReplay_Paced_KeepsRecordedTiming() throws Exception {
+        Path file = directory.resolve("paced.trace");
+        try (RecordingModel model = new RecordingModel(new ColumnStore(), file)) {
+            for (int i = 0; i < 4; i++) {
+                model.getEnergySources();
+                Thread.sleep(100);
+            }
+        }
+
+        ReplayReport report = new TraceReplayer(new Model(new ColumnStore()), 2, 1).replay(file);
+
+        assertEquals(4, report.getOperationCount());
+        assertTrue(report.getElapsedNanos() >= 150_000_000L, report.getElapsedNanos() + " ns");
+        assertTrue(Files.size(file) < 64);
+    }
+}
@@ -0,0 +1,57 @@
+package com.mycompany.energiawusawlatach2001.view;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Largest-Triangle-Three-Buckets downsampling.
+ */
+public class LttbTest {
+
+    /**
+     * Tests that the endpoints are kept, indexes ascend and the threshold is respected.
+     */
+    @ParameterizedTest(name = "Downsampling 1,000,000 points to {0}")
+    @ValueSource(ints = {3, 100, 1_000, 999_999})
+    void testDownsample_KeepsEndpointsInOrder(int threshold) {
+        Random random = new Random(threshold);
+        double[] values = new double[1_000_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.sin(i / 5_000.0) * 1_000 + random.nextGaussian();
+        }
+        int[] out = new int[threshold];
+        int count = Lttb.downsample(values, 0, values.length, threshold, out);
+
+        assertEquals(threshold, count);
+        assertEquals(0, out[0]);
+        assertEquals(values.length - 1, out[count - 1]);
+        for (int i = 1; i < count; i++) {
+            assertTrue(out[i] > out[i - 1]);
+        }
+    }
+
+    /**
+     * Tests that a lone spike survives downsampling while fewer points than the threshold are all kept.
+     */
+    @Test
+    void testDownsample_KeepsSpike() {
+        double[] values = new double[10_000];
+        values[4_321] = 500;
+        int[] out = new int[50];
+        int count = Lttb.downsample(values, 0, values.length, 50, out);
+        boolean spikeKept = false;
+        for (int i = 0; i < count; i++) {
+            spikeKept |= out[i] == 4_321;
+        }
+        assertTrue(spikeKept);
+
+        int[] all = new int[20];
+        assertEquals(20, Lttb.downsample(values, 100, 120, 50, all));
+        assertEquals(119, all[19]);
+    }
+}
@@ -0,0 +1,245 @@
+# Encodes the Arrow IPC golden files of ArrowIpcTest from the format specification
+# (Schema.fbs, Message.fbs, File.fbs and the columnar layout), with nothing but the
+# Python standard library and independently of the Java writer, so the tests check the
+# reader against a second encoder. Run it in this directory; the files are checked in
+# and only change when this script does.
+#
+#   sample.arrow   the sample data of Model() in the file format and the schema the Java
+#                  writer uses, but with other dictionary orders and two record batches
+#   sample.arrows  the same in the stream format
+#   pandas.arrows  the layout a pandas DataFrame gets: int64 years and months, plain utf8
+#                  states and producers, an int8-indexed source dictionary sent in two
+#                  parts, an extra column and no plant or county columns
+import struct
+
+
+def build(root):
+    """Writes a flatbuffer with the root table given as nested tuples:
+    ('table', [(field, fmt, value)]) with fmt a struct code or 'ref' for a child,
+    ('str', text), ('tabs', [table, ...]) and ('structs', fmt, [row, ...])."""
+    b = bytearray(4)
+
+    def pad(a):
+        while len(b) % a:
+            b.append(0)
+
+    def obj(o):
+        kind = o[0]
+        if kind == 'str':
+            pad(4)
+            p = len(b)
+            e = o[1].encode()
+            b.extend(struct.pack('<I', len(e)) + e + b'\0')
+            return p
+        if kind == 'structs':
+            pad(8)
+            b.extend(b'\0' * 4)
+            p = len(b)
+            b.extend(struct.pack('<I', len(o[2])))
+            for row in o[2]:
+                b.extend(struct.pack('<' + o[1], *row))
+            return p
+        if kind == 'tabs':
+            pad(4)
+            p = len(b)
+            b.extend(struct.pack('<I', len(o[1])))
+            slots = len(b)
+            b.extend(b'\0' * 4 * len(o[1]))
+            for i, t in enumerate(o[1]):
+                tp = obj(t)
+                s = slots + 4 * i
+                struct.pack_into('<I', b, s, tp - s)
+            return p
+        # a table: the vtable first, then the fields by decreasing size, then the children
+        fields = o[1]
+        n = max([f[0] for f in fields], default=-1) + 1
+        layout = []
+        cur = 4
+        for f in sorted(fields, key=lambda f: -struct.calcsize('I' if f[1] == 'ref' else f[1])):
+            size = struct.calcsize('I' if f[1] == 'ref' else f[1])
+            cur = (cur + size - 1) // size * size
+            layout.append((f, cur))
+            cur += size
+        pad(2)
+        vt = len(b)
+        offsets = [0] * n
+        for f, c in layout:
+            offsets[f[0]] = c
+        b.extend(struct.pack('<HH', 4 + 2 * n, cur))
+        b.extend(b''.join(struct.pack('<H', x) for x in offsets))
+        pad(8)
+        tp = len(b)
+        b.extend(struct.pack('<i', tp - vt))
+        b.extend(b'\0' * (cur - 4))
+        for f, c in layout:
+            if f[1] == 'ref':
+                rp = obj(f[2])
+                struct.pack_into('<I', b, tp + c, rp - (tp + c))
+            else:
+                struct.pack_into('<' + f[1], b, tp + c, f[2])
+        return tp
+
+    rp = obj(root)
+    struct.pack_into('<I', b, 0, rp)
+    pad(8)
+    return bytes(b)
+
+
+def tab(*fields):
+    return ('table', list(fields))
+
+
+def int_type(width, signed):
+    return tab((0, 'i', width), (1, 'B', signed))
+
+
+# Type union tags
+INT, FLOATING_POINT, UTF8 = 2, 3, 5
+DOUBLE = 2
+# MessageHeader union tags
+SCHEMA, DICTIONARY_BATCH, RECORD_BATCH = 1, 2, 3
+V5 = 4
+
+
+def field(name, type_tag, type_table, dictionary=None, nullable=False):
+    f = [(0, 'ref', ('str', name)), (1, 'B', int(nullable)), (2, 'B', type_tag),
+         (3, 'ref', type_table), (5, 'ref', ('tabs', []))]
+    if dictionary:
+        f.append((4, 'ref', dictionary))
+    return tab(*f)
+
+
+def encoded(dictionary_id, index_width):
+    return tab((0, 'q', dictionary_id), (1, 'ref', int_type(index_width, 1)), (2, 'B', 0))
+
+
+def aligned(data):
+    return data + b'\0' * (-len(data) % 8)
+
+
+def strings(values):
+    data = [v.encode() for v in values]
+    offsets = [0]
+    for d in data:
+        offsets.append(offsets[-1] + len(d))
+    return struct.pack('<%di' % len(offsets), *offsets), b''.join(data)
+
+
+def body_of(buffers):
+    body = b''
+    specs = []
+    for buffer in buffers:
+        specs.append((len(body), len(buffer)))
+        body += aligned(buffer)
+    return body, specs
+
+
+class Writer:
+    def __init__(self, file_format):
+        self.out = bytearray(b'ARROW1\0\0' if file_format else b'')
+        self.dictionaries = []
+        self.batches = []
+
+    def message(self, header_type, header, body):
+        start = len(self.out)
+        metadata = build(tab((0, 'h', V5), (1, 'B', header_type), (2, 'ref', header), (3, 'q', len(body))))
+        self.out.extend(struct.pack('<Ii', 0xFFFFFFFF, len(metadata)))
+        self.out.extend(metadata)
+        self.out.extend(body)
+        block = (start, 8 + len(metadata), len(body))
+        if header_type == DICTIONARY_BATCH:
+            self.dictionaries.append(block)
+        elif header_type == RECORD_BATCH:
+            self.batches.append(block)
+
+    def dictionary(self, dictionary_id, values, delta=False):
+        offsets, data = strings(values)
+        body, specs = body_of([b'', offsets, data])
+        batch = tab((0, 'q', len(values)), (1, 'ref', ('structs', 'qq', [(len(values), 0)])),
+                    (2, 'ref', ('structs', 'qq', specs)))
+        self.message(DICTIONARY_BATCH, tab((0, 'q', dictionary_id), (1, 'ref', batch), (2, 'B', int(delta))), body)
+
+    def record_batch(self, length, columns, buffers):
+        body, specs = body_of(buffers)
+        batch = tab((0, 'q', length), (1, 'ref', ('structs', 'qq', [(length, 0)] * columns)),
+                    (2, 'ref', ('structs', 'qq', specs)))
+        self.message(RECORD_BATCH, batch, body)
+
+    def finish(self, schema, path):
+        self.out.extend(struct.pack('<Ii', 0xFFFFFFFF, 0))
+        if self.out.startswith(b'ARROW1'):
+            footer = build(tab((0, 'h', V5), (1, 'ref', schema),
+                               (2, 'ref', ('structs', 'qi4xq', self.dictionaries)),
+                               (3, 'ref', ('structs', 'qi4xq', self.batches))))
+            self.out.extend(footer + struct.pack('<i', len(footer)) + b'ARROW1')
+        with open(path, 'wb') as f:
+            f.write(self.out)
+
+
+def sample(file_format, path):
+    rows = [
+        (2001, 1, 'AK', 'COAL', 'ELECTRIC_UTILITIES', 46903.0),
+        (2001, 2, 'AK', 'NATURAL_GAS', 'INDEPENDENT_POWER_PRODUCERS', 36500.0),
+        (2002, 1, 'AK', 'WIND', 'COMBINED_HEAT_AND_POWER', 90.0),
+        (2001, 1, 'CA', 'HYDROELECTRIC', 'INDEPENDENT_POWER_PRODUCERS', 102000.0),
+        (2002, 1, 'CA', 'SOLAR', 'RENEWABLE_ENERGY_COMPANIES', 3000.0),
+    ]
+    states = ['CA', 'AK']
+    sources = ['SOLAR', 'WIND', 'HYDROELECTRIC', 'NATURAL_GAS', 'COAL']
+    producers = ['RENEWABLE_ENERGY_COMPANIES', 'COMBINED_HEAT_AND_POWER', 'INDEPENDENT_POWER_PRODUCERS',
+                 'ELECTRIC_UTILITIES']
+    counties = ['']
+    int32 = int_type(32, 1)
+    schema = tab((0, 'h', 0), (1, 'ref', ('tabs', [
+        field('year', INT, int32), field('month', INT, int32),
+        field('state', UTF8, tab(), encoded(21, 32)), field('source', UTF8, tab(), encoded(22, 32)),
+        field('producer', UTF8, tab(), encoded(23, 32)),
+        field('amount', FLOATING_POINT, tab((0, 'h', DOUBLE))), field('plant', INT, int32),
+        field('county', UTF8, tab(), encoded(24, 32))])))
+    w = Writer(file_format)
+    w.message(SCHEMA, schema, b'')
+    for dictionary_id, values in ((21, states), (22, sources), (23, producers), (24, counties)):
+        w.dictionary(dictionary_id, values)
+    for batch in (rows[:3], rows[3:]):
+        n = len(batch)
+        ints = lambda values: struct.pack('<%di' % n, *values)
+        w.record_batch(n, 8, [
+            b'', ints(r[0] for r in batch), b'', ints(r[1] for r in batch),
+            b'', ints(states.index(r[2]) for r in batch), b'', ints(sources.index(r[3]) for r in batch),
+            b'', ints(producers.index(r[4]) for r in batch), b'', struct.pack('<%dd' % n, *(r[5] for r in batch)),
+            b'', ints(0 for r in batch), b'', ints(0 for r in batch)])
+    w.finish(schema, path)
+
+
+def pandas(path):
+    # every column is nullable, as pandas leaves it, but holds no nulls
+    schema = tab((0, 'h', 0), (1, 'ref', ('tabs', [
+        field('state', UTF8, tab(), nullable=True),
+        field('amount', FLOATING_POINT, tab((0, 'h', DOUBLE)), nullable=True),
+        field('note', UTF8, tab(), nullable=True), field('year', INT, int_type(64, 1), nullable=True),
+        field('month', INT, int_type(64, 1), nullable=True),
+        field('source', UTF8, tab(), encoded(7, 8), nullable=True), field('producer', UTF8, tab(), nullable=True)])))
+    w = Writer(False)
+    w.message(SCHEMA, schema, b'')
+    # the source dictionary in another order than the enum, sent as a base and a delta
+    w.dictionary(7, ['SOLAR', 'COAL'])
+    w.dictionary(7, ['WIND', 'NATURAL_GAS'], delta=True)
+    batches = [
+        [('TX', 1500.5, 'a', 2010, 3, 0, 'ELECTRIC_UTILITIES'), ('NY', 20.25, '', 2011, 12, 1, 'NUCLEAR_POWER_PLANTS')],
+        [('TX', 7.0, 'b', 2022, 1, 2, 'FOSSIL_FUEL_PLANTS'), ('WA', 42.0, 'c', 2001, 6, 3, 'RENEWABLE_ENERGY_COMPANIES'),
+         ('NY', 0.125, 'd', 2015, 7, 1, 'GEOTHERMAL_PLANTS')],
+    ]
+    for rows in batches:
+        n = len(rows)
+        cols = list(zip(*rows))
+        w.record_batch(n, 7, [
+            b'', *strings(cols[0]), b'', struct.pack('<%dd' % n, *cols[1]), b'', *strings(cols[2]),
+            b'', struct.pack('<%dq' % n, *cols[3]), b'', struct.pack('<%dq' % n, *cols[4]),
+            b'', struct.pack('<%db' % n, *cols[5]), b'', *strings(cols[6])])
+    w.finish(schema, path)
+
+
+if __name__ == '__main__':
+    sample(True, 'sample.arrow')
+    sample(False, 'sample.arrows')
+    pandas('pandas.arrows')